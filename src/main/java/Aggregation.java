@@ -0,0 +1,27 @@
+/**
+ * Aggregations that a data frame can compute over each column without calling
+ * back into user code, so that it can choose the fastest way to compute them,
+ * for example directly on compressed columns. Missing values are skipped.
+ */
+public enum Aggregation {
+    /**
+     * The sum of the values
+     */
+    SUM,
+    /**
+     * The smallest value
+     */
+    MIN,
+    /**
+     * The largest value
+     */
+    MAX,
+    /**
+     * The number of values
+     */
+    COUNT,
+    /**
+     * The arithmetic mean of the values
+     */
+    MEAN
+}
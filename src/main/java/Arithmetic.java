@@ -0,0 +1,33 @@
+/**
+ * Element-wise arithmetic on two columns, which a data frame can compute
+ * without calling back into user code, for example with vector instructions.
+ * A row of the result is missing when it is missing in either column.
+ */
+public enum Arithmetic {
+    /**
+     * left + right
+     */
+    ADD,
+    /**
+     * left - right
+     */
+    SUBTRACT,
+    /**
+     * left * right
+     */
+    MULTIPLY;
+
+    /**
+     * Applies the operation to two values
+     */
+    public double apply(double left, double right) {
+        switch (this) {
+            case ADD:
+                return left + right;
+            case SUBTRACT:
+                return left - right;
+            default:
+                return left * right;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * A fixed number of non-negative integers packed into a long array using the
+ * same number of bits for every value: the number of bits needed for the
+ * largest value. A value may span two words of the array.
+ */
+final class BitPackedInts {
+
+    private final long[] words;
+    private final int bitWidth;
+    private final int size;
+
+    private BitPackedInts(long[] words, int bitWidth, int size) {
+        this.words = words;
+        this.bitWidth = bitWidth;
+        this.size = size;
+    }
+
+    /**
+     * The number of bits needed to store values from 0 up to and including
+     * maxValue
+     */
+    static int bitWidth(long maxValue) {
+        return 64 - Long.numberOfLeadingZeros(maxValue);
+    }
+
+    /**
+     * The number of bytes used to pack size values of the given bit width
+     */
+    static long packedBytes(int size, int bitWidth) {
+        return 8L * (((long) size * bitWidth + 63) >>> 6);
+    }
+
+    /**
+     * Packs the first size values of an array
+     *
+     * @param values   the values, none of them negative
+     * @param size     the number of values to pack
+     * @param bitWidth the number of bits per value, at least bitWidth(max)
+     */
+    static BitPackedInts pack(long[] values, int size, int bitWidth) {
+        BitPackedInts result = new BitPackedInts(new long[(int) (packedBytes(size, bitWidth) >>> 3)], bitWidth, size);
+        for (int i = 0; i < size; i++) {
+            result.set(i, values[i]);
+        }
+        return result;
+    }
+
+    static BitPackedInts pack(int[] values, int size, int bitWidth) {
+        BitPackedInts result = new BitPackedInts(new long[(int) (packedBytes(size, bitWidth) >>> 3)], bitWidth, size);
+        for (int i = 0; i < size; i++) {
+            result.set(i, values[i]);
+        }
+        return result;
+    }
+
+    private void set(int index, long value) {
+        if (this.bitWidth == 0) {
+            return;
+        }
+        long bit = (long) index * this.bitWidth;
+        int word = (int) (bit >>> 6);
+        int offset = (int) (bit & 63);
+        this.words[word] |= value << offset;
+        // The value continues in the next word
+        if (offset + this.bitWidth > 64) {
+            this.words[word + 1] |= value >>> (64 - offset);
+        }
+    }
+
+    long get(int index) {
+        if (this.bitWidth == 0) {
+            return 0;
+        }
+        long bit = (long) index * this.bitWidth;
+        int word = (int) (bit >>> 6);
+        int offset = (int) (bit & 63);
+        long value = this.words[word] >>> offset;
+        if (offset + this.bitWidth > 64) {
+            value |= this.words[word + 1] << (64 - offset);
+        }
+        return this.bitWidth == 64 ? value : value & ((1L << this.bitWidth) - 1);
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int bitWidth() {
+        return this.bitWidth;
+    }
+
+    long sizeInBytes() {
+        return 8L * this.words.length;
+    }
+}
@@ -0,0 +1,497 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A binary, column-oriented file of doubles, written and read by
+ * FileTools.writeBlocks() and FileTools.readBlocks().
+ *
+ * The rows are stored in blocks of a fixed number of rows. Within a block
+ * every column is a separate chunk: a flag, the validity bitmap if a value is
+ * missing, and the values as little-endian doubles. The footer holds the
+ * column names and, per block and column, the position of the chunk and a
+ * zone map: the minimum and maximum of the values and whether the chunk holds
+ * NaN. The file ends with the position of the footer.
+ *
+ * A reader that is given predicates checks the zone maps first and skips the
+ * blocks that cannot hold a matching row. Of the other blocks it only reads
+ * the chunks of the columns it returns or tests.
+ *
+ * <pre>
+ * "DFBLOCK1" | block 0: chunk per column | block 1 ... | footer | footer position
+ * </pre>
+ */
+final class BlockFile {
+
+    /**
+     * The number of rows in a block, unless given otherwise
+     */
+    static final int DEFAULT_BLOCK_ROWS = 1 << 16;
+
+    private static final byte[] MAGIC = "DFBLOCK1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte HAS_VALIDITY = 1;
+    private static final byte HAS_NAN = 2;
+
+    private BlockFile() {
+    }
+
+    /*
+     * The position and the zone map of a chunk
+     */
+    private static final class Chunk {
+        long offset;
+        int length;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        boolean hasNaN;
+    }
+
+    /*
+     * The contents of the footer
+     */
+    private static final class Footer {
+        List<String> columnNames;
+        int[] blockRows;
+        // [block][column]
+        Chunk[][] chunks;
+    }
+
+    static void write(DataFrame<Double> dataFrame, File file, int blockRows) throws IOException {
+        if (blockRows <= 0) {
+            throw new IllegalArgumentException("A block should hold at least one row");
+        }
+        List<String> colNames = dataFrame.getColumnNames();
+        int rowCount = dataFrame.getRowCount();
+        List<DoubleColumn> columns = new ArrayList<>(colNames.size());
+        for (String colName : colNames) {
+            columns.add(DoubleColumn.numericColumn(dataFrame, colName));
+        }
+        int blockCount = (rowCount + blockRows - 1) / blockRows;
+        Footer footer = new Footer();
+        footer.columnNames = colNames;
+        footer.blockRows = new int[blockCount];
+        footer.chunks = new Chunk[blockCount][colNames.size()];
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, ByteBuffer.wrap(MAGIC));
+            long position = MAGIC.length;
+            ByteBuffer buffer = ByteBuffer.allocate(chunkCapacity(Math.min(rowCount, blockRows)))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (int b = 0; b < blockCount; b++) {
+                int from = b * blockRows;
+                int rows = Math.min(blockRows, rowCount - from);
+                footer.blockRows[b] = rows;
+                for (int j = 0; j < columns.size(); j++) {
+                    buffer.clear();
+                    Chunk chunk = encodeChunk(columns.get(j), from, rows, buffer);
+                    chunk.offset = position;
+                    chunk.length = buffer.flip().remaining();
+                    writeFully(channel, buffer);
+                    position += chunk.length;
+                    footer.chunks[b][j] = chunk;
+                }
+            }
+            ByteBuffer encodedFooter = encodeFooter(footer);
+            writeFully(channel, encodedFooter);
+            ByteBuffer end = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(position);
+            writeFully(channel, end.flip());
+        }
+    }
+
+    private static int chunkCapacity(int rows) {
+        return 1 + 8 * ColumnStorage.wordCount(rows) + 8 * rows;
+    }
+
+    /*
+     * Encodes the rows [from, from + rows) of a column into the buffer and
+     * computes their zone map
+     */
+    private static Chunk encodeChunk(DoubleColumn column, int from, int rows, ByteBuffer buffer) {
+        Chunk chunk = new Chunk();
+        boolean hasMissing = column.validity() != null && hasMissing(column, from, rows);
+        double[] values = column.values();
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        boolean any = false;
+        for (int i = from; i < from + rows; i++) {
+            if (!column.isValid(i)) {
+                continue;
+            }
+            double value = values[i];
+            if (value != value) {
+                chunk.hasNaN = true;
+                continue;
+            }
+            any = true;
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+        if (any) {
+            chunk.min = min;
+            chunk.max = max;
+        }
+        buffer.put(hasMissing ? HAS_VALIDITY : 0);
+        if (hasMissing) {
+            for (int w = 0; w < ColumnStorage.wordCount(rows); w++) {
+                long word = 0;
+                for (int i = w << 6; i < Math.min(rows, (w + 1) << 6); i++) {
+                    if (column.isValid(from + i)) {
+                        word |= 1L << i;
+                    }
+                }
+                buffer.putLong(word);
+            }
+        }
+        buffer.asDoubleBuffer().put(values, from, rows);
+        buffer.position(buffer.position() + 8 * rows);
+        return chunk;
+    }
+
+    private static boolean hasMissing(DoubleColumn column, int from, int rows) {
+        for (int i = from; i < from + rows; i++) {
+            if (!column.isValid(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ByteBuffer encodeFooter(Footer footer) {
+        List<byte[]> names = new ArrayList<>();
+        int size = 8;
+        for (String name : footer.columnNames) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            names.add(bytes);
+            size += 4 + bytes.length;
+        }
+        size += footer.blockRows.length * (4 + footer.columnNames.size() * (8 + 4 + 8 + 8 + 1));
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(names.size());
+        for (byte[] name : names) {
+            buffer.putInt(name.length).put(name);
+        }
+        buffer.putInt(footer.blockRows.length);
+        for (int b = 0; b < footer.blockRows.length; b++) {
+            buffer.putInt(footer.blockRows[b]);
+            for (Chunk chunk : footer.chunks[b]) {
+                buffer.putLong(chunk.offset).putInt(chunk.length).putDouble(chunk.min).putDouble(chunk.max);
+                buffer.put(chunk.hasNaN ? HAS_NAN : 0);
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads the rows that match all predicates, with only the given columns
+     *
+     * @param columns    the columns to return, in any order, or null for all
+     *                   columns; the result keeps the order of the file
+     * @param predicates the conditions that a row has to meet
+     */
+    static DoubleDataFrame read(File file, Collection<String> columns, List<ColumnPredicate> predicates) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Footer footer = readFooter(channel, file);
+            Schema schema;
+            try {
+                schema = Schema.of(footer.columnNames);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException(file + " has a damaged footer: " + ex.getMessage());
+            }
+            Schema result = columns == null ? schema : schema.retain(columns);
+            int[] projected = schema.retainedIndexes(result.names());
+            int[] tested = new int[predicates.size()];
+            for (int p = 0; p < tested.length; p++) {
+                tested[p] = schema.requireIndex(predicates.get(p).getColumn());
+            }
+            long totalRows = 0;
+            for (int rows : footer.blockRows) {
+                totalRows += rows;
+            }
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("io.readBlocks", totalRows);
+
+            ColumnBuffers output = new ColumnBuffers(projected.length);
+            ByteBuffer buffer = ByteBuffer.allocate(0);
+            int maxRows = 0;
+            for (int rows : footer.blockRows) {
+                maxRows = Math.max(maxRows, rows);
+            }
+            long[] matches = new long[ColumnStorage.wordCount(maxRows)];
+            long[] mask = new long[matches.length];
+            // The decoded chunks of the current block, per column
+            double[][] values = new double[schema.size()][];
+            long[][] validity = new long[schema.size()][];
+            for (int b = 0; b < footer.blockRows.length; b++) {
+                int rows = footer.blockRows[b];
+                if (!mayMatch(footer.chunks[b], tested, predicates)) {
+                    continue;
+                }
+                Arrays.fill(values, null);
+                int words = ColumnStorage.wordCount(rows);
+                Arrays.fill(matches, 0, words, -1L);
+                for (int p = 0; p < tested.length; p++) {
+                    int j = tested[p];
+                    if (values[j] == null) {
+                        buffer = readChunk(channel, footer.chunks[b][j], buffer, file);
+                        validity[j] = decodeChunk(buffer, rows, values[j] = new double[rows], file);
+                    }
+                    ColumnPredicate predicate = predicates.get(p);
+                    ColumnKernels.compare(values[j], rows, predicate.getComparison(), predicate.getValue(), mask);
+                    for (int w = 0; w < words; w++) {
+                        matches[w] &= mask[w] & (validity[j] == null ? -1L : validity[j][w]);
+                    }
+                }
+                matches[words - 1] &= ColumnStorage.wordMask(words - 1, rows);
+                int count = 0;
+                for (int w = 0; w < words; w++) {
+                    count += Long.bitCount(matches[w]);
+                }
+                if (count == 0) {
+                    continue;
+                }
+                for (int k = 0; k < projected.length; k++) {
+                    int j = projected[k];
+                    if (values[j] == null) {
+                        buffer = readChunk(channel, footer.chunks[b][j], buffer, file);
+                        validity[j] = decodeChunk(buffer, rows, values[j] = new double[rows], file);
+                    }
+                    output.append(k, values[j], validity[j], matches, rows, count);
+                }
+                output.advance(count);
+            }
+            DoubleDataFrame dataFrame = output.build(result);
+            DataFrameMetrics.finish(timer, dataFrame.getRowCount(), false);
+            return dataFrame;
+        }
+    }
+
+    private static boolean mayMatch(Chunk[] chunks, int[] tested, List<ColumnPredicate> predicates) {
+        for (int p = 0; p < tested.length; p++) {
+            Chunk chunk = chunks[tested[p]];
+            if (!predicates.get(p).mayMatch(chunk.min, chunk.max, chunk.hasNaN)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Footer readFooter(FileChannel channel, File file) throws IOException {
+        long size = channel.size();
+        if (size < MAGIC.length + 8) {
+            throw new IOException(file + " is not a block file");
+        }
+        ByteBuffer head = ByteBuffer.allocate(MAGIC.length);
+        readFully(channel, head, 0, file);
+        if (!Arrays.equals(head.array(), MAGIC)) {
+            throw new IOException(file + " is not a block file");
+        }
+        ByteBuffer end = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, end, size - 8, file);
+        long footerOffset = end.flip().getLong();
+        if (footerOffset < MAGIC.length || footerOffset > size - 8) {
+            throw new IOException(file + " has a damaged footer");
+        }
+        if (size - 8 - footerOffset > Integer.MAX_VALUE) {
+            throw new IOException(file + " has a damaged footer");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (size - 8 - footerOffset)).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, buffer, footerOffset, file);
+        buffer.flip();
+        Footer footer;
+        try {
+            footer = decodeFooter(buffer, footerOffset);
+        } catch (BufferUnderflowException ex) {
+            throw new IOException(file + " has a truncated footer");
+        }
+        if (footer == null) {
+            throw new IOException(file + " has a damaged footer");
+        }
+        return footer;
+    }
+
+    /*
+     * Decodes the footer, or returns null if a count, a length or the
+     * position of a chunk is out of range. A footer that ends too early
+     * throws a BufferUnderflowException.
+     */
+    private static Footer decodeFooter(ByteBuffer buffer, long footerOffset) throws BufferUnderflowException {
+        Footer footer = new Footer();
+        int columnCount = buffer.getInt();
+        // Every column takes at least the 4 bytes of the length of its name
+        if (columnCount < 0 || columnCount > buffer.remaining() / 4) {
+            return null;
+        }
+        footer.columnNames = new ArrayList<>(columnCount);
+        for (int j = 0; j < columnCount; j++) {
+            int nameLength = buffer.getInt();
+            if (nameLength < 0 || nameLength > buffer.remaining()) {
+                return null;
+            }
+            byte[] name = new byte[nameLength];
+            buffer.get(name);
+            footer.columnNames.add(new String(name, StandardCharsets.UTF_8));
+        }
+        int blockCount = buffer.getInt();
+        // Every block takes at least the 4 bytes of its number of rows
+        if (blockCount < 0 || blockCount > buffer.remaining() / 4) {
+            return null;
+        }
+        footer.blockRows = new int[blockCount];
+        footer.chunks = new Chunk[blockCount][columnCount];
+        for (int b = 0; b < blockCount; b++) {
+            footer.blockRows[b] = buffer.getInt();
+            // The writer never writes an empty block
+            if (footer.blockRows[b] <= 0) {
+                return null;
+            }
+            for (int j = 0; j < columnCount; j++) {
+                Chunk chunk = new Chunk();
+                chunk.offset = buffer.getLong();
+                chunk.length = buffer.getInt();
+                chunk.min = buffer.getDouble();
+                chunk.max = buffer.getDouble();
+                chunk.hasNaN = (buffer.get() & HAS_NAN) != 0;
+                // A chunk holds a flag byte and a double per row
+                if (chunk.offset < MAGIC.length || chunk.length < 1 + 8L * footer.blockRows[b]
+                        || chunk.offset + chunk.length > footerOffset) {
+                    return null;
+                }
+                footer.chunks[b][j] = chunk;
+            }
+        }
+        return footer;
+    }
+
+    /*
+     * Reads a chunk into the buffer, which is replaced by a larger one if
+     * needed, and returns the buffer ready to be decoded
+     */
+    private static ByteBuffer readChunk(FileChannel channel, Chunk chunk, ByteBuffer buffer, File file) throws IOException {
+        if (buffer.capacity() < chunk.length) {
+            buffer = ByteBuffer.allocate(chunk.length);
+        }
+        buffer.clear().limit(chunk.length);
+        readFully(channel, buffer, chunk.offset, file);
+        buffer.flip();
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /*
+     * Decodes a chunk into the values array and returns its validity bitmap,
+     * or null if no value is missing
+     *
+     * @throws IOException if the chunk is shorter than its number of rows
+     */
+    private static long[] decodeChunk(ByteBuffer buffer, int rows, double[] values, File file) throws IOException {
+        try {
+            long[] validity = null;
+            if ((buffer.get() & HAS_VALIDITY) != 0) {
+                validity = new long[ColumnStorage.wordCount(rows)];
+                for (int w = 0; w < validity.length; w++) {
+                    validity[w] = buffer.getLong();
+                }
+            }
+            buffer.asDoubleBuffer().get(values, 0, rows);
+            return validity;
+        } catch (BufferUnderflowException ex) {
+            throw new IOException(file + " has a damaged block");
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, File file) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException(file + " is truncated");
+            }
+            offset += read;
+        }
+    }
+
+    /*
+     * The growing columns of the rows that match, like the buffers of a
+     * DoubleDataFrameBuilder but with validity bitmaps
+     */
+    private static final class ColumnBuffers {
+        private double[][] values;
+        private long[][] validity;
+        private int rowCount;
+
+        ColumnBuffers(int columnCount) {
+            this.values = new double[columnCount][16];
+            this.validity = new long[columnCount][];
+        }
+
+        /*
+         * Appends the rows of a block that are set in matches to column k
+         */
+        void append(int k, double[] blockValues, long[] blockValidity, long[] matches, int rows, int count) {
+            ensureCapacity(k, this.rowCount + count);
+            double[] target = this.values[k];
+            int out = this.rowCount;
+            for (int w = 0; w < ColumnStorage.wordCount(rows); w++) {
+                long word = matches[w];
+                while (word != 0) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                    target[out] = blockValues[i];
+                    if (blockValidity != null && (blockValidity[w] & (1L << i)) == 0) {
+                        markMissing(k, out);
+                    }
+                    out++;
+                    word &= word - 1;
+                }
+            }
+        }
+
+        void advance(int count) {
+            this.rowCount += count;
+        }
+
+        private void ensureCapacity(int k, int required) {
+            if (required > this.values[k].length) {
+                int capacity = Math.max(required, this.values[k].length * 2);
+                this.values[k] = Arrays.copyOf(this.values[k], capacity);
+                if (this.validity[k] != null) {
+                    long[] bitmap = ColumnStorage.allValid(capacity);
+                    System.arraycopy(this.validity[k], 0, bitmap, 0, this.validity[k].length);
+                    this.validity[k] = bitmap;
+                }
+            }
+        }
+
+        private void markMissing(int k, int row) {
+            if (this.validity[k] == null) {
+                this.validity[k] = ColumnStorage.allValid(this.values[k].length);
+            }
+            this.validity[k][row >>> 6] &= ~(1L << row);
+        }
+
+        DoubleDataFrame build(Schema schema) {
+            List<DoubleColumn> columns = new ArrayList<>(this.values.length);
+            for (int k = 0; k < this.values.length; k++) {
+                columns.add(new DoubleColumn(this.values[k], this.rowCount, this.validity[k]));
+            }
+            return new DoubleDataFrame(schema, columns, this.rowCount);
+        }
+    }
+}
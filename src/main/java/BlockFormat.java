@@ -0,0 +1,24 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Binary block files with zone maps, see FileTools.readBlocks() and
+ * FileTools.writeBlocks()
+ */
+public class BlockFormat implements DataFrameFormat {
+
+    @Override
+    public boolean supports(String extension) {
+        return extension.equals("dfb");
+    }
+
+    @Override
+    public DataFrame<Double> read(File file) throws IOException {
+        return FileTools.readBlocks(file);
+    }
+
+    @Override
+    public void write(DataFrame<Double> dataFrame, File file) throws IOException {
+        FileTools.writeBlocks(dataFrame, file);
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage for a categorical column of String labels, encoded as an int code
+ * per row together with a dictionary of the distinct labels. Comparing,
+ * filtering and grouping on such a column compares ints rather than strings.
+ * Rows added by copy() are missing.
+ */
+final class CategoryColumn extends ColumnStorage {
+
+    private final int[] codes;
+    private CategoryDictionary dictionary;
+
+    CategoryColumn(int[] codes, int size, CategoryDictionary dictionary, long[] validity) {
+        super(size, validity);
+        if (size > codes.length) {
+            throw new IllegalArgumentException("Column holds fewer than " + size + " values");
+        }
+        this.codes = codes;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Encodes an array of labels; null labels are missing
+     */
+    static CategoryColumn encode(String[] labels) {
+        CategoryDictionary dictionary = new CategoryDictionary();
+        CategoryColumn column = new CategoryColumn(new int[labels.length], labels.length, dictionary, null);
+        for (int i = 0; i < labels.length; i++) {
+            column.setObject(i, labels[i]);
+        }
+        return column;
+    }
+
+    /*
+     * The codes and the dictionary. A dictionary that is shared with other
+     * columns is counted for each of them.
+     */
+    @Override
+    long dataBytes() {
+        return arrayBytes(this.codes.length, 4) + this.dictionary.estimateMemoryBytes();
+    }
+
+    @Override
+    ColumnType type() {
+        return ColumnType.CATEGORY;
+    }
+
+    /**
+     * The code of the label at a row. Only meaningful for valid rows.
+     */
+    int getCode(int rowIndex) {
+        return this.codes[rowIndex];
+    }
+
+    int[] codes() {
+        return this.codes;
+    }
+
+    CategoryDictionary dictionary() {
+        return this.dictionary;
+    }
+
+    @Override
+    Object getObject(int rowIndex) {
+        return isValid(rowIndex) ? this.dictionary.label(this.codes[rowIndex]) : null;
+    }
+
+    @Override
+    void setObject(int rowIndex, Object value) throws IllegalArgumentException {
+        if (value == null) {
+            this.codes[rowIndex] = 0;
+            markMissing(rowIndex);
+            return;
+        }
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("Value " + value + " is not a category label");
+        }
+        int code = this.dictionary.lookup((String) value);
+        if (code < 0) {
+            // A new label is added to a dictionary of this column only
+            if (this.dictionary.isShared()) {
+                this.dictionary = this.dictionary.copy();
+            }
+            code = this.dictionary.encode((String) value);
+        }
+        this.codes[rowIndex] = code;
+        markValid(rowIndex);
+    }
+
+    @Override
+    CategoryColumn copy(int newSize) {
+        int[] copy = Arrays.copyOf(this.codes, newSize);
+        long[] validity = copyValidity(newSize);
+        this.dictionary.markShared();
+        CategoryColumn result = new CategoryColumn(copy, newSize, this.dictionary, validity);
+        for (int i = size(); i < newSize; i++) {
+            result.markMissing(i);
+        }
+        return result;
+    }
+
+    @Override
+    CategoryColumn gather(int[] rowIndices, int count) {
+        int[] copy = new int[count];
+        for (int i = 0; i < count; i++) {
+            copy[i] = this.codes[rowIndices[i]];
+        }
+        this.dictionary.markShared();
+        return new CategoryColumn(copy, count, this.dictionary, gatherValidity(rowIndices, count));
+    }
+
+    /**
+     * Appends the rows of other category columns. Their labels are added to
+     * a copy of the dictionary of this column, and their codes are translated
+     * unless they already agree with that dictionary.
+     */
+    @Override
+    CategoryColumn appendRows(List<? extends ColumnStorage> following) throws IllegalArgumentException {
+        int totalSize = appendedSize(following);
+        int[] codes = new int[totalSize];
+        System.arraycopy(this.codes, 0, codes, 0, size());
+        CategoryDictionary dictionary = this.dictionary.copy();
+        int offset = size();
+        for (ColumnStorage storage : following) {
+            CategoryColumn column = (CategoryColumn) storage;
+            int[] translation = new int[column.dictionary.size()];
+            boolean identical = true;
+            for (int code = 0; code < translation.length; code++) {
+                translation[code] = dictionary.encode(column.dictionary.label(code));
+                identical &= translation[code] == code;
+            }
+            if (identical) {
+                System.arraycopy(column.codes, 0, codes, offset, column.size());
+            }
+            else {
+                for (int i = 0; i < column.size(); i++) {
+                    codes[offset + i] = column.isValid(i) ? translation[column.codes[i]] : 0;
+                }
+            }
+            offset += column.size();
+        }
+        return new CategoryColumn(codes, totalSize, dictionary, appendValidity(following, totalSize));
+    }
+}
@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The distinct labels of a categorical column. Every label is assigned an int
+ * code, in order of first appearance, so that a column only needs to store the
+ * codes of its rows.
+ *
+ * Labels are only ever added, so the code of a label never changes. Columns
+ * gathered or copied from a column share its dictionary; once shared, a
+ * column copies the dictionary before adding a label to it.
+ */
+final class CategoryDictionary {
+
+    private final List<String> labels;
+    private final Map<String, Integer> codes;
+    private boolean shared;
+
+    CategoryDictionary() {
+        this.labels = new ArrayList<>();
+        this.codes = new HashMap<>();
+    }
+
+    private CategoryDictionary(CategoryDictionary other) {
+        this.labels = new ArrayList<>(other.labels);
+        this.codes = new HashMap<>(other.codes);
+    }
+
+    /**
+     * The code of a label, adding the label if it is new
+     */
+    int encode(String label) {
+        Integer code = this.codes.get(label);
+        if (code == null) {
+            code = this.labels.size();
+            this.labels.add(label);
+            this.codes.put(label, code);
+        }
+        return code;
+    }
+
+    /**
+     * The code of a label, or -1 if the label does not occur
+     */
+    int lookup(String label) {
+        Integer code = this.codes.get(label);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Marks this dictionary as read-only for every column that references it
+     */
+    void markShared() {
+        this.shared = true;
+    }
+
+    boolean isShared() {
+        return this.shared;
+    }
+
+    String label(int code) {
+        return this.labels.get(code);
+    }
+
+    int size() {
+        return this.labels.size();
+    }
+
+    /**
+     * An estimate of the number of bytes of heap taken by the labels, the
+     * list and the map of codes
+     */
+    long estimateMemoryBytes() {
+        int count = this.labels.size();
+        // The dictionary, the list with its array and the map with its table
+        long bytes = 24 + 24 + ColumnStorage.arrayBytes(count, 4) + 48 + ColumnStorage.arrayBytes(tableSize(count), 4);
+        for (String label : this.labels) {
+            // The string with its bytes, a map entry and the boxed code
+            bytes += 24 + ColumnStorage.arrayBytes(label.length(), isLatin1(label) ? 1 : 2) + 32 + 16;
+        }
+        return bytes;
+    }
+
+    private static int tableSize(int count) {
+        int size = 16;
+        while (size * 3 < count * 4) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static boolean isLatin1(String label) {
+        for (int i = 0; i < label.length(); i++) {
+            if (label.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    CategoryDictionary copy() {
+        return new CategoryDictionary(this);
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column vector that reads its values from a DoubleColumn instead of copying
+ * them into a map. The entry names ("row_0", "row_1", ...) and boxed values
+ * are only created when they are asked for, so producing a long result column
+ * costs a single primitive array.
+ */
+final class ColumnDataVector implements DataVector<Double> {
+
+    private static final String ROW_PREFIX = "row_";
+
+    private final String name;
+    private final DoubleColumn column;
+
+    ColumnDataVector(String name, DoubleColumn column) {
+        this.name = name;
+        this.column = column;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public List<String> getEntryNames() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                checkIndex(index);
+                return ROW_PREFIX + index;
+            }
+
+            @Override
+            public int size() {
+                return column.size();
+            }
+        };
+    }
+
+    @Override
+    public Double getValue(String entryName) {
+        // Like a map lookup, an unknown entry name gives null
+        if (entryName == null || !entryName.startsWith(ROW_PREFIX)) {
+            return null;
+        }
+        try {
+            int rowIndex = Integer.parseInt(entryName.substring(ROW_PREFIX.length()));
+            boolean known = rowIndex >= 0 && rowIndex < this.column.size() && entryName.equals(ROW_PREFIX + rowIndex);
+            return known ? this.column.getBoxed(rowIndex) : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public List<Double> getValues() {
+        return new AbstractList<Double>() {
+            @Override
+            public Double get(int index) {
+                checkIndex(index);
+                return column.getBoxed(index);
+            }
+
+            @Override
+            public int size() {
+                return column.size();
+            }
+        };
+    }
+
+    @Override
+    public Map<String, Double> asMap() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int i = 0; i < this.column.size(); i++) {
+            result.put(ROW_PREFIX + i, this.column.getBoxed(i));
+        }
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.column.size()) {
+            throw new IndexOutOfBoundsException("Invalid row index!");
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * The loops over primitive column arrays behind the built-in arithmetic,
+ * aggregations and comparisons of the data frames. Every kernel works on the
+ * first length entries of its arrays.
+ *
+ * This class holds the scalar loops. The multi-release jar also contains a
+ * VectorKernels for Java 17 and later that uses SIMD instructions through the
+ * jdk.incubator.vector module; it is used when the JVM runs with
+ * --add-modules jdk.incubator.vector, otherwise the scalar loops are used.
+ *
+ * Both implementations give bit-identical results. Element-wise kernels are
+ * exact per element, minimum and maximum do not depend on the order of the
+ * values, and sums are always accumulated in PARTIAL_SUMS interleaved partial
+ * sums (entry i goes to partial sum i % PARTIAL_SUMS) that are combined in a
+ * fixed order.
+ */
+final class ColumnKernels {
+
+    /**
+     * The number of interleaved partial sums of sum()
+     */
+    static final int PARTIAL_SUMS = 8;
+
+    private static final boolean VECTORIZED = loadVectorKernels();
+
+    private ColumnKernels() {
+    }
+
+    private static boolean loadVectorKernels() {
+        try {
+            return VectorKernels.isAvailable();
+        } catch (LinkageError ex) {
+            // The vector module is not present at runtime
+            return false;
+        }
+    }
+
+    /**
+     * Whether the kernels use SIMD instructions
+     */
+    static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    static void apply(Arithmetic operator, double[] left, double[] right, double[] result, int length) {
+        switch (operator) {
+            case ADD:
+                add(left, right, result, length);
+                break;
+            case SUBTRACT:
+                subtract(left, right, result, length);
+                break;
+            default:
+                multiply(left, right, result, length);
+        }
+    }
+
+    static void add(double[] left, double[] right, double[] result, int length) {
+        if (VECTORIZED) {
+            VectorKernels.add(left, right, result, length);
+        }
+        else {
+            addScalar(left, right, result, length);
+        }
+    }
+
+    static void subtract(double[] left, double[] right, double[] result, int length) {
+        if (VECTORIZED) {
+            VectorKernels.subtract(left, right, result, length);
+        }
+        else {
+            subtractScalar(left, right, result, length);
+        }
+    }
+
+    static void multiply(double[] left, double[] right, double[] result, int length) {
+        if (VECTORIZED) {
+            VectorKernels.multiply(left, right, result, length);
+        }
+        else {
+            multiplyScalar(left, right, result, length);
+        }
+    }
+
+    /**
+     * result[i] = a[i] * b[i] + c[i], rounded once
+     */
+    static void multiplyAdd(double[] a, double[] b, double[] c, double[] result, int length) {
+        if (VECTORIZED) {
+            VectorKernels.multiplyAdd(a, b, c, result, length);
+        }
+        else {
+            multiplyAddScalar(a, b, c, result, length);
+        }
+    }
+
+    static double sum(double[] values, int length) {
+        if (VECTORIZED) {
+            return VectorKernels.sum(values, length);
+        }
+        return sumScalar(values, length);
+    }
+
+    /**
+     * Adds up the partial sums of sum() in a fixed, pairwise order
+     */
+    static double combine(double[] partial) {
+        return ((partial[0] + partial[1]) + (partial[2] + partial[3]))
+                + ((partial[4] + partial[5]) + (partial[6] + partial[7]));
+    }
+
+    /**
+     * The smallest value as by Math.min, or positive infinity if length is 0
+     */
+    static double min(double[] values, int length) {
+        if (VECTORIZED) {
+            return VectorKernels.min(values, length);
+        }
+        return minScalar(values, length);
+    }
+
+    /**
+     * The largest value as by Math.max, or negative infinity if length is 0
+     */
+    static double max(double[] values, int length) {
+        if (VECTORIZED) {
+            return VectorKernels.max(values, length);
+        }
+        return maxScalar(values, length);
+    }
+
+    /**
+     * Compares every value against a constant into a bitmap with one bit per
+     * entry, laid out like a validity bitmap
+     *
+     * @param mask receives the bits; it must hold at least
+     *             ColumnStorage.wordCount(length) words, which are overwritten
+     */
+    static void compare(double[] values, int length, Comparison comparison, double constant, long[] mask) {
+        if (VECTORIZED) {
+            VectorKernels.compare(values, length, comparison, constant, mask);
+        }
+        else {
+            compareScalar(values, length, comparison, constant, mask);
+        }
+    }
+
+    // The scalar loops, also used by the pre-Java 17 VectorKernels
+
+    static void addScalar(double[] left, double[] right, double[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            result[i] = left[i] + right[i];
+        }
+    }
+
+    static void subtractScalar(double[] left, double[] right, double[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            result[i] = left[i] - right[i];
+        }
+    }
+
+    static void multiplyScalar(double[] left, double[] right, double[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            result[i] = left[i] * right[i];
+        }
+    }
+
+    static void multiplyAddScalar(double[] a, double[] b, double[] c, double[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            result[i] = Math.fma(a[i], b[i], c[i]);
+        }
+    }
+
+    static double sumScalar(double[] values, int length) {
+        double[] partial = new double[PARTIAL_SUMS];
+        int bound = length - length % PARTIAL_SUMS;
+        for (int i = 0; i < bound; i += PARTIAL_SUMS) {
+            for (int j = 0; j < PARTIAL_SUMS; j++) {
+                partial[j] += values[i + j];
+            }
+        }
+        for (int i = bound; i < length; i++) {
+            partial[i - bound] += values[i];
+        }
+        return combine(partial);
+    }
+
+    static double minScalar(double[] values, int length) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    static double maxScalar(double[] values, int length) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    static void compareScalar(double[] values, int length, Comparison comparison, double constant, long[] mask) {
+        for (int w = 0; w < ColumnStorage.wordCount(length); w++) {
+            int from = w << 6;
+            int to = Math.min(length, from + 64);
+            long word = 0;
+            for (int i = from; i < to; i++) {
+                if (comparison.test(values[i], constant)) {
+                    word |= 1L << i;
+                }
+            }
+            mask[w] = word;
+        }
+    }
+}
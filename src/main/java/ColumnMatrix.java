@@ -0,0 +1,140 @@
+import org.apache.commons.math3.linear.AbstractRealMatrix;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * A read-only commons math matrix over the columns of a data frame, created by
+ * DataFrameMatrices.asRealMatrix(). Every matrix column is a primitive array of
+ * exactly one entry per row, usually the storage of the data frame itself, so
+ * creating the matrix copies nothing. Missing values read as NaN.
+ *
+ * Commons math decompositions work on the transpose of their input, which for
+ * this matrix is a read-only row-major view of the same arrays; it is returned
+ * without copying as well. Only copy() and getData() make a modifiable copy.
+ */
+final class ColumnMatrix extends AbstractRealMatrix {
+
+    private final double[][] arrays;
+    private final int length;
+    // Whether the arrays are the rows rather than the columns of the matrix
+    private final boolean transposed;
+
+    /**
+     * @param columns  the columns of the matrix, each holding rowCount entries
+     * @param rowCount the number of rows
+     */
+    ColumnMatrix(double[][] columns, int rowCount) {
+        this(columns, rowCount, false);
+    }
+
+    private ColumnMatrix(double[][] arrays, int length, boolean transposed) {
+        super(transposed ? arrays.length : length, transposed ? length : arrays.length);
+        for (double[] array : arrays) {
+            if (array.length != length) {
+                throw new IllegalArgumentException("All columns should have " + length + " rows");
+            }
+        }
+        this.arrays = arrays;
+        this.length = length;
+        this.transposed = transposed;
+    }
+
+    /**
+     * Creates the matrix. The return type keeps the verifier of callers from
+     * loading commons math before a matrix is actually created.
+     */
+    static RealMatrix of(double[][] columns, int rowCount) {
+        return new ColumnMatrix(columns, rowCount);
+    }
+
+    @Override
+    public int getRowDimension() {
+        return this.transposed ? this.arrays.length : this.length;
+    }
+
+    @Override
+    public int getColumnDimension() {
+        return this.transposed ? this.length : this.arrays.length;
+    }
+
+    @Override
+    public double getEntry(int row, int column) {
+        return this.transposed ? this.arrays[row][column] : this.arrays[column][row];
+    }
+
+    @Override
+    public void setEntry(int row, int column, double value) {
+        throw new UnsupportedOperationException("A data frame matrix is read-only");
+    }
+
+    @Override
+    public void addToEntry(int row, int column, double increment) {
+        throw new UnsupportedOperationException("A data frame matrix is read-only");
+    }
+
+    @Override
+    public void multiplyEntry(int row, int column, double factor) {
+        throw new UnsupportedOperationException("A data frame matrix is read-only");
+    }
+
+    /**
+     * Copies a column into a new array
+     */
+    @Override
+    public double[] getColumn(int column) {
+        return this.transposed ? super.getColumn(column) : this.arrays[column].clone();
+    }
+
+    /**
+     * Copies a row into a new array
+     */
+    @Override
+    public double[] getRow(int row) {
+        return this.transposed ? this.arrays[row].clone() : super.getRow(row);
+    }
+
+    /**
+     * Copies the entries into a new row-major array
+     */
+    @Override
+    public double[][] getData() {
+        if (this.transposed) {
+            double[][] rows = new double[this.arrays.length][];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = this.arrays[i].clone();
+            }
+            return rows;
+        }
+        double[][] rows = new double[this.length][this.arrays.length];
+        for (int j = 0; j < this.arrays.length; j++) {
+            double[] column = this.arrays[j];
+            for (int i = 0; i < this.length; i++) {
+                rows[i][j] = column[i];
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public RealMatrix createMatrix(int rowDimension, int columnDimension) {
+        return new Array2DRowRealMatrix(rowDimension, columnDimension);
+    }
+
+    /**
+     * Copies the entries into a modifiable matrix
+     */
+    @Override
+    public RealMatrix copy() {
+        return new Array2DRowRealMatrix(getData(), false);
+    }
+
+    /**
+     * The transpose, a read-only view that shares the arrays. Commons math
+     * only reads from it, for example QRDecomposition copies it once into its
+     * own work array with getData().
+     */
+    @Override
+    public RealMatrix transpose() {
+        return new ColumnMatrix(this.arrays, this.length, !this.transposed);
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * A condition on the values of a numeric column, column comparison constant,
+ * for example "price" GREATER 100. Unlike a Predicate on rows, a column
+ * predicate can be evaluated on the minimum and maximum of a block of values,
+ * so that a reader can skip blocks that cannot hold a matching row, see
+ * FileTools.readBlocks(). A missing value never matches.
+ */
+public final class ColumnPredicate {
+
+    private final String column;
+    private final Comparison comparison;
+    private final double value;
+
+    private ColumnPredicate(String column, Comparison comparison, double value) {
+        this.column = column;
+        this.comparison = comparison;
+        this.value = value;
+    }
+
+    /**
+     * @param column     the name of the column
+     * @param comparison how the values of the column are compared
+     * @param value      the constant they are compared against
+     * @return the predicate column comparison value
+     */
+    public static ColumnPredicate of(String column, Comparison comparison, double value) {
+        return new ColumnPredicate(column, comparison, value);
+    }
+
+    public String getColumn() {
+        return this.column;
+    }
+
+    public Comparison getComparison() {
+        return this.comparison;
+    }
+
+    public double getValue() {
+        return this.value;
+    }
+
+    /**
+     * Whether a value matches this predicate
+     */
+    public boolean test(double columnValue) {
+        return this.comparison.test(columnValue, this.value);
+    }
+
+    /**
+     * Whether a block can hold a matching value, given the smallest and the
+     * largest of its values that are not NaN
+     *
+     * @param min    the smallest value, NaN if the block has none
+     * @param max    the largest value, NaN if the block has none
+     * @param hasNaN whether the block holds NaN values, which match NOT_EQUAL
+     */
+    boolean mayMatch(double min, double max, boolean hasNaN) {
+        if (Double.isNaN(min)) {
+            return hasNaN && this.comparison == Comparison.NOT_EQUAL;
+        }
+        switch (this.comparison) {
+            case LESS:
+                return min < this.value;
+            case LESS_OR_EQUAL:
+                return min <= this.value;
+            case GREATER:
+                return max > this.value;
+            case GREATER_OR_EQUAL:
+                return max >= this.value;
+            case EQUAL:
+                return min <= this.value && this.value <= max;
+            default:
+                return hasNaN || min != this.value || max != this.value;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.column + " " + this.comparison + " " + this.value;
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+
+/**
+ * A spliterator over the values of a range of rows of a column, read straight
+ * from the primitive array without boxing. Missing values are skipped; the
+ * size is only exact, and reported as SIZED and SUBSIZED, when the column has
+ * no missing values.
+ */
+final class ColumnSpliterator implements Spliterator.OfDouble {
+
+    private final DoubleColumn column;
+    private final boolean sized;
+    private int index;
+    private final int end;
+
+    ColumnSpliterator(DoubleColumn column, int from, int to) {
+        this(column, !column.hasMissing(), from, to);
+    }
+
+    private ColumnSpliterator(DoubleColumn column, boolean sized, int from, int to) {
+        this.column = column;
+        this.sized = sized;
+        this.index = from;
+        this.end = to;
+    }
+
+    @Override
+    public boolean tryAdvance(DoubleConsumer action) {
+        int next = this.sized ? this.index : Math.min(this.column.nextValid(this.index), this.end);
+        if (next >= this.end) {
+            this.index = this.end;
+            return false;
+        }
+        action.accept(this.column.get(next));
+        this.index = next + 1;
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(DoubleConsumer action) {
+        double[] values = this.column.values();
+        int end = this.end;
+        if (this.sized) {
+            for (int i = this.index; i < end; i++) {
+                action.accept(values[i]);
+            }
+        }
+        else {
+            for (int i = this.column.nextValid(this.index); i < end; i = this.column.nextValid(i + 1)) {
+                action.accept(values[i]);
+            }
+        }
+        this.index = end;
+    }
+
+    @Override
+    public Spliterator.OfDouble trySplit() {
+        int mid = (this.index + this.end) >>> 1;
+        if (mid <= this.index) {
+            return null;
+        }
+        Spliterator.OfDouble prefix = new ColumnSpliterator(this.column, this.sized, this.index, mid);
+        this.index = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        // An upper bound when values are missing
+        return this.end - this.index;
+    }
+
+    @Override
+    public int characteristics() {
+        return this.sized ? ORDERED | SIZED | SUBSIZED | NONNULL : ORDERED | NONNULL;
+    }
+}
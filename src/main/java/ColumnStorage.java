@@ -0,0 +1,320 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage for a single column of values of one type, held in a primitive
+ * array. The array may be longer than the number of rows, so entries beyond
+ * size() must never be read.
+ *
+ * Missing values are tracked in a validity bitmap with one bit per row, set
+ * when the row holds a value. The bitmap is only allocated once the first
+ * value goes missing: a fully valid column has no bitmap at all. Loops over
+ * the valid rows should walk the bitmap a word (64 rows) at a time, see
+ * nextValid().
+ *
+ * A column that is marked as shared is referenced by more than one data frame
+ * and must not be written to anymore; a frame that wants to change it has to
+ * copy it first.
+ */
+abstract class ColumnStorage {
+
+    // Approximate sizes of objects on a 64-bit JVM with compressed references
+    static final long OBJECT_HEADER = 12;
+    static final long ARRAY_HEADER = 16;
+    static final long REFERENCE = 4;
+
+    private final int size;
+    // null when every row is valid
+    private long[] validity;
+    private boolean shared;
+
+    ColumnStorage(int size, long[] validity) {
+        if (validity != null && validity.length < wordCount(size)) {
+            throw new IllegalArgumentException("Validity bitmap holds fewer than " + size + " rows");
+        }
+        this.size = size;
+        this.validity = validity;
+    }
+
+    /**
+     * The kind of values stored in this column
+     */
+    abstract ColumnType type();
+
+    /**
+     * The value at a row as an object, or null if the value is missing
+     */
+    abstract Object getObject(int rowIndex);
+
+    /**
+     * Stores a value given as an object, or marks the row as missing if the
+     * value is null
+     *
+     * @throws IllegalArgumentException if the value cannot be stored in this
+     *                                  column
+     */
+    abstract void setObject(int rowIndex, Object value) throws IllegalArgumentException;
+
+    /**
+     * Copies this column. Rows beyond the current size get the default value of
+     * the column type.
+     *
+     * @param newSize the number of rows of the copy
+     * @return a new column that does not share storage with this column
+     */
+    abstract ColumnStorage copy(int newSize);
+
+    /**
+     * Copies the values at the given rows, in order, into a new column
+     *
+     * @param rowIndices the rows to copy
+     * @param count      the number of row indices to use
+     * @return a new column with count rows
+     */
+    abstract ColumnStorage gather(int[] rowIndices, int count);
+
+    /**
+     * Copies this column followed by the rows of the given columns into a new
+     * column, allocated once at its final size and filled with a bulk copy
+     * per column
+     *
+     * @param following the columns to append, of the same type as this column
+     * @return a new column holding the rows of all columns
+     * @throws IllegalArgumentException if a column has a different type
+     */
+    abstract ColumnStorage appendRows(List<? extends ColumnStorage> following) throws IllegalArgumentException;
+
+    /**
+     * The number of bytes of the arrays that hold the values of this column,
+     * as far as they are in memory
+     */
+    abstract long dataBytes();
+
+    /**
+     * An estimate of the number of bytes of heap this column occupies: the
+     * object itself, its validity bitmap and the arrays of its values
+     */
+    long estimateMemoryBytes() {
+        // The size, the shared flag and the references to the bitmap and the values
+        long bytes = align(OBJECT_HEADER + 4 + 1 + 2 * REFERENCE);
+        if (this.validity != null) {
+            bytes += arrayBytes(this.validity.length, 8);
+        }
+        return bytes + dataBytes();
+    }
+
+    /**
+     * The number of bytes of an array with the given length and element size
+     */
+    static long arrayBytes(int length, int elementBytes) {
+        return align(ARRAY_HEADER + (long) length * elementBytes);
+    }
+
+    /**
+     * Rounds a number of bytes up to the 8 byte alignment of objects
+     */
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * The number of 64-bit words needed for a bitmap of the given number of rows
+     */
+    static int wordCount(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * A bitmap in which all rows are valid
+     */
+    static long[] allValid(int size) {
+        long[] bitmap = new long[wordCount(size)];
+        Arrays.fill(bitmap, -1L);
+        return bitmap;
+    }
+
+    /**
+     * Marks this column as read-only for every frame that references it
+     */
+    void markShared() {
+        this.shared = true;
+    }
+
+    boolean isShared() {
+        return this.shared;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean isValid(int rowIndex) {
+        return this.validity == null || (this.validity[rowIndex >>> 6] & (1L << rowIndex)) != 0;
+    }
+
+    /**
+     * Marks a row as holding a value
+     */
+    void markValid(int rowIndex) {
+        if (this.validity != null) {
+            this.validity[rowIndex >>> 6] |= 1L << rowIndex;
+        }
+    }
+
+    /**
+     * Marks a row as missing. The first missing value allocates the bitmap.
+     */
+    void markMissing(int rowIndex) {
+        if (this.validity == null) {
+            this.validity = allValid(this.size);
+        }
+        this.validity[rowIndex >>> 6] &= ~(1L << rowIndex);
+    }
+
+    /**
+     * Whether any row of this column is missing. A column without a bitmap
+     * answers without looking at the rows.
+     */
+    boolean hasMissing() {
+        return this.validity != null && validCount() < this.size;
+    }
+
+    /**
+     * The number of rows that hold a value
+     */
+    int validCount() {
+        if (this.validity == null) {
+            return this.size;
+        }
+        int count = 0;
+        int words = wordCount(this.size);
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(this.validity[w] & wordMask(w, this.size));
+        }
+        return count;
+    }
+
+    /**
+     * The validity bitmap, or null if every row is valid
+     */
+    long[] validity() {
+        return this.validity;
+    }
+
+    /**
+     * Finds the first valid row at or after fromIndex by walking the bitmap a
+     * word at a time
+     *
+     * @param fromIndex the row to start searching at
+     * @return the index of the next valid row, or size() if there is none
+     */
+    int nextValid(int fromIndex) {
+        if (fromIndex >= this.size) {
+            return this.size;
+        }
+        if (this.validity == null) {
+            return fromIndex;
+        }
+        int w = fromIndex >>> 6;
+        long word = this.validity[w] & (-1L << fromIndex);
+        while (word == 0) {
+            w++;
+            if (w >= wordCount(this.size)) {
+                return this.size;
+            }
+            word = this.validity[w];
+        }
+        return Math.min(this.size, (w << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /**
+     * Copies the bitmap for a copy of this column with newSize rows, in which
+     * the rows beyond the current size are valid. Returns null if no row is
+     * missing.
+     */
+    long[] copyValidity(int newSize) {
+        if (!hasMissing()) {
+            return null;
+        }
+        long[] copy = allValid(newSize);
+        int words = Math.min(wordCount(this.size), wordCount(newSize));
+        for (int w = 0; w < words; w++) {
+            // Rows beyond the old size are valid
+            copy[w] = this.validity[w] | ~wordMask(w, this.size);
+        }
+        return copy;
+    }
+
+    /**
+     * Copies the bitmap for the given rows, in order. Returns null if none of
+     * the rows is missing.
+     */
+    long[] gatherValidity(int[] rowIndices, int count) {
+        if (!hasMissing()) {
+            return null;
+        }
+        long[] copy = null;
+        for (int i = 0; i < count; i++) {
+            if (!isValid(rowIndices[i])) {
+                if (copy == null) {
+                    copy = allValid(count);
+                }
+                copy[i >>> 6] &= ~(1L << i);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * The number of rows of this column followed by the given columns, after
+     * checking that those have the same type as this column
+     *
+     * @throws IllegalArgumentException if a column has a different type
+     */
+    int appendedSize(List<? extends ColumnStorage> following) throws IllegalArgumentException {
+        int totalSize = this.size;
+        for (ColumnStorage column : following) {
+            if (column.type() != type()) {
+                String msg = "Cannot append a " + column.type() + " column to a " + type() + " column";
+                throw new IllegalArgumentException(msg);
+            }
+            totalSize = Math.addExact(totalSize, column.size);
+        }
+        return totalSize;
+    }
+
+    /**
+     * The bitmap for this column followed by the given columns. Returns null
+     * if none of the columns has a missing row.
+     */
+    long[] appendValidity(List<? extends ColumnStorage> following, int totalSize) {
+        long[] result = copyValidity(totalSize);
+        int offset = this.size;
+        for (ColumnStorage column : following) {
+            if (column.hasMissing()) {
+                if (result == null) {
+                    result = allValid(totalSize);
+                }
+                // Walk the missing rows of the column a word at a time
+                for (int w = 0; w < wordCount(column.size); w++) {
+                    long word = ~column.validity[w] & wordMask(w, column.size);
+                    while (word != 0) {
+                        int row = offset + (w << 6) + Long.numberOfTrailingZeros(word);
+                        result[row >>> 6] &= ~(1L << row);
+                        word &= word - 1;
+                    }
+                }
+            }
+            offset += column.size;
+        }
+        return result;
+    }
+
+    /*
+     * Mask of the bits of word w that belong to rows below size
+     */
+    static long wordMask(int w, int size) {
+        int remaining = size - (w << 6);
+        return remaining >= 64 ? -1L : (1L << remaining) - 1;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * The kinds of values a column of a TypedDataFrame can hold
+ */
+public enum ColumnType {
+    /**
+     * 64-bit floating point numbers, stored as double
+     */
+    DOUBLE,
+    /**
+     * 64-bit integers, stored as long
+     */
+    LONG,
+    /**
+     * 32-bit integers, stored as int
+     */
+    INT,
+    /**
+     * String labels, stored as an int code per row and a dictionary of labels
+     */
+    CATEGORY
+}
@@ -0,0 +1,16 @@
+/**
+ * The statistics of data frames computed with Apache Commons Math, see
+ * DoubleDataFrameStatistics
+ */
+public class CommonsMathStatisticsProvider implements StatisticsProvider {
+
+    @Override
+    public boolean isAvailable() {
+        return DataFrameServices.isPresent("org.apache.commons.math3.stat.descriptive.DescriptiveStatistics");
+    }
+
+    @Override
+    public DataFrameStatistics statistics(DataFrame<Double> dataFrame) {
+        return new DoubleDataFrameStatistics(dataFrame);
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Comparisons of the values of a column against a constant, which a data frame
+ * can evaluate without calling back into user code, for example with vector
+ * instructions. A missing value never matches, and NaN only matches
+ * NOT_EQUAL, following the Java comparison operators.
+ */
+public enum Comparison {
+    /**
+     * value &lt; constant
+     */
+    LESS,
+    /**
+     * value &lt;= constant
+     */
+    LESS_OR_EQUAL,
+    /**
+     * value &gt; constant
+     */
+    GREATER,
+    /**
+     * value &gt;= constant
+     */
+    GREATER_OR_EQUAL,
+    /**
+     * value == constant
+     */
+    EQUAL,
+    /**
+     * value != constant
+     */
+    NOT_EQUAL;
+
+    /**
+     * Compares a value against the constant
+     */
+    public boolean test(double value, double constant) {
+        switch (this) {
+            case LESS:
+                return value < constant;
+            case LESS_OR_EQUAL:
+                return value <= constant;
+            case GREATER:
+                return value > constant;
+            case GREATER_OR_EQUAL:
+                return value >= constant;
+            case EQUAL:
+                return value == constant;
+            default:
+                return value != constant;
+        }
+    }
+}
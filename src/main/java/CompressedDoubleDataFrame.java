@@ -0,0 +1,373 @@
+import java.util.*;
+import java.util.function.BinaryOperator;
+import java.util.function.DoublePredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A data frame of Double values in which every column is stored in the
+ * encoding that takes the fewest bytes for its values: run-length, delta,
+ * frame-of-reference, dictionary or plain (see EncodedColumn). Sorted
+ * timestamps, low-cardinality codes and long runs of constant values take a
+ * fraction of the 8 bytes per row of a DoubleDataFrame.
+ *
+ * summarize() and both select() methods run directly on the encoded columns.
+ * Writing a value decodes the column it is written to. Operations that add
+ * rows or columns return a plain DoubleDataFrame.
+ */
+public class CompressedDoubleDataFrame implements DataFrame<Double>
+{
+    private List<EncodedColumn> columns;
+
+    private Schema schema;
+
+    private int rowCount;
+
+    /*
+     * Constructor: compress the columns of a data frame.
+     * Columns that are not compressed keep sharing the storage of the original frame.
+     */
+    public CompressedDoubleDataFrame(DoubleDataFrame source) {
+        this.schema = source.getSchema();
+        this.rowCount = source.getRowCount();
+        this.columns = new ArrayList<>(this.schema.size());
+        for (String colName : this.schema.names()) {
+            EncodedColumn column = EncodedColumn.encode(source.getColumnStorage(colName));
+            if (column instanceof PlainEncoding) {
+                ((PlainEncoding) column).column().markShared();
+            }
+            this.columns.add(column);
+        }
+    }
+
+    /*
+     * Constructor: take over columns that were already encoded
+     */
+    CompressedDoubleDataFrame(Schema schema, List<EncodedColumn> columns, int rowCount) {
+        this.schema = schema;
+        this.columns = new ArrayList<>(columns);
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * The name of the encoding of a column: "run-length", "delta",
+     * "frame-of-reference", "dictionary" or "plain"
+     */
+    public String getEncoding(String colName) throws IllegalArgumentException {
+        return getEncodedColumn(colName).encoding();
+    }
+
+    /**
+     * The number of bytes used by the encoded values of all columns
+     */
+    public long getEncodedBytes() {
+        long total = 0;
+        for (EncodedColumn column : this.columns) {
+            total += column.sizeInBytes();
+        }
+        return total;
+    }
+
+    /*
+     * The encoded columns; a plain column shared with the original frame is
+     * counted here as well
+     */
+    @Override
+    public long estimateMemoryBytes() {
+        long total = 0;
+        for (EncodedColumn column : this.columns) {
+            total += column.estimateMemoryBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return this.columns.size();
+    }
+
+    @Override
+    public List<String> getColumnNames() {
+        return this.schema.names();
+    }
+
+    @Override
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    @Override
+    public void setValue(int rowIndex, String colName, Double value) throws IndexOutOfBoundsException, IllegalArgumentException {
+        if (isValidRowIndex(rowIndex) && isValidColumnName(colName)) {
+            int columnIndex = this.schema.indexOf(colName);
+            EncodedColumn encoded = this.columns.get(columnIndex);
+            // Encoded columns are read-only: the column is decoded once
+            // and stays plain, and shared plain columns are copied first
+            DoubleColumn column;
+            if (encoded instanceof PlainEncoding && !((PlainEncoding) encoded).column().isShared()) {
+                column = ((PlainEncoding) encoded).column();
+            }
+            else {
+                column = encoded.decode();
+                this.columns.set(columnIndex, new PlainEncoding(column));
+            }
+            column.setBoxed(rowIndex, value);
+        }
+    }
+
+    @Override
+    public Double getValue(int rowIndex, String colName) throws IndexOutOfBoundsException, IllegalArgumentException {
+        Double result = null;
+        if (isValidRowIndex(rowIndex) && isValidColumnName(colName)) {
+            EncodedColumn column = this.columns.get(this.schema.indexOf(colName));
+            result = column.isValid(rowIndex) ? column.get(rowIndex) : null;
+        }
+        return result;
+    }
+
+    private boolean isValidRowIndex(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= getRowCount()) {
+            throw new IndexOutOfBoundsException("Invalid row index!");
+        }
+        return true;
+    }
+
+    private boolean isValidColumnName(String colName) {
+        if (!this.schema.contains(colName)) {
+            String msg = "Column name " + colName + " not exists!";
+            throw new IllegalArgumentException(msg);
+        }
+        return true;
+    }
+
+    @Override
+    public DataVector<Double> getRow(int rowIndex) throws IndexOutOfBoundsException {
+        DataVector<Double> result = null;
+        if (isValidRowIndex(rowIndex)) {
+            List<Double> rowData = new ArrayList<>(this.columns.size());
+            for (EncodedColumn column : this.columns) {
+                rowData.add(column.isValid(rowIndex) ? column.get(rowIndex) : null);
+            }
+            result = new DoubleDataVector("row_" + rowIndex, getColumnNames(), rowData);
+        }
+        return result;
+    }
+
+    @Override
+    public DataVector<Double> getColumn(String colName) throws IllegalArgumentException {
+        // Decode the column in one sequential pass
+        DoubleColumn column = getEncodedColumn(colName).decode();
+        List<String> rowNames = new ArrayList<>(this.rowCount);
+        List<Double> colData = new ArrayList<>(this.rowCount);
+        for (int i = 0; i < this.rowCount; i++) {
+            rowNames.add("row_" + i);
+            colData.add(column.getBoxed(i));
+        }
+        return new DoubleDataVector(colName, rowNames, colData);
+    }
+
+    @Override
+    public List<DataVector<Double>> getRows() {
+        List<DataVector<Double>> result = new ArrayList<>();
+        for (int i = 0; i < getRowCount(); i++) {
+            result.add(getRow(i));
+        }
+        return result;
+    }
+
+    @Override
+    public List<DataVector<Double>> getColumns() {
+        List<DataVector<Double>> result = new ArrayList<>();
+        for (String colName : getColumnNames()) {
+            result.add(getColumn(colName));
+        }
+        return result;
+    }
+
+    @Override
+    public DataFrame<Double> expand(int additionalRows, List<String> newCols) throws IllegalArgumentException {
+        return toDoubleDataFrame().expand(additionalRows, newCols);
+    }
+
+    /**
+     * Keeps the given columns. The encoded columns are shared with this frame
+     * rather than copied.
+     */
+    @Override
+    public DataFrame<Double> project(Collection<String> retainColumns) throws IllegalArgumentException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("project", this.rowCount);
+        Schema retained = this.schema.retain(retainColumns);
+        List<EncodedColumn> columnList = new ArrayList<>(retained.size());
+        for (int columnIndex : this.schema.retainedIndexes(retainColumns)) {
+            EncodedColumn column = this.columns.get(columnIndex);
+            if (column instanceof PlainEncoding) {
+                ((PlainEncoding) column).column().markShared();
+            }
+            columnList.add(column);
+        }
+        CompressedDoubleDataFrame result = new CompressedDoubleDataFrame(retained, columnList, this.rowCount);
+        DataFrameMetrics.finish(timer, this.rowCount, false);
+        return result;
+    }
+
+    @Override
+    public DataFrame<Double> select(Predicate<DataVector<Double>> rowFilter) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("select", this.rowCount);
+        int[] qualifiedRows = new int[this.rowCount];
+        int qualifiedCount = 0;
+        for (int i = 0; i < this.rowCount; i++) {
+            if (rowFilter.test(getRow(i))) {
+                qualifiedRows[qualifiedCount] = i;
+                qualifiedCount++;
+            }
+        }
+        DoubleDataFrame result = gatherRows(qualifiedRows, qualifiedCount);
+        DataFrameMetrics.finish(timer, qualifiedCount, false);
+        return result;
+    }
+
+    /**
+     * Selects the rows in which the value of a column matches a condition,
+     * evaluated on the encoded column: once per run or per distinct value
+     * where the encoding allows it. Rows with a missing value are left out.
+     *
+     * @param colName   the column the condition applies to
+     * @param condition the condition on the value
+     * @return a new data frame holding the matching rows
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    public DoubleDataFrame select(String colName, DoublePredicate condition) throws IllegalArgumentException {
+        EncodedColumn column = getEncodedColumn(colName);
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("select", this.rowCount);
+        int[] qualifiedRows = new int[this.rowCount];
+        int qualifiedCount = column.select(condition, qualifiedRows);
+        DoubleDataFrame result = gatherRows(qualifiedRows, qualifiedCount);
+        DataFrameMetrics.finish(timer, qualifiedCount, false);
+        return result;
+    }
+
+    @Override
+    public DataFrame<Double> appendRows(List<? extends DataFrame<Double>> others, boolean parallel) throws IllegalArgumentException {
+        return toDoubleDataFrame().appendRows(others, parallel);
+    }
+
+    /**
+     * The values of a column; a plain column is returned without copying,
+     * other encodings are decoded into a new array
+     */
+    @Override
+    public double[] toColumnArray(String column) throws IllegalArgumentException {
+        EncodedColumn encoded = getEncodedColumn(column);
+        if (encoded instanceof PlainEncoding) {
+            return ((PlainEncoding) encoded).column().asArray();
+        }
+        return encoded.decode().asArray();
+    }
+
+    @Override
+    public DataFrame<Double> transpose() throws IllegalArgumentException {
+        return toDoubleDataFrame().transpose();
+    }
+
+    @Override
+    public DataFrame<Double> pivot(String index, String columns, String values, Aggregation aggregation) throws IllegalArgumentException {
+        return toDoubleDataFrame().pivot(index, columns, values, aggregation);
+    }
+
+    @Override
+    public TypedDataFrame melt(List<String> idVars, List<String> valueVars) throws IllegalArgumentException {
+        return toDoubleDataFrame().melt(idVars, valueVars);
+    }
+
+    @Override
+    public DataFrame<Double> sample(int n, long seed) throws IllegalArgumentException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("sample", this.rowCount);
+        int[] sampledRows = RowSampler.sample(this.rowCount, n, seed);
+        DoubleDataFrame result = gatherRows(sampledRows, sampledRows.length);
+        DataFrameMetrics.finish(timer, sampledRows.length, RowSampler.isParallel(this.rowCount));
+        return result;
+    }
+
+    @Override
+    public DataFrame<Double> computeColumn(String columnName, Function<DataVector<Double>, Double> function) {
+        return toDoubleDataFrame().computeColumn(columnName, function);
+    }
+
+    @Override
+    public DataVector<Double> summarize(String name, BinaryOperator<Double> summaryFunction) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("summarize", this.rowCount);
+        List<Double> summaryResultList = new ArrayList<>(this.columns.size());
+        for (EncodedColumn column : this.columns) {
+            summaryResultList.add(column.reduce(summaryFunction));
+        }
+        DataVector<Double> result = new DoubleDataVector(name, getColumnNames(), summaryResultList);
+        DataFrameMetrics.finish(timer, 1, false);
+        return result;
+    }
+
+    /**
+     * Summarizes every column with a built-in aggregation, computed on the
+     * encoded data: a run-length column sums every run as value times length,
+     * a dictionary column counts codes, and so on. Missing values are skipped.
+     *
+     * @param name        the name of the resulting vector
+     * @param aggregation the aggregation to compute
+     * @return a vector with the result for every column
+     */
+    public DataVector<Double> summarize(String name, Aggregation aggregation) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("summarize", this.rowCount);
+        List<Double> summaryResultList = new ArrayList<>(this.columns.size());
+        for (EncodedColumn column : this.columns) {
+            summaryResultList.add(column.aggregate(aggregation));
+        }
+        DataVector<Double> result = new DoubleDataVector(name, getColumnNames(), summaryResultList);
+        DataFrameMetrics.finish(timer, 1, false);
+        return result;
+    }
+
+    @Override
+    public DataFrame<Double> concat(DataFrame<Double> other) throws IllegalArgumentException {
+        return toDoubleDataFrame().concat(other);
+    }
+
+    @Override
+    public DataFrameStatistics statistics() throws UnsupportedOperationException {
+        return DataFrameServices.statistics(toDoubleDataFrame());
+    }
+
+    @Override
+    public DataFramePlotting plotting() throws UnsupportedOperationException {
+        return DataFrameServices.plotting(toDoubleDataFrame());
+    }
+
+    /**
+     * Decodes all columns into an uncompressed data frame
+     *
+     * @return a new data frame holding the same values
+     */
+    public DoubleDataFrame toDoubleDataFrame() {
+        List<DoubleColumn> columnList = new ArrayList<>(this.columns.size());
+        for (EncodedColumn column : this.columns) {
+            columnList.add(column.decode());
+        }
+        return new DoubleDataFrame(this.schema, columnList, this.rowCount);
+    }
+
+    private EncodedColumn getEncodedColumn(String colName) throws IllegalArgumentException {
+        isValidColumnName(colName);
+        return this.columns.get(this.schema.indexOf(colName));
+    }
+
+    private DoubleDataFrame gatherRows(int[] rowIndices, int count) {
+        List<DoubleColumn> columnList = new ArrayList<>(this.columns.size());
+        for (EncodedColumn column : this.columns) {
+            columnList.add(column.gather(rowIndices, count));
+        }
+        return new DoubleDataFrame(this.schema, columnList, count);
+    }
+}
@@ -0,0 +1,337 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.DoubleStream;
+
+/**
+ * A data frame of Double values that can be changed by writer threads while
+ * other threads read it.
+ *
+ * The columns are versioned. A reader calls snapshot() to obtain a
+ * DoubleDataFrame that shares the columns of the current version, without
+ * copying and without taking a lock, and can run any data frame operation on
+ * it while writers continue. Taking a snapshot freezes the current version:
+ * the next write to a column after a snapshot copies that column into a new
+ * version, so the snapshot never observes later writes. Writes to columns
+ * that no snapshot has seen are done in place.
+ *
+ * Writers to the same column are serialized by a per-column lock; writers to
+ * different columns do not block each other. getValue takes the lock of its
+ * column, so it returns the value of the last completed write without
+ * freezing the version. Apart from setValue and getValue, every operation of
+ * the DataFrame interface works on a fresh snapshot.
+ *
+ * The price of a snapshot is paid by the writers: the first write to a
+ * column after a snapshot copies that column, once per column and snapshot.
+ * Later writes to the column until the next snapshot are done in place.
+ * Alternating single writes with snapshots (or with operations such as
+ * getRow() that take one) therefore copies a column per write, so readers of
+ * a frequently written frame should take one snapshot and read from it.
+ */
+public class ConcurrentDoubleDataFrame implements DataFrame<Double> {
+
+    private final Schema schema;
+    private final int rowCount;
+    private final ReentrantLock[] columnLocks;
+    private final AtomicReference<Version> current;
+
+    /*
+     * One version of the columns. While a version is not frozen, writers
+     * change its columns in place (after copying the columns it does not own
+     * yet). Once frozen, it never changes again.
+     */
+    private static final class Version {
+        final DoubleColumn[] columns;
+        // Whether a column was copied for this version, rather than inherited
+        final boolean[] owned;
+        final AtomicInteger activeWriters = new AtomicInteger();
+        volatile boolean frozen;
+
+        Version(DoubleColumn[] columns, boolean owned) {
+            this.columns = columns;
+            this.owned = new boolean[columns.length];
+            Arrays.fill(this.owned, owned);
+        }
+
+        /*
+         * The version that replaces this frozen version. It starts out
+         * sharing every column.
+         */
+        Version successor() {
+            return new Version(this.columns.clone(), false);
+        }
+    }
+
+    /**
+     * Creates a concurrent data frame holding a copy of the given data frame
+     *
+     * @param initial the data to start with
+     */
+    public ConcurrentDoubleDataFrame(DataFrame<Double> initial) {
+        this.schema = initial.getSchema();
+        this.rowCount = initial.getRowCount();
+
+        DoubleColumn[] columns = new DoubleColumn[this.schema.size()];
+        this.columnLocks = new ReentrantLock[columns.length];
+        for (int j = 0; j < columns.length; j++) {
+            String colName = this.schema.name(j);
+            if (initial instanceof DoubleDataFrame) {
+                columns[j] = ((DoubleDataFrame) initial).getColumnStorage(colName).copy(this.rowCount);
+            }
+            else {
+                columns[j] = new DoubleColumn(new double[this.rowCount], this.rowCount);
+                for (int i = 0; i < this.rowCount; i++) {
+                    columns[j].setBoxed(i, initial.getValue(i, colName));
+                }
+            }
+            this.columnLocks[j] = new ReentrantLock();
+        }
+        this.current = new AtomicReference<>(new Version(columns, true));
+    }
+
+    /**
+     * Takes a consistent, read-only view of the current data. The snapshot does
+     * not copy any data and does not block writers. Changing the snapshot does
+     * not change this data frame.
+     *
+     * @return a data frame holding the data as it was when the snapshot was taken
+     */
+    public DoubleDataFrame snapshot() {
+        Version version = this.current.get();
+        version.frozen = true;
+        // Wait for writes that started before the version was frozen;
+        // a write of a single entry takes nanoseconds
+        while (version.activeWriters.get() > 0) {
+            Thread.onSpinWait();
+        }
+        List<DoubleColumn> columns = new ArrayList<>(version.columns.length);
+        for (DoubleColumn column : version.columns) {
+            column.markShared();
+            columns.add(column);
+        }
+        return new DoubleDataFrame(this.schema, columns, this.rowCount);
+    }
+
+    /*
+     * The columns of the current version, without those that snapshots hold
+     * on to
+     */
+    @Override
+    public long estimateMemoryBytes() {
+        DoubleColumn[] columns = this.current.get().columns;
+        long total = ColumnStorage.arrayBytes(columns.length, (int) ColumnStorage.REFERENCE);
+        for (DoubleColumn column : columns) {
+            total += column.estimateMemoryBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return this.schema.size();
+    }
+
+    @Override
+    public List<String> getColumnNames() {
+        return this.schema.names();
+    }
+
+    @Override
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    @Override
+    public void setValue(int rowIndex, String colName, Double value) throws IndexOutOfBoundsException, IllegalArgumentException {
+        checkRowIndex(rowIndex);
+        int columnIndex = columnIndex(colName);
+
+        ReentrantLock lock = this.columnLocks[columnIndex];
+        lock.lock();
+        try {
+            while (true) {
+                Version version = this.current.get();
+                // Announce the write before checking whether the version is frozen,
+                // so that a snapshot either waits for this write or this write sees the freeze
+                version.activeWriters.incrementAndGet();
+                try {
+                    if (!version.frozen) {
+                        if (!version.owned[columnIndex]) {
+                            // Copy-on-write: the column is still shared with a snapshot
+                            version.columns[columnIndex] = version.columns[columnIndex].copy(this.rowCount);
+                            version.owned[columnIndex] = true;
+                        }
+                        version.columns[columnIndex].setBoxed(rowIndex, value);
+                        return;
+                    }
+                } finally {
+                    version.activeWriters.decrementAndGet();
+                }
+                // The version was frozen by a snapshot, continue in a new version.
+                // Waiting for the other writers makes their changes to the frozen
+                // version visible before its columns are inherited.
+                while (version.activeWriters.get() > 0) {
+                    Thread.onSpinWait();
+                }
+                this.current.compareAndSet(version, version.successor());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Double getValue(int rowIndex, String colName) throws IndexOutOfBoundsException, IllegalArgumentException {
+        checkRowIndex(rowIndex);
+        int columnIndex = columnIndex(colName);
+        // The lock keeps the read from seeing a half published copy of the
+        // column, or a value without its validity bit. A snapshot would also
+        // be consistent, but would make the next write copy the column.
+        ReentrantLock lock = this.columnLocks[columnIndex];
+        lock.lock();
+        try {
+            return this.current.get().columns[columnIndex].getBoxed(rowIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public DataVector<Double> getRow(int rowIndex) throws IndexOutOfBoundsException {
+        return snapshot().getRow(rowIndex);
+    }
+
+    @Override
+    public DataVector<Double> getColumn(String colName) throws IllegalArgumentException {
+        return snapshot().getColumn(colName);
+    }
+
+    @Override
+    public List<DataVector<Double>> getRows() {
+        return snapshot().getRows();
+    }
+
+    @Override
+    public List<DataVector<Double>> getColumns() {
+        return snapshot().getColumns();
+    }
+
+    @Override
+    public DataFrame<Double> expand(int additionalRows, List<String> newCols) throws IllegalArgumentException {
+        return snapshot().expand(additionalRows, newCols);
+    }
+
+    @Override
+    public DataFrame<Double> project(Collection<String> retainColumns) throws IllegalArgumentException {
+        return snapshot().project(retainColumns);
+    }
+
+    @Override
+    public DataFrame<Double> select(Predicate<DataVector<Double>> rowFilter) {
+        return snapshot().select(rowFilter);
+    }
+
+    @Override
+    public DataFrame<Double> appendRows(List<? extends DataFrame<Double>> others, boolean parallel) throws IllegalArgumentException {
+        return snapshot().appendRows(others, parallel);
+    }
+
+    @Override
+    public double[] toColumnArray(String column) throws IllegalArgumentException {
+        return snapshot().toColumnArray(column);
+    }
+
+    @Override
+    public DataFrame<Double> transpose() throws IllegalArgumentException {
+        return snapshot().transpose();
+    }
+
+    @Override
+    public DataFrame<Double> pivot(String index, String columns, String values, Aggregation aggregation) throws IllegalArgumentException {
+        return snapshot().pivot(index, columns, values, aggregation);
+    }
+
+    @Override
+    public TypedDataFrame melt(List<String> idVars, List<String> valueVars) throws IllegalArgumentException {
+        return snapshot().melt(idVars, valueVars);
+    }
+
+    @Override
+    public DataFrame<Double> sample(int n, long seed) throws IllegalArgumentException {
+        return snapshot().sample(n, seed);
+    }
+
+    @Override
+    public DataFrame<Double> computeColumn(String columnName, Function<DataVector<Double>, Double> function) {
+        return snapshot().computeColumn(columnName, function);
+    }
+
+    @Override
+    public DataVector<Double> summarize(String name, BinaryOperator<Double> summaryFunction) {
+        return snapshot().summarize(name, summaryFunction);
+    }
+
+    @Override
+    public DataFrame<Double> concat(DataFrame<Double> other) throws IllegalArgumentException {
+        return snapshot().concat(other);
+    }
+
+    @Override
+    public DataFrameStatistics statistics() throws UnsupportedOperationException {
+        return snapshot().statistics();
+    }
+
+    @Override
+    public DataFramePlotting plotting() throws UnsupportedOperationException {
+        return snapshot().plotting();
+    }
+
+    @Override
+    public List<DataVector<Double>> rows() {
+        return snapshot().rows();
+    }
+
+    @Override
+    public Spliterator<DataVector<Double>> spliterator() {
+        return snapshot().spliterator();
+    }
+
+    @Override
+    public DoubleStream doubleStream(String column) throws IllegalArgumentException {
+        return snapshot().doubleStream(column);
+    }
+
+    @Override
+    public String formatMatrix(int colWidth) {
+        return snapshot().formatMatrix(colWidth);
+    }
+
+    @Override
+    public void formatTo(Appendable out, FormatOptions options) throws IOException {
+        snapshot().formatTo(out, options);
+    }
+
+    private void checkRowIndex(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= this.rowCount) {
+            throw new IndexOutOfBoundsException("Invalid row index!");
+        }
+    }
+
+    private int columnIndex(String colName) {
+        return this.schema.requireIndex(colName);
+    }
+}
@@ -0,0 +1,24 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Comma separated files with a header line, see FileTools.readCSV() and
+ * FileTools.writeCSV()
+ */
+public class CsvFormat implements DataFrameFormat {
+
+    @Override
+    public boolean supports(String extension) {
+        return extension.equals("csv");
+    }
+
+    @Override
+    public DataFrame<Double> read(File file) throws IOException {
+        return FileTools.readCSV(file);
+    }
+
+    @Override
+    public void write(DataFrame<Double> dataFrame, File file) throws IOException {
+        FileTools.writeCSV(dataFrame, file);
+    }
+}
@@ -1,14 +1,21 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.AbstractList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A data frame holds a matrix of data, with the difference that column have
@@ -53,6 +60,32 @@ public interface DataFrame<E> extends Iterable<DataVector<E>>
 	 */
 	public List<String> getColumnNames();
 
+	/**
+	 * Returns the schema of this data frame: the column names with their
+	 * indexes. Frames with the same columns share the same schema object.
+	 * 
+	 * @return the schema of this data frame
+	 */
+	public default Schema getSchema()
+	{
+		return Schema.of(getColumnNames());
+	}
+
+	/**
+	 * Estimates the number of bytes of heap that the values of this data frame
+	 * occupy, column by column: the arrays of values, the bitmaps of missing
+	 * values and the column objects. The schema is shared between frames and is
+	 * not counted, nor are columns that are spilled to disk by the
+	 * MemoryManager. This default assumes a reference and a boxed number per
+	 * value.
+	 * 
+	 * @return the estimated number of bytes
+	 */
+	public default long estimateMemoryBytes()
+	{
+		return (long) getRowCount() * getColumnCount() * (ColumnStorage.REFERENCE + 16);
+	}
+
 	/**
 	 * Sets a value to a particular entry in the data frame.
 	 * 
@@ -143,7 +176,8 @@ public interface DataFrame<E> extends Iterable<DataVector<E>>
 	/**
 	 * Produces a larger data frame with one additional column. The values stored in
 	 * this column are computed using a give function that is applied to each row
-	 * currently in the data frame
+	 * currently in the data frame. Missing entries are null in the rows passed to
+	 * the function, and a null result is stored as a missing value.
 	 * 
 	 * @param columnName the name of the new column
 	 * @param function   the function to apply to each row
@@ -262,6 +296,7 @@ public interface DataFrame<E> extends Iterable<DataVector<E>>
 		{
 			throw new IllegalArgumentException("Can only concatenate dataframes with equal numbers of rows");
 		}
+		DataFrameMetrics.Timer timer = DataFrameMetrics.start("concat", getRowCount());
 		DataFrame<E> expanded = expand(0, other.getColumnNames());
 		for (String colName : other.getColumnNames())
 		{
@@ -270,55 +305,405 @@ public interface DataFrame<E> extends Iterable<DataVector<E>>
 				expanded.setValue(i, colName, other.getValue(i, colName));
 			}
 		}
+		DataFrameMetrics.finish(timer, expanded.getRowCount(), false);
 		return expanded;
 	}
 
+	/**
+	 * Appends the rows of other data frames below the rows of this data frame.
+	 * The other data frames must have the same columns, in the same order. The
+	 * result is allocated once, at its final size.
+	 *
+	 * @param others   the data frames whose rows are appended, in order
+	 * @param parallel whether the columns may be copied in parallel; this is a
+	 *                 hint that an implementation may ignore
+	 * @return a newly created data frame holding the rows of all data frames
+	 * @throws IllegalArgumentException if the columns of the data frames differ
+	 */
+	public default DataFrame<E> appendRows(List<? extends DataFrame<E>> others, boolean parallel)
+			throws IllegalArgumentException
+	{
+		int additionalRows = appendedRowCount(others) - getRowCount();
+		DataFrameMetrics.Timer timer = DataFrameMetrics.start("appendRows", getRowCount() + additionalRows);
+		DataFrame<E> result = expandRows(additionalRows);
+		int offset = getRowCount();
+		for (DataFrame<E> other : others)
+		{
+			for (String colName : getColumnNames())
+			{
+				for (int i = 0; i < other.getRowCount(); i++)
+				{
+					result.setValue(offset + i, colName, other.getValue(i, colName));
+				}
+			}
+			offset += other.getRowCount();
+		}
+		DataFrameMetrics.finish(timer, result.getRowCount(), false);
+		return result;
+	}
+
+	/**
+	 * Appends the rows of other data frames below the rows of this data frame,
+	 * copying the columns one after the other
+	 *
+	 * @param others the data frames whose rows are appended, in order
+	 * @return a newly created data frame holding the rows of all data frames
+	 * @throws IllegalArgumentException if the columns of the data frames differ
+	 */
+	public default DataFrame<E> appendRows(List<? extends DataFrame<E>> others) throws IllegalArgumentException
+	{
+		return appendRows(others, false);
+	}
+
+	/**
+	 * Stacks data frames with the same columns below each other
+	 *
+	 * @param <E>      the type of the values in the data frames
+	 * @param frames   the data frames to stack, in order
+	 * @param parallel whether the columns may be copied in parallel
+	 * @return a newly created data frame holding the rows of all data frames
+	 * @throws IllegalArgumentException if the list is empty or the columns of the
+	 *                                  data frames differ
+	 */
+	public static <E> DataFrame<E> union(List<? extends DataFrame<E>> frames, boolean parallel)
+			throws IllegalArgumentException
+	{
+		if (frames.isEmpty())
+		{
+			throw new IllegalArgumentException("Cannot take the union of zero data frames");
+		}
+		return frames.get(0).appendRows(frames.subList(1, frames.size()), parallel);
+	}
+
+	/**
+	 * The number of rows of this data frame followed by other data frames,
+	 * after checking that they all have the same columns. Since schemas are
+	 * interned, that check compares a single reference per data frame.
+	 *
+	 * @param others the data frames that follow this data frame
+	 * @return the total number of rows
+	 * @throws IllegalArgumentException if the columns of the data frames differ
+	 */
+	public default int appendedRowCount(List<? extends DataFrame<?>> others) throws IllegalArgumentException
+	{
+		int rowCount = getRowCount();
+		for (DataFrame<?> other : others)
+		{
+			if (other.getSchema() != getSchema())
+			{
+				String msg = "Expected columns " + getSchema() + " but found " + other.getSchema();
+				throw new IllegalArgumentException(msg);
+			}
+			rowCount = Math.addExact(rowCount, other.getRowCount());
+		}
+		return rowCount;
+	}
+
+	/**
+	 * The values of a numeric column as a primitive array with one entry per
+	 * row, for example to hand to commons math. When the data frame stores the
+	 * column as such an array it is returned without copying, so the array must
+	 * not be modified and may show later changes to the data frame; otherwise
+	 * a copy is made. Missing values are NaN.
+	 * 
+	 * @param column the name of the column
+	 * @return the values of the column
+	 * @throws IllegalArgumentException if the column does not exist or is not
+	 *                                  numeric
+	 */
+	public default double[] toColumnArray(String column) throws IllegalArgumentException
+	{
+		return DoubleColumn.numericColumn(this, column).asArray();
+	}
+
+	/**
+	 * Creates a rolling window over a numeric column. The window at a row holds
+	 * that row and the window - 1 rows before it, and its aggregations (mean,
+	 * sum, min, max, std) are computed incrementally in a single pass.
+	 * 
+	 * @param column the name of the column
+	 * @param window the number of rows in the window
+	 * @return the rolling window
+	 * @throws IllegalArgumentException if the column does not exist, is not
+	 *                                  numeric, or the window is smaller than 1
+	 */
+	public default RollingWindow rolling(String column, int window) throws IllegalArgumentException
+	{
+		return RollingWindow.rolling(this, column, window);
+	}
+
+	/**
+	 * Creates an expanding window over a numeric column. The window at a row
+	 * holds that row and all rows before it.
+	 * 
+	 * @param column the name of the column
+	 * @return the expanding window
+	 * @throws IllegalArgumentException if the column does not exist or is not
+	 *                                  numeric
+	 */
+	public default RollingWindow expanding(String column) throws IllegalArgumentException
+	{
+		return RollingWindow.expanding(this, column);
+	}
+
+	/**
+	 * Draws a uniform random sample of rows without replacement, in a single
+	 * pass that keeps at most n rows in memory. The sampled rows keep their
+	 * original order, and the same seed always selects the same rows.
+	 *
+	 * @param n    the number of rows to sample
+	 * @param seed the seed of the random selection
+	 * @return a newly created data frame with the sampled rows, or with all rows
+	 *         if this data frame has at most n rows
+	 * @throws IllegalArgumentException if n is negative
+	 */
+	public default DataFrame<E> sample(int n, long seed) throws IllegalArgumentException
+	{
+		DataFrameMetrics.Timer timer = DataFrameMetrics.start("sample", getRowCount());
+		Set<String> rowNames = new HashSet<>();
+		for (int rowIndex : RowSampler.sample(getRowCount(), n, seed))
+		{
+			rowNames.add("row_" + rowIndex);
+		}
+		DataFrame<E> result = select(row -> rowNames.contains(row.getName()));
+		DataFrameMetrics.finish(timer, result.getRowCount(), false);
+		return result;
+	}
+
+	/**
+	 * Swaps the rows and the columns. Every column of this data frame becomes
+	 * a row, in the order of getColumnNames(), and every row becomes a column
+	 * named after the row, "row_0", "row_1" and so on. All columns should be
+	 * numeric.
+	 *
+	 * @return a newly created data frame with the transposed values
+	 * @throws IllegalArgumentException if a column is not numeric
+	 */
+	public default DataFrame<Double> transpose() throws IllegalArgumentException
+	{
+		return Reshaping.transpose(this);
+	}
+
+	/**
+	 * Turns the distinct values of a column into columns. The result has a row
+	 * per distinct value of the index column, in increasing order, and after
+	 * the index column a column per distinct value of the columns column. A
+	 * cell aggregates the values of all rows with its index and column value;
+	 * it is missing if there are none, except for COUNT. Rows with a missing
+	 * index or column value are left out.
+	 *
+	 * Numeric values are sorted and named as numbers, for example "2015". The
+	 * labels of a category column of a TypedDataFrame are used as they are, in
+	 * the order of their first appearance, so that pivot() undoes melt().
+	 *
+	 * @param index       the numeric column whose values become the rows
+	 * @param columns     the column whose values become the columns
+	 * @param values      the numeric column that is aggregated
+	 * @param aggregation how the values of a cell are combined
+	 * @return a newly created data frame with the pivoted values
+	 * @throws IllegalArgumentException if a column does not exist or is not
+	 *                                  numeric, or a value of the columns
+	 *                                  column is the name of the index column
+	 */
+	public default DataFrame<Double> pivot(String index, String columns, String values, Aggregation aggregation) throws IllegalArgumentException
+	{
+		return Reshaping.pivot(this, index, columns, values, aggregation);
+	}
+
+	/**
+	 * Turns columns into rows. Every row of this data frame becomes a row per
+	 * value column, holding the id columns, a "variable" category column with
+	 * the name of the value column and a "value" column with its value. The
+	 * rows of the first value column come first.
+	 *
+	 * @param idVars    the columns that are repeated for every value column
+	 * @param valueVars the numeric columns that are stacked
+	 * @return a newly created data frame with the stacked values
+	 * @throws IllegalArgumentException if a column does not exist, a value
+	 *                                  column is not numeric, or an id column
+	 *                                  is named "variable" or "value"
+	 */
+	public default TypedDataFrame melt(List<String> idVars, List<String> valueVars) throws IllegalArgumentException
+	{
+		return Reshaping.melt(this, idVars, valueVars);
+	}
+
 	/**
 	 * Prints the contents of this data frame to System.out using a default column
-	 * width
+	 * width. Every row is printed; use print(FormatOptions.PREVIEW) to print only
+	 * the first and last rows of a large data frame.
 	 */
 	public default void print()
 	{
-		System.out.println(formatMatrix(DEFAULT_FORMAT_WIDTH));
+		print(FormatOptions.DEFAULT);
 	}
 
 	/**
-	 * Formats the entries stored in this data frame to a fixed with using the
-	 * String.format() method. The display is row-based: the first line contains all
-	 * column names, then the second line contains the data from the first rows
-	 * etcetera.
+	 * Prints the contents of this data frame to System.out, writing one row at a
+	 * time. Rows beyond the row budget of the options are left out.
+	 * 
+	 * @param options the column width and row budget to use
+	 */
+	public default void print(FormatOptions options)
+	{
+		Writer out = FixedWidthFormatter.standardOutput();
+		try
+		{
+			formatTo(out, options);
+			out.write(System.lineSeparator());
+			out.flush();
+		} catch (IOException ex)
+		{
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Formats the entries stored in this data frame to a fixed with. The display is
+	 * row-based: the first line contains all column names, then the second line
+	 * contains the data from the first rows etcetera.
 	 * 
 	 * @param colWidth the number of character to use for a single column
 	 * @return a string representation of this data frame
 	 */
 	public default String formatMatrix(int colWidth)
 	{
-		String fmt = "%-" + colWidth + "." + colWidth + "s";
 		StringBuilder sb = new StringBuilder();
-		sb.append(String.format(fmt, ""));
+		try
+		{
+			formatTo(sb, FormatOptions.unbounded(colWidth));
+		} catch (IOException ex)
+		{
+			// A StringBuilder never throws
+			throw new UncheckedIOException(ex);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the entries stored in this data frame to a destination, one row at a
+	 * time, using the same layout as formatMatrix(). If the options limit the
+	 * number of rows, the rows that are left out are replaced by a single line of
+	 * "..." entries.
+	 * 
+	 * @param out     the destination of the formatted rows
+	 * @param options the column width and row budget to use
+	 * @throws IOException if the destination cannot be written to
+	 */
+	public default void formatTo(Appendable out, FormatOptions options) throws IOException
+	{
+		FixedWidthFormatter formatter = options.formatter();
 		List<String> colNames = getColumnNames();
+		formatter.append(out, "");
 		for (String colName : colNames)
 		{
-			sb.append(" ");
-			sb.append(String.format(Locale.ROOT, fmt, colName));
+			out.append(' ');
+			formatter.append(out, colName);
 		}
-		sb.append("\n");
-		for (int i = 0; i < getRowCount(); i++)
+		out.append('\n');
+
+		int rowCount = getRowCount();
+		int headEnd = rowCount;
+		int tailStart = rowCount;
+		if (options.isTruncated(rowCount))
+		{
+			headEnd = options.getHeadRows();
+			tailStart = rowCount - options.getTailRows();
+		}
+		for (int i = 0; i < rowCount; i++)
 		{
-			sb.append(String.format(Locale.ROOT, fmt, "row_" + i));
+			if (i == headEnd)
+			{
+				// Skip the middle part of the frame
+				formatter.append(out, "...");
+				for (int j = 0; j < colNames.size(); j++)
+				{
+					out.append(' ');
+					formatter.append(out, "...");
+				}
+				out.append('\n');
+				i = tailStart - 1;
+				continue;
+			}
+			formatter.appendRowName(out, i);
 			for (String colName : colNames)
 			{
-				sb.append(" ");
-				sb.append(String.format(Locale.ROOT, fmt, getValue(i, colName)));
+				out.append(' ');
+				formatter.append(out, getValue(i, colName));
 			}
-			sb.append("\n");
+			out.append('\n');
 		}
-		return sb.toString();
 	}
 
 	@Override
 	public default Iterator<DataVector<E>> iterator()
 	{
-		return getRows().iterator();
+		return rows().iterator();
+	}
+
+	/**
+	 * Returns a read-only list view of the rows of this data frame. Unlike
+	 * getRows(), a row is only created when it is asked for.
+	 * 
+	 * @return the rows of this data frame as a list
+	 */
+	public default List<DataVector<E>> rows()
+	{
+		return new AbstractList<DataVector<E>>()
+		{
+			@Override
+			public DataVector<E> get(int index)
+			{
+				return getRow(index);
+			}
+
+			@Override
+			public int size()
+			{
+				return getRowCount();
+			}
+
+			@Override
+			public Spliterator<DataVector<E>> spliterator()
+			{
+				return DataFrame.this.spliterator();
+			}
+		};
+	}
+
+	/**
+	 * Creates a spliterator over the rows of this data frame. It creates rows
+	 * lazily and splits by row range, reporting exact sizes.
+	 */
+	@Override
+	public default Spliterator<DataVector<E>> spliterator()
+	{
+		return new RowSpliterator<>(this, 0, getRowCount());
+	}
+
+	/**
+	 * Returns a sequential stream over the rows of this data frame. Call
+	 * parallel() on the stream to process the rows in parallel.
+	 * 
+	 * @return a stream of rows
+	 */
+	public default Stream<DataVector<E>> stream()
+	{
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * Returns a stream over the values of a numeric column, without creating
+	 * rows. Missing values are left out.
+	 * 
+	 * @param column the name of the column
+	 * @return a stream of the values of the column
+	 * @throws IllegalArgumentException if the column does not exist or is not
+	 *                                  numeric
+	 */
+	public default DoubleStream doubleStream(String column) throws IllegalArgumentException
+	{
+		DoubleColumn values = DoubleColumn.numericColumn(this, column);
+		return StreamSupport.doubleStream(new ColumnSpliterator(values, 0, values.size()), false);
 	}
 }
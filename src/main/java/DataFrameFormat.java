@@ -0,0 +1,46 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A file format in which data frames can be stored, such as CSV or Excel.
+ * FileTools.read() and FileTools.write() pick the format by the extension of
+ * the file. The formats are found with java.util.ServiceLoader the first time
+ * they are needed, so that the libraries of a format are only loaded by
+ * programs that use it. A format is registered in
+ * META-INF/services/DataFrameFormat.
+ */
+public interface DataFrameFormat {
+
+    /**
+     * Whether the libraries of this format are on the class path. Formats
+     * that are not available are skipped.
+     */
+    public default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * @param extension the extension of a file name, in lower case and
+     *                  without the dot
+     * @return whether files with this extension are in this format
+     */
+    public boolean supports(String extension);
+
+    /**
+     * Reads a data frame from a file in this format
+     *
+     * @param file the file to read
+     * @return a data frame holding the contents of the file
+     * @throws IOException if the file cannot be read or is not valid
+     */
+    public DataFrame<Double> read(File file) throws IOException;
+
+    /**
+     * Writes a data frame to a file in this format
+     *
+     * @param dataFrame the data frame to write
+     * @param file      the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public void write(DataFrame<Double> dataFrame, File file) throws IOException;
+}
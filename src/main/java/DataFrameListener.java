@@ -0,0 +1,18 @@
+/**
+ * Listener that is notified whenever a data frame operation completes. Listeners
+ * are registered with {@link DataFrameMetrics#addListener(DataFrameListener)}.
+ *
+ * Listeners are called on the thread that performed the operation, possibly by
+ * many threads at once, so implementations should be thread safe and fast.
+ */
+public interface DataFrameListener
+{
+
+	/**
+	 * Called after a data frame operation has completed
+	 *
+	 * @param event the measurements of the operation
+	 */
+	public void operationCompleted(OperationEvent event);
+
+}
@@ -0,0 +1,45 @@
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * Views of data frames as commons math matrices. They live here rather than in
+ * the DataFrame interface, so that the core API does not depend on commons
+ * math.
+ */
+public final class DataFrameMatrices {
+
+    private DataFrameMatrices() {
+    }
+
+    /**
+     * A read-only commons math matrix with a row per row of a data frame and a
+     * column per given column. The matrix reads from the arrays returned by
+     * DataFrame.toColumnArray(), so it copies nothing when the data frame does
+     * not have to. Missing values are NaN. The matrix and its transpose throw
+     * an UnsupportedOperationException when changed; copy() gives a
+     * modifiable copy.
+     *
+     * @param dataFrame the data frame
+     * @param columns   the names of the columns, in the order of the matrix
+     * @return the matrix view
+     * @throws IllegalArgumentException if a column does not exist or is not
+     *                                  numeric
+     */
+    public static RealMatrix asRealMatrix(DataFrame<?> dataFrame, List<String> columns) throws IllegalArgumentException {
+        if (dataFrame instanceof ConcurrentDoubleDataFrame) {
+            // All columns from the same version
+            dataFrame = ((ConcurrentDoubleDataFrame) dataFrame).snapshot();
+        }
+        double[][] arrays = new double[columns.size()][];
+        for (int j = 0; j < arrays.length; j++) {
+            arrays[j] = dataFrame.toColumnArray(columns.get(j));
+        }
+        return ColumnMatrix.of(arrays, dataFrame.getRowCount());
+    }
+
+    public static RealMatrix asRealMatrix(DataFrame<?> dataFrame, String... columns) throws IllegalArgumentException {
+        return asRealMatrix(dataFrame, Arrays.asList(columns));
+    }
+}
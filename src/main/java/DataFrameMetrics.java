@@ -0,0 +1,145 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Registry of the listeners that are notified about data frame operations, and
+ * the hooks that data frame implementations use to report them.
+ *
+ * An operation is measured as follows:
+ *
+ * <pre>
+ * DataFrameMetrics.Timer timer = DataFrameMetrics.start("select", rowsIn);
+ * // ... perform the operation ...
+ * DataFrameMetrics.finish(timer, rowsOut, parallel);
+ * </pre>
+ *
+ * When no listener is registered, start() returns null after a single volatile
+ * read and finish() does nothing, so measuring costs effectively nothing.
+ */
+public final class DataFrameMetrics {
+
+    private static final DataFrameListener[] NO_LISTENERS = new DataFrameListener[0];
+
+    // Replaced as a whole when listeners are added or removed
+    private static volatile DataFrameListener[] listeners = NO_LISTENERS;
+
+    private DataFrameMetrics() {
+    }
+
+    /**
+     * Registers a listener that is notified of every completed operation
+     *
+     * @param listener the listener to add
+     */
+    public static synchronized void addListener(DataFrameListener listener) {
+        DataFrameListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Removes a listener that was registered before
+     *
+     * @param listener the listener to remove
+     */
+    public static synchronized void removeListener(DataFrameListener listener) {
+        List<DataFrameListener> updated = new ArrayList<>(Arrays.asList(listeners));
+        updated.remove(listener);
+        listeners = updated.isEmpty() ? NO_LISTENERS : updated.toArray(NO_LISTENERS);
+    }
+
+    /**
+     * Whether any listener is registered
+     *
+     * @return true if operations are being measured
+     */
+    public static boolean isEnabled() {
+        return listeners.length > 0;
+    }
+
+    /**
+     * Starts measuring an operation
+     *
+     * @param operation the name of the operation
+     * @param rowsIn    the number of rows the operation reads
+     * @return a timer to pass to finish(), or null if no listener is registered
+     */
+    public static Timer start(String operation, long rowsIn) {
+        if (listeners.length == 0) {
+            return null;
+        }
+        return new Timer(operation, rowsIn);
+    }
+
+    /**
+     * Completes the measurement of an operation and notifies the listeners
+     *
+     * @param timer    the timer returned by start(), may be null
+     * @param rowsOut  the number of rows the operation produced
+     * @param parallel whether the operation ran in parallel
+     */
+    public static void finish(Timer timer, long rowsOut, boolean parallel) {
+        if (timer == null) {
+            return;
+        }
+        long wallTime = System.nanoTime() - timer.startNanos;
+        long bytes = OperationEvent.UNKNOWN_BYTES;
+        if (timer.startBytes != OperationEvent.UNKNOWN_BYTES) {
+            bytes = Allocations.currentThread() - timer.startBytes;
+        }
+        OperationEvent event = new OperationEvent(timer.operation, wallTime, timer.rowsIn, rowsOut, bytes, parallel);
+        for (DataFrameListener listener : listeners) {
+            listener.operationCompleted(event);
+        }
+    }
+
+    /**
+     * The state of an operation that is being measured
+     */
+    public static final class Timer {
+        private final String operation;
+        private final long rowsIn;
+        private final long startBytes;
+        private final long startNanos;
+
+        private Timer(String operation, long rowsIn) {
+            this.operation = operation;
+            this.rowsIn = rowsIn;
+            this.startBytes = Allocations.currentThread();
+            this.startNanos = System.nanoTime();
+        }
+    }
+
+    /*
+     * Measures allocations through the HotSpot extension of the thread MXBean.
+     * Kept in its own class, so that the management classes are only loaded
+     * once a listener is registered.
+     */
+    private static final class Allocations {
+        private static final com.sun.management.ThreadMXBean BEAN = lookup();
+
+        private static com.sun.management.ThreadMXBean lookup() {
+            try {
+                java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                if (bean instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                    if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                        return sunBean;
+                    }
+                }
+            } catch (LinkageError | SecurityException ex) {
+                // Not available on this JVM
+            }
+            return null;
+        }
+
+        static long currentThread() {
+            if (BEAN == null) {
+                return OperationEvent.UNKNOWN_BYTES;
+            }
+            return BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
@@ -1,13 +1,12 @@
 import java.io.File;
 import java.io.IOException;
-
-import org.knowm.xchart.CategoryChart;
-import org.knowm.xchart.SwingWrapper;
-import org.knowm.xchart.XYChart;
+import java.util.List;
 
 /**
  * Interface that allows the user of a data frame to make scatter plots and
- * histograms.
+ * histograms. It does not refer to a charting library, so that it can be
+ * loaded when none is on the class path; the charts themselves are made by
+ * the implementation of a PlottingProvider, such as DoubleDataFramePlotting.
  * 
  * @author Paul Bouman
  *
@@ -15,16 +14,6 @@ import org.knowm.xchart.XYChart;
 public interface DataFramePlotting
 {
 
-	/**
-	 * Produces a scatter plot of variable x against variable y
-	 * 
-	 * @param title the title of the chart
-	 * @param xVar  the name of the column that is used as x values
-	 * @param yVar  the name of the column that is used as y values
-	 * @return
-	 */
-	public XYChart scatter(String title, String xVar, String yVar);
-
 	/**
 	 * Writes a scatter plot image to a PNG file
 	 * 
@@ -36,17 +25,6 @@ public interface DataFramePlotting
 	 */
 	public void saveScatter(File outputFile, String title, String xVar, String yVar) throws IOException;
 
-	/**
-	 * Produces a histogram bar chart for a single variable
-	 * 
-	 * @param title   the title of the chart
-	 * @param varName the variable or column that should be used to compute the
-	 *                histogram
-	 * @param bins    the number of bins to use in the histogram
-	 * @return a CategoryChart containing the histogram
-	 */
-	public CategoryChart histogram(String title, String varName, int bins);
-
 	/**
 	 * Writes a histogram plot image to a PNG file
 	 * 
@@ -66,10 +44,7 @@ public interface DataFramePlotting
 	 * @param xVar  the name of the column that is used as x values
 	 * @param yVar  the name of the column that is used as y values
 	 */
-	public default void showScatter(String title, String xVar, String yVar)
-	{
-		new SwingWrapper<>(scatter(title, xVar, yVar)).displayChart();
-	}
+	public void showScatter(String title, String xVar, String yVar);
 
 	/**
 	 * Computer a histogram and show a window with the plot to the user
@@ -79,9 +54,31 @@ public interface DataFramePlotting
 	 *                histogram
 	 * @param bins    the number of bins to use in the histogram
 	 */
-	public default void showHistogram(String title, String varName, int bins)
+	public void showHistogram(String title, String varName, int bins);
+
+	/**
+	 * Writes a batch of plots to PNG files. The default implementation renders
+	 * the plots one after the other; implementations may render them
+	 * concurrently.
+	 * 
+	 * @param specs the plots to render
+	 * @throws IOException if an error occurs while writing one of the images
+	 */
+	public default void saveAll(List<PlotSpec> specs) throws IOException
 	{
-		new SwingWrapper<>(histogram(title, varName, bins)).displayChart();
+		for (PlotSpec spec : specs)
+		{
+			List<String> vars = spec.getVariables();
+			switch (spec.getKind())
+			{
+			case SCATTER:
+				saveScatter(spec.getOutputFile(), spec.getTitle(), vars.get(0), vars.get(1));
+				break;
+			case HISTOGRAM:
+				saveHistogram(spec.getOutputFile(), spec.getTitle(), vars.get(0), spec.getBins());
+				break;
+			}
+		}
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
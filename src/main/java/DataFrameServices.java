@@ -0,0 +1,96 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+
+/**
+ * Finds the statistics, plotting and file format providers with
+ * java.util.ServiceLoader. Every kind of provider is looked up in its own
+ * holder class, which the JVM initializes the first time the provider is
+ * needed, so that a program that only computes never loads the statistics,
+ * charting or spreadsheet libraries, nor pays for scanning the class path.
+ */
+final class DataFrameServices {
+
+    private DataFrameServices() {
+    }
+
+    private static final class Statistics {
+        static final List<StatisticsProvider> PROVIDERS = load(StatisticsProvider.class);
+    }
+
+    private static final class Plotting {
+        static final List<PlottingProvider> PROVIDERS = load(PlottingProvider.class);
+    }
+
+    private static final class Formats {
+        static final List<DataFrameFormat> PROVIDERS = load(DataFrameFormat.class);
+    }
+
+    /**
+     * The statistics of a data frame from the first available provider
+     *
+     * @throws UnsupportedOperationException if there is no provider
+     */
+    static DataFrameStatistics statistics(DataFrame<Double> dataFrame) throws UnsupportedOperationException {
+        for (StatisticsProvider provider : Statistics.PROVIDERS) {
+            if (provider.isAvailable()) {
+                return provider.statistics(dataFrame);
+            }
+        }
+        throw new UnsupportedOperationException("No statistics provider on the class path");
+    }
+
+    /**
+     * The plotting of a data frame from the first available provider
+     *
+     * @throws UnsupportedOperationException if there is no provider
+     */
+    static DataFramePlotting plotting(DataFrame<Double> dataFrame) throws UnsupportedOperationException {
+        for (PlottingProvider provider : Plotting.PROVIDERS) {
+            if (provider.isAvailable()) {
+                return provider.plotting(dataFrame);
+            }
+        }
+        throw new UnsupportedOperationException("No plotting provider on the class path");
+    }
+
+    /**
+     * The first available format that supports the extension of a file
+     *
+     * @throws UnsupportedOperationException if there is no such format
+     */
+    static DataFrameFormat format(File file) throws UnsupportedOperationException {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String extension = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        for (DataFrameFormat format : Formats.PROVIDERS) {
+            if (format.supports(extension) && format.isAvailable()) {
+                return format;
+            }
+        }
+        throw new UnsupportedOperationException("No file format for " + name + " on the class path");
+    }
+
+    /**
+     * Checks whether a class can be found, without initializing it
+     */
+    static boolean isPresent(String className) {
+        try {
+            Class.forName(className, false, DataFrameServices.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    private static <S> List<S> load(Class<S> service) {
+        List<S> providers = new ArrayList<>();
+        for (S provider : ServiceLoader.load(service, DataFrameServices.class.getClassLoader())) {
+            providers.add(provider);
+        }
+        return Collections.unmodifiableList(providers);
+    }
+}
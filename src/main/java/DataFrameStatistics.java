@@ -52,6 +52,34 @@ public interface DataFrameStatistics
 	 */
 	public DescriptiveStatistics describe(String var);
 
+	/**
+	 * Computes approximate quantiles of a column in a single pass, without
+	 * sorting the column. The values are summarized in a quantile sketch whose
+	 * size depends on the accuracy but not on the number of rows, so that
+	 * chunks of the column can be summarized in parallel and merged. Missing
+	 * values are left out.
+	 * 
+	 * @param var      the name of the column
+	 * @param probs    the probabilities of the quantiles, between 0 and 1
+	 * @param accuracy the allowed error in the rank of a quantile, as a fraction
+	 *                 of the number of values, for example 0.01
+	 * @return the approximate quantile for every probability
+	 */
+	public double[] approxQuantiles(String var, double[] probs, double accuracy);
+
+	/**
+	 * Computes an approximate quantile of a column, with a rank error of about 1%
+	 * of the number of values
+	 * 
+	 * @param var  the name of the column
+	 * @param prob the probability of the quantile, between 0 and 1
+	 * @return the approximate quantile
+	 */
+	public default double approxQuantile(String var, double prob)
+	{
+		return approxQuantiles(var, new double[] { prob }, 0.01)[0];
+	}
+
 	/**
 	 * Compute a linear model based on Ordinary Least Squares. This model includes
 	 * an intercept. In the resulting map, the intercept is added with key
@@ -76,4 +104,4 @@ public interface DataFrameStatistics
 	{
 		return estimateLinearModel(dep, Arrays.asList(indep));
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
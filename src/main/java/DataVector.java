@@ -1,8 +1,8 @@
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * A data vector represents a vector of data of a certain type. In our DataFrame
@@ -62,32 +62,88 @@ public interface DataVector<E>
 	public Map<String, E> asMap();
 
 	/**
-	 * Formats the entries stored in this vector to a fixed with using the
-	 * String.format() method. The display is always row-based: on the first line
-	 * all entry names are displayed, while on the second line all associated values
-	 * are displayed.
+	 * Formats the entries stored in this vector to a fixed with. The display starts
+	 * with the name of the vector, followed by all its values on a single line.
 	 * 
 	 * @param colWidth the width in number of characters for a single entry
-	 * @return a formatted string with the names and values of the entries
+	 * @return a formatted string with the name and values of the entries
 	 */
 	public default String formatRow(int colWidth)
 	{
-		String fmt = "%-" + colWidth + "." + colWidth + "s";
-		List<Object> rowObjects = new ArrayList<>();
-		rowObjects.add(getName());
-		rowObjects.addAll(getValues());
-		return rowObjects.stream()
-				.map(o -> String.format(Locale.ROOT, fmt, o))
-				.collect(Collectors.joining(" "));
+		StringBuilder sb = new StringBuilder();
+		try
+		{
+			formatTo(sb, FormatOptions.unbounded(colWidth));
+		} catch (IOException ex)
+		{
+			// A StringBuilder never throws
+			throw new UncheckedIOException(ex);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the name and values of this vector to a destination, using the same
+	 * layout as formatRow(). If the options limit the number of rows, the entries
+	 * that are left out are replaced by a single "..." entry.
+	 * 
+	 * @param out     the destination of the formatted entries
+	 * @param options the column width and entry budget to use
+	 * @throws IOException if the destination cannot be written to
+	 */
+	public default void formatTo(Appendable out, FormatOptions options) throws IOException
+	{
+		FixedWidthFormatter formatter = options.formatter();
+		formatter.append(out, getName());
+		List<E> values = getValues();
+		int size = values.size();
+		int headEnd = size;
+		int tailStart = size;
+		if (options.isTruncated(size))
+		{
+			headEnd = options.getHeadRows();
+			tailStart = size - options.getTailRows();
+		}
+		for (int i = 0; i < size; i++)
+		{
+			out.append(' ');
+			if (i == headEnd)
+			{
+				formatter.append(out, "...");
+				i = tailStart - 1;
+				continue;
+			}
+			formatter.append(out, values.get(i));
+		}
 	}
 
 	/**
 	 * Prints a formatted version of this vector to System.out using the default
-	 * width defined in the DataFrame interface.
+	 * width defined in the DataFrame interface
 	 */
 	public default void print()
 	{
-		System.out.println(formatRow(DataFrame.DEFAULT_FORMAT_WIDTH));
+		print(FormatOptions.DEFAULT);
+	}
+
+	/**
+	 * Prints a formatted version of this vector to System.out. Entries beyond the
+	 * budget of the options are left out.
+	 * 
+	 * @param options the entry width and entry budget to use
+	 */
+	public default void print(FormatOptions options)
+	{
+		Writer out = FixedWidthFormatter.standardOutput();
+		try
+		{
+			formatTo(out, options);
+			out.write(System.lineSeparator());
+			out.flush();
+		} catch (IOException ex)
+		{
+			throw new UncheckedIOException(ex);
+		}
 	}
 
 }
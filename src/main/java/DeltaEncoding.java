@@ -0,0 +1,127 @@
+import java.util.function.BinaryOperator;
+import java.util.function.DoublePredicate;
+
+/**
+ * A column of ascending whole numbers, such as timestamps, stored as
+ * bit-packed differences between consecutive values. Every ANCHOR_INTERVAL
+ * rows the full value is kept as an anchor, so that a single row is decoded by
+ * adding at most ANCHOR_INTERVAL - 1 differences. Scans keep a running value
+ * instead.
+ */
+final class DeltaEncoding extends EncodedColumn {
+
+    private static final int ANCHOR_SHIFT = 7;
+    private static final int ANCHOR_INTERVAL = 1 << ANCHOR_SHIFT;
+
+    private final long[] anchors;
+    private final BitPackedInts deltas;
+
+    private DeltaEncoding(long[] anchors, BitPackedInts deltas) {
+        super(deltas.size());
+        this.anchors = anchors;
+        this.deltas = deltas;
+    }
+
+    static long estimateBytes(int size, int bitWidth) {
+        return 8L * ((size >> ANCHOR_SHIFT) + 1) + BitPackedInts.packedBytes(size, bitWidth);
+    }
+
+    /**
+     * Encodes ascending whole numbers whose consecutive differences fit in
+     * bitWidth bits
+     */
+    static DeltaEncoding encode(double[] values, int size, int bitWidth) {
+        long[] anchors = new long[(size >> ANCHOR_SHIFT) + 1];
+        long[] deltas = new long[size];
+        for (int i = 0; i < size; i++) {
+            if ((i & (ANCHOR_INTERVAL - 1)) == 0) {
+                anchors[i >> ANCHOR_SHIFT] = (long) values[i];
+            }
+            else {
+                deltas[i] = (long) values[i] - (long) values[i - 1];
+            }
+        }
+        return new DeltaEncoding(anchors, BitPackedInts.pack(deltas, size, bitWidth));
+    }
+
+    @Override
+    String encoding() {
+        return "delta";
+    }
+
+    @Override
+    long sizeInBytes() {
+        return 8L * this.anchors.length + this.deltas.sizeInBytes();
+    }
+
+    @Override
+    double get(int rowIndex) {
+        int anchor = rowIndex >> ANCHOR_SHIFT;
+        long value = this.anchors[anchor];
+        for (int i = (anchor << ANCHOR_SHIFT) + 1; i <= rowIndex; i++) {
+            value += this.deltas.get(i);
+        }
+        return value;
+    }
+
+    /*
+     * The value at row i during a scan that knows the value at row i - 1
+     */
+    private long next(int i, long previous) {
+        return (i & (ANCHOR_INTERVAL - 1)) == 0 ? this.anchors[i >> ANCHOR_SHIFT] : previous + this.deltas.get(i);
+    }
+
+    @Override
+    Double aggregate(Aggregation aggregation) {
+        int size = size();
+        // The values ascend, so the extremes are the first and last value
+        if (aggregation == Aggregation.MIN || aggregation == Aggregation.MAX) {
+            return aggregationResult(aggregation, 0, get(0), get(size - 1), size);
+        }
+        double sum = 0;
+        if (aggregation != Aggregation.COUNT) {
+            long value = 0;
+            for (int i = 0; i < size; i++) {
+                value = next(i, value);
+                sum += value;
+            }
+        }
+        return aggregationResult(aggregation, sum, 0, 0, size);
+    }
+
+    @Override
+    int select(DoublePredicate predicate, int[] rows) {
+        int count = 0;
+        long value = 0;
+        for (int i = 0; i < size(); i++) {
+            value = next(i, value);
+            if (predicate.test(value)) {
+                rows[count] = i;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    Double reduce(BinaryOperator<Double> function) {
+        Double result = null;
+        long value = 0;
+        for (int i = 0; i < size(); i++) {
+            value = next(i, value);
+            result = result == null ? Double.valueOf(value) : function.apply(result, (double) value);
+        }
+        return result;
+    }
+
+    @Override
+    DoubleColumn decode() {
+        double[] values = new double[size()];
+        long value = 0;
+        for (int i = 0; i < values.length; i++) {
+            value = next(i, value);
+            values[i] = value;
+        }
+        return new DoubleColumn(values, values.length);
+    }
+}
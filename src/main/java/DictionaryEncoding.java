@@ -0,0 +1,97 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.DoublePredicate;
+
+/**
+ * A column with few distinct values, stored as a sorted dictionary of the
+ * distinct values and a bit-packed code per row. Filters test every distinct
+ * value once and then compare codes; aggregations count the codes.
+ */
+final class DictionaryEncoding extends EncodedColumn {
+
+    private final double[] dictionary;
+    private final BitPackedInts codes;
+
+    private DictionaryEncoding(double[] dictionary, BitPackedInts codes) {
+        super(codes.size());
+        this.dictionary = dictionary;
+        this.codes = codes;
+    }
+
+    static long estimateBytes(int size, int distinctCount) {
+        return 8L * distinctCount + BitPackedInts.packedBytes(size, BitPackedInts.bitWidth(distinctCount - 1));
+    }
+
+    /**
+     * Encodes values, given the bits of the distinct values among them
+     */
+    static DictionaryEncoding encode(double[] values, int size, Collection<Long> distinctBits) {
+        double[] dictionary = new double[distinctBits.size()];
+        int k = 0;
+        for (long bits : distinctBits) {
+            dictionary[k] = Double.longBitsToDouble(bits);
+            k++;
+        }
+        Arrays.sort(dictionary);
+        int[] codes = new int[size];
+        for (int i = 0; i < size; i++) {
+            codes[i] = Arrays.binarySearch(dictionary, values[i]);
+        }
+        int bitWidth = BitPackedInts.bitWidth(dictionary.length - 1);
+        return new DictionaryEncoding(dictionary, BitPackedInts.pack(codes, size, bitWidth));
+    }
+
+    @Override
+    String encoding() {
+        return "dictionary";
+    }
+
+    @Override
+    long sizeInBytes() {
+        return 8L * this.dictionary.length + this.codes.sizeInBytes();
+    }
+
+    @Override
+    double get(int rowIndex) {
+        return this.dictionary[(int) this.codes.get(rowIndex)];
+    }
+
+    @Override
+    Double aggregate(Aggregation aggregation) {
+        // Every dictionary value occurs and the dictionary is sorted
+        int size = size();
+        double min = this.dictionary[0];
+        double max = this.dictionary[this.dictionary.length - 1];
+        // NaN sorts last; like Math.min, any NaN makes the minimum NaN
+        if (Double.isNaN(max)) {
+            min = max;
+        }
+        double sum = 0;
+        if (aggregation == Aggregation.SUM || aggregation == Aggregation.MEAN) {
+            long[] counts = new long[this.dictionary.length];
+            for (int i = 0; i < size; i++) {
+                counts[(int) this.codes.get(i)]++;
+            }
+            for (int code = 0; code < counts.length; code++) {
+                sum += this.dictionary[code] * counts[code];
+            }
+        }
+        return aggregationResult(aggregation, sum, min, max, size);
+    }
+
+    @Override
+    int select(DoublePredicate predicate, int[] rows) {
+        boolean[] matches = new boolean[this.dictionary.length];
+        for (int code = 0; code < matches.length; code++) {
+            matches[code] = predicate.test(this.dictionary[code]);
+        }
+        int count = 0;
+        for (int i = 0; i < size(); i++) {
+            if (matches[(int) this.codes.get(i)]) {
+                rows[count] = i;
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Storage for a single column of a DoubleDataFrame: a primitive double array
+ * together with the number of rows in use. The array may be longer than the
+ * number of rows, for example when it was handed over by a
+ * DoubleDataFrameBuilder. Missing entries hold NaN in the array and are
+ * cleared in the validity bitmap.
+ *
+ * A column that is tracked by the MemoryManager may be spilled: its array is
+ * written to a file and dropped, and read back on the next access. A column is
+ * not spilled while an operation has pinned it. Spilling, pinning and writing
+ * to a tracked column synchronize on the column; reading does not.
+ */
+final class DoubleColumn extends ColumnStorage {
+
+    // null while the column is spilled
+    private volatile double[] values;
+    // Set once the column is tracked by the MemoryManager
+    private volatile MemoryManager.Handle handle;
+    // The number of operations that keep this column in memory
+    private int pins;
+
+    DoubleColumn(double[] values, int size) {
+        this(values, size, null);
+    }
+
+    DoubleColumn(double[] values, int size, long[] validity) {
+        super(size, validity);
+        if (size > values.length) {
+            throw new IllegalArgumentException("Column holds fewer than " + size + " values");
+        }
+        this.values = values;
+    }
+
+    /**
+     * Creates a column with the given number of rows, all set to value
+     */
+    static DoubleColumn filled(int size, double value) {
+        double[] values = new double[size];
+        if (value != 0.0) {
+            Arrays.fill(values, value);
+        }
+        return new DoubleColumn(values, size);
+    }
+
+    /**
+     * The values of a numeric column of any data frame. The storage of a
+     * DoubleDataFrame is returned as it is, other frames are copied.
+     *
+     * @throws IllegalArgumentException if the column does not exist or holds
+     *                                  values that are not numbers
+     */
+    static DoubleColumn numericColumn(DataFrame<?> dataFrame, String columnName) throws IllegalArgumentException {
+        if (dataFrame instanceof DoubleDataFrame) {
+            return ((DoubleDataFrame) dataFrame).getColumnStorage(columnName);
+        }
+        if (!dataFrame.getSchema().contains(columnName)) {
+            String msg = "Column name " + columnName + " not exists!";
+            throw new IllegalArgumentException(msg);
+        }
+        int rowCount = dataFrame.getRowCount();
+        DoubleColumn column = new DoubleColumn(new double[rowCount], rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            Object value = dataFrame.getValue(i, columnName);
+            if (value != null && !(value instanceof Number)) {
+                throw new IllegalArgumentException("Column " + columnName + " is not numeric");
+            }
+            column.setBoxed(i, value == null ? null : ((Number) value).doubleValue());
+        }
+        return column;
+    }
+
+    /**
+     * The number of bytes of an unspilled column with the given number of
+     * rows and no missing values
+     */
+    static long estimateBytes(int size) {
+        return align(OBJECT_HEADER + 4 + 1 + 2 * REFERENCE) + arrayBytes(size, 8);
+    }
+
+    @Override
+    ColumnType type() {
+        return ColumnType.DOUBLE;
+    }
+
+    /*
+     * A spilled column takes no bytes for its values
+     */
+    @Override
+    long dataBytes() {
+        double[] current = this.values;
+        return current == null ? 0 : arrayBytes(current.length, 8);
+    }
+
+    /**
+     * The array of values, read back first if the column is spilled
+     */
+    private double[] data() {
+        double[] current = this.values;
+        return current != null ? current : reload();
+    }
+
+    private double[] reload() {
+        double[] current;
+        synchronized (this) {
+            current = loaded();
+        }
+        // Outside the lock of this column, because spilling other columns
+        // takes their locks. The columns pinned by the operation that reads
+        // this column are not spilled.
+        MemoryManager.reserve(0, Collections.singletonList(this));
+        return current;
+    }
+
+    /*
+     * The array of values, read back if the column is spilled. The caller
+     * holds the lock of this column.
+     */
+    private double[] loaded() {
+        double[] current = this.values;
+        if (current == null) {
+            current = this.handle.reload(size());
+            this.values = current;
+        }
+        return current;
+    }
+
+    /**
+     * Starts tracking this column by the MemoryManager, unless it is tracked
+     * already
+     */
+    synchronized void track() {
+        if (this.handle == null) {
+            this.handle = MemoryManager.register(this, dataBytes());
+        }
+    }
+
+    /**
+     * Marks this column as used at the given time of the MemoryManager
+     */
+    void touch(long time) {
+        MemoryManager.Handle current = this.handle;
+        if (current != null) {
+            current.lastUse = time;
+        }
+    }
+
+    synchronized void pin() {
+        this.pins++;
+    }
+
+    synchronized void unpin() {
+        this.pins--;
+    }
+
+    /**
+     * Writes the values of this tracked column to a file and drops the array
+     *
+     * @return false if the column was spilled already or is pinned
+     * @throws IOException if the file cannot be written; the column then stays
+     *                     in memory
+     */
+    synchronized boolean spill() throws IOException {
+        double[] current = this.values;
+        if (current == null || this.pins > 0) {
+            return false;
+        }
+        this.handle.spill(current, size());
+        this.values = null;
+        return true;
+    }
+
+    double get(int rowIndex) {
+        return data()[rowIndex];
+    }
+
+    /**
+     * The value at a row, or null if the value is missing
+     */
+    Double getBoxed(int rowIndex) {
+        return isValid(rowIndex) ? data()[rowIndex] : null;
+    }
+
+    @Override
+    Object getObject(int rowIndex) {
+        return getBoxed(rowIndex);
+    }
+
+    void set(int rowIndex, double value) {
+        if (this.handle == null) {
+            this.values[rowIndex] = value;
+            markValid(rowIndex);
+        }
+        else {
+            // A write must not be lost in a concurrent spill
+            synchronized (this) {
+                loaded()[rowIndex] = value;
+                markValid(rowIndex);
+            }
+        }
+    }
+
+    /**
+     * Stores a value, or marks the row as missing if the value is null
+     */
+    void setBoxed(int rowIndex, Double value) {
+        if (value == null) {
+            setMissing(rowIndex);
+        }
+        else {
+            set(rowIndex, value);
+        }
+    }
+
+    @Override
+    void setObject(int rowIndex, Object value) throws IllegalArgumentException {
+        if (value != null && !(value instanceof Number)) {
+            throw new IllegalArgumentException("Value " + value + " is not a number");
+        }
+        setBoxed(rowIndex, value == null ? null : ((Number) value).doubleValue());
+    }
+
+    /**
+     * Marks a row as missing. The first missing value allocates the bitmap.
+     */
+    void setMissing(int rowIndex) {
+        if (this.handle == null) {
+            this.values[rowIndex] = Double.NaN;
+            markMissing(rowIndex);
+        }
+        else {
+            synchronized (this) {
+                loaded()[rowIndex] = Double.NaN;
+                markMissing(rowIndex);
+            }
+        }
+    }
+
+    /**
+     * The backing array. Only the first size() entries belong to the column;
+     * missing entries hold NaN.
+     */
+    double[] values() {
+        return data();
+    }
+
+    /**
+     * The values of this column in an array of exactly size() entries: the
+     * backing array itself when it has that length, otherwise a copy. Missing
+     * values read as NaN.
+     */
+    double[] asArray() {
+        double[] current = data();
+        return current.length == size() ? current : Arrays.copyOf(current, size());
+    }
+
+    /**
+     * Copies the values of this column into a new array of exactly size()
+     * entries. Missing values are copied as NaN.
+     */
+    double[] toArray() {
+        return Arrays.copyOf(data(), size());
+    }
+
+    /**
+     * Copies only the valid values of this column into a new array
+     */
+    double[] toValidArray() {
+        if (validity() == null) {
+            return toArray();
+        }
+        double[] current = data();
+        double[] result = new double[validCount()];
+        int k = 0;
+        for (int i = nextValid(0); i < size(); i = nextValid(i + 1)) {
+            result[k] = current[i];
+            k++;
+        }
+        return result;
+    }
+
+    @Override
+    DoubleColumn copy(int newSize) {
+        double[] copy = new double[newSize];
+        System.arraycopy(data(), 0, copy, 0, Math.min(size(), newSize));
+        return new DoubleColumn(copy, newSize, copyValidity(newSize));
+    }
+
+    @Override
+    DoubleColumn gather(int[] rowIndices, int count) {
+        double[] current = data();
+        double[] copy = new double[count];
+        for (int i = 0; i < count; i++) {
+            copy[i] = current[rowIndices[i]];
+        }
+        return new DoubleColumn(copy, count, gatherValidity(rowIndices, count));
+    }
+
+    @Override
+    DoubleColumn appendRows(List<? extends ColumnStorage> following) throws IllegalArgumentException {
+        int totalSize = appendedSize(following);
+        double[] values = new double[totalSize];
+        System.arraycopy(data(), 0, values, 0, size());
+        int offset = size();
+        for (ColumnStorage column : following) {
+            System.arraycopy(((DoubleColumn) column).data(), 0, values, offset, column.size());
+            offset += column.size();
+        }
+        return new DoubleColumn(values, totalSize, appendValidity(following, totalSize));
+    }
+}
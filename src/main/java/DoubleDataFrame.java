@@ -1,29 +1,28 @@
-import javax.xml.crypto.Data;
-import javax.xml.stream.XMLOutputFactory;
 import java.util.*;
 import java.util.function.BinaryOperator;
+import java.util.function.DoublePredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 public class DoubleDataFrame implements DataFrame<Double>
 {
     /* Anh Tu's note:
-    * List of list is 2 dimensions data, equivalent to [][]
-    * for example:
-    * list = List { list0 {1,2,3},
-    *               list1 {4,5,6},
-    *               list2 {7,8,9}
-    *              }
-    * array[][] = { {1,2,3},
-    *               {4,5,6},
-    *               {7,8,9}
-    *              }
-    * list.get(1).get(2) equals to array[1][2]
-    * which means: first get the row index 1
-    * which is the list {4,5,6}. Then get the column index 2,
+    * The data is stored column by column: every column is
+    * a primitive double[] array wrapped in a DoubleColumn.
+    * for example, the rows
+    *   { {1,2,3},
+    *     {4,5,6} }
+    * are stored as the columns
+    *   column0 {1,4}
+    *   column1 {2,5}
+    *   column2 {3,6}
+    * columns.get(2).get(1) is the value in row 1 of column 2,
     * which is the number 6.
+    * Storing primitive columns avoids a Double object per entry,
+    * and column arrays can be handed over without copying.
     */
-    private List<List<Double>> data;
+    private List<DoubleColumn> columns;
 
     /* Anh Tu's note:
     * A Map<A, B> is like a dictionary that connect
@@ -36,8 +35,35 @@ public class DoubleDataFrame implements DataFrame<Double>
     * ...
     * Whenever we need to find the number associated with "columnB", we call
     * map.get("columnB") <-- the result will be 1
+    * The Schema holds such a map together with the list of names.
+    * It never changes, so every frame with the same columns
+    * shares the same Schema object instead of its own copy.
     * */
-    private Map<String, Integer> columnNamesMap;
+    private Schema schema;
+
+    private int rowCount;
+
+    /*
+     * The blocks of FrameCheckpoint.BLOCK_ROWS rows that setValue() changed
+     * since the last checkpoint, a bitmap per column.
+     * null while no FrameCheckpoint tracks this frame.
+     */
+    private long[][] changedBlocks;
+
+    /*
+     * How often setValue() changed each column, so that results cached
+     * for an older version are not found anymore.
+     * null until the first change.
+     */
+    private long[] columnVersions;
+
+    /*
+     * The cache of select() with a Comparison and computeColumn() with
+     * an Arithmetic, and the identity of this frame in it.
+     * null while results are not cached.
+     */
+    private ResultCache resultCache;
+    private long cacheId;
 
     private static final double DEFAULT_DATA = 0.0;
 
@@ -46,38 +72,42 @@ public class DoubleDataFrame implements DataFrame<Double>
     */
     public DoubleDataFrame(List<String> columnNames, double [][] data) {
         // Map the column names with the indexes
-        this.columnNamesMap = new LinkedHashMap<>();
+        this.schema = Schema.of(columnNames);
         int numberOfIndexes = columnNames.size();
-        mapColumnNamesWithIndexes(this.columnNamesMap, columnNames, numberOfIndexes);
 
-        // Convert data array to lists
-        this.data = new ArrayList<>();
-        for (int i = 0; i < data.length; i++) {
-            // data.length will return the length of the row
-            // because imagine the array with 2 dimensions:
-            // data[row][column]
-            List<Double> rowData = new ArrayList<>();
-            for (int j = 0; j < data[i].length; j++) {
-                // data[i].length will return the length
-                // of the column
-                rowData.add(data[i][j]);
+        // Convert the data array from rows to columns
+        // data.length will return the number of rows
+        // because imagine the array with 2 dimensions:
+        // data[row][column]
+        this.rowCount = data.length;
+        for (int i = 0; i < this.rowCount; i++) {
+            if (data[i].length != numberOfIndexes) {
+                String msg = "Row " + i + " has " + data[i].length + " values, expected " + numberOfIndexes;
+                throw new IllegalArgumentException(msg);
             }
-            this.data.add(rowData);
         }
+        // The rows are transposed in cache-sized tiles, see Reshaping
+        double[][] columnData = Reshaping.transpose(data, numberOfIndexes);
+        this.columns = new ArrayList<>(numberOfIndexes);
+        for (int j = 0; j < numberOfIndexes; j++) {
+            this.columns.add(new DoubleColumn(columnData[j], this.rowCount));
+        }
+        MemoryManager.track(this.columns);
     }
 
     /*
      * Copy constructor
      */
     public DoubleDataFrame(DoubleDataFrame other) {
-        // Copy column name map
-        this.columnNamesMap = new LinkedHashMap<>();
-        this.columnNamesMap.putAll(other.getColumnNamesMap());
+        // The schema never changes, so it is shared rather than copied
+        this.schema = other.schema;
         // Copy data
-        this.data = new ArrayList<>();
-        for (List<Double> rowData : other.getData()) {
-            this.data.add(new ArrayList<>(rowData));
+        this.rowCount = other.rowCount;
+        this.columns = new ArrayList<>(other.columns.size());
+        for (DoubleColumn column : other.columns) {
+            this.columns.add(column.copy(this.rowCount));
         }
+        MemoryManager.track(this.columns);
     }
 
     /*
@@ -92,110 +122,242 @@ public class DoubleDataFrame implements DataFrame<Double>
         else {
             constructFromListOfColumns(dataVectorList);
         }
+        MemoryManager.track(this.columns);
+    }
+
+    /*
+     * Constructor: take over columns that were already built,
+     * for example by a DoubleDataFrameBuilder. The columns are not copied.
+     */
+    DoubleDataFrame(List<String> columnNames, List<DoubleColumn> columns, int rowCount) {
+        this(Schema.of(columnNames), columns, rowCount);
+    }
+
+    DoubleDataFrame(Schema schema, List<DoubleColumn> columns, int rowCount) {
+        if (schema.size() != columns.size()) {
+            throw new IllegalArgumentException("Number of column names and columns differ");
+        }
+        this.schema = schema;
+        for (DoubleColumn column : columns) {
+            if (column.size() != rowCount) {
+                throw new IllegalArgumentException("All columns should have " + rowCount + " rows");
+            }
+        }
+        this.columns = new ArrayList<>(columns);
+        this.rowCount = rowCount;
+        // Only tracked while the MemoryManager has a budget
+        MemoryManager.track(this.columns);
     }
 
     private void constructFromListOfRows(List<DataVector<Double>> dataVectorList) {
         // Map the column names with the indexes
-        this.columnNamesMap = new LinkedHashMap<>();
+        this.schema = Schema.empty();
         if (!dataVectorList.isEmpty()) {
             DataVector<Double> dataVector = dataVectorList.get(0);
-            List<String> columnNames = dataVector.getEntryNames();
-            int numberOfIndexes = columnNames.size();
-            mapColumnNamesWithIndexes(this.columnNamesMap, columnNames, numberOfIndexes);
+            this.schema = Schema.of(dataVector.getEntryNames());
         }
 
-        // Copy data
-        this.data = new ArrayList<>();
-        for (DataVector<Double> dataVector : dataVectorList) {
-            List<Double> rowData = dataVector.getValues();
-            this.data.add(rowData);
+        // Unbox the rows into arrays, then transpose them into the columns
+        this.rowCount = dataVectorList.size();
+        int columnCount = this.schema.size();
+        double[][] rowData = new double[this.rowCount][columnCount];
+        long[][] rowValidity = new long[this.rowCount][];
+        for (int i = 0; i < this.rowCount; i++) {
+            List<Double> rowValues = dataVectorList.get(i).getValues();
+            if (rowValues.size() != columnCount) {
+                String msg = "Row " + i + " has " + rowValues.size() + " values, expected " + columnCount;
+                throw new IllegalArgumentException(msg);
+            }
+            for (int j = 0; j < columnCount; j++) {
+                Double value = rowValues.get(j);
+                if (value == null) {
+                    if (rowValidity[i] == null) {
+                        rowValidity[i] = ColumnStorage.allValid(columnCount);
+                    }
+                    rowValidity[i][j >>> 6] &= ~(1L << j);
+                    rowData[i][j] = Double.NaN;
+                }
+                else {
+                    rowData[i][j] = value;
+                }
+            }
+        }
+        double[][] columnData = Reshaping.transpose(rowData, columnCount);
+        long[][] columnValidity = Reshaping.transposeValidity(rowValidity, columnCount);
+        this.columns = new ArrayList<>(columnCount);
+        for (int j = 0; j < columnCount; j++) {
+            this.columns.add(new DoubleColumn(columnData[j], this.rowCount, columnValidity[j]));
         }
     }
 
     private void constructFromListOfColumns(List<DataVector<Double>> dataVectorList) {
-        // Initialize data and map
-        this.data = new ArrayList<>();
-        this.columnNamesMap = new LinkedHashMap<>();
-        boolean isFirstColumn = true;
+        // Initialize data and column names
+        this.columns = new ArrayList<>(dataVectorList.size());
+        List<String> columnNames = new ArrayList<>(dataVectorList.size());
+        this.rowCount = dataVectorList.isEmpty() ? 0 : dataVectorList.get(0).getValues().size();
 
         // Iterate each column vector
         for (int i = 0; i < dataVectorList.size(); i++) {
             DataVector<Double> dataVector = dataVectorList.get(i);
-            // Map the column name with index
-            String columnName = dataVector.getName();
-            this.columnNamesMap.put(columnName, i);
+            // Collect the column name
+            columnNames.add(dataVector.getName());
             // Copy data
             List<Double> columnData = dataVector.getValues();
-            for (int k = 0; k < columnData.size(); k++) {
-                Double data = columnData.get(k);
-                if (isFirstColumn) {
-                    this.data.add(new ArrayList<>());
-                }
-                List<Double> rowData = this.data.get(k);
-                rowData.add(data);
+            if (columnData.size() != this.rowCount) {
+                throw new IllegalArgumentException("All columns should have " + this.rowCount + " rows");
+            }
+            DoubleColumn column = new DoubleColumn(new double[this.rowCount], this.rowCount);
+            for (int k = 0; k < this.rowCount; k++) {
+                column.setBoxed(k, columnData.get(k));
             }
-            isFirstColumn = false;
+            this.columns.add(column);
         }
+        // Map the column names with the indexes
+        this.schema = Schema.of(columnNames);
     }
 
-    private void mapColumnNamesWithIndexes(Map<String, Integer> columnNamesMap, List<String> columnNames, int numberOfIndexes) {
-        for (int i = 0; i < numberOfIndexes; i++) {
-            // Iterate each column name
-            String key = columnNames.get(i);
-            Integer value = i;
-            // and connect column name with the index
-            columnNamesMap.put(key, value);
+    /*
+     * The columns and the list holding them
+     */
+    @Override
+    public long estimateMemoryBytes() {
+        long total = ColumnStorage.arrayBytes(this.columns.size(), (int) ColumnStorage.REFERENCE);
+        for (DoubleColumn column : this.columns) {
+            total += column.estimateMemoryBytes();
         }
+        return total;
     }
 
     @Override
     public int getRowCount() {
-        return this.data.size();
+        return this.rowCount;
     }
 
     @Override
     public int getColumnCount() {
-        if (getRowCount() > 0) {
-            return this.data.get(0).size();
-        }
-        return 0;
+        return this.columns.size();
     }
 
     @Override
     public List<String> getColumnNames() {
-        // columnNamesMap.keySet() will return
-        // the set of {"columnA", "columnB", ...}
-        // Cast it to a list
-        return new ArrayList<>(this.columnNamesMap.keySet());
+        // The schema keeps the list of {"columnA", "columnB", ...},
+        // which cannot be changed, so no copy is needed
+        return this.schema.names();
+    }
+
+    @Override
+    public Schema getSchema() {
+        return this.schema;
     }
 
     @Override
     public void setValue(int rowIndex, String colName, Double value) throws IndexOutOfBoundsException, IllegalArgumentException {
         if (isValidRowIndex(rowIndex) && isValidColumnName(colName)) {
-            int columnIndex = this.columnNamesMap.get(colName);
-            this.data.get(rowIndex).set(columnIndex, value);
+            int columnIndex = this.schema.indexOf(colName);
+            DoubleColumn column = writableColumn(columnIndex);
+            // null marks the entry as missing in the validity bitmap of the column
+            column.setBoxed(rowIndex, value);
+            if (this.columnVersions == null) {
+                this.columnVersions = new long[this.columns.size()];
+            }
+            this.columnVersions[columnIndex]++;
+            if (this.changedBlocks != null) {
+                int block = rowIndex / FrameCheckpoint.BLOCK_ROWS;
+                this.changedBlocks[columnIndex][block >>> 6] |= 1L << block;
+            }
+        }
+    }
+
+    /*
+     * The storage of a column that this frame may write to: a shared column
+     * is replaced by a copy before the first change
+     */
+    DoubleColumn writableColumn(String colName) throws IllegalArgumentException {
+        return writableColumn(this.schema.requireIndex(colName));
+    }
+
+    private DoubleColumn writableColumn(int columnIndex) {
+        DoubleColumn column = this.columns.get(columnIndex);
+        if (column.isShared()) {
+            column = column.copy(this.rowCount);
+            this.columns.set(columnIndex, column);
+        }
+        return column;
+    }
+
+    /*
+     * Start or stop marking the blocks of rows that setValue() changes,
+     * see FrameCheckpoint
+     */
+    void trackChanges(boolean track) {
+        this.changedBlocks = track ? newChangedBlocks() : null;
+    }
+
+    /*
+     * The blocks changed since the previous call, a bitmap per column.
+     * Marking starts over with no changed blocks.
+     */
+    long[][] takeChangedBlocks() {
+        long[][] changed = this.changedBlocks;
+        this.changedBlocks = newChangedBlocks();
+        return changed;
+    }
+
+    /*
+     * Marks blocks as changed again, after a checkpoint failed to write them
+     */
+    void restoreChangedBlocks(long[][] changed) {
+        for (int j = 0; j < changed.length; j++) {
+            for (int w = 0; w < changed[j].length; w++) {
+                this.changedBlocks[j][w] |= changed[j][w];
+            }
         }
     }
 
+    private long[][] newChangedBlocks() {
+        int blocks = (this.rowCount + FrameCheckpoint.BLOCK_ROWS - 1) / FrameCheckpoint.BLOCK_ROWS;
+        return new long[this.columns.size()][ColumnStorage.wordCount(blocks)];
+    }
+
+    /*
+     * Keep the results of select() with a Comparison, and of computeColumn()
+     * with an Arithmetic and computeMultiplyAdd(), in a cache, see ResultCache.
+     * null stops caching. Frames derived from this frame do not use the cache.
+     */
+    public void setResultCache(ResultCache cache) {
+        if (cache != null && this.cacheId == 0) {
+            this.cacheId = ResultCache.nextFrameId();
+        }
+        this.resultCache = cache;
+    }
+
+    public ResultCache getResultCache() {
+        return this.resultCache;
+    }
+
+    private long columnVersion(int columnIndex) {
+        return this.columnVersions == null ? 0 : this.columnVersions[columnIndex];
+    }
+
     @Override
     public Double getValue(int rowIndex, String colName) throws IndexOutOfBoundsException, IllegalArgumentException {
         Double result = null;
         if (isValidRowIndex(rowIndex) && isValidColumnName(colName)) {
-            int columnIndex = this.columnNamesMap.get(colName);
-            result = this.data.get(rowIndex).get(columnIndex);
+            int columnIndex = this.schema.indexOf(colName);
+            result = this.columns.get(columnIndex).getBoxed(rowIndex);
         }
         return result;
     }
 
     private boolean isValidRowIndex(int rowIndex) {
-        if (rowIndex < 0 || rowIndex > getRowCount()) {
+        if (rowIndex < 0 || rowIndex >= getRowCount()) {
             throw new IndexOutOfBoundsException("Invalid row index!");
         }
         return true;
     }
 
     private boolean isValidColumnName(String colName) {
-        if (!this.columnNamesMap.containsKey(colName)) {
+        if (!this.schema.contains(colName)) {
             String msg = "Column name " + colName + " not exists!";
             throw new IllegalArgumentException(msg);
         }
@@ -207,7 +369,11 @@ public class DoubleDataFrame implements DataFrame<Double>
         DataVector<Double> result = null;
         if (isValidRowIndex(rowIndex)) {
             String rowName = "row_" + rowIndex;
-            List<Double> rowData = new ArrayList<>(this.data.get(rowIndex));
+            // Collect the value of this row from every column
+            List<Double> rowData = new ArrayList<>(this.columns.size());
+            for (DoubleColumn column : this.columns) {
+                rowData.add(column.getBoxed(rowIndex));
+            }
             result = new DoubleDataVector(rowName, getColumnNames(), rowData);
         }
         return result;
@@ -218,16 +384,15 @@ public class DoubleDataFrame implements DataFrame<Double>
         DataVector<Double> result = null;
         if (isValidColumnName(colName)) {
             // Create the row names
-            List<String> rowNames = new ArrayList<>();
-            for (int i = 0; i < this.data.size(); i++) {
+            List<String> rowNames = new ArrayList<>(this.rowCount);
+            for (int i = 0; i < this.rowCount; i++) {
                 rowNames.add("row_" + i);
             }
             // Collect the column data
-            List<Double> colData = new ArrayList<>();
-            int colIndex = this.columnNamesMap.get(colName);
-            for (List<Double> rowList : this.data) {
-                Double value = rowList.get(colIndex);
-                colData.add(value);
+            DoubleColumn column = getColumnStorage(colName);
+            List<Double> colData = new ArrayList<>(this.rowCount);
+            for (int i = 0; i < this.rowCount; i++) {
+                colData.add(column.getBoxed(i));
             }
             // Create DoubleDataVector result
             result = new DoubleDataVector(colName, rowNames, colData);
@@ -255,149 +420,578 @@ public class DoubleDataFrame implements DataFrame<Double>
 
     @Override
     public DataFrame<Double> expand(int additionalRows, List<String> newCols) throws IllegalArgumentException {
-        // Make a copy of this DoubleDataFrame object
-        DoubleDataFrame result = new DoubleDataFrame(this);
-
-        boolean isFirstRow = true;
-
-        // Extend new column data
-        for (List<Double> rowData : result.getData()) {
-            // Iterate each new column name
-            for (String newColName : newCols) {
-                if (isFirstRow) {
-                    // Check if it is already defined in the original data
-                    boolean isDuplicated = result.getColumnNamesMap().containsKey(newColName);
-                    if (isDuplicated) {
-                        String msg = "Column " + newColName + " is already defined!";
-                        throw new IllegalArgumentException(msg);
-                    }
-                    // If not defined yet
-                    // Map the new column name with new index
-                    int newColumnIndex = result.getColumnNames().size();
-                    result.getColumnNamesMap().put(newColName, newColumnIndex);
-                }
-
-                // Extend the column data with default value 0.0
-                rowData.add(DEFAULT_DATA);
+        if (additionalRows < 0) {
+            throw new IllegalArgumentException("Number of rows should be positive");
+        }
+        // Check if the new columns are already defined in the original data
+        Set<String> uniqueNames = new HashSet<>();
+        for (String newColName : newCols) {
+            boolean isDuplicated = this.schema.contains(newColName) || !uniqueNames.add(newColName);
+            if (isDuplicated) {
+                String msg = "Column " + newColName + " is already defined!";
+                throw new IllegalArgumentException(msg);
             }
-            isFirstRow = false;
         }
 
-        // Extend new row lists
-        if (additionalRows > 0) {
-            int newTotalColumnCount = getColumnCount() + newCols.size();
-            for (int i = 0; i < additionalRows; i++) {
-                // Create new row list filled with 0.0
-                List<Double> extendRowData = new ArrayList<>(Collections.nCopies(newTotalColumnCount, DEFAULT_DATA));
-                // Add new row list to the extended DataFrame
-                result.getData().add(extendRowData);
+        MemoryManager.Pin pin = pinColumns();
+        try {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("expand", this.rowCount);
+            // Copy every column into a longer array,
+            // the new rows are filled with the default value 0.0
+            int newRowCount = this.rowCount + additionalRows;
+            reserve(this.columns.size() + newCols.size(), newRowCount);
+            List<DoubleColumn> newColumns = new ArrayList<>(this.columns.size() + newCols.size());
+            for (DoubleColumn column : this.columns) {
+                newColumns.add(column.copy(newRowCount));
             }
+            // Add the new columns filled with the default value 0.0
+            for (int j = 0; j < newCols.size(); j++) {
+                newColumns.add(DoubleColumn.filled(newRowCount, DEFAULT_DATA));
+            }
+            DoubleDataFrame result = new DoubleDataFrame(this.schema.plus(newCols), newColumns, newRowCount);
+            DataFrameMetrics.finish(timer, newRowCount, false);
+            return result;
+        } finally {
+            pin.release();
         }
-
-        return result;
     }
 
     @Override
     public DataFrame<Double> project(Collection<String> retainColumns) throws IllegalArgumentException {
-        // Initialize a sorted map that connects the index with column name
-        Map<Integer, String> sortedIndexColumnNameMap = new TreeMap<>();
-        // Collect retain columns
-        for (String columnName : retainColumns) {
-            // Check if column name exists
-            if (isValidColumnName(columnName)) {
-                // Map the index with corresponded column name
-                int columnIndex = this.columnNamesMap.get(columnName);
-                sortedIndexColumnNameMap.put(columnIndex, columnName);
-            }
-        }
-        // Now we can get the columns with original order
-        // because the sorted map will sort automatically
-        // by the index of the column
-        List<DataVector<Double>> columnList = new ArrayList<>();
-        for (String columnName : sortedIndexColumnNameMap.values()) {
-            DataVector<Double> column = getColumn(columnName);
-            columnList.add(column);
+        MemoryManager.Pin pin = pinColumns();
+        try {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("project", this.rowCount);
+            // The schema checks that the columns exist and
+            // keeps them in their original order
+            Schema retained = this.schema.retain(retainColumns);
+            reserve(retained.size(), this.rowCount);
+            List<DoubleColumn> columnList = new ArrayList<>(retained.size());
+            for (int columnIndex : this.schema.retainedIndexes(retainColumns)) {
+                columnList.add(this.columns.get(columnIndex).copy(this.rowCount));
+            }
+            DoubleDataFrame result = new DoubleDataFrame(retained, columnList, this.rowCount);
+            DataFrameMetrics.finish(timer, this.rowCount, false);
+            return result;
+        } finally {
+            pin.release();
         }
-        // Return the result by constructing DataFrame with list of columns
-        return new DoubleDataFrame(columnList, false);
     }
 
     @Override
     public DataFrame<Double> select(Predicate<DataVector<Double>> rowFilter) {
-        // Get the full row list
-        List<DataVector<Double>> qualifiedRowList = new ArrayList<>();
-        // Collect qualified row based on the filter
-        for (DataVector<Double> row : getRows()) {
-            if (rowFilter.test(row)) {
-                qualifiedRowList.add(row);
+        MemoryManager.Pin pin = pinColumns();
+        try {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("select", this.rowCount);
+            // Collect the indexes of the qualified rows based on the filter
+            int[] qualifiedRows = new int[this.rowCount];
+            int qualifiedCount = 0;
+            for (int i = 0; i < this.rowCount; i++) {
+                if (rowFilter.test(getRow(i))) {
+                    qualifiedRows[qualifiedCount] = i;
+                    qualifiedCount++;
+                }
+            }
+            // Copy the qualified rows of every column
+            reserve(this.columns.size(), qualifiedCount);
+            List<DoubleColumn> columnList = new ArrayList<>(this.columns.size());
+            for (DoubleColumn column : this.columns) {
+                columnList.add(column.gather(qualifiedRows, qualifiedCount));
             }
+            DoubleDataFrame result = new DoubleDataFrame(this.schema, columnList, qualifiedCount);
+            DataFrameMetrics.finish(timer, qualifiedCount, false);
+            return result;
+        } finally {
+            pin.release();
         }
-        // Return the result by constructing DataFrame with list of columns
-        return new DoubleDataFrame(qualifiedRowList, true);
+    }
+
+    /*
+     * Select the rows in which the value of a column matches a condition,
+     * testing the primitive values directly instead of building a row vector
+     * per row. Rows with a missing value are left out.
+     */
+    public DoubleDataFrame select(String colName, DoublePredicate condition) throws IllegalArgumentException {
+        DoubleColumn selectColumn = getColumnStorage(colName);
+        MemoryManager.Pin pin = pinColumns();
+        try {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("select", this.rowCount);
+            int[] qualifiedRows = new int[this.rowCount];
+            int qualifiedCount = new PlainEncoding(selectColumn).select(condition, qualifiedRows);
+            reserve(this.columns.size(), qualifiedCount);
+            List<DoubleColumn> columnList = new ArrayList<>(this.columns.size());
+            for (DoubleColumn column : this.columns) {
+                columnList.add(column.gather(qualifiedRows, qualifiedCount));
+            }
+            DoubleDataFrame result = new DoubleDataFrame(this.schema, columnList, qualifiedCount);
+            DataFrameMetrics.finish(timer, qualifiedCount, false);
+            return result;
+        } finally {
+            pin.release();
+        }
+    }
+
+    /*
+     * Append rows: every result column is allocated once and filled with one
+     * bulk copy per frame, optionally with the columns copied in parallel.
+     * Frames of other classes are converted to plain columns first.
+     */
+    @Override
+    public DoubleDataFrame appendRows(List<? extends DataFrame<Double>> others, boolean parallel) throws IllegalArgumentException {
+        int totalRows = appendedRowCount(others);
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("appendRows", totalRows);
+        List<DoubleDataFrame> sources = new ArrayList<>(others.size());
+        for (DataFrame<Double> other : others) {
+            sources.add(toDoubleDataFrame(other));
+        }
+        MemoryManager.Pin pin = pinColumns(sources);
+        try {
+            int columnCount = this.columns.size();
+            reserve(columnCount, totalRows);
+            DoubleColumn[] columnArray = new DoubleColumn[columnCount];
+            IntStream columnIndexes = IntStream.range(0, columnCount);
+            (parallel ? columnIndexes.parallel() : columnIndexes).forEach(j -> {
+                List<DoubleColumn> following = new ArrayList<>(sources.size());
+                for (DoubleDataFrame source : sources) {
+                    following.add(source.columns.get(j));
+                }
+                columnArray[j] = this.columns.get(j).appendRows(following);
+            });
+            DoubleDataFrame result = new DoubleDataFrame(this.schema, Arrays.asList(columnArray), totalRows);
+            DataFrameMetrics.finish(timer, totalRows, parallel);
+            return result;
+        } finally {
+            pin.release();
+        }
+    }
+
+    /*
+     * The same frame as a DoubleDataFrame: a consistent snapshot of a
+     * concurrent frame, the decoded columns of a compressed frame, or a copy
+     * of any other frame
+     */
+    private static DoubleDataFrame toDoubleDataFrame(DataFrame<Double> dataFrame) {
+        if (dataFrame instanceof DoubleDataFrame) {
+            return (DoubleDataFrame) dataFrame;
+        }
+        if (dataFrame instanceof ConcurrentDoubleDataFrame) {
+            return ((ConcurrentDoubleDataFrame) dataFrame).snapshot();
+        }
+        if (dataFrame instanceof CompressedDoubleDataFrame) {
+            return ((CompressedDoubleDataFrame) dataFrame).toDoubleDataFrame();
+        }
+        return new DoubleDataFrame(dataFrame.getColumns(), false);
+    }
+
+    /*
+     * Keep the columns of this frame in memory while an operation reads them,
+     * see MemoryManager.pin()
+     */
+    private MemoryManager.Pin pinColumns() {
+        return MemoryManager.pin(this.columns);
+    }
+
+    /*
+     * Keep the columns of this frame and of other frames in memory while an
+     * operation reads them
+     */
+    private MemoryManager.Pin pinColumns(List<DoubleDataFrame> others) {
+        List<DoubleColumn> inputs = new ArrayList<>(this.columns);
+        for (DoubleDataFrame other : others) {
+            inputs.addAll(other.columns);
+        }
+        return MemoryManager.pin(inputs);
+    }
+
+    /*
+     * Make room in the memory budget for the columns of a result,
+     * see MemoryManager. The columns of this frame are being read,
+     * so they are not spilled for it.
+     */
+    private void reserve(int columnCount, int resultRows) {
+        if (MemoryManager.isEnabled()) {
+            MemoryManager.reserve(columnCount * DoubleColumn.estimateBytes(resultRows), this.columns);
+        }
+    }
+
+    @Override
+    public DataFrame<Double> sample(int n, long seed) throws IllegalArgumentException {
+        MemoryManager.Pin pin = pinColumns();
+        try {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("sample", this.rowCount);
+            int[] sampledRows = RowSampler.sample(this.rowCount, n, seed);
+            reserve(this.columns.size(), sampledRows.length);
+            List<DoubleColumn> columnList = new ArrayList<>(this.columns.size());
+            for (DoubleColumn column : this.columns) {
+                columnList.add(column.gather(sampledRows, sampledRows.length));
+            }
+            DoubleDataFrame result = new DoubleDataFrame(this.schema, columnList, sampledRows.length);
+            DataFrameMetrics.finish(timer, sampledRows.length, RowSampler.isParallel(this.rowCount));
+            return result;
+        } finally {
+            pin.release();
+        }
+    }
+
+    /*
+     * Select the rows in which the value of a column compares to a constant.
+     * A column kernel evaluates the comparison into a bitmap, without a call
+     * per row. Rows with a missing value are left out.
+     */
+    public DoubleDataFrame select(String colName, Comparison comparison, double value) throws IllegalArgumentException {
+        DoubleColumn selectColumn = getColumnStorage(colName);
+        MemoryManager.Pin pin = pinColumns();
+        try {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("select", this.rowCount);
+            if (this.resultCache != null) {
+                ResultCache.Key key = new ResultCache.Key(this.cacheId, Arrays.asList("select", colName, comparison, value),
+                        columnVersion(this.schema.indexOf(colName)));
+                ResultCache.Entry cached = this.resultCache.get(key);
+                int[] qualifiedRows = cached != null ? cached.rows() : compareRows(selectColumn, comparison, value);
+                DoubleDataFrame result = cachedSelection(key, cached, qualifiedRows);
+                DataFrameMetrics.finish(timer, qualifiedRows.length, false);
+                return result;
+            }
+            int[] qualifiedRows = compareRows(selectColumn, comparison, value);
+            int qualifiedCount = qualifiedRows.length;
+            reserve(this.columns.size(), qualifiedCount);
+            List<DoubleColumn> columnList = new ArrayList<>(this.columns.size());
+            for (DoubleColumn column : this.columns) {
+                columnList.add(column.gather(qualifiedRows, qualifiedCount));
+            }
+            DoubleDataFrame result = new DoubleDataFrame(this.schema, columnList, qualifiedCount);
+            DataFrameMetrics.finish(timer, qualifiedCount, false);
+            return result;
+        } finally {
+            pin.release();
+        }
+    }
+
+    /*
+     * The rows in which the value of a column compares to a constant,
+     * evaluated into a bitmap by a column kernel
+     */
+    private int[] compareRows(DoubleColumn selectColumn, Comparison comparison, double value) {
+        long[] matches = new long[ColumnStorage.wordCount(this.rowCount)];
+        ColumnKernels.compare(selectColumn.values(), this.rowCount, comparison, value, matches);
+        long[] validity = selectColumn.validity();
+        int qualifiedCount = 0;
+        for (int w = 0; w < matches.length; w++) {
+            if (validity != null) {
+                matches[w] &= validity[w];
+            }
+            qualifiedCount += Long.bitCount(matches[w]);
+        }
+        // Walk the set bits a word at a time
+        int[] qualifiedRows = new int[qualifiedCount];
+        int k = 0;
+        for (int w = 0; w < matches.length; w++) {
+            long word = matches[w];
+            while (word != 0) {
+                qualifiedRows[k] = (w << 6) + Long.numberOfTrailingZeros(word);
+                k++;
+                word &= word - 1;
+            }
+        }
+        return qualifiedRows;
+    }
+
+    /*
+     * The selected rows of every column, taken from a cached selection.
+     * Only the columns that changed since it was cached are gathered again,
+     * and the cache is updated with them.
+     */
+    private DoubleDataFrame cachedSelection(ResultCache.Key key, ResultCache.Entry cached, int[] qualifiedRows) {
+        int columnCount = this.columns.size();
+        long[] versions = new long[columnCount];
+        int changedCount = 0;
+        for (int j = 0; j < columnCount; j++) {
+            versions[j] = columnVersion(j);
+            if (cached == null || cached.versions()[j] != versions[j]) {
+                changedCount++;
+            }
+        }
+        DoubleColumn[] columnArray = new DoubleColumn[columnCount];
+        if (changedCount > 0) {
+            reserve(changedCount, qualifiedRows.length);
+        }
+        for (int j = 0; j < columnCount; j++) {
+            if (cached == null || cached.versions()[j] != versions[j]) {
+                columnArray[j] = this.columns.get(j).gather(qualifiedRows, qualifiedRows.length);
+                columnArray[j].markShared();
+            }
+            else {
+                columnArray[j] = cached.columns()[j];
+            }
+        }
+        if (changedCount > 0) {
+            this.resultCache.put(key, new ResultCache.Entry(qualifiedRows, columnArray, versions));
+        }
+        return new DoubleDataFrame(this.schema, Arrays.asList(columnArray), qualifiedRows.length);
     }
 
     @Override
     public DataFrame<Double> computeColumn(String columnName, Function<DataVector<Double>, Double> function) {
-        // Get the original rows
-        List<DataVector<Double>> originalRows = getRows();
-        // Create a list to store the new values
-        List<Double> newValueList = new ArrayList<>();
-        // Iterate each row and apply the function to get the new value
-        for (DataVector<Double> row : originalRows) {
-            Double computedValue = function.apply(row);
-            newValueList.add(computedValue);
-        }
-        // Check the new value list size
-        if (newValueList.size() != getRowCount()) {
-            String msg = "Something wrong! New value list size not equal to number of rows";
-            throw new RuntimeException(msg);
-        }
-        // Expand the DataFrame with one additional column
-        // The values of the new added column will be default (0.0)
-        DataFrame<Double> result = expand(0, columnName);
-        // Iterate through each row and set the new value to the new column
-        for (int i = 0; i < getRowCount(); i++) {
-            Double newValue = newValueList.get(i);
-            result.setValue(i, columnName, newValue);
+        if (this.schema.contains(columnName)) {
+            String msg = "Column " + columnName + " is already defined!";
+            throw new IllegalArgumentException(msg);
+        }
+        MemoryManager.Pin pin = pinColumns();
+        try {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("computeColumn", this.rowCount);
+            // Iterate each row and apply the function to get the new value.
+            // Missing entries are null in the row, and a null result is missing.
+            reserve(this.columns.size() + 1, this.rowCount);
+            DoubleColumn newColumn = new DoubleColumn(new double[this.rowCount], this.rowCount);
+            for (int i = 0; i < this.rowCount; i++) {
+                newColumn.setBoxed(i, function.apply(getRow(i)));
+            }
+            // Copy the original columns and add the new column
+            List<DoubleColumn> columnList = new ArrayList<>(this.columns.size() + 1);
+            for (DoubleColumn column : this.columns) {
+                columnList.add(column.copy(this.rowCount));
+            }
+            columnList.add(newColumn);
+            DoubleDataFrame result = new DoubleDataFrame(this.schema.plus(columnName), columnList, this.rowCount);
+            DataFrameMetrics.finish(timer, this.rowCount, false);
+            return result;
+        } finally {
+            pin.release();
+        }
+    }
+
+    /*
+     * Add a column computed element-wise from two columns by a column kernel,
+     * without a call per row. A row is missing when it is missing in either
+     * column.
+     */
+    public DoubleDataFrame computeColumn(String columnName, String left, Arithmetic operator, String right) throws IllegalArgumentException {
+        DoubleColumn leftColumn = getColumnStorage(left);
+        DoubleColumn rightColumn = getColumnStorage(right);
+        MemoryManager.Pin pin = pinColumns();
+        try {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("computeColumn", this.rowCount);
+            ResultCache.Key key = computationKey(Arrays.asList("computeColumn", left, operator, right), left, right);
+            ResultCache.Entry cached = key == null ? null : this.resultCache.get(key);
+            DoubleDataFrame result;
+            if (cached != null) {
+                result = withCachedColumn(columnName, cached.columns()[0]);
+            }
+            else {
+                reserve(this.columns.size() + 1, this.rowCount);
+                double[] values = new double[this.rowCount];
+                ColumnKernels.apply(operator, leftColumn.values(), rightColumn.values(), values, this.rowCount);
+                result = withComputedColumn(columnName, values, key, leftColumn, rightColumn);
+            }
+            DataFrameMetrics.finish(timer, this.rowCount, false);
+            return result;
+        } finally {
+            pin.release();
+        }
+    }
+
+    /*
+     * Add the column factor1 * factor2 + addend, with a single rounding per
+     * row, computed by a column kernel
+     */
+    public DoubleDataFrame computeMultiplyAdd(String columnName, String factor1, String factor2, String addend) throws IllegalArgumentException {
+        DoubleColumn column1 = getColumnStorage(factor1);
+        DoubleColumn column2 = getColumnStorage(factor2);
+        DoubleColumn column3 = getColumnStorage(addend);
+        MemoryManager.Pin pin = pinColumns();
+        try {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("computeColumn", this.rowCount);
+            ResultCache.Key key = computationKey(Arrays.asList("computeMultiplyAdd", factor1, factor2, addend),
+                    factor1, factor2, addend);
+            ResultCache.Entry cached = key == null ? null : this.resultCache.get(key);
+            DoubleDataFrame result;
+            if (cached != null) {
+                result = withCachedColumn(columnName, cached.columns()[0]);
+            }
+            else {
+                reserve(this.columns.size() + 1, this.rowCount);
+                double[] values = new double[this.rowCount];
+                ColumnKernels.multiplyAdd(column1.values(), column2.values(), column3.values(), values, this.rowCount);
+                result = withComputedColumn(columnName, values, key, column1, column2, column3);
+            }
+            DataFrameMetrics.finish(timer, this.rowCount, false);
+            return result;
+        } finally {
+            pin.release();
         }
-        return result;
+    }
+
+    /*
+     * The key of a computed column in the result cache, which does not
+     * depend on the name of the new column, or null without a cache
+     */
+    private ResultCache.Key computationKey(List<Object> operation, String... inputs) {
+        if (this.resultCache == null) {
+            return null;
+        }
+        long[] versions = new long[inputs.length];
+        for (int k = 0; k < inputs.length; k++) {
+            versions[k] = columnVersion(this.schema.indexOf(inputs[k]));
+        }
+        return new ResultCache.Key(this.cacheId, operation, versions);
+    }
+
+    /*
+     * A copy of this frame with a new column, which is missing wherever one
+     * of the input columns is missing. With a key, the new column is also
+     * put in the result cache.
+     */
+    private DoubleDataFrame withComputedColumn(String columnName, double[] values, ResultCache.Key key, DoubleColumn... inputs) {
+        if (this.schema.contains(columnName)) {
+            String msg = "Column " + columnName + " is already defined!";
+            throw new IllegalArgumentException(msg);
+        }
+        long[] validity = null;
+        for (DoubleColumn input : inputs) {
+            if (input.validity() != null) {
+                if (validity == null) {
+                    validity = DoubleColumn.allValid(this.rowCount);
+                }
+                for (int w = 0; w < validity.length; w++) {
+                    validity[w] &= input.validity()[w];
+                }
+            }
+        }
+        List<DoubleColumn> columnList = new ArrayList<>(this.columns.size() + 1);
+        for (DoubleColumn column : this.columns) {
+            columnList.add(column.copy(this.rowCount));
+        }
+        DoubleColumn newColumn = new DoubleColumn(values, this.rowCount, validity);
+        if (key != null) {
+            newColumn.markShared();
+            this.resultCache.put(key, new ResultCache.Entry(null, new DoubleColumn[] { newColumn }, null));
+        }
+        columnList.add(newColumn);
+        return new DoubleDataFrame(this.schema.plus(columnName), columnList, this.rowCount);
+    }
+
+    /*
+     * This frame with a cached column added, without copying anything. The
+     * columns of this frame are shared with the result, like the gathered
+     * columns of a cached selection: the first setValue() on a column in
+     * either frame copies that column, and from then on the frame writes to
+     * its own copy.
+     */
+    private DoubleDataFrame withCachedColumn(String columnName, DoubleColumn cachedColumn) {
+        if (this.schema.contains(columnName)) {
+            String msg = "Column " + columnName + " is already defined!";
+            throw new IllegalArgumentException(msg);
+        }
+        List<DoubleColumn> columnList = new ArrayList<>(this.columns.size() + 1);
+        for (DoubleColumn column : this.columns) {
+            column.markShared();
+            columnList.add(column);
+        }
+        columnList.add(cachedColumn);
+        return new DoubleDataFrame(this.schema.plus(columnName), columnList, this.rowCount);
     }
 
     @Override
     public DataVector<Double> summarize(String name, BinaryOperator<Double> summaryFunction) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("summarize", this.rowCount);
         // Create empty list of data
-        List<Double> summaryResultList = new ArrayList<>();
+        List<Double> summaryResultList = new ArrayList<>(this.columns.size());
         // Iterate each column
-        for (DataVector<Double> column : getColumns()) {
-            List<Double> valueList = column.getValues();
-
-            // If there's only 1 element in value list
-            if (valueList.size() == 1) {
-                // Then this only value is the summary value
-                summaryResultList.add(valueList.get(0));
-                // Continue to the next column
+        for (DoubleColumn column : this.columns) {
+            // Missing entries are skipped by walking the validity bitmap
+            int first = column.nextValid(0);
+            // A column without values has no summary value
+            if (first >= this.rowCount) {
+                summaryResultList.add(null);
                 continue;
             }
-
-            // If the number of elements in value list > 1
-            // First calculate the summary value with the 1st and 2nd element in value list
-            Double summaryValue = summaryFunction.apply(valueList.get(0), valueList.get(1));
-            // Then iterate from the 3rd element to calculate
-            for (int i = 2; i < valueList.size(); i++) {
-                summaryValue = summaryFunction.apply(summaryValue, valueList.get(i));
+            // Start from the first element, then reduce the other elements into it
+            Double summaryValue = column.get(first);
+            for (int i = column.nextValid(first + 1); i < this.rowCount; i = column.nextValid(i + 1)) {
+                summaryValue = summaryFunction.apply(summaryValue, column.get(i));
             }
             // When done calculating, add the summary value to the summary result list
             summaryResultList.add(summaryValue);
         }
         // Construct the DataVector and return the result
-        return new DoubleDataVector(name, getColumnNames(), summaryResultList);
+        DataVector<Double> result = new DoubleDataVector(name, getColumnNames(), summaryResultList);
+        DataFrameMetrics.finish(timer, 1, false);
+        return result;
+    }
+
+    /*
+     * Summarize every column with a built-in aggregation, in a single pass
+     * over the primitive values. Missing values are skipped.
+     */
+    public DataVector<Double> summarize(String name, Aggregation aggregation) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("summarize", this.rowCount);
+        List<Double> summaryResultList = new ArrayList<>(this.columns.size());
+        for (DoubleColumn column : this.columns) {
+            summaryResultList.add(new PlainEncoding(column).aggregate(aggregation));
+        }
+        DataVector<Double> result = new DoubleDataVector(name, getColumnNames(), summaryResultList);
+        DataFrameMetrics.finish(timer, 1, false);
+        return result;
+    }
+
+    /*
+     * Store every column in the encoding that takes the fewest bytes,
+     * see CompressedDoubleDataFrame
+     */
+    public CompressedDoubleDataFrame compress() {
+        return new CompressedDoubleDataFrame(this);
+    }
+
+    /*
+     * The statistics and plots come from the StatisticsProvider and
+     * PlottingProvider on the class path, which are loaded on first use
+     */
+    @Override
+    public DataFrameStatistics statistics() throws UnsupportedOperationException {
+        return DataFrameServices.statistics(this);
+    }
+
+    @Override
+    public DataFramePlotting plotting() throws UnsupportedOperationException {
+        return DataFrameServices.plotting(this);
     }
 
+    /*
+     * Produces a row-based copy of the data: a list with one list per row.
+     * Missing values are null. Since the data is stored per column, the
+     * lists are a copy: changing them does not change this data frame,
+     * use setValue() for that.
+     */
     public List<List<Double>> getData() {
-        return this.data;
+        double[][] sourceValues = new double[this.columns.size()][];
+        for (int j = 0; j < sourceValues.length; j++) {
+            sourceValues[j] = this.columns.get(j).values();
+        }
+        double[][] rowValues = Reshaping.transpose(sourceValues, this.rowCount);
+        List<List<Double>> result = new ArrayList<>(this.rowCount);
+        for (int i = 0; i < this.rowCount; i++) {
+            List<Double> rowData = new ArrayList<>(this.columns.size());
+            for (int j = 0; j < sourceValues.length; j++) {
+                rowData.add(this.columns.get(j).isValid(i) ? rowValues[i][j] : null);
+            }
+            result.add(rowData);
+        }
+        return result;
     }
 
+    /*
+     * The index of every column name. The map is shared with every frame
+     * that has the same columns, so it cannot be changed: put() and
+     * remove() throw an UnsupportedOperationException.
+     */
     public Map<String, Integer> getColumnNamesMap() {
-        return this.columnNamesMap;
+        return this.schema.indexMap();
+    }
+
+    /*
+     * The storage of a column, which is shared rather than copied
+     */
+    DoubleColumn getColumnStorage(String colName) throws IllegalArgumentException {
+        isValidColumnName(colName);
+        return this.columns.get(this.schema.indexOf(colName));
     }
-}
\ No newline at end of file
+}
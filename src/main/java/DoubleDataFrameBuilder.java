@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Collects rows for a new DoubleDataFrame. Every column is kept in a primitive
+ * buffer that doubles in size when it is full, so appending n rows takes
+ * O(n) time in total. Calling build() hands the buffers over to the data frame
+ * without copying them; after that the builder can no longer be used.
+ */
+public class DoubleDataFrameBuilder {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final List<String> columnNames;
+    private double[][] buffers;
+    private int rowCount;
+
+    public DoubleDataFrameBuilder(List<String> columnNames) {
+        this(columnNames, DEFAULT_CAPACITY);
+    }
+
+    public DoubleDataFrameBuilder(String... columnNames) {
+        this(Arrays.asList(columnNames));
+    }
+
+    /**
+     * Creates a builder that can hold initialCapacity rows before its buffers
+     * have to grow
+     *
+     * @param columnNames     the names of the columns of the data frame
+     * @param initialCapacity the expected number of rows
+     * @throws IllegalArgumentException if the column names are duplicated or the
+     *                                  capacity is negative
+     */
+    public DoubleDataFrameBuilder(List<String> columnNames, int initialCapacity) throws IllegalArgumentException {
+        if (new HashSet<>(columnNames).size() != columnNames.size()) {
+            throw new IllegalArgumentException("Duplicate columns detected");
+        }
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity should be positive");
+        }
+        this.columnNames = new ArrayList<>(columnNames);
+        this.buffers = new double[columnNames.size()][initialCapacity];
+    }
+
+    /**
+     * The number of rows appended so far
+     *
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    /**
+     * Appends a single row
+     *
+     * @param values the values of the row, one for every column in order
+     * @return this builder
+     * @throws IllegalArgumentException if the number of values does not match the
+     *                                  number of columns
+     */
+    public DoubleDataFrameBuilder appendRow(double... values) throws IllegalArgumentException {
+        checkNotBuilt();
+        if (values.length != this.buffers.length) {
+            String msg = "Row has " + values.length + " values, expected " + this.buffers.length;
+            throw new IllegalArgumentException(msg);
+        }
+        ensureCapacity(this.rowCount + 1);
+        for (int j = 0; j < values.length; j++) {
+            this.buffers[j][this.rowCount] = values[j];
+        }
+        this.rowCount++;
+        return this;
+    }
+
+    /**
+     * Appends a batch of rows that is given column by column. Each array holds
+     * the values of one column for all rows in the batch.
+     *
+     * @param columnValues one array per column, all of equal length
+     * @return this builder
+     * @throws IllegalArgumentException if the number of arrays does not match the
+     *                                  number of columns, or their lengths differ
+     */
+    public DoubleDataFrameBuilder appendColumnBatch(double[]... columnValues) throws IllegalArgumentException {
+        checkNotBuilt();
+        if (columnValues.length != this.buffers.length) {
+            String msg = "Batch has " + columnValues.length + " columns, expected " + this.buffers.length;
+            throw new IllegalArgumentException(msg);
+        }
+        if (columnValues.length == 0) {
+            return this;
+        }
+        int batchSize = columnValues[0].length;
+        for (double[] values : columnValues) {
+            if (values.length != batchSize) {
+                throw new IllegalArgumentException("All columns in a batch should have equal lengths");
+            }
+        }
+        ensureCapacity(this.rowCount + batchSize);
+        for (int j = 0; j < columnValues.length; j++) {
+            System.arraycopy(columnValues[j], 0, this.buffers[j], this.rowCount, batchSize);
+        }
+        this.rowCount += batchSize;
+        return this;
+    }
+
+    /**
+     * Produces the data frame holding all appended rows. The column buffers are
+     * handed over to the data frame as they are, so the builder cannot be used
+     * afterwards.
+     *
+     * @return the new data frame
+     */
+    public DoubleDataFrame build() {
+        checkNotBuilt();
+        List<DoubleColumn> columns = new ArrayList<>(this.buffers.length);
+        for (double[] buffer : this.buffers) {
+            columns.add(new DoubleColumn(buffer, this.rowCount));
+        }
+        this.buffers = null;
+        return new DoubleDataFrame(this.columnNames, columns, this.rowCount);
+    }
+
+    /**
+     * Produces the data frame holding all appended rows, with every column
+     * stored in the encoding that takes the fewest bytes for its values. The
+     * builder cannot be used afterwards.
+     *
+     * @return the new compressed data frame
+     */
+    public CompressedDoubleDataFrame buildCompressed() {
+        return new CompressedDoubleDataFrame(build());
+    }
+
+    private void ensureCapacity(int required) {
+        if (required < 0) {
+            throw new IllegalStateException("Too many rows for a single data frame");
+        }
+        if (this.buffers.length == 0 || required <= this.buffers[0].length) {
+            return;
+        }
+        // Grow geometrically, so every row is copied a constant number of times on average
+        int capacity = this.buffers[0].length;
+        int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, 2L * capacity));
+        for (int j = 0; j < this.buffers.length; j++) {
+            this.buffers[j] = Arrays.copyOf(this.buffers[j], newCapacity);
+        }
+    }
+
+    private void checkNotBuilt() {
+        if (this.buffers == null) {
+            throw new IllegalStateException("The data frame was already built");
+        }
+    }
+}
@@ -0,0 +1,512 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.knowm.xchart.BitmapEncoder;
+import org.knowm.xchart.CategoryChart;
+import org.knowm.xchart.CategoryChartBuilder;
+import org.knowm.xchart.SwingWrapper;
+import org.knowm.xchart.XYChart;
+import org.knowm.xchart.XYChartBuilder;
+import org.knowm.xchart.XYSeries;
+import org.knowm.xchart.internal.chartpart.Chart;
+
+/**
+ * Plotting implementation for data frames holding Double values.
+ *
+ * The columns of a DoubleDataFrame are read from their backing arrays, those
+ * of other frames are copied once into primitive arrays before any chart is
+ * built. Histograms are binned here, so XChart only ever receives one bar per
+ * bin. Scatter plots with more points than the point budget are
+ * downsampled with density binning: the plot area is divided into a grid, and
+ * only one point per occupied cell is kept, together with the points holding
+ * the minimum and maximum x and y values so that the extremes remain visible.
+ */
+public class DoubleDataFramePlotting implements DataFramePlotting {
+
+    /**
+     * Default maximum number of points handed to XChart for a scatter plot
+     */
+    public static final int DEFAULT_POINT_BUDGET = 10000;
+
+    // Columns with at least this many values are binned in parallel
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private static final int CHART_WIDTH = 800;
+    private static final int CHART_HEIGHT = 600;
+
+    private final DataFrame<Double> dataFrame;
+    private int pointBudget;
+
+    public DoubleDataFramePlotting(DataFrame<Double> dataFrame) {
+        this(dataFrame, DEFAULT_POINT_BUDGET);
+    }
+
+    public DoubleDataFramePlotting(DataFrame<Double> dataFrame, int pointBudget) {
+        this.dataFrame = dataFrame;
+        setPointBudget(pointBudget);
+    }
+
+    /**
+     * The maximum number of points a scatter plot hands to XChart
+     *
+     * @return the current point budget
+     */
+    public int getPointBudget() {
+        return this.pointBudget;
+    }
+
+    /**
+     * Changes the maximum number of points a scatter plot hands to XChart.
+     * Scatter plots of larger columns are downsampled.
+     *
+     * @param pointBudget the new point budget
+     * @throws IllegalArgumentException if the budget is smaller than 16
+     */
+    public void setPointBudget(int pointBudget) throws IllegalArgumentException {
+        if (pointBudget < 16) {
+            throw new IllegalArgumentException("Point budget should be at least 16");
+        }
+        this.pointBudget = pointBudget;
+    }
+
+    /**
+     * Produces a scatter plot of variable x against variable y
+     *
+     * @param title the title of the chart
+     * @param xVar  the name of the column that is used as x values
+     * @param yVar  the name of the column that is used as y values
+     * @return an XYChart containing the scatter plot
+     */
+    public XYChart scatter(String title, String xVar, String yVar) {
+        double[] x = extractColumn(xVar);
+        double[] y = extractColumn(yVar);
+        return scatter(title, xVar, yVar, x, y);
+    }
+
+    @Override
+    public void saveScatter(File outputFile, String title, String xVar, String yVar) throws IOException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("plotting.saveScatter", this.dataFrame.getRowCount());
+        XYChart chart = scatter(title, xVar, yVar);
+        writePng(chart, outputFile);
+        DataFrameMetrics.finish(timer, 0, false);
+    }
+
+    /**
+     * Produces a histogram bar chart for a single variable
+     *
+     * @param title   the title of the chart
+     * @param varName the variable or column that should be used to compute the
+     *                histogram
+     * @param bins    the number of bins to use in the histogram
+     * @return a CategoryChart containing the histogram
+     */
+    public CategoryChart histogram(String title, String varName, int bins) {
+        double[] values = extractColumn(varName);
+        return histogram(title, varName, bins, values);
+    }
+
+    @Override
+    public void saveHistogram(File outputFile, String title, String varName, int bins) throws IOException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("plotting.saveHistogram", this.dataFrame.getRowCount());
+        CategoryChart chart = histogram(title, varName, bins);
+        writePng(chart, outputFile);
+        DataFrameMetrics.finish(timer, 0, false);
+    }
+
+    @Override
+    public void showScatter(String title, String xVar, String yVar) {
+        new SwingWrapper<>(scatter(title, xVar, yVar)).displayChart();
+    }
+
+    @Override
+    public void showHistogram(String title, String varName, int bins) {
+        new SwingWrapper<>(histogram(title, varName, bins)).displayChart();
+    }
+
+    /**
+     * Renders the plots concurrently, using one thread per available core.
+     *
+     * @see #saveAll(List, int)
+     */
+    @Override
+    public void saveAll(List<PlotSpec> specs) throws IOException {
+        saveAll(specs, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Renders a batch of plots concurrently. Every column is extracted from
+     * the data frame at most once and shared by all plots that use it.
+     * Rendering happens on a bounded pool: when all threads are busy and the
+     * queue is full, the calling thread renders plots itself.
+     *
+     * Rendering does not need a display, but this method does not change
+     * the java.awt.headless property of the JVM. A server without a display
+     * should run with -Djava.awt.headless=true; on Linux, the JVM also runs
+     * headless by itself when no DISPLAY is set.
+     *
+     * @param specs   the plots to render
+     * @param threads the maximum number of plots rendered at the same time
+     * @throws IOException if an error occurs while writing one of the images
+     */
+    public void saveAll(List<PlotSpec> specs, int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads should be positive");
+        }
+
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("plotting.saveAll", this.dataFrame.getRowCount());
+        // Columns shared between the plots in this batch
+        Map<String, double[]> columns = new ConcurrentHashMap<>();
+        int poolSize = Math.max(1, Math.min(threads, specs.size()));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(2 * poolSize), new ThreadPoolExecutor.CallerRunsPolicy());
+        List<Future<?>> futures = new ArrayList<>(specs.size());
+        try {
+            for (PlotSpec spec : specs) {
+                futures.add(executor.submit(() -> {
+                    render(spec, columns);
+                    return null;
+                }));
+            }
+            // Wait for every plot, and report the first failure
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    IOException cause = ex.getCause() instanceof IOException
+                            ? (IOException) ex.getCause()
+                            : new IOException(ex.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    }
+                    else {
+                        failure.addSuppressed(cause);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while rendering plots", ex);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            DataFrameMetrics.finish(timer, specs.size(), poolSize > 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void render(PlotSpec spec, Map<String, double[]> columns) throws IOException {
+        List<String> vars = spec.getVariables();
+        switch (spec.getKind()) {
+            case SCATTER:
+                double[] x = columns.computeIfAbsent(vars.get(0), this::extractColumn);
+                double[] y = columns.computeIfAbsent(vars.get(1), this::extractColumn);
+                writePng(scatter(spec.getTitle(), vars.get(0), vars.get(1), x, y), spec.getOutputFile());
+                break;
+            case HISTOGRAM:
+                double[] values = columns.computeIfAbsent(vars.get(0), this::extractColumn);
+                writePng(histogram(spec.getTitle(), vars.get(0), spec.getBins(), values), spec.getOutputFile());
+                break;
+        }
+    }
+
+    private static void writePng(Chart<?, ?> chart, File outputFile) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            BitmapEncoder.saveBitmap(chart, out, BitmapEncoder.BitmapFormat.PNG);
+        }
+    }
+
+    XYChart scatter(String title, String xVar, String yVar, double[] x, double[] y) {
+        XYChart chart = new XYChartBuilder()
+                .width(CHART_WIDTH)
+                .height(CHART_HEIGHT)
+                .title(title)
+                .xAxisTitle(xVar)
+                .yAxisTitle(yVar)
+                .build();
+        chart.getStyler().setDefaultSeriesRenderStyle(XYSeries.XYSeriesRenderStyle.Scatter);
+        chart.getStyler().setLegendVisible(false);
+
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("plotting.scatter", x.length);
+        double[][] points = downsample(x, y, this.pointBudget);
+        DataFrameMetrics.finish(timer, points[0].length, false);
+        if (points[0].length > 0) {
+            chart.addSeries(yVar, points[0], points[1]);
+        }
+        return chart;
+    }
+
+    CategoryChart histogram(String title, String varName, int bins, double[] values) {
+        if (bins <= 0) {
+            throw new IllegalArgumentException("Number of bins should be positive");
+        }
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("plotting.histogram", values.length);
+        double[] range = range(values);
+        long[] counts = binCounts(values, bins, range[0], range[1]);
+        DataFrameMetrics.finish(timer, bins, values.length >= PARALLEL_THRESHOLD);
+
+        // Label each bar with the center of its bin, interpolated so that a
+        // range wider than Double.MAX_VALUE does not overflow
+        List<String> labels = new ArrayList<>(bins);
+        List<Long> heights = new ArrayList<>(bins);
+        for (int b = 0; b < bins; b++) {
+            double t = (b + 0.5) / bins;
+            double center = range[0] * (1 - t) + range[1] * t;
+            labels.add(String.format(Locale.ROOT, "%.3g", center));
+            heights.add(counts[b]);
+        }
+
+        CategoryChart chart = new CategoryChartBuilder()
+                .width(CHART_WIDTH)
+                .height(CHART_HEIGHT)
+                .title(title)
+                .xAxisTitle(varName)
+                .yAxisTitle("Count")
+                .build();
+        chart.getStyler().setLegendVisible(false);
+        chart.getStyler().setAvailableSpaceFill(0.99);
+        chart.getStyler().setOverlapped(true);
+        chart.addSeries(varName, labels, heights);
+        return chart;
+    }
+
+    /*
+     * The values of a column in a primitive array, which is only read.
+     * Missing values are NaN, which is skipped by both the histogram and the
+     * scatter plot.
+     */
+    double[] extractColumn(String colName) {
+        if (this.dataFrame instanceof DoubleDataFrame) {
+            // The backing array itself, unless it is longer than the column
+            return ((DoubleDataFrame) this.dataFrame).getColumnStorage(colName).asArray();
+        }
+        int rowCount = this.dataFrame.getRowCount();
+        double[] result = new double[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            Double value = this.dataFrame.getValue(i, colName);
+            result[i] = value == null ? Double.NaN : value;
+        }
+        return result;
+    }
+
+    /*
+     * Computes {min, max} of the finite values, ignoring NaN and infinity,
+     * which have no bin. Large columns are split in the same chunks as in
+     * binCounts(), whose extremes are found in parallel. An empty range is
+     * widened so that every value falls into a bin.
+     */
+    static double[] range(double[] values) {
+        double[] extremes;
+        if (values.length < PARALLEL_THRESHOLD) {
+            extremes = chunkRange(values, 0, values.length);
+        }
+        else {
+            int chunks = (values.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            extremes = IntStream.range(0, chunks)
+                    .parallel()
+                    .mapToObj(chunk -> {
+                        int from = chunk * CHUNK_SIZE;
+                        return chunkRange(values, from, Math.min(values.length, from + CHUNK_SIZE));
+                    })
+                    .reduce(new double[] { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY },
+                            (a, b) -> new double[] { Math.min(a[0], b[0]), Math.max(a[1], b[1]) });
+        }
+        double min = extremes[0];
+        double max = extremes[1];
+        if (min > max) {
+            // No values at all
+            return new double[] { 0.0, 1.0 };
+        }
+        if (min == max) {
+            double margin = Math.max(0.5, Math.ulp(min));
+            return new double[] { min - margin, max + margin };
+        }
+        return new double[] { min, max };
+    }
+
+    private static double[] chunkRange(double[] values, int from, int to) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            double value = values[i];
+            if (!Double.isFinite(value)) {
+                continue;
+            }
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+        return new double[] { min, max };
+    }
+
+    /*
+     * Counts the values per bin, in a second pass after range(). Large
+     * columns are split in chunks that are counted in parallel and merged
+     * afterwards.
+     */
+    static long[] binCounts(double[] values, int bins, double min, double max) {
+        if (values.length < PARALLEL_THRESHOLD) {
+            long[] counts = new long[bins];
+            countChunk(values, 0, values.length, bins, min, max, counts);
+            return counts;
+        }
+        int chunks = (values.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        return IntStream.range(0, chunks)
+                .parallel()
+                .mapToObj(chunk -> {
+                    long[] counts = new long[bins];
+                    int from = chunk * CHUNK_SIZE;
+                    int to = Math.min(values.length, from + CHUNK_SIZE);
+                    countChunk(values, from, to, bins, min, max, counts);
+                    return counts;
+                })
+                .reduce(new long[bins], (a, b) -> {
+                    long[] merged = new long[bins];
+                    for (int k = 0; k < bins; k++) {
+                        merged[k] = a[k] + b[k];
+                    }
+                    return merged;
+                });
+    }
+
+    private static void countChunk(double[] values, int from, int to, int bins, double min, double max,
+            long[] counts) {
+        // Both ends are halved, which is exact for all but subnormal values,
+        // so that the width stays finite when max - min overflows
+        double halfMin = min / 2;
+        double scale = bins / (max / 2 - halfMin);
+        for (int i = from; i < to; i++) {
+            double value = values[i];
+            // NaN and infinity have no bin and are skipped
+            if (Double.isFinite(value) && value >= min && value <= max) {
+                int bin = (int) ((value / 2 - halfMin) * scale);
+                // The maximum belongs to the last bin
+                counts[bin < bins ? bin : bins - 1]++;
+            }
+        }
+    }
+
+    /*
+     * Density binning: keeps the first point of every occupied grid cell,
+     * plus the points with the smallest and largest x and y values. Returns
+     * the x and y values of the kept points. Pairs containing NaN or
+     * infinity are dropped.
+     */
+    static double[][] downsample(double[] x, double[] y, int budget) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Columns should have equal lengths");
+        }
+        int n = x.length;
+
+        // Find the extremes in one pass
+        int minX = -1;
+        int maxX = -1;
+        int minY = -1;
+        int maxY = -1;
+        int valid = 0;
+        for (int i = 0; i < n; i++) {
+            if (!Double.isFinite(x[i]) || !Double.isFinite(y[i])) {
+                continue;
+            }
+            valid++;
+            if (minX < 0 || x[i] < x[minX]) {
+                minX = i;
+            }
+            if (maxX < 0 || x[i] > x[maxX]) {
+                maxX = i;
+            }
+            if (minY < 0 || y[i] < y[minY]) {
+                minY = i;
+            }
+            if (maxY < 0 || y[i] > y[maxY]) {
+                maxY = i;
+            }
+        }
+
+        if (valid <= budget) {
+            // Small enough to plot as is
+            double[] keptX = new double[valid];
+            double[] keptY = new double[valid];
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if (Double.isFinite(x[i]) && Double.isFinite(y[i])) {
+                    keptX[k] = x[i];
+                    keptY[k] = y[i];
+                    k++;
+                }
+            }
+            return new double[][] { keptX, keptY };
+        }
+
+        // Leave room in the budget for the four extremes
+        int grid = (int) Math.sqrt(budget - 4);
+        double x0 = x[minX];
+        double y0 = y[minY];
+        double xScale = grid / Math.max(x[maxX] - x0, Double.MIN_NORMAL);
+        double yScale = grid / Math.max(y[maxY] - y0, Double.MIN_NORMAL);
+
+        int[] cells = new int[grid * grid];
+        Arrays.fill(cells, -1);
+        for (int i = 0; i < n; i++) {
+            if (!Double.isFinite(x[i]) || !Double.isFinite(y[i])) {
+                continue;
+            }
+            int cx = Math.min(grid - 1, (int) ((x[i] - x0) * xScale));
+            int cy = Math.min(grid - 1, (int) ((y[i] - y0) * yScale));
+            int cell = cy * grid + cx;
+            if (cells[cell] < 0) {
+                cells[cell] = i;
+            }
+        }
+
+        double[] keptX = new double[cells.length + 4];
+        double[] keptY = new double[cells.length + 4];
+        int k = 0;
+        for (int cell = 0; cell < cells.length; cell++) {
+            int i = cells[cell];
+            if (i >= 0) {
+                keptX[k] = x[i];
+                keptY[k] = y[i];
+                k++;
+            }
+        }
+        // The extremes may already be the representative of their cell
+        int[] extremes = { minX, maxX, minY, maxY };
+        for (int e = 0; e < extremes.length; e++) {
+            int i = extremes[e];
+            boolean alreadyKept = false;
+            for (int f = 0; f < e; f++) {
+                alreadyKept |= extremes[f] == i;
+            }
+            int cx = Math.min(grid - 1, (int) ((x[i] - x0) * xScale));
+            int cy = Math.min(grid - 1, (int) ((y[i] - y0) * yScale));
+            alreadyKept |= cells[cy * grid + cx] == i;
+            if (!alreadyKept) {
+                keptX[k] = x[i];
+                keptY[k] = y[i];
+                k++;
+            }
+        }
+        return new double[][] { Arrays.copyOf(keptX, k), Arrays.copyOf(keptY, k) };
+    }
+}
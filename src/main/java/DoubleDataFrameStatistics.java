@@ -0,0 +1,203 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.QRDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.math3.stat.inference.TestUtils;
+
+/**
+ * Statistics implementation for data frames holding Double values, based on
+ * Apache Commons Math.
+ *
+ * Missing values are left out. Statistics of a single column use all values of
+ * that column; statistics that pair up rows of several columns (correlation,
+ * linear model) only use the rows in which all of those columns have a value.
+ */
+public class DoubleDataFrameStatistics implements DataFrameStatistics {
+
+    // Columns with at least this many rows are sketched in parallel chunks
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final DataFrame<Double> dataFrame;
+
+    public DoubleDataFrameStatistics(DataFrame<Double> dataFrame) {
+        this.dataFrame = dataFrame;
+    }
+
+    @Override
+    public double tTest(String var, double mu) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("statistics.tTest", this.dataFrame.getRowCount());
+        double result = TestUtils.tTest(mu, columnValues(var));
+        DataFrameMetrics.finish(timer, 1, false);
+        return result;
+    }
+
+    @Override
+    public double tTest(String var1, String var2) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("statistics.tTest", this.dataFrame.getRowCount());
+        double result = TestUtils.tTest(columnValues(var1), columnValues(var2));
+        DataFrameMetrics.finish(timer, 1, false);
+        return result;
+    }
+
+    @Override
+    public double pearsonsCorrelation(String var1, String var2) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("statistics.pearsonsCorrelation",
+                this.dataFrame.getRowCount());
+        long[] rows = completeRows(Arrays.asList(var1, var2));
+        double result = new PearsonsCorrelation().correlation(columnValues(var1, rows), columnValues(var2, rows));
+        DataFrameMetrics.finish(timer, 1, false);
+        return result;
+    }
+
+    @Override
+    public DescriptiveStatistics describe(String var) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("statistics.describe", this.dataFrame.getRowCount());
+        DescriptiveStatistics result = new DescriptiveStatistics(columnValues(var));
+        DataFrameMetrics.finish(timer, 1, false);
+        return result;
+    }
+
+    @Override
+    public double[] approxQuantiles(String var, double[] probs, double accuracy) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("statistics.approxQuantiles",
+                this.dataFrame.getRowCount());
+        DoubleColumn column = column(var);
+        int rowCount = column.size();
+        boolean parallel = rowCount >= PARALLEL_THRESHOLD;
+        int chunks = parallel ? (rowCount + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD : 1;
+        // Sketch the chunks independently, then merge them in order so that
+        // the result does not depend on the scheduling of the chunks
+        QuantileSketch[] sketches = new QuantileSketch[chunks];
+        IntStream chunkIndexes = IntStream.range(0, chunks);
+        (parallel ? chunkIndexes.parallel() : chunkIndexes).forEach(chunk -> {
+            QuantileSketch sketch = QuantileSketch.forAccuracy(accuracy, chunk);
+            int to = Math.min(rowCount, (chunk + 1) * PARALLEL_THRESHOLD);
+            for (int i = chunk * PARALLEL_THRESHOLD; i < to; i++) {
+                if (column.isValid(i)) {
+                    sketch.update(column.get(i));
+                }
+            }
+            sketches[chunk] = sketch;
+        });
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            sketches[0].merge(sketches[chunk]);
+        }
+        double[] result = sketches[0].quantiles(probs);
+        DataFrameMetrics.finish(timer, probs.length, parallel);
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> estimateLinearModel(String dep, List<String> indep) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("statistics.estimateLinearModel",
+                this.dataFrame.getRowCount());
+        List<String> vars = new ArrayList<>(indep);
+        vars.add(dep);
+        long[] rows = completeRows(vars);
+        double[] y = columnValues(dep, rows);
+        if (y.length <= indep.size()) {
+            throw new IllegalArgumentException("Not enough complete rows to estimate the model");
+        }
+        // The design matrix reads the column arrays directly, with a leading column of ones
+        // for the intercept; the QR decomposition makes the only copy
+        double[][] columns = new double[indep.size() + 1][];
+        columns[0] = DoubleColumn.filled(y.length, 1.0).values();
+        for (int j = 0; j < indep.size(); j++) {
+            columns[j + 1] = columnValues(indep.get(j), rows);
+        }
+        RealMatrix x = new ColumnMatrix(columns, y.length);
+        double[] beta = new QRDecomposition(x).getSolver().solve(new ArrayRealVector(y, false)).toArray();
+
+        // The first parameter is the intercept, the others follow the order of indep
+        Map<String, Double> result = new LinkedHashMap<>();
+        result.put("intercept", beta[0]);
+        for (int j = 0; j < indep.size(); j++) {
+            result.put(indep.get(j), beta[j + 1]);
+        }
+        DataFrameMetrics.finish(timer, 1, false);
+        return result;
+    }
+
+    /*
+     * The valid values of a column as a primitive array, as expected by
+     * commons math. Only a column with missing values is copied.
+     */
+    private double[] columnValues(String var) {
+        DoubleColumn column = column(var);
+        return column.hasMissing() ? column.toValidArray() : column.asArray();
+    }
+
+    /*
+     * Copies the values of a column at the rows set in the bitmap;
+     * a null bitmap selects all rows, which are not copied
+     */
+    private double[] columnValues(String var, long[] rows) {
+        DoubleColumn column = column(var);
+        if (rows == null) {
+            return column.asArray();
+        }
+        int rowCount = column.size();
+        int count = 0;
+        for (int w = 0; w < DoubleColumn.wordCount(rowCount); w++) {
+            count += Long.bitCount(rows[w]);
+        }
+        double[] result = new double[count];
+        int k = 0;
+        double[] values = column.values();
+        // Walk the set bits of the bitmap a word at a time
+        for (int w = 0; w < DoubleColumn.wordCount(rowCount); w++) {
+            long word = rows[w];
+            while (word != 0) {
+                result[k] = values[(w << 6) + Long.numberOfTrailingZeros(word)];
+                k++;
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * The rows in which every given column has a value, as a bitmap, or null
+     * if none of the columns has missing values
+     */
+    private long[] completeRows(List<String> vars) {
+        int rowCount = this.dataFrame.getRowCount();
+        long[] rows = null;
+        for (String var : vars) {
+            long[] validity = column(var).validity();
+            if (validity != null) {
+                if (rows == null) {
+                    rows = DoubleColumn.allValid(rowCount);
+                    // Clear the bits beyond the last row
+                    if ((rowCount & 63) != 0) {
+                        rows[rows.length - 1] = (1L << rowCount) - 1;
+                    }
+                }
+                for (int w = 0; w < rows.length; w++) {
+                    rows[w] &= validity[w];
+                }
+            }
+        }
+        return rows;
+    }
+
+    private DoubleColumn column(String var) {
+        if (this.dataFrame instanceof DoubleDataFrame) {
+            return ((DoubleDataFrame) this.dataFrame).getColumnStorage(var);
+        }
+        int rowCount = this.dataFrame.getRowCount();
+        DoubleColumn column = new DoubleColumn(new double[rowCount], rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            column.setBoxed(i, this.dataFrame.getValue(i, var));
+        }
+        return column;
+    }
+}
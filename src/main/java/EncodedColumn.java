@@ -0,0 +1,277 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.DoublePredicate;
+
+/**
+ * A read-only column of doubles stored in a compressed encoding. The encoding
+ * is chosen by encode() from the values of the column:
+ *
+ * - run-length, for long runs of equal values
+ * - delta, for sorted whole numbers such as timestamps
+ * - frame-of-reference, for whole numbers in a narrow range
+ * - dictionary, for few distinct values
+ * - plain, when none of the above is smaller, or when values are missing
+ *
+ * The integers of the delta, frame-of-reference and dictionary encodings are
+ * bit-packed. Subclasses override the scans (aggregate, select, reduce) to work
+ * on the encoded data, for example summing a run as value times length.
+ */
+abstract class EncodedColumn {
+
+    // Beyond this number of distinct values dictionary encoding is not considered
+    static final int MAX_DICTIONARY_SIZE = 1 << 12;
+    // Whole numbers up to this magnitude are exact as doubles
+    private static final double MAX_EXACT_INTEGER = 1L << 53;
+
+    private final int size;
+
+    EncodedColumn(int size) {
+        this.size = size;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * The name of the encoding, for example "run-length"
+     */
+    abstract String encoding();
+
+    /**
+     * The number of bytes used by the encoded values
+     */
+    abstract long sizeInBytes();
+
+    /**
+     * An estimate of the number of bytes of heap this column occupies: the
+     * encoded values together with the objects and array headers holding them
+     */
+    long estimateMemoryBytes() {
+        // The column object and the headers of its two arrays
+        return ColumnStorage.align(ColumnStorage.OBJECT_HEADER + 4 + 2 * ColumnStorage.REFERENCE)
+                + 2 * ColumnStorage.ARRAY_HEADER + sizeInBytes();
+    }
+
+    /**
+     * The value at a row. Only meaningful for valid rows.
+     */
+    abstract double get(int rowIndex);
+
+    /**
+     * Only plain columns can hold missing values
+     */
+    boolean isValid(int rowIndex) {
+        return true;
+    }
+
+    /**
+     * Computes an aggregation over the valid values
+     *
+     * @return the result, or null if the column has no values (apart from COUNT,
+     * which is 0 then)
+     */
+    Double aggregate(Aggregation aggregation) {
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (isValid(i)) {
+                double value = get(i);
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                count++;
+            }
+        }
+        return aggregationResult(aggregation, sum, min, max, count);
+    }
+
+    /**
+     * Picks the result of an aggregation from the values computed by a scan
+     */
+    static Double aggregationResult(Aggregation aggregation, double sum, double min, double max, long count) {
+        if (aggregation == Aggregation.COUNT) {
+            return (double) count;
+        }
+        if (count == 0) {
+            return null;
+        }
+        switch (aggregation) {
+            case SUM:
+                return sum;
+            case MIN:
+                return min;
+            case MAX:
+                return max;
+            case MEAN:
+                return sum / count;
+            default:
+                throw new IllegalArgumentException("Unknown aggregation " + aggregation);
+        }
+    }
+
+    /**
+     * Collects the valid rows whose value matches a predicate
+     *
+     * @param predicate the condition on the value
+     * @param rows      receives the matching row indices, in order; it must have
+     *                  room for size() entries
+     * @return the number of matching rows
+     */
+    int select(DoublePredicate predicate, int[] rows) {
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (isValid(i) && predicate.test(get(i))) {
+                rows[count] = i;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reduces the valid values from first to last row, like summarize()
+     *
+     * @return the result, or null if the column has no values
+     */
+    Double reduce(BinaryOperator<Double> function) {
+        Double result = null;
+        for (int i = 0; i < this.size; i++) {
+            if (isValid(i)) {
+                result = result == null ? get(i) : function.apply(result, get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the column into a new, writable column
+     */
+    DoubleColumn decode() {
+        double[] values = new double[this.size];
+        for (int i = 0; i < this.size; i++) {
+            values[i] = get(i);
+        }
+        return new DoubleColumn(values, this.size);
+    }
+
+    /**
+     * Decodes the values at the given rows, in order, into a new column
+     */
+    DoubleColumn gather(int[] rowIndices, int count) {
+        DoubleColumn result = new DoubleColumn(new double[count], count);
+        for (int i = 0; i < count; i++) {
+            if (isValid(rowIndices[i])) {
+                result.set(i, get(rowIndices[i]));
+            }
+            else {
+                result.setMissing(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Encodes a column in the encoding that takes the fewest bytes. The column
+     * is analysed in a single pass; columns with missing values stay plain.
+     *
+     * @param column the column to encode; plain columns keep referring to it
+     * @return the encoded column
+     */
+    static EncodedColumn encode(DoubleColumn column) {
+        int size = column.size();
+        if (size == 0 || column.hasMissing()) {
+            return new PlainEncoding(column);
+        }
+        double[] values = column.values();
+
+        int runs = 1;
+        boolean integral = true;
+        boolean sorted = true;
+        long minLong = Long.MAX_VALUE;
+        long maxLong = Long.MIN_VALUE;
+        long maxDelta = 0;
+        // Distinct values by their bits, counted at the start of every run
+        Map<Long, Integer> distinct = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            double value = values[i];
+            boolean newRun = i == 0 || Double.doubleToLongBits(value) != Double.doubleToLongBits(values[i - 1]);
+            if (i > 0 && newRun) {
+                runs++;
+            }
+            if (newRun && distinct != null) {
+                distinct.putIfAbsent(Double.doubleToLongBits(value), distinct.size());
+                if (distinct.size() > MAX_DICTIONARY_SIZE) {
+                    distinct = null;
+                }
+            }
+            if (integral) {
+                integral = isExactInteger(value);
+                if (integral) {
+                    long longValue = (long) value;
+                    minLong = Math.min(minLong, longValue);
+                    maxLong = Math.max(maxLong, longValue);
+                    if (i > 0) {
+                        long delta = longValue - (long) values[i - 1];
+                        sorted = sorted && delta >= 0;
+                        maxDelta = Math.max(maxDelta, delta);
+                    }
+                }
+            }
+        }
+
+        // Estimate the size of every applicable encoding and keep the smallest
+        long bestBytes = PlainEncoding.estimateBytes(size);
+        int best = 0;
+        long bytes = RunLengthEncoding.estimateBytes(runs);
+        if (bytes < bestBytes) {
+            bestBytes = bytes;
+            best = 1;
+        }
+        if (integral && sorted) {
+            bytes = DeltaEncoding.estimateBytes(size, BitPackedInts.bitWidth(maxDelta));
+            if (bytes < bestBytes) {
+                bestBytes = bytes;
+                best = 2;
+            }
+        }
+        if (integral) {
+            bytes = FrameOfReferenceEncoding.estimateBytes(size, BitPackedInts.bitWidth(maxLong - minLong));
+            if (bytes < bestBytes) {
+                bestBytes = bytes;
+                best = 3;
+            }
+        }
+        if (distinct != null) {
+            bytes = DictionaryEncoding.estimateBytes(size, distinct.size());
+            if (bytes < bestBytes) {
+                best = 4;
+            }
+        }
+
+        switch (best) {
+            case 1:
+                return RunLengthEncoding.encode(values, size, runs);
+            case 2:
+                return DeltaEncoding.encode(values, size, BitPackedInts.bitWidth(maxDelta));
+            case 3:
+                return FrameOfReferenceEncoding.encode(values, size, minLong, BitPackedInts.bitWidth(maxLong - minLong));
+            case 4:
+                return DictionaryEncoding.encode(values, size, distinct.keySet());
+            default:
+                return new PlainEncoding(column);
+        }
+    }
+
+    /*
+     * Whether a value is a whole number that survives a round trip through long.
+     * Negative zero is excluded, because it would come back as positive zero.
+     */
+    private static boolean isExactInteger(double value) {
+        return Math.abs(value) <= MAX_EXACT_INTEGER && value == Math.rint(value)
+                && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0.0);
+    }
+}
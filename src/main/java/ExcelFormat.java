@@ -0,0 +1,178 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Excel workbooks, read and written with Apache POI. A data frame is stored
+ * in the first sheet: the first row holds the column names and every next
+ * row a row of the data frame. Missing values, and NaN values, are empty
+ * cells.
+ *
+ * Workbooks are written in the format of their extension. An .xlsx workbook
+ * is written with the streaming API of POI, which keeps only a window of rows
+ * in memory. An .xls workbook is built in memory and holds at most 65535 rows
+ * and 256 columns.
+ */
+public class ExcelFormat implements DataFrameFormat {
+
+    // The number of rows that the streaming workbook keeps in memory
+    private static final int ROW_WINDOW = 1000;
+
+    @Override
+    public boolean isAvailable() {
+        return DataFrameServices.isPresent("org.apache.poi.xssf.streaming.SXSSFWorkbook");
+    }
+
+    @Override
+    public boolean supports(String extension) {
+        return extension.equals("xlsx") || extension.equals("xls");
+    }
+
+    @Override
+    public DataFrame<Double> read(File file) throws IOException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("io.readExcel", 0);
+        DoubleDataFrame result = Workbooks.read(file);
+        DataFrameMetrics.finish(timer, result.getRowCount(), false);
+        return result;
+    }
+
+    @Override
+    public void write(DataFrame<Double> dataFrame, File file) throws IOException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("io.writeExcel", dataFrame.getRowCount());
+        Workbooks.write(dataFrame, file);
+        DataFrameMetrics.finish(timer, dataFrame.getRowCount(), false);
+    }
+
+    /*
+     * The code that uses POI. It is kept out of ExcelFormat itself, because
+     * ServiceLoader has to link ExcelFormat before isAvailable() can tell that
+     * POI is missing.
+     */
+    private static final class Workbooks {
+
+        static DoubleDataFrame read(File file) throws IOException {
+            try (Workbook workbook = WorkbookFactory.create(file, null, true)) {
+                return read(workbook.getSheetAt(0), file);
+            }
+        }
+
+        private static DoubleDataFrame read(Sheet sheet, File file) throws IOException {
+            Row header = sheet.getRow(sheet.getFirstRowNum());
+            if (header == null) {
+                throw new IOException("The first sheet of " + file + " is empty");
+            }
+            List<String> colNames = new ArrayList<>();
+            for (int j = 0; j < header.getLastCellNum(); j++) {
+                Cell cell = header.getCell(j);
+                if (cell == null || cell.getCellType() != CellType.STRING) {
+                    throw new IOException("Column " + j + " of " + file + " has no name");
+                }
+                colNames.add(cell.getStringCellValue());
+            }
+
+            int firstRow = header.getRowNum() + 1;
+            int rowCount = Math.max(0, sheet.getLastRowNum() + 1 - firstRow);
+            List<DoubleColumn> columns = new ArrayList<>(colNames.size());
+            for (int j = 0; j < colNames.size(); j++) {
+                double[] values = new double[rowCount];
+                long[] validity = ColumnStorage.allValid(rowCount);
+                boolean complete = true;
+                for (int i = 0; i < rowCount; i++) {
+                    Row row = sheet.getRow(firstRow + i);
+                    Cell cell = row == null ? null : row.getCell(j);
+                    if (isEmpty(cell)) {
+                        values[i] = Double.NaN;
+                        validity[i >>> 6] &= ~(1L << i);
+                        complete = false;
+                    } else {
+                        values[i] = numericValue(cell, file);
+                    }
+                }
+                columns.add(new DoubleColumn(values, rowCount, complete ? null : validity));
+            }
+            return new DoubleDataFrame(colNames, columns, rowCount);
+        }
+
+        private static boolean isEmpty(Cell cell) {
+            if (cell == null || cell.getCellType() == CellType.BLANK) {
+                return true;
+            }
+            return cell.getCellType() == CellType.STRING && cell.getStringCellValue().trim().isEmpty();
+        }
+
+        private static double numericValue(Cell cell, File file) throws IOException {
+            CellType type = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+            switch (type) {
+                case NUMERIC:
+                    return cell.getNumericCellValue();
+                case BOOLEAN:
+                    return cell.getBooleanCellValue() ? 1 : 0;
+                case STRING:
+                    try {
+                        return Double.parseDouble(cell.getStringCellValue().trim());
+                    } catch (NumberFormatException ex) {
+                        throw notANumber(cell, file);
+                    }
+                default:
+                    throw notANumber(cell, file);
+            }
+        }
+
+        private static IOException notANumber(Cell cell, File file) {
+            return new IOException("Cell " + cell.getAddress() + " of " + file + " is not a number");
+        }
+
+        static void write(DataFrame<Double> dataFrame, File file) throws IOException {
+            List<String> colNames = dataFrame.getColumnNames();
+            double[][] columns = new double[colNames.size()][];
+            for (int j = 0; j < columns.length; j++) {
+                columns[j] = dataFrame.toColumnArray(colNames.get(j));
+            }
+            boolean xls = file.getName().toLowerCase(Locale.ROOT).endsWith(".xls");
+            if (xls) {
+                SpreadsheetVersion version = SpreadsheetVersion.EXCEL97;
+                if (columns.length > version.getMaxColumns() || dataFrame.getRowCount() + 1 > version.getMaxRows()) {
+                    throw new IOException("An .xls file holds at most " + (version.getMaxRows() - 1) + " rows and "
+                            + version.getMaxColumns() + " columns; write " + file + " as .xlsx instead");
+                }
+            }
+            Workbook workbook = xls ? new HSSFWorkbook() : new SXSSFWorkbook(ROW_WINDOW);
+            try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                Sheet sheet = workbook.createSheet();
+                Row header = sheet.createRow(0);
+                for (int j = 0; j < columns.length; j++) {
+                    header.createCell(j).setCellValue(colNames.get(j));
+                }
+                for (int i = 0; i < dataFrame.getRowCount(); i++) {
+                    Row row = sheet.createRow(i + 1);
+                    for (int j = 0; j < columns.length; j++) {
+                        // toColumnArray() gives NaN for missing values
+                        if (!Double.isNaN(columns[j][i])) {
+                            row.createCell(j).setCellValue(columns[j][i]);
+                        }
+                    }
+                }
+                workbook.write(out);
+            } finally {
+                if (workbook instanceof SXSSFWorkbook) {
+                    ((SXSSFWorkbook) workbook).dispose();
+                }
+                workbook.close();
+            }
+        }
+    }
+}
@@ -1,4 +1,479 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing data frames from and to files.
+ *
+ * CSV files have a header line with the column names, followed by one line
+ * per row with the values separated by commas. An empty value is missing.
+ * read() and write() handle every DataFrameFormat on the class path, such as
+ * CSV and Excel workbooks, by the extension of the file.
+ *
+ * Block files (.dfb) are binary and store the minimum and maximum of every
+ * column per block of rows. readBlocks() uses them to skip the blocks that
+ * cannot match a filter, and only reads the columns that are asked for.
+ *
+ * Many files can be read at once with readCSVFiles() or readCSVDirectory().
+ * Every file is read and parsed by its own task, so that parsing one file
+ * overlaps with waiting for the disk on another. The tasks run on virtual
+ * threads when the Java runtime has them (Java 21 and later), otherwise on a
+ * bounded thread pool. The parsed files are combined into a single frame
+ * with one allocation per column.
+ */
 public class FileTools
 {
 
-}
\ No newline at end of file
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int INITIAL_ROWS = 1 << 10;
+	// The number of files that are open at the same time on virtual threads
+	private static final int MAX_OPEN_FILES = 256;
+
+	/**
+	 * Reads a data frame from a CSV file
+	 *
+	 * @param file the file to read
+	 * @return a data frame holding the contents of the file
+	 * @throws IOException if the file cannot be read or is not a valid CSV file
+	 */
+	public static DoubleDataFrame readCSV(File file) throws IOException
+	{
+		DataFrameMetrics.Timer timer = DataFrameMetrics.start("io.readCSV", 0);
+		DoubleDataFrame result = parseCSV(file.toPath());
+		DataFrameMetrics.finish(timer, result.getRowCount(), false);
+		return result;
+	}
+
+	/**
+	 * Writes a data frame to a CSV file. Missing values are written as empty
+	 * values.
+	 *
+	 * @param dataFrame the data frame to write
+	 * @param file      the file to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeCSV(DataFrame<Double> dataFrame, File file) throws IOException
+	{
+		DataFrameMetrics.Timer timer = DataFrameMetrics.start("io.writeCSV", dataFrame.getRowCount());
+		List<String> colNames = dataFrame.getColumnNames();
+		try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))
+		{
+			out.write(String.join(",", colNames));
+			out.write('\n');
+			for (int i = 0; i < dataFrame.getRowCount(); i++)
+			{
+				for (int j = 0; j < colNames.size(); j++)
+				{
+					if (j > 0)
+					{
+						out.write(',');
+					}
+					Double value = dataFrame.getValue(i, colNames.get(j));
+					if (value != null)
+					{
+						out.write(Double.toString(value));
+					}
+				}
+				out.write('\n');
+			}
+		}
+		DataFrameMetrics.finish(timer, dataFrame.getRowCount(), false);
+	}
+
+	/**
+	 * Writes a data frame to a block file (.dfb), a binary file that stores
+	 * the columns in blocks of 65536 rows, together with the minimum and
+	 * maximum of every column in every block
+	 *
+	 * @param dataFrame the data frame to write
+	 * @param file      the file to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeBlocks(DataFrame<Double> dataFrame, File file) throws IOException
+	{
+		writeBlocks(dataFrame, file, BlockFile.DEFAULT_BLOCK_ROWS);
+	}
+
+	/**
+	 * Writes a data frame to a block file with the given number of rows per
+	 * block. Smaller blocks let readBlocks() skip more precisely, larger
+	 * blocks make the file smaller and faster to read in full.
+	 *
+	 * @param dataFrame the data frame to write
+	 * @param file      the file to write to
+	 * @param blockRows the number of rows per block
+	 * @throws IOException              if the file cannot be written
+	 * @throws IllegalArgumentException if blockRows is not positive
+	 */
+	public static void writeBlocks(DataFrame<Double> dataFrame, File file, int blockRows) throws IOException, IllegalArgumentException
+	{
+		DataFrameMetrics.Timer timer = DataFrameMetrics.start("io.writeBlocks", dataFrame.getRowCount());
+		BlockFile.write(dataFrame, file, blockRows);
+		DataFrameMetrics.finish(timer, dataFrame.getRowCount(), false);
+	}
+
+	/**
+	 * Reads a data frame from a block file
+	 *
+	 * @param file the file to read
+	 * @return a data frame holding the contents of the file
+	 * @throws IOException if the file cannot be read or is not a block file
+	 */
+	public static DoubleDataFrame readBlocks(File file) throws IOException
+	{
+		return readBlocks(file, null, Collections.emptyList());
+	}
+
+	/**
+	 * Reads the rows of a block file that match all predicates, with only the
+	 * given columns. The blocks whose minimum and maximum show that none of
+	 * their rows can match are skipped, and of the other blocks only the
+	 * given columns and the columns of the predicates are read. A missing
+	 * value never matches a predicate.
+	 *
+	 * Usage:
+	 *
+	 * <pre>
+	 * FileTools.readBlocks(file, Arrays.asList("id", "price"),
+	 *         Arrays.asList(ColumnPredicate.of("year", Comparison.GREATER_OR_EQUAL, 2020)));
+	 * </pre>
+	 *
+	 * @param file       the file to read
+	 * @param columns    the columns to return, or null for all columns; they
+	 *                   keep the order of the file
+	 * @param predicates the conditions that the returned rows meet
+	 * @return a data frame with the matching rows
+	 * @throws IOException              if the file cannot be read or is not a
+	 *                                  block file
+	 * @throws IllegalArgumentException if a column does not exist
+	 */
+	public static DoubleDataFrame readBlocks(File file, Collection<String> columns, List<ColumnPredicate> predicates) throws IOException, IllegalArgumentException
+	{
+		return BlockFile.read(file, columns, predicates);
+	}
+
+	/**
+	 * Reads a data frame from a file in the format that belongs to its
+	 * extension, such as .csv or .xlsx. The formats are DataFrameFormat
+	 * services, which are looked up on the first call.
+	 *
+	 * @param file the file to read
+	 * @return a data frame holding the contents of the file
+	 * @throws IOException                   if the file cannot be read or is not
+	 *                                       valid
+	 * @throws UnsupportedOperationException if no format on the class path
+	 *                                       supports the extension
+	 */
+	public static DataFrame<Double> read(File file) throws IOException, UnsupportedOperationException
+	{
+		return DataFrameServices.format(file).read(file);
+	}
+
+	/**
+	 * Writes a data frame to a file in the format that belongs to its
+	 * extension, such as .csv or .xlsx
+	 *
+	 * @param dataFrame the data frame to write
+	 * @param file      the file to write to
+	 * @throws IOException                   if the file cannot be written
+	 * @throws UnsupportedOperationException if no format on the class path
+	 *                                       supports the extension
+	 */
+	public static void write(DataFrame<Double> dataFrame, File file) throws IOException, UnsupportedOperationException
+	{
+		DataFrameServices.format(file).write(dataFrame, file);
+	}
+
+	/**
+	 * Reads all files in a directory whose names match a glob pattern, such as
+	 * "*.csv", and combines their rows into a single data frame. The files are
+	 * combined in the order of their names.
+	 *
+	 * @param directory the directory to read from
+	 * @param glob      the pattern the file names should match
+	 * @return a data frame with the rows of all files
+	 * @throws IOException if a file cannot be read, or the files do not have the
+	 *                     same columns
+	 */
+	public static DoubleDataFrame readCSVDirectory(File directory, String glob) throws IOException
+	{
+		List<File> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), glob))
+		{
+			for (Path path : stream)
+			{
+				if (Files.isRegularFile(path))
+				{
+					files.add(path.toFile());
+				}
+			}
+		}
+		Collections.sort(files);
+		return readCSVFiles(files);
+	}
+
+	/**
+	 * Reads CSV files concurrently and combines their rows into a single data
+	 * frame, in the order of the list. All files should have the same columns.
+	 *
+	 * @param files the files to read
+	 * @return a data frame with the rows of all files
+	 * @throws IOException if a file cannot be read, or the files do not have the
+	 *                     same columns
+	 */
+	public static DoubleDataFrame readCSVFiles(List<File> files) throws IOException
+	{
+		DataFrameMetrics.Timer timer = DataFrameMetrics.start("io.readCSVFiles", 0);
+		List<DoubleDataFrame> parts = new ArrayList<>(files.size());
+		ExecutorService executor = newIngestionExecutor(files.size());
+		try
+		{
+			// Without a bounded pool the number of open files is limited by a semaphore
+			Semaphore openFiles = new Semaphore(MAX_OPEN_FILES);
+			List<Future<DoubleDataFrame>> futures = new ArrayList<>(files.size());
+			for (File file : files)
+			{
+				Callable<DoubleDataFrame> task = () -> {
+					openFiles.acquire();
+					try
+					{
+						return parseCSV(file.toPath());
+					} finally
+					{
+						openFiles.release();
+					}
+				};
+				futures.add(executor.submit(task));
+			}
+			for (int k = 0; k < futures.size(); k++)
+			{
+				parts.add(awaitFile(futures.get(k), files.get(k)));
+			}
+		} finally
+		{
+			executor.shutdownNow();
+		}
+		DoubleDataFrame result = unionRows(parts);
+		DataFrameMetrics.finish(timer, result.getRowCount(), true);
+		return result;
+	}
+
+	/*
+	 * Waits for the task that reads a file, and reports its failure as an IOException
+	 */
+	private static DoubleDataFrame awaitFile(Future<DoubleDataFrame> future, File file) throws IOException
+	{
+		try
+		{
+			return future.get();
+		} catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading " + file);
+		} catch (ExecutionException ex)
+		{
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			throw new IOException("Could not read " + file, cause);
+		}
+	}
+
+	/*
+	 * An executor with a virtual thread per task when the runtime supports it,
+	 * otherwise a pool with a thread per processor (twice that, since the
+	 * tasks also wait for the disk) and a bounded queue
+	 */
+	private static ExecutorService newIngestionExecutor(int tasks)
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException ex)
+		{
+			// Virtual threads are not available before Java 21
+		}
+		int poolSize = Math.max(1, Math.min(tasks, 2 * Runtime.getRuntime().availableProcessors()));
+		return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, tasks)));
+	}
+
+	/*
+	 * Parses a CSV file into a data frame. Every column is parsed into its own
+	 * primitive array, which grows geometrically and is handed over to the
+	 * data frame without copying.
+	 */
+	private static DoubleDataFrame parseCSV(Path path) throws IOException
+	{
+		try (BufferedReader reader = new BufferedReader(Files.newBufferedReader(path, StandardCharsets.UTF_8),
+				BUFFER_SIZE))
+		{
+			String headerLine = reader.readLine();
+			if (headerLine == null)
+			{
+				throw new IOException("File " + path + " has no header line");
+			}
+			List<String> colNames = new ArrayList<>();
+			int start = 0;
+			for (int end : fieldEnds(headerLine))
+			{
+				colNames.add(headerLine.substring(start, end).trim());
+				start = end + 1;
+			}
+			Schema schema;
+			try
+			{
+				schema = Schema.of(colNames);
+			} catch (IllegalArgumentException ex)
+			{
+				// Such as a column name that occurs twice
+				throw new IOException("Header of " + path + ": " + ex.getMessage(), ex);
+			}
+			int colCount = colNames.size();
+			double[][] buffers = new double[colCount][INITIAL_ROWS];
+			long[][] missing = new long[colCount][];
+			int rowCount = 0;
+			int lineNumber = 1;
+
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+				// With a single column, an empty line is a row with a missing value
+				if (line.isEmpty() && colCount > 1)
+				{
+					continue;
+				}
+				if (rowCount == buffers[0].length)
+				{
+					for (int j = 0; j < colCount; j++)
+					{
+						buffers[j] = Arrays.copyOf(buffers[j], 2 * rowCount);
+					}
+				}
+				start = 0;
+				for (int j = 0; j < colCount; j++)
+				{
+					int end = line.indexOf(',', start);
+					if (end < 0)
+					{
+						end = line.length();
+					}
+					if (j < colCount - 1 && end == line.length() || j == colCount - 1 && end != line.length())
+					{
+						String msg = "Line " + lineNumber + " of " + path + " should have " + colCount + " values";
+						throw new IOException(msg);
+					}
+					if (end == start)
+					{
+						// An empty value is missing
+						buffers[j][rowCount] = Double.NaN;
+						missing[j] = markMissing(missing[j], rowCount);
+					}
+					else
+					{
+						try
+						{
+							buffers[j][rowCount] = Double.parseDouble(line.substring(start, end));
+						} catch (NumberFormatException ex)
+						{
+							String msg = "Line " + lineNumber + " of " + path + " has an invalid value";
+							throw new IOException(msg, ex);
+						}
+					}
+					start = end + 1;
+				}
+				rowCount++;
+			}
+
+			List<DoubleColumn> columns = new ArrayList<>(colCount);
+			for (int j = 0; j < colCount; j++)
+			{
+				long[] validity = null;
+				if (missing[j] != null)
+				{
+					// Turn the bitmap of missing rows into a validity bitmap
+					validity = ColumnStorage.allValid(rowCount);
+					for (int w = 0; w < validity.length && w < missing[j].length; w++)
+					{
+						validity[w] &= ~missing[j][w];
+					}
+				}
+				columns.add(new DoubleColumn(buffers[j], rowCount, validity));
+			}
+			return new DoubleDataFrame(schema, columns, rowCount);
+		}
+	}
+
+	/*
+	 * The positions of the commas that end every field but the last, and the
+	 * end of the line
+	 */
+	private static List<Integer> fieldEnds(String line)
+	{
+		List<Integer> ends = new ArrayList<>();
+		int comma = line.indexOf(',');
+		while (comma >= 0)
+		{
+			ends.add(comma);
+			comma = line.indexOf(',', comma + 1);
+		}
+		ends.add(line.length());
+		return ends;
+	}
+
+	/*
+	 * Sets a bit in a growing bitmap
+	 */
+	private static long[] markMissing(long[] bitmap, int rowIndex)
+	{
+		int word = rowIndex >>> 6;
+		if (bitmap == null || word >= bitmap.length)
+		{
+			bitmap = bitmap == null ? new long[word + 1] : Arrays.copyOf(bitmap, Math.max(word + 1, 2 * bitmap.length));
+		}
+		bitmap[word] |= 1L << rowIndex;
+		return bitmap;
+	}
+
+	/*
+	 * Combines the rows of data frames with the same columns, see
+	 * DoubleDataFrame.appendRows(). The columns are copied in parallel.
+	 */
+	static DoubleDataFrame unionRows(List<DoubleDataFrame> parts) throws IOException
+	{
+		if (parts.isEmpty())
+		{
+			return new DoubleDataFrame(Schema.empty(), Collections.emptyList(), 0);
+		}
+		try
+		{
+			return parts.get(0).appendRows(parts.subList(1, parts.size()), true);
+		} catch (IllegalArgumentException ex)
+		{
+			throw new IOException(ex.getMessage(), ex);
+		}
+	}
+}
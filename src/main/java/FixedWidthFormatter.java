@@ -0,0 +1,66 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes entries left-aligned in a column of fixed width, equivalent to the
+ * format string "%-w.ws" but without parsing a format for every entry.
+ * Entries longer than the width are cut off, shorter entries are padded with
+ * spaces.
+ */
+final class FixedWidthFormatter {
+
+    private final int width;
+    private final String padding;
+
+    FixedWidthFormatter(int width) {
+        this.width = width;
+        // Precompute the longest padding that will ever be needed
+        char[] spaces = new char[width];
+        Arrays.fill(spaces, ' ');
+        this.padding = new String(spaces);
+    }
+
+    /**
+     * Writes the text of an entry, padded or truncated to the column width
+     *
+     * @param out   the destination
+     * @param entry the entry; null is written as "null"
+     * @throws IOException if the destination cannot be written to
+     */
+    void append(Appendable out, Object entry) throws IOException {
+        String text = String.valueOf(entry);
+        int length = text.length();
+        if (length >= this.width) {
+            out.append(text, 0, this.width);
+        }
+        else {
+            out.append(text);
+            out.append(this.padding, 0, this.width - length);
+        }
+    }
+
+    /**
+     * Writes the name of a row, "row_" followed by its index
+     *
+     * @param out      the destination
+     * @param rowIndex the index of the row
+     * @throws IOException if the destination cannot be written to
+     */
+    void appendRowName(Appendable out, int rowIndex) throws IOException {
+        append(out, "row_" + rowIndex);
+    }
+
+    /**
+     * Produces a buffered writer on System.out, so that printing a large frame
+     * does not flush the console on every line. The writer must be flushed,
+     * but not closed, after use.
+     *
+     * @return a writer that writes to System.out
+     */
+    static Writer standardOutput() {
+        return new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Options that control how a data frame or data vector is formatted as text.
+ *
+ * Every entry is written in a column of fixed width. When a data frame holds
+ * more rows than the row budget allows, only the first and last rows are
+ * written, separated by a line of "..." entries. For a data vector the budget
+ * applies to its entries.
+ */
+public final class FormatOptions {
+
+    /**
+     * The number of rows written by the PREVIEW options
+     */
+    public static final int DEFAULT_MAX_ROWS = 60;
+
+    /**
+     * Options used by the print() methods without options: default column
+     * width and every row
+     */
+    public static final FormatOptions DEFAULT = unbounded(DataFrame.DEFAULT_FORMAT_WIDTH);
+
+    /**
+     * Options for a quick look at a large frame: default column width and at
+     * most DEFAULT_MAX_ROWS rows
+     */
+    public static final FormatOptions PREVIEW = truncated(DataFrame.DEFAULT_FORMAT_WIDTH, DEFAULT_MAX_ROWS);
+
+    private final int colWidth;
+    private final int headRows;
+    private final int tailRows;
+
+    private FormatOptions(int colWidth, int headRows, int tailRows) {
+        if (colWidth <= 0) {
+            throw new IllegalArgumentException("Column width should be positive");
+        }
+        if (headRows < 0 || tailRows < 0) {
+            throw new IllegalArgumentException("Number of rows should be positive");
+        }
+        this.colWidth = colWidth;
+        this.headRows = headRows;
+        this.tailRows = tailRows;
+    }
+
+    /**
+     * Options that write every row
+     *
+     * @param colWidth the number of characters to use for a single column
+     * @return the formatting options
+     */
+    public static FormatOptions unbounded(int colWidth) {
+        return new FormatOptions(colWidth, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Options that write at most maxRows rows: the first half and the last
+     * half of the budget.
+     *
+     * @param colWidth the number of characters to use for a single column
+     * @param maxRows  the maximum number of rows to write
+     * @return the formatting options
+     */
+    public static FormatOptions truncated(int colWidth, int maxRows) {
+        int tail = maxRows / 2;
+        return new FormatOptions(colWidth, maxRows - tail, tail);
+    }
+
+    /**
+     * Options that write at most the first headRows and the last tailRows rows
+     *
+     * @param colWidth the number of characters to use for a single column
+     * @param headRows the number of rows to write from the start
+     * @param tailRows the number of rows to write from the end
+     * @return the formatting options
+     */
+    public static FormatOptions headTail(int colWidth, int headRows, int tailRows) {
+        return new FormatOptions(colWidth, headRows, tailRows);
+    }
+
+    public int getColWidth() {
+        return this.colWidth;
+    }
+
+    public int getHeadRows() {
+        return this.headRows;
+    }
+
+    public int getTailRows() {
+        return this.tailRows;
+    }
+
+    /**
+     * Whether a frame with the given number of rows (or a vector with the
+     * given number of entries) has to be truncated
+     *
+     * @param rowCount the number of rows
+     * @return true if some rows are left out
+     */
+    public boolean isTruncated(int rowCount) {
+        return (long) this.headRows + this.tailRows < rowCount;
+    }
+
+    /**
+     * Produces a formatter that pads and truncates entries to the column width
+     *
+     * @return a fixed width formatter
+     */
+    FixedWidthFormatter formatter() {
+        return new FixedWidthFormatter(this.colWidth);
+    }
+}
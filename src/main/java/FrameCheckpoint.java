@@ -0,0 +1,571 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a DoubleDataFrame that is changed through setValue() to a directory,
+ * writing only what changed since the previous checkpoint.
+ *
+ * The directory holds a base file with all values of the frame, and a log to
+ * which every checkpoint appends the blocks of BLOCK_ROWS rows of the columns
+ * that setValue() changed. The frame marks these blocks in a bitmap per
+ * column while it is tracked, which costs one test per setValue() otherwise.
+ * When the log grows larger than the base file times the compaction ratio,
+ * the base file is rewritten from the frame and the log starts over.
+ *
+ * Usage:
+ *
+ * <pre>
+ * FrameCheckpoint checkpoint = FrameCheckpoint.create(df, directory);
+ * // ... df.setValue(...) ...
+ * checkpoint.checkpoint();
+ *
+ * // after a restart
+ * FrameCheckpoint checkpoint = FrameCheckpoint.recover(directory);
+ * DoubleDataFrame df = checkpoint.getFrame();
+ * </pre>
+ *
+ * Recovery maps the base file into memory, copies the columns out of it, and
+ * replays the checkpoints in the log. The blocks of a checkpoint are written
+ * as one batch with a checksum, so a checkpoint that was cut off by a crash is
+ * left out as a whole. A compaction writes the new base file next to the old
+ * one and renames it over it; base and log carry a generation number, so that
+ * a log that predates its base file is not replayed.
+ *
+ * The frame and its checkpoint are not thread-safe: changes and checkpoints
+ * should come from the same thread, or be synchronized by the caller.
+ */
+public final class FrameCheckpoint implements AutoCloseable {
+
+    /**
+     * The number of rows in a block that is written when one of its values
+     * changes
+     */
+    public static final int BLOCK_ROWS = 1 << 12;
+
+    private static final byte[] BASE_MAGIC = "DFCKPT01".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOG_MAGIC = "DFCKLOG1".getBytes(StandardCharsets.US_ASCII);
+    private static final int BATCH_MAGIC = 0x42415443;
+    // The magic, the number of records and the length of a batch
+    private static final int BATCH_HEADER = 12;
+    private static final int LOG_HEADER = 16;
+    // The number of bytes mapped or written at a time
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private final DoubleDataFrame frame;
+    private final Path base;
+    private final Path log;
+    private FileChannel logChannel;
+    private long generation;
+    private long baseBytes;
+    private double compactionRatio = 1.0;
+    private long checkpointCount;
+    private boolean closed;
+
+    private FrameCheckpoint(DoubleDataFrame frame, Path directory) {
+        this.frame = frame;
+        this.base = directory.resolve("frame.base");
+        this.log = directory.resolve("frame.log");
+    }
+
+    /**
+     * Writes a data frame to a directory and starts tracking its changes. Any
+     * earlier checkpoint in the directory is replaced.
+     *
+     * @param frame     the data frame to save
+     * @param directory an existing directory
+     * @return the checkpoint of the frame
+     * @throws IOException if the files cannot be written
+     */
+    public static FrameCheckpoint create(DoubleDataFrame frame, File directory) throws IOException {
+        FrameCheckpoint checkpoint = new FrameCheckpoint(frame, directory.toPath());
+        checkpoint.frame.trackChanges(true);
+        checkpoint.writeBase(System.nanoTime());
+        return checkpoint;
+    }
+
+    /**
+     * Rebuilds the data frame saved in a directory and continues tracking its
+     * changes
+     *
+     * @param directory the directory of an earlier checkpoint
+     * @return the checkpoint, whose getFrame() is the rebuilt frame
+     * @throws IOException if the base file cannot be read
+     */
+    public static FrameCheckpoint recover(File directory) throws IOException {
+        Path path = directory.toPath();
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("checkpoint.recover", 0);
+        long[] generation = new long[1];
+        DoubleDataFrame frame = readBase(path.resolve("frame.base"), generation);
+        FrameCheckpoint checkpoint = new FrameCheckpoint(frame, path);
+        checkpoint.generation = generation[0];
+        checkpoint.baseBytes = Files.size(checkpoint.base);
+        checkpoint.replayLog();
+        frame.trackChanges(true);
+        DataFrameMetrics.finish(timer, frame.getRowCount(), false);
+        return checkpoint;
+    }
+
+    public DoubleDataFrame getFrame() {
+        return this.frame;
+    }
+
+    /**
+     * Sets how much larger than the base file the log may grow before the
+     * next checkpoint compacts it
+     *
+     * @throws IllegalArgumentException if the ratio is not positive
+     */
+    public void setCompactionRatio(double ratio) throws IllegalArgumentException {
+        if (!(ratio > 0)) {
+            throw new IllegalArgumentException("The compaction ratio should be positive");
+        }
+        this.compactionRatio = ratio;
+    }
+
+    /**
+     * The number of bytes of the log, 0 while no log is open after a failed
+     * compaction
+     */
+    public long getLogBytes() throws IOException {
+        return this.logChannel == null ? 0 : this.logChannel.size();
+    }
+
+    public long getBaseBytes() {
+        return this.baseBytes;
+    }
+
+    /**
+     * The number of checkpoints written since this checkpoint was created or
+     * recovered
+     */
+    public long getCheckpointCount() {
+        return this.checkpointCount;
+    }
+
+    /**
+     * Appends the blocks that changed since the previous checkpoint to the
+     * log and forces them to disk, then compacts if the log has grown too
+     * large
+     *
+     * @return the number of blocks written
+     * @throws IOException if the log cannot be written; the blocks stay marked
+     *                     as changed. If an earlier compaction could not
+     *                     start a new log, it is started here first.
+     * @throws IllegalStateException if this checkpoint is closed
+     */
+    public int checkpoint() throws IOException, IllegalStateException {
+        requireOpen();
+        long[][] changed = this.frame.takeChangedBlocks();
+        int blocks = 0;
+        for (long[] bitmap : changed) {
+            for (long word : bitmap) {
+                blocks += Long.bitCount(word);
+            }
+        }
+        if (blocks == 0) {
+            return 0;
+        }
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("checkpoint", this.frame.getRowCount());
+        try {
+            if (this.logChannel == null) {
+                startLog();
+            }
+            appendBatch(changed, blocks);
+        } catch (IOException ex) {
+            this.frame.restoreChangedBlocks(changed);
+            throw ex;
+        }
+        this.checkpointCount++;
+        DataFrameMetrics.finish(timer, (long) blocks * BLOCK_ROWS, false);
+        if (this.logChannel.size() > this.compactionRatio * this.baseBytes) {
+            compact();
+        }
+        return blocks;
+    }
+
+    /**
+     * Rewrites the base file from the frame and empties the log. Changes
+     * that were not checkpointed yet are included in the new base file.
+     *
+     * @throws IOException           if the files cannot be written
+     * @throws IllegalStateException if this checkpoint is closed
+     */
+    public void compact() throws IOException, IllegalStateException {
+        requireOpen();
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("checkpoint.compact", this.frame.getRowCount());
+        long[][] changed = this.frame.takeChangedBlocks();
+        try {
+            writeBase(this.generation + 1);
+        } catch (IOException ex) {
+            this.frame.restoreChangedBlocks(changed);
+            throw ex;
+        }
+        DataFrameMetrics.finish(timer, this.frame.getRowCount(), false);
+    }
+
+    /**
+     * Stops tracking the changes of the frame and closes the log. Changes
+     * since the last checkpoint are not saved.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.frame.trackChanges(false);
+        if (this.logChannel != null) {
+            this.logChannel.close();
+        }
+    }
+
+    private void requireOpen() throws IllegalStateException {
+        if (this.closed) {
+            throw new IllegalStateException("The checkpoint was already closed");
+        }
+    }
+
+    /*
+     * Writes all values to a new base file with the given generation, moves
+     * it over the old one, and starts an empty log
+     */
+    private void writeBase(long newGeneration) throws IOException {
+        Path temporary = this.base.resolveSibling("frame.base.tmp");
+        List<String> colNames = this.frame.getColumnNames();
+        int rowCount = this.frame.getRowCount();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(headerBytes(colNames)).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(BASE_MAGIC).putLong(newGeneration).putInt(colNames.size());
+            for (String colName : colNames) {
+                byte[] name = colName.getBytes(StandardCharsets.UTF_8);
+                header.putInt(name.length).put(name);
+            }
+            header.putInt(rowCount);
+            header.position(header.capacity());
+            writeFully(channel, header.flip());
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (String colName : colNames) {
+                DoubleColumn column = this.frame.getColumnStorage(colName);
+                long[] validity = validityWords(column, 0, rowCount);
+                for (int offset = 0; offset < validity.length; offset += CHUNK_BYTES / 8) {
+                    int count = Math.min(CHUNK_BYTES / 8, validity.length - offset);
+                    buffer.clear();
+                    buffer.asLongBuffer().put(validity, offset, count);
+                    buffer.limit(8 * count);
+                    writeFully(channel, buffer);
+                }
+                double[] values = column.values();
+                for (int offset = 0; offset < rowCount; offset += CHUNK_BYTES / 8) {
+                    int count = Math.min(CHUNK_BYTES / 8, rowCount - offset);
+                    buffer.clear();
+                    buffer.asDoubleBuffer().put(values, offset, count);
+                    buffer.limit(8 * count);
+                    writeFully(channel, buffer);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, this.base, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.generation = newGeneration;
+        this.baseBytes = Files.size(this.base);
+        startLog();
+    }
+
+    /*
+     * The magic, generation, names and row count, padded to a multiple of 8
+     * bytes so that the values that follow are aligned
+     */
+    private static int headerBytes(List<String> colNames) {
+        int bytes = BASE_MAGIC.length + 8 + 4 + 4;
+        for (String colName : colNames) {
+            bytes += 4 + colName.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return (bytes + 7) & ~7;
+    }
+
+    /*
+     * Replaces the log by an empty one of the current generation
+     */
+    private void startLog() throws IOException {
+        FileChannel previous = this.logChannel;
+        // Until the new log is open, checkpoint() starts it again first, so
+        // that no batch is appended to a log of an older generation
+        this.logChannel = null;
+        if (previous != null) {
+            previous.close();
+        }
+        Path temporary = this.log.resolveSibling("frame.log.tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(LOG_MAGIC).putLong(this.generation);
+            writeFully(channel, header.flip());
+            channel.force(true);
+        }
+        Files.move(temporary, this.log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.logChannel = FileChannel.open(this.log, StandardOpenOption.WRITE);
+        this.logChannel.position(this.logChannel.size());
+    }
+
+    /*
+     * Appends the changed blocks as one batch: a header, the records of the
+     * blocks, and the checksum of the records. A record holds the column,
+     * the block, its number of rows, its validity words and its values.
+     */
+    private void appendBatch(long[][] changed, int blocks) throws IOException {
+        int rowCount = this.frame.getRowCount();
+        List<String> colNames = this.frame.getColumnNames();
+        long length = 0;
+        for (int j = 0; j < changed.length; j++) {
+            for (int block : blockIndexes(changed[j])) {
+                int rows = Math.min(BLOCK_ROWS, rowCount - block * BLOCK_ROWS);
+                length += 12 + 8L * ColumnStorage.wordCount(rows) + 8L * rows;
+            }
+        }
+        if (length > Integer.MAX_VALUE - BATCH_HEADER - 8) {
+            throw new IOException("Too many changed blocks for one checkpoint, compact instead");
+        }
+        ByteBuffer batch = ByteBuffer.allocate(BATCH_HEADER + (int) length + 8).order(ByteOrder.LITTLE_ENDIAN);
+        batch.putInt(BATCH_MAGIC).putInt(blocks).putInt((int) length);
+        for (int j = 0; j < changed.length; j++) {
+            DoubleColumn column = this.frame.getColumnStorage(colNames.get(j));
+            double[] values = column.values();
+            for (int block : blockIndexes(changed[j])) {
+                int from = block * BLOCK_ROWS;
+                int rows = Math.min(BLOCK_ROWS, rowCount - from);
+                batch.putInt(j).putInt(block).putInt(rows);
+                for (long word : validityWords(column, from, rows)) {
+                    batch.putLong(word);
+                }
+                batch.asDoubleBuffer().put(values, from, rows);
+                batch.position(batch.position() + 8 * rows);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(batch.array(), BATCH_HEADER, (int) length);
+        batch.putLong(crc.getValue());
+        long position = this.logChannel.size();
+        try {
+            writeFully(this.logChannel, batch.flip());
+            this.logChannel.force(false);
+        } catch (IOException ex) {
+            // Drop the part of the batch that was written
+            this.logChannel.truncate(position);
+            throw ex;
+        }
+    }
+
+    private static int[] blockIndexes(long[] bitmap) {
+        int count = 0;
+        for (long word : bitmap) {
+            count += Long.bitCount(word);
+        }
+        int[] blocks = new int[count];
+        int k = 0;
+        for (int w = 0; w < bitmap.length; w++) {
+            long word = bitmap[w];
+            while (word != 0) {
+                blocks[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return blocks;
+    }
+
+    /*
+     * The validity words of the rows [from, from + rows); from is a multiple
+     * of 64
+     */
+    private static long[] validityWords(DoubleColumn column, int from, int rows) {
+        long[] words = new long[ColumnStorage.wordCount(rows)];
+        long[] validity = column.validity();
+        for (int w = 0; w < words.length; w++) {
+            long mask = ColumnStorage.wordMask(w, rows);
+            words[w] = validity == null ? mask : validity[(from >>> 6) + w] & mask;
+        }
+        return words;
+    }
+
+    /*
+     * Maps the base file and copies its columns out of it
+     */
+    private static DoubleDataFrame readBase(Path path, long[] generation) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, CHUNK_BYTES));
+            head.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[BASE_MAGIC.length];
+            head.get(magic);
+            if (!Arrays.equals(magic, BASE_MAGIC)) {
+                throw new IOException(path + " is not a checkpoint base file");
+            }
+            generation[0] = head.getLong();
+            int columnCount = head.getInt();
+            List<String> colNames = new ArrayList<>(columnCount);
+            for (int j = 0; j < columnCount; j++) {
+                byte[] name = new byte[head.getInt()];
+                head.get(name);
+                colNames.add(new String(name, StandardCharsets.UTF_8));
+            }
+            int rowCount = head.getInt();
+            long position = headerBytes(colNames);
+            int words = ColumnStorage.wordCount(rowCount);
+            if (position + (long) columnCount * 8 * (words + (long) rowCount) != size) {
+                throw new IOException(path + " is truncated");
+            }
+            List<DoubleColumn> columns = new ArrayList<>(columnCount);
+            for (int j = 0; j < columnCount; j++) {
+                long[] validity = new long[words];
+                position = mapLongs(channel, position, validity);
+                double[] values = new double[rowCount];
+                position = mapDoubles(channel, position, values);
+                columns.add(new DoubleColumn(values, rowCount, hasMissing(validity, rowCount) ? validity : null));
+            }
+            return new DoubleDataFrame(colNames, columns, rowCount);
+        }
+    }
+
+    private static long mapLongs(FileChannel channel, long position, long[] target) throws IOException {
+        for (int offset = 0; offset < target.length; offset += CHUNK_BYTES / 8) {
+            int count = Math.min(CHUNK_BYTES / 8, target.length - offset);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, 8L * count);
+            mapped.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(target, offset, count);
+            position += 8L * count;
+        }
+        return position;
+    }
+
+    private static long mapDoubles(FileChannel channel, long position, double[] target) throws IOException {
+        for (int offset = 0; offset < target.length; offset += CHUNK_BYTES / 8) {
+            int count = Math.min(CHUNK_BYTES / 8, target.length - offset);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, 8L * count);
+            mapped.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(target, offset, count);
+            position += 8L * count;
+        }
+        return position;
+    }
+
+    private static boolean hasMissing(long[] validity, int rowCount) {
+        for (int w = 0; w < validity.length; w++) {
+            long mask = ColumnStorage.wordMask(w, rowCount);
+            if ((validity[w] & mask) != mask) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Applies the complete batches of a log of the same generation as the
+     * base file, and cuts off a batch that was not completely written. A log
+     * of an older generation is replaced by an empty one.
+     */
+    private void replayLog() throws IOException {
+        if (!Files.exists(this.log)) {
+            startLog();
+            return;
+        }
+        long valid;
+        try (FileChannel channel = FileChannel.open(this.log, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            if (size < LOG_HEADER || readFully(channel, header, 0) < LOG_HEADER) {
+                valid = -1;
+            }
+            else {
+                byte[] magic = new byte[LOG_MAGIC.length];
+                header.flip().get(magic);
+                valid = Arrays.equals(magic, LOG_MAGIC) && header.getLong() == this.generation ? LOG_HEADER : -1;
+            }
+            ByteBuffer batchHeader = ByteBuffer.allocate(BATCH_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (valid >= 0 && valid + BATCH_HEADER <= size) {
+                batchHeader.clear();
+                readFully(channel, batchHeader, valid);
+                batchHeader.flip();
+                int magic = batchHeader.getInt();
+                int records = batchHeader.getInt();
+                int length = batchHeader.getInt();
+                if (magic != BATCH_MAGIC || length < 0 || valid + BATCH_HEADER + length + 8 > size) {
+                    break;
+                }
+                ByteBuffer batch = ByteBuffer.allocate(length + 8).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, batch, valid + BATCH_HEADER);
+                CRC32 crc = new CRC32();
+                crc.update(batch.array(), 0, length);
+                if (batch.getLong(length) != crc.getValue()) {
+                    break;
+                }
+                batch.flip().limit(length);
+                applyBatch(batch, records);
+                valid += BATCH_HEADER + length + 8;
+            }
+        }
+        if (valid < 0) {
+            startLog();
+            return;
+        }
+        this.logChannel = FileChannel.open(this.log, StandardOpenOption.WRITE);
+        this.logChannel.truncate(valid);
+        this.logChannel.position(valid);
+    }
+
+    private void applyBatch(ByteBuffer batch, int records) {
+        List<String> colNames = this.frame.getColumnNames();
+        for (int r = 0; r < records; r++) {
+            // Written through the column, which copies a shared column first
+            // and synchronizes with a concurrent spill
+            DoubleColumn column = this.frame.writableColumn(colNames.get(batch.getInt()));
+            int from = batch.getInt() * BLOCK_ROWS;
+            int rows = batch.getInt();
+            long[] validity = new long[ColumnStorage.wordCount(rows)];
+            for (int w = 0; w < validity.length; w++) {
+                validity[w] = batch.getLong();
+            }
+            for (int i = 0; i < rows; i++) {
+                double value = batch.getDouble();
+                if ((validity[i >>> 6] & (1L << i)) == 0) {
+                    column.setMissing(from + i);
+                }
+                else {
+                    column.set(from + i, value);
+                }
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /*
+     * Reads until the buffer is full or the file ends, and returns the number
+     * of bytes read
+     */
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * A column of whole numbers stored as bit-packed offsets from the smallest
+ * value, so that numbers in a narrow range take only a few bits each.
+ */
+final class FrameOfReferenceEncoding extends EncodedColumn {
+
+    private final long reference;
+    private final BitPackedInts offsets;
+
+    private FrameOfReferenceEncoding(long reference, BitPackedInts offsets) {
+        super(offsets.size());
+        this.reference = reference;
+        this.offsets = offsets;
+    }
+
+    static long estimateBytes(int size, int bitWidth) {
+        return 8 + BitPackedInts.packedBytes(size, bitWidth);
+    }
+
+    /**
+     * Encodes values that are all whole numbers between min and min + 2^bitWidth - 1
+     */
+    static FrameOfReferenceEncoding encode(double[] values, int size, long min, int bitWidth) {
+        long[] offsets = new long[size];
+        for (int i = 0; i < size; i++) {
+            offsets[i] = (long) values[i] - min;
+        }
+        return new FrameOfReferenceEncoding(min, BitPackedInts.pack(offsets, size, bitWidth));
+    }
+
+    @Override
+    String encoding() {
+        return "frame-of-reference";
+    }
+
+    @Override
+    long sizeInBytes() {
+        return 8 + this.offsets.sizeInBytes();
+    }
+
+    @Override
+    double get(int rowIndex) {
+        return this.reference + this.offsets.get(rowIndex);
+    }
+
+    @Override
+    Double aggregate(Aggregation aggregation) {
+        // Aggregate the offsets as integers and add the reference once
+        int size = size();
+        long minOffset = Long.MAX_VALUE;
+        long maxOffset = 0;
+        double sum = 0;
+        long partialSum = 0;
+        for (int i = 0; i < size; i++) {
+            long offset = this.offsets.get(i);
+            minOffset = Math.min(minOffset, offset);
+            maxOffset = Math.max(maxOffset, offset);
+            // Move the integer sum into the double before it can overflow
+            if (partialSum > Long.MAX_VALUE - offset) {
+                sum += partialSum;
+                partialSum = 0;
+            }
+            partialSum += offset;
+        }
+        sum += partialSum + (double) this.reference * size;
+        return aggregationResult(aggregation, sum, this.reference + minOffset, this.reference + maxOffset, size);
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage for a column of int values, such as years or small counts, using 4
+ * bytes per row.
+ */
+final class IntColumn extends ColumnStorage {
+
+    private final int[] values;
+
+    IntColumn(int[] values, int size) {
+        this(values, size, null);
+    }
+
+    IntColumn(int[] values, int size, long[] validity) {
+        super(size, validity);
+        if (size > values.length) {
+            throw new IllegalArgumentException("Column holds fewer than " + size + " values");
+        }
+        this.values = values;
+    }
+
+    @Override
+    long dataBytes() {
+        return arrayBytes(this.values.length, 4);
+    }
+
+    @Override
+    ColumnType type() {
+        return ColumnType.INT;
+    }
+
+    int get(int rowIndex) {
+        return this.values[rowIndex];
+    }
+
+    void set(int rowIndex, int value) {
+        this.values[rowIndex] = value;
+        markValid(rowIndex);
+    }
+
+    @Override
+    Object getObject(int rowIndex) {
+        return isValid(rowIndex) ? Integer.valueOf(this.values[rowIndex]) : null;
+    }
+
+    @Override
+    void setObject(int rowIndex, Object value) throws IllegalArgumentException {
+        if (value == null) {
+            this.values[rowIndex] = 0;
+            markMissing(rowIndex);
+            return;
+        }
+        if (!(value instanceof Number) || ((Number) value).intValue() != ((Number) value).doubleValue()) {
+            throw new IllegalArgumentException("Value " + value + " is not an int");
+        }
+        set(rowIndex, ((Number) value).intValue());
+    }
+
+    /**
+     * The backing array. Only the first size() entries belong to the column.
+     */
+    int[] values() {
+        return this.values;
+    }
+
+    @Override
+    IntColumn copy(int newSize) {
+        return new IntColumn(Arrays.copyOf(this.values, newSize), newSize, copyValidity(newSize));
+    }
+
+    @Override
+    IntColumn gather(int[] rowIndices, int count) {
+        int[] copy = new int[count];
+        for (int i = 0; i < count; i++) {
+            copy[i] = this.values[rowIndices[i]];
+        }
+        return new IntColumn(copy, count, gatherValidity(rowIndices, count));
+    }
+
+    @Override
+    IntColumn appendRows(List<? extends ColumnStorage> following) throws IllegalArgumentException {
+        int totalSize = appendedSize(following);
+        int[] values = new int[totalSize];
+        System.arraycopy(this.values, 0, values, 0, size());
+        int offset = size();
+        for (ColumnStorage column : following) {
+            System.arraycopy(((IntColumn) column).values, 0, values, offset, column.size());
+            offset += column.size();
+        }
+        return new IntColumn(values, totalSize, appendValidity(following, totalSize));
+    }
+}
@@ -0,0 +1,723 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.DoubleStream;
+
+/**
+ * A data frame of Double values that grows by appending rows, for example
+ * from a feed, and keeps registered aggregates up to date while it grows.
+ *
+ * An aggregate is registered once with one of the track methods, which reads
+ * the rows appended so far. After that every append updates it in constant
+ * time per row, and it can be read at any time without scanning the rows:
+ *
+ * - trackSummary: count, sum, mean, minimum, maximum and variance of a column
+ * - trackGroupCounts: the number of rows per distinct value of a column
+ * - trackCrossProducts: the cross products of a set of columns, from which
+ *   X'X and a linear model are available
+ *
+ * Means, variances and cross products are kept as running means and
+ * co-moments (Welford's method), which stay accurate for values far from
+ * zero, unlike raw sums of squares.
+ *
+ * Rows cannot be changed once appended. Appending and reading the aggregates
+ * synchronize on the frame, so one thread can append while others read.
+ * Every operation of the DataFrame interface works on snapshot(), which shares
+ * the appended rows without copying them.
+ */
+public class LiveDataFrame implements DataFrame<Double> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    // Relative size below which a pivot of solve() counts as zero
+    private static final double PIVOT_TOLERANCE = 1e-10;
+
+    private final Schema schema;
+    // One buffer per column that doubles in size when it is full
+    private double[][] buffers;
+    // The validity bitmap per column, null while no value of the column is missing
+    private long[][] validity;
+    private int rowCount;
+    private final List<Aggregate> aggregates = new ArrayList<>();
+
+    /**
+     * Creates an empty live data frame
+     *
+     * @param columnNames the names of the columns
+     * @throws IllegalArgumentException if the column names are duplicated
+     */
+    public LiveDataFrame(List<String> columnNames) throws IllegalArgumentException {
+        this.schema = Schema.of(columnNames);
+        this.buffers = new double[columnNames.size()][DEFAULT_CAPACITY];
+        this.validity = new long[columnNames.size()][];
+    }
+
+    public LiveDataFrame(String... columnNames) throws IllegalArgumentException {
+        this(Arrays.asList(columnNames));
+    }
+
+    /*
+     * An aggregate that is updated with every appended row
+     */
+    abstract static class Aggregate {
+        /*
+         * Adds a row of the frame; called while holding the lock of the frame
+         */
+        abstract void update(int rowIndex);
+    }
+
+    /**
+     * Appends a row
+     *
+     * @param values the values of the row, one for every column in order
+     * @throws IllegalArgumentException if the number of values does not match
+     *                                  the number of columns
+     */
+    public synchronized void append(double... values) throws IllegalArgumentException {
+        if (values.length != this.buffers.length) {
+            String msg = "Row has " + values.length + " values, expected " + this.buffers.length;
+            throw new IllegalArgumentException(msg);
+        }
+        ensureCapacity(this.rowCount + 1);
+        for (int j = 0; j < values.length; j++) {
+            this.buffers[j][this.rowCount] = values[j];
+        }
+        appended();
+    }
+
+    /**
+     * Appends a row given as a data vector with an entry per column. Entries
+     * that are null are missing.
+     *
+     * @param row the row to append
+     * @throws IllegalArgumentException if the row does not hold the columns of
+     *                                  this data frame
+     */
+    public synchronized void append(DataVector<Double> row) throws IllegalArgumentException {
+        List<String> entryNames = row.getEntryNames();
+        if (entryNames.size() != this.buffers.length || !this.schema.names().containsAll(entryNames)) {
+            throw new IllegalArgumentException("Row does not hold the columns " + this.schema.names());
+        }
+        ensureCapacity(this.rowCount + 1);
+        for (int j = 0; j < this.buffers.length; j++) {
+            Double value = row.getValue(this.schema.name(j));
+            if (value == null) {
+                this.buffers[j][this.rowCount] = Double.NaN;
+                markMissing(j, this.rowCount);
+            }
+            else {
+                this.buffers[j][this.rowCount] = value;
+            }
+        }
+        appended();
+    }
+
+    private void appended() {
+        // Bitmaps are allocated with every row valid, so a new row only
+        // has to be marked when it is missing
+        int rowIndex = this.rowCount;
+        this.rowCount++;
+        for (Aggregate aggregate : this.aggregates) {
+            aggregate.update(rowIndex);
+        }
+    }
+
+    private void markMissing(int columnIndex, int rowIndex) {
+        long[] bitmap = this.validity[columnIndex];
+        if (bitmap == null) {
+            bitmap = ColumnStorage.allValid(this.buffers[columnIndex].length);
+            this.validity[columnIndex] = bitmap;
+        }
+        bitmap[rowIndex >>> 6] &= ~(1L << rowIndex);
+    }
+
+    private void ensureCapacity(int required) {
+        int capacity = this.buffers.length == 0 ? Integer.MAX_VALUE : this.buffers[0].length;
+        if (required <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(required, capacity * 2);
+        for (int j = 0; j < this.buffers.length; j++) {
+            // Snapshots keep reading the old buffers, which are never written again
+            this.buffers[j] = Arrays.copyOf(this.buffers[j], newCapacity);
+            if (this.validity[j] != null) {
+                long[] bitmap = ColumnStorage.allValid(newCapacity);
+                System.arraycopy(this.validity[j], 0, bitmap, 0, this.validity[j].length);
+                this.validity[j] = bitmap;
+            }
+        }
+    }
+
+    private boolean isValid(int columnIndex, int rowIndex) {
+        long[] bitmap = this.validity[columnIndex];
+        return bitmap == null || (bitmap[rowIndex >>> 6] & (1L << rowIndex)) != 0;
+    }
+
+    /*
+     * Registers an aggregate and adds the rows appended so far
+     */
+    private synchronized <A extends Aggregate> A register(A aggregate) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("live.register", this.rowCount);
+        for (int i = 0; i < this.rowCount; i++) {
+            aggregate.update(i);
+        }
+        this.aggregates.add(aggregate);
+        DataFrameMetrics.finish(timer, 1, false);
+        return aggregate;
+    }
+
+    /**
+     * Keeps the count, sum, mean, minimum, maximum and variance of the valid
+     * values of a column
+     *
+     * @param colName the column to summarize
+     * @return the summary, which is updated with every appended row
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    public ColumnSummary trackSummary(String colName) throws IllegalArgumentException {
+        return register(new ColumnSummary(this.schema.requireIndex(colName)));
+    }
+
+    /**
+     * Keeps the number of rows per distinct value of a column
+     *
+     * @param colName the column to group by
+     * @return the counts, which are updated with every appended row
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    public GroupCounts trackGroupCounts(String colName) throws IllegalArgumentException {
+        return register(new GroupCounts(this.schema.requireIndex(colName)));
+    }
+
+    /**
+     * Keeps the cross products of a dependent variable and independent
+     * variables, over the rows in which none of them is missing
+     *
+     * @param dep   the name of the dependent variable
+     * @param indep the names of the independent variables
+     * @return the cross products, which are updated with every appended row
+     * @throws IllegalArgumentException if a column does not exist
+     */
+    public CrossProducts trackCrossProducts(String dep, String... indep) throws IllegalArgumentException {
+        int[] columnIndexes = new int[indep.length + 1];
+        for (int j = 0; j < indep.length; j++) {
+            columnIndexes[j] = this.schema.requireIndex(indep[j]);
+        }
+        columnIndexes[indep.length] = this.schema.requireIndex(dep);
+        return register(new CrossProducts(Arrays.asList(indep), columnIndexes));
+    }
+
+    /**
+     * The running summary of a column, see trackSummary()
+     */
+    public final class ColumnSummary extends Aggregate {
+
+        private final int columnIndex;
+        private long count;
+        private double sum;
+        private double mean;
+        // The sum of squared differences from the mean
+        private double m2;
+        private double min = Double.NaN;
+        private double max = Double.NaN;
+
+        private ColumnSummary(int columnIndex) {
+            this.columnIndex = columnIndex;
+        }
+
+        @Override
+        void update(int rowIndex) {
+            if (!isValid(this.columnIndex, rowIndex)) {
+                return;
+            }
+            double value = buffers[this.columnIndex][rowIndex];
+            this.count++;
+            this.sum += value;
+            double delta = value - this.mean;
+            this.mean += delta / this.count;
+            this.m2 += delta * (value - this.mean);
+            this.min = this.count == 1 ? value : Math.min(this.min, value);
+            this.max = this.count == 1 ? value : Math.max(this.max, value);
+        }
+
+        /**
+         * The number of valid values
+         */
+        public long getCount() {
+            synchronized (LiveDataFrame.this) {
+                return this.count;
+            }
+        }
+
+        public double getSum() {
+            synchronized (LiveDataFrame.this) {
+                return this.sum;
+            }
+        }
+
+        /**
+         * The mean, or NaN if there are no values
+         */
+        public double getMean() {
+            synchronized (LiveDataFrame.this) {
+                return this.count == 0 ? Double.NaN : this.mean;
+            }
+        }
+
+        /**
+         * The smallest value, or NaN if there are no values
+         */
+        public double getMin() {
+            synchronized (LiveDataFrame.this) {
+                return this.min;
+            }
+        }
+
+        /**
+         * The largest value, or NaN if there are no values
+         */
+        public double getMax() {
+            synchronized (LiveDataFrame.this) {
+                return this.max;
+            }
+        }
+
+        /**
+         * The sample variance, or NaN if there are fewer than two values
+         */
+        public double getVariance() {
+            synchronized (LiveDataFrame.this) {
+                return this.count < 2 ? Double.NaN : this.m2 / (this.count - 1);
+            }
+        }
+
+        public double getStandardDeviation() {
+            return Math.sqrt(getVariance());
+        }
+    }
+
+    /**
+     * The running number of rows per value of a column, see trackGroupCounts()
+     */
+    public final class GroupCounts extends Aggregate {
+
+        private final int columnIndex;
+        // The missing values are counted under the null key
+        private final Map<Double, long[]> counts = new HashMap<>();
+
+        private GroupCounts(int columnIndex) {
+            this.columnIndex = columnIndex;
+        }
+
+        @Override
+        void update(int rowIndex) {
+            Double key = isValid(this.columnIndex, rowIndex) ? buffers[this.columnIndex][rowIndex] : null;
+            long[] count = this.counts.get(key);
+            if (count == null) {
+                count = new long[1];
+                this.counts.put(key, count);
+            }
+            count[0]++;
+        }
+
+        /**
+         * The number of rows with a value
+         *
+         * @param value the value, or null for the rows in which it is missing
+         */
+        public long getCount(Double value) {
+            synchronized (LiveDataFrame.this) {
+                long[] count = this.counts.get(value);
+                return count == null ? 0 : count[0];
+            }
+        }
+
+        /**
+         * A copy of the counts per value; missing values are counted under the
+         * null key
+         */
+        public Map<Double, Long> getCounts() {
+            synchronized (LiveDataFrame.this) {
+                Map<Double, Long> result = new HashMap<>();
+                for (Map.Entry<Double, long[]> entry : this.counts.entrySet()) {
+                    result.put(entry.getKey(), entry.getValue()[0]);
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * The running cross products of a set of columns, see
+     * trackCrossProducts(). The independent variables come first, the
+     * dependent variable last.
+     */
+    public final class CrossProducts extends Aggregate {
+
+        private final List<String> indep;
+        private final int[] columnIndexes;
+        private long count;
+        private final double[] means;
+        // The co-moments: sums of products of differences from the means
+        private final double[][] comoments;
+        private final double[] delta;
+
+        private CrossProducts(List<String> indep, int[] columnIndexes) {
+            this.indep = new ArrayList<>(indep);
+            this.columnIndexes = columnIndexes;
+            this.means = new double[columnIndexes.length];
+            this.comoments = new double[columnIndexes.length][columnIndexes.length];
+            this.delta = new double[columnIndexes.length];
+        }
+
+        @Override
+        void update(int rowIndex) {
+            for (int columnIndex : this.columnIndexes) {
+                if (!isValid(columnIndex, rowIndex)) {
+                    return;
+                }
+            }
+            this.count++;
+            int k = this.columnIndexes.length;
+            for (int a = 0; a < k; a++) {
+                double value = buffers[this.columnIndexes[a]][rowIndex];
+                this.delta[a] = value - this.means[a];
+                this.means[a] += this.delta[a] / this.count;
+            }
+            for (int a = 0; a < k; a++) {
+                double after = buffers[this.columnIndexes[a]][rowIndex] - this.means[a];
+                for (int b = 0; b <= a; b++) {
+                    this.comoments[a][b] += this.delta[b] * after;
+                }
+            }
+        }
+
+        /**
+         * The number of complete rows
+         */
+        public long getCount() {
+            synchronized (LiveDataFrame.this) {
+                return this.count;
+            }
+        }
+
+        /**
+         * The matrix X'X, in which X has a column of ones for the intercept
+         * followed by the independent variables, over the complete rows
+         */
+        public double[][] getCrossProducts() {
+            synchronized (LiveDataFrame.this) {
+                int p = this.indep.size() + 1;
+                double[][] result = new double[p][p];
+                result[0][0] = this.count;
+                for (int a = 1; a < p; a++) {
+                    result[a][0] = this.count * this.means[a - 1];
+                    result[0][a] = result[a][0];
+                    for (int b = 1; b <= a; b++) {
+                        result[a][b] = comoment(a - 1, b - 1) + this.count * this.means[a - 1] * this.means[b - 1];
+                        result[b][a] = result[a][b];
+                    }
+                }
+                return result;
+            }
+        }
+
+        /**
+         * The sample covariance matrix of the independent variables followed
+         * by the dependent variable
+         */
+        public double[][] getCovariance() {
+            synchronized (LiveDataFrame.this) {
+                int k = this.columnIndexes.length;
+                double[][] result = new double[k][k];
+                for (int a = 0; a < k; a++) {
+                    for (int b = 0; b < k; b++) {
+                        result[a][b] = this.count < 2 ? Double.NaN : comoment(a, b) / (this.count - 1);
+                    }
+                }
+                return result;
+            }
+        }
+
+        /**
+         * Estimates the least squares linear model of the dependent variable
+         * on the independent variables, from the cross products alone
+         *
+         * @return the intercept under the key "intercept", followed by the
+         *         coefficient of every independent variable in order
+         * @throws IllegalArgumentException if there are too few complete rows,
+         *                                  or the independent variables are
+         *                                  linearly dependent
+         */
+        public Map<String, Double> estimateLinearModel() throws IllegalArgumentException {
+            synchronized (LiveDataFrame.this) {
+                int p = this.indep.size();
+                if (this.count <= p) {
+                    throw new IllegalArgumentException("Not enough complete rows to estimate the model");
+                }
+                // The slopes solve the centered normal equations Sxx b = Sxy
+                double[][] system = new double[p][p + 1];
+                for (int a = 0; a < p; a++) {
+                    for (int b = 0; b < p; b++) {
+                        system[a][b] = comoment(a, b);
+                    }
+                    system[a][p] = comoment(a, p);
+                }
+                double[] slopes = solve(system);
+                double intercept = this.means[p];
+                for (int a = 0; a < p; a++) {
+                    intercept -= slopes[a] * this.means[a];
+                }
+                Map<String, Double> result = new LinkedHashMap<>();
+                result.put("intercept", intercept);
+                for (int a = 0; a < p; a++) {
+                    result.put(this.indep.get(a), slopes[a]);
+                }
+                return result;
+            }
+        }
+
+        private double comoment(int a, int b) {
+            return a >= b ? this.comoments[a][b] : this.comoments[b][a];
+        }
+    }
+
+    /*
+     * Solves a linear system given as an augmented matrix by Gaussian
+     * elimination with partial pivoting. The matrix is overwritten. A pivot
+     * is taken as zero when it is below PIVOT_TOLERANCE times the largest
+     * diagonal entry of the original matrix: eliminating a predictor that is
+     * a linear combination of the others leaves only rounding errors of that
+     * size, rarely an exact zero.
+     */
+    private static double[] solve(double[][] system) throws IllegalArgumentException {
+        int n = system.length;
+        double largestDiagonal = 0;
+        for (int k = 0; k < n; k++) {
+            largestDiagonal = Math.max(largestDiagonal, Math.abs(system[k][k]));
+        }
+        double tolerance = PIVOT_TOLERANCE * largestDiagonal;
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(system[row][col]) > Math.abs(system[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (!(Math.abs(system[pivot][col]) > tolerance)) {
+                throw new IllegalArgumentException("The independent variables are linearly dependent");
+            }
+            double[] swap = system[col];
+            system[col] = system[pivot];
+            system[pivot] = swap;
+            for (int row = col + 1; row < n; row++) {
+                double factor = system[row][col] / system[col][col];
+                for (int k = col; k <= n; k++) {
+                    system[row][k] -= factor * system[col][k];
+                }
+            }
+        }
+        double[] result = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double value = system[row][n];
+            for (int k = row + 1; k < n; k++) {
+                value -= system[row][k] * result[k];
+            }
+            result[row] = value / system[row][row];
+        }
+        return result;
+    }
+
+    /**
+     * Takes a read-only view of the rows appended so far. The snapshot shares
+     * the column buffers without copying the values; rows appended later are
+     * not part of it.
+     *
+     * @return a data frame holding the rows appended so far
+     */
+    public synchronized DoubleDataFrame snapshot() {
+        List<DoubleColumn> columns = new ArrayList<>(this.buffers.length);
+        for (int j = 0; j < this.buffers.length; j++) {
+            long[] bitmap = this.validity[j] == null ? null
+                    : Arrays.copyOf(this.validity[j], ColumnStorage.wordCount(this.rowCount));
+            DoubleColumn column = new DoubleColumn(this.buffers[j], this.rowCount, bitmap);
+            column.markShared();
+            columns.add(column);
+        }
+        return new DoubleDataFrame(this.schema, columns, this.rowCount);
+    }
+
+    @Override
+    public synchronized long estimateMemoryBytes() {
+        long total = 0;
+        for (int j = 0; j < this.buffers.length; j++) {
+            total += DoubleColumn.estimateBytes(this.buffers[j].length);
+            if (this.validity[j] != null) {
+                total += ColumnStorage.arrayBytes(this.validity[j].length, 8);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized int getRowCount() {
+        return this.rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return this.schema.size();
+    }
+
+    @Override
+    public List<String> getColumnNames() {
+        return this.schema.names();
+    }
+
+    @Override
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * Rows cannot be changed once appended
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setValue(int rowIndex, String colName, Double value) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("A live data frame is append-only");
+    }
+
+    @Override
+    public synchronized Double getValue(int rowIndex, String colName) throws IndexOutOfBoundsException, IllegalArgumentException {
+        if (rowIndex < 0 || rowIndex >= this.rowCount) {
+            throw new IndexOutOfBoundsException("Invalid row index!");
+        }
+        int columnIndex = this.schema.requireIndex(colName);
+        return isValid(columnIndex, rowIndex) ? this.buffers[columnIndex][rowIndex] : null;
+    }
+
+    @Override
+    public DataVector<Double> getRow(int rowIndex) throws IndexOutOfBoundsException {
+        return snapshot().getRow(rowIndex);
+    }
+
+    @Override
+    public DataVector<Double> getColumn(String colName) throws IllegalArgumentException {
+        return snapshot().getColumn(colName);
+    }
+
+    @Override
+    public List<DataVector<Double>> getRows() {
+        return snapshot().getRows();
+    }
+
+    @Override
+    public List<DataVector<Double>> getColumns() {
+        return snapshot().getColumns();
+    }
+
+    @Override
+    public DataFrame<Double> expand(int additionalRows, List<String> newCols) throws IllegalArgumentException {
+        return snapshot().expand(additionalRows, newCols);
+    }
+
+    @Override
+    public DataFrame<Double> project(Collection<String> retainColumns) throws IllegalArgumentException {
+        return snapshot().project(retainColumns);
+    }
+
+    @Override
+    public DataFrame<Double> select(Predicate<DataVector<Double>> rowFilter) {
+        return snapshot().select(rowFilter);
+    }
+
+    @Override
+    public DataFrame<Double> appendRows(List<? extends DataFrame<Double>> others, boolean parallel) throws IllegalArgumentException {
+        return snapshot().appendRows(others, parallel);
+    }
+
+    @Override
+    public double[] toColumnArray(String column) throws IllegalArgumentException {
+        return snapshot().toColumnArray(column);
+    }
+
+    @Override
+    public DataFrame<Double> transpose() throws IllegalArgumentException {
+        return snapshot().transpose();
+    }
+
+    @Override
+    public DataFrame<Double> pivot(String index, String columns, String values, Aggregation aggregation) throws IllegalArgumentException {
+        return snapshot().pivot(index, columns, values, aggregation);
+    }
+
+    @Override
+    public TypedDataFrame melt(List<String> idVars, List<String> valueVars) throws IllegalArgumentException {
+        return snapshot().melt(idVars, valueVars);
+    }
+
+    @Override
+    public DataFrame<Double> sample(int n, long seed) throws IllegalArgumentException {
+        return snapshot().sample(n, seed);
+    }
+
+    @Override
+    public DataFrame<Double> computeColumn(String columnName, Function<DataVector<Double>, Double> function) {
+        return snapshot().computeColumn(columnName, function);
+    }
+
+    @Override
+    public DataVector<Double> summarize(String name, BinaryOperator<Double> summaryFunction) {
+        return snapshot().summarize(name, summaryFunction);
+    }
+
+    @Override
+    public DataFrame<Double> concat(DataFrame<Double> other) throws IllegalArgumentException {
+        return snapshot().concat(other);
+    }
+
+    @Override
+    public DataFrameStatistics statistics() throws UnsupportedOperationException {
+        return snapshot().statistics();
+    }
+
+    @Override
+    public DataFramePlotting plotting() throws UnsupportedOperationException {
+        return snapshot().plotting();
+    }
+
+    @Override
+    public List<DataVector<Double>> rows() {
+        return snapshot().rows();
+    }
+
+    @Override
+    public Spliterator<DataVector<Double>> spliterator() {
+        return snapshot().spliterator();
+    }
+
+    @Override
+    public DoubleStream doubleStream(String column) throws IllegalArgumentException {
+        return snapshot().doubleStream(column);
+    }
+
+    @Override
+    public String formatMatrix(int colWidth) {
+        return snapshot().formatMatrix(colWidth);
+    }
+
+    @Override
+    public void formatTo(Appendable out, FormatOptions options) throws IOException {
+        snapshot().formatTo(out, options);
+    }
+}
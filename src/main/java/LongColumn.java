@@ -0,0 +1,94 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage for a column of long values, such as identifiers or timestamps, using 8
+ * bytes per row.
+ */
+final class LongColumn extends ColumnStorage {
+
+    private final long[] values;
+
+    LongColumn(long[] values, int size) {
+        this(values, size, null);
+    }
+
+    LongColumn(long[] values, int size, long[] validity) {
+        super(size, validity);
+        if (size > values.length) {
+            throw new IllegalArgumentException("Column holds fewer than " + size + " values");
+        }
+        this.values = values;
+    }
+
+    @Override
+    long dataBytes() {
+        return arrayBytes(this.values.length, 8);
+    }
+
+    @Override
+    ColumnType type() {
+        return ColumnType.LONG;
+    }
+
+    long get(int rowIndex) {
+        return this.values[rowIndex];
+    }
+
+    void set(int rowIndex, long value) {
+        this.values[rowIndex] = value;
+        markValid(rowIndex);
+    }
+
+    @Override
+    Object getObject(int rowIndex) {
+        return isValid(rowIndex) ? Long.valueOf(this.values[rowIndex]) : null;
+    }
+
+    @Override
+    void setObject(int rowIndex, Object value) throws IllegalArgumentException {
+        if (value == null) {
+            this.values[rowIndex] = 0;
+            markMissing(rowIndex);
+            return;
+        }
+        if (!(value instanceof Number) || ((Number) value).longValue() != ((Number) value).doubleValue()) {
+            throw new IllegalArgumentException("Value " + value + " is not a long");
+        }
+        set(rowIndex, ((Number) value).longValue());
+    }
+
+    /**
+     * The backing array. Only the first size() entries belong to the column.
+     */
+    long[] values() {
+        return this.values;
+    }
+
+    @Override
+    LongColumn copy(int newSize) {
+        return new LongColumn(Arrays.copyOf(this.values, newSize), newSize, copyValidity(newSize));
+    }
+
+    @Override
+    LongColumn gather(int[] rowIndices, int count) {
+        long[] copy = new long[count];
+        for (int i = 0; i < count; i++) {
+            copy[i] = this.values[rowIndices[i]];
+        }
+        return new LongColumn(copy, count, gatherValidity(rowIndices, count));
+    }
+
+    @Override
+    LongColumn appendRows(List<? extends ColumnStorage> following) throws IllegalArgumentException {
+        int totalSize = appendedSize(following);
+        long[] values = new long[totalSize];
+        System.arraycopy(this.values, 0, values, 0, size());
+        int offset = size();
+        for (ColumnStorage column : following) {
+            System.arraycopy(((LongColumn) column).values, 0, values, offset, column.size());
+            offset += column.size();
+        }
+        return new LongColumn(values, totalSize, appendValidity(following, totalSize));
+    }
+}
@@ -1,5 +1,6 @@
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -7,6 +8,8 @@ import java.util.Map;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 
+import org.apache.commons.math3.linear.RealMatrix;
+
 public class MainTesting
 {
 
@@ -39,20 +42,237 @@ public class MainTesting
 
 	public static void main(String[] args) throws IOException
 	{
+		// POI logs through the Log4j 2 API; without a Log4j implementation on the
+		// class path, let the simple logger of log4j-api print its warnings
+		System.setProperty("log4j2.loggerContextFactory", "org.apache.logging.log4j.simple.SimpleLoggerContextFactory");
+		System.setProperty("log4j2.simplelogLevel", "WARN");
 		dataFrameCore();
 		dataFrameCoreSpeed();
 		dataVectors();
 		testRestructure();
+		testReshape();
 		testAnalysis();
+		testBuilder();
+		testTypedDataFrame();
+		testCompression();
+		testRolling();
+		testSchema();
+		testFormat();
+		testStreams();
+		testCSV();
+		testBlocks();
+		testApproximate();
+		testUnion();
+		testMatrix();
+		testKernels();
+		testConcurrent();
+		testMemory();
+		testLive();
+		testSharded();
+		testCheckpoint();
+		testResultCache();
 		// Extension 1
 //		testRandom();
 		// Extension 2
-//		testStatisticsPart1();
-//		testStatisticsPart2();
+		testStatisticsPart1();
+		testStatisticsPart2();
 		// Extension 3
 //		testPlotting();
+		testPlotFiles();
 		// Extension 4
-//		testExcelIO();
+		testExcelIO();
+		testMetrics();
+	}
+
+	/*
+	 * The test data frame with year as an int column and an extra category
+	 * column
+	 */
+	public static TypedDataFrame typedTestDataFrame()
+	{
+		return new TypedDataFrame(4)
+				.addIntColumn("year", new int[] { 2015, 2016, 2017, 2018 })
+				.addDoubleColumn("revenue", new double[] { 70021.35, 67008.12, 10632.83, 85216.33 })
+				.addDoubleColumn("costs", new double[] { 25071.12, 108632.80, 37816.8, 31863.73 })
+				.addCategoryColumn("region", new String[] { "north", "south", "north", "east" });
+	}
+
+	public static void testTypedDataFrame()
+	{
+		TypedDataFrame df = typedTestDataFrame();
+		df.print();
+		System.out.println(df.getColumnType("year") + " " + df.getValue(1, "year"));
+		System.out.println(df.countByCategory("region"));
+		df.selectCategory("region", "north").print();
+		df.setValue(3, "region", "west");
+		System.out.println(df.countByCategory("region"));
+		df.toDoubleDataFrame().print();
+	}
+
+	public static void testCompression()
+	{
+		int size = 100000;
+		DoubleDataFrameBuilder builder = new DoubleDataFrameBuilder("timestamp", "sensor", "status", "reading");
+		for (int i = 0; i < size; i++)
+		{
+			builder.appendRow(1600000000L + 15 * i, i % 8, i < size / 2 ? 0 : 1, Math.sin(i));
+		}
+		CompressedDoubleDataFrame df = builder.buildCompressed();
+		for (String colName : df.getColumnNames())
+		{
+			System.out.println(colName + ": " + df.getEncoding(colName));
+		}
+		System.out.println("Encoded bytes: " + df.getEncodedBytes() + " of " + 8L * size * df.getColumnCount());
+		System.out.println(df.summarize("sum", Aggregation.SUM).asMap());
+		System.out.println(df.summarize("max", Aggregation.MAX).asMap());
+		System.out.println(df.select("status", x -> x > 0).getRowCount());
+		System.out.println(df.select("sensor", x -> x == 3).summarize("count", Aggregation.COUNT).asMap());
+	}
+
+	public static void testRolling()
+	{
+		DataFrame<Double> df = sampledDataFrame();
+		System.out.println(df.rolling("uniform1", 3).mean().getValues());
+		System.out.println(df.rolling("uniform1", 3).max().getValues());
+		System.out.println(df.rolling("exponential", 4).std().getValues());
+		System.out.println(df.expanding("normal1").sum().getValues());
+	}
+
+	public static void testSchema()
+	{
+		DataFrame<Double> df = testDataFrame();
+		DataFrame<Double> other = testDataFrame();
+		System.out.println(df.getSchema() == other.getSchema());
+		DataFrame<Double> expanded = df.expand(0, "profit");
+		System.out.println(expanded.getSchema() == df.getSchema().plus("profit"));
+		System.out.println(expanded.project("costs", "year").getSchema() == Schema.of("year", "costs"));
+		System.out.println(df.getSchema().indexOf("costs") + " " + df.getSchema());
+	}
+
+	public static void testStreams()
+	{
+		DataFrame<Double> df = sampledDataFrame();
+		System.out.println(df.doubleStream("exponential").sum());
+		System.out.println(df.doubleStream("uniform1").parallel().max().getAsDouble());
+		System.out.println(df.stream()
+				.parallel()
+				.filter(row -> row.getValue("normal1") > 0)
+				.count());
+		System.out.println(df.rows().get(3).getValue("uniform2"));
+	}
+
+	public static void testCSV() throws IOException
+	{
+		File directory = java.nio.file.Files.createTempDirectory("dataframes").toFile();
+		DataFrame<Double> df = testDataFrame();
+		for (int k = 0; k < 3; k++)
+		{
+			FileTools.writeCSV(df, new File(directory, "part" + k + ".csv"));
+		}
+		DataFrame<Double> read = FileTools.readCSVDirectory(directory, "*.csv");
+		System.out.println(read.getRowCount() + " " + read.getColumnNames());
+		System.out.println(read.getRow(9).asMap());
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public static void testBlocks() throws IOException
+	{
+		DoubleDataFrameBuilder builder = new DoubleDataFrameBuilder("id", "year", "price");
+		for (int i = 0; i < 10000; i++)
+		{
+			builder.appendRow(i, 2000 + i / 500, (i * 7919) % 1000);
+		}
+		DataFrame<Double> df = builder.build();
+		df.setValue(9999, "price", null);
+		File f = File.createTempFile("mydata", ".dfb");
+		FileTools.writeBlocks(df, f, 1000);
+		DataFrame<Double> read = FileTools.readBlocks(f, Arrays.asList("id", "price"),
+				Arrays.asList(ColumnPredicate.of("year", Comparison.GREATER_OR_EQUAL, 2019),
+						ColumnPredicate.of("price", Comparison.LESS, 100)));
+		System.out.println(read.getRowCount() + " " + read.getColumnNames());
+		System.out.println(read.getRow(0).asMap());
+		System.out.println(FileTools.read(f).getValue(9999, "price"));
+		f.delete();
+	}
+
+	public static void testApproximate()
+	{
+		DataFrame<Double> df = sampledDataFrame();
+		double[] quantiles = df.statistics().approxQuantiles("exponential", new double[] { 0.25, 0.5, 0.75 }, 0.01);
+		System.out.println(Arrays.toString(quantiles));
+		System.out.println(df.statistics().describe("exponential").getPercentile(50));
+		DataFrame<Double> sample = df.sample(5, 42);
+		System.out.println(sample.getRowCount() + " " + sample.getColumn("uniform1").getValues());
+	}
+
+	public static void testUnion()
+	{
+		DataFrame<Double> df = testDataFrame();
+		DataFrame<Double> union = DataFrame.union(Arrays.asList(df, df.select(row -> row.getValue("year") > 2016), df),
+				true);
+		System.out.println(union.getRowCount() + " " + union.getColumn("year").getValues());
+	}
+
+	public static void testMatrix()
+	{
+		DataFrame<Double> df = testDataFrame();
+		System.out.println(Arrays.toString(df.toColumnArray("revenue")));
+		RealMatrix matrix = DataFrameMatrices.asRealMatrix(df, "revenue", "costs");
+		System.out.println(matrix.transpose().multiply(matrix));
+		try
+		{
+			matrix.transpose().setEntry(0, 0, 0);
+		} catch (UnsupportedOperationException ex)
+		{
+			System.out.println(ex.getMessage() + ": " + df.getValue(0, "revenue"));
+		}
+	}
+
+	public static void testKernels()
+	{
+		DoubleDataFrame df = (DoubleDataFrame) testDataFrame();
+		df = df.computeColumn("profit", "revenue", Arithmetic.SUBTRACT, "costs");
+		System.out.println(df.getColumn("profit").getValues());
+		System.out.println(df.select("profit", Comparison.GREATER, 0).getColumn("year").getValues());
+		System.out.println(df.computeMultiplyAdd("check", "year", "year", "profit").getColumn("check").getValues());
+		System.out.println(df.summarize("sum", Aggregation.SUM).asMap());
+	}
+
+	public static void testMemory()
+	{
+		DoubleDataFrame df = (DoubleDataFrame) testDataFrame();
+		System.out.println(df.estimateMemoryBytes() + " " + df.compress().estimateMemoryBytes());
+		// A budget this small spills every column that an operation does not read
+		MemoryManager.setBudget(0);
+		DoubleDataFrame profit = df.computeColumn("profit", "revenue", Arithmetic.SUBTRACT, "costs");
+		DoubleDataFrame margin = profit.computeColumn("margin", "profit", Arithmetic.MULTIPLY, "year");
+		// Spills the columns of profit, which are read back below
+		DoubleDataFrame recent = margin.select("year", Comparison.GREATER, 2016);
+		System.out.println(MemoryManager.getSpillCount() > 0);
+		System.out.println(profit.getColumn("profit").getValues());
+		System.out.println(recent.getColumn("margin").getValues());
+		MemoryManager.setBudget(MemoryManager.UNLIMITED);
+	}
+
+	public static void testLive()
+	{
+		LiveDataFrame live = new LiveDataFrame("year", "revenue", "costs");
+		LiveDataFrame.ColumnSummary revenue = live.trackSummary("revenue");
+		LiveDataFrame.CrossProducts model = live.trackCrossProducts("costs", "year", "revenue");
+		for (DataVector<Double> row : testDataFrame().getRows())
+		{
+			live.append(row);
+		}
+		LiveDataFrame.GroupCounts years = live.trackGroupCounts("year");
+		live.append(2018, 90000, 50000);
+		System.out.println(revenue.getCount() + " " + revenue.getMean() + " " + revenue.getVariance());
+		System.out.println(years.getCounts());
+		System.out.println(model.estimateLinearModel());
+		System.out.println(live.snapshot().statistics().estimateLinearModel("costs", "year", "revenue"));
 	}
 
 	public static void dataFrameCore()
@@ -119,6 +339,55 @@ public class MainTesting
 		}
 	}
 
+	public static void testSharded() throws IOException
+	{
+		try (ShardCluster cluster = ShardCluster.start(2))
+		{
+			ShardedDataFrame sharded = cluster.distribute(testDataFrame());
+			ShardedDataFrame profit = sharded.select(ColumnPredicate.of("year", Comparison.GREATER, 2015))
+					.computeColumn("profit", "revenue", Arithmetic.SUBTRACT, "costs");
+			System.out.println(Arrays.toString(profit.getShardRowCounts()));
+			System.out.println(profit.summarize("sum", Aggregation.SUM).asMap());
+			profit.groupBy("year", "profit", Aggregation.MAX).print();
+			profit.collect().print();
+		}
+	}
+
+	public static void testCheckpoint() throws IOException
+	{
+		File directory = Files.createTempDirectory("checkpoint").toFile();
+		DoubleDataFrame df = (DoubleDataFrame) testDataFrame();
+		try (FrameCheckpoint checkpoint = FrameCheckpoint.create(df, directory))
+		{
+			df.setValue(1, "costs", 0d);
+			df.setValue(3, "revenue", null);
+			System.out.println(checkpoint.checkpoint() + " blocks written");
+		}
+		try (FrameCheckpoint checkpoint = FrameCheckpoint.recover(directory))
+		{
+			checkpoint.getFrame().print();
+			checkpoint.compact();
+		}
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public static void testResultCache()
+	{
+		DoubleDataFrame df = (DoubleDataFrame) testDataFrame();
+		ResultCache cache = new ResultCache(1 << 20);
+		df.setResultCache(cache);
+		df.computeColumn("profit", "revenue", Arithmetic.SUBTRACT, "costs").print();
+		df.computeColumn("profit", "revenue", Arithmetic.SUBTRACT, "costs").print();
+		df.select("year", Comparison.GREATER, 2016).print();
+		df.setValue(3, "costs", 0d);
+		df.select("year", Comparison.GREATER, 2016).print();
+		System.out.println(cache.getHits() + " hits, " + cache.getMisses() + " misses");
+	}
+
 	public static void testRestructure()
 	{
 		DataFrame<Double> df = testDataFrame();
@@ -138,6 +407,19 @@ public class MainTesting
 		System.out.println(!df.getValue(1, "costs").equals(0d));
 	}
 
+	public static void testReshape()
+	{
+		DataFrame<Double> df = testDataFrame();
+		df.transpose().print();
+		DataFrame<Double> sales = new DoubleDataFrame(Arrays.asList("year", "store", "revenue"),
+				new double[][] { { 2017, 1, 10 }, { 2017, 2, 20 }, { 2018, 1, 30 }, { 2018, 1, 5 }, { 2018, 2, 40 } });
+		DataFrame<Double> wide = sales.pivot("year", "store", "revenue", Aggregation.SUM);
+		wide.print();
+		TypedDataFrame tall = wide.melt(Arrays.asList("year"), Arrays.asList("1", "2"));
+		tall.print();
+		tall.pivot("year", "variable", "value", Aggregation.MAX).print();
+	}
+
 	public static void testAnalysis()
 	{
 		DataFrame<Double> df = testDataFrame();
@@ -153,6 +435,41 @@ public class MainTesting
 		df2.summarize("min", Math::min).print();
 	}
 
+	public static void testBuilder()
+	{
+		int size = 1000000;
+		long time = System.currentTimeMillis();
+		DoubleDataFrameBuilder builder = new DoubleDataFrameBuilder("year", "revenue", "costs");
+		for (int i = 0; i < size; i++)
+		{
+			builder.appendRow(2015 + i % 4, 1000d * i, 500d * i);
+		}
+		builder.appendColumnBatch(new double[] { 2019, 2020 }, new double[] { 1, 2 }, new double[] { 3, 4 });
+		DataFrame<Double> df = builder.build();
+		time = System.currentTimeMillis() - time;
+		System.out.println("Building time: " + time + "ms");
+		System.out.println(df.getRowCount() == size + 2);
+		System.out.println(df.getValue(size + 1, "costs").equals(4d));
+	}
+
+	public static void testMetrics()
+	{
+		MetricsRecorder recorder = new MetricsRecorder();
+		DataFrameMetrics.addListener(recorder);
+		try
+		{
+			DataFrame<Double> df = sampledDataFrame();
+			df = df.computeColumn("sum", row -> row.getValue("uniform1") + row.getValue("uniform2"));
+			df.select(row -> row.getValue("normal1") > 0).summarize("max", Math::max);
+			df.statistics().describe("sum");
+		} finally
+		{
+			DataFrameMetrics.removeListener(recorder);
+		}
+		System.out.println(recorder.getCount("computeColumn") == 1);
+		System.out.print(recorder.report());
+	}
+
 //	public static void testRandom()
 //	{
 //		int rows = 10;
@@ -207,19 +524,106 @@ public class MainTesting
 		}
 	}
 
-//	public static void testExcelIO()
-//	{
-//		DataFrame<Double> df = testDataFrame();
-//		try
-//		{
-//			File f = new File("mydata.xlsx");
-//			FileTools.writeToXLSX(df, new File("mydata.xlsx"));
-//			DataFrame<Double> read = FileTools.readFromXLSX(f);
-//			read.print();
-//		} catch (IOException ex)
-//		{
-//			ex.printStackTrace();
-//		}
-//	}
+	public static void testPlotFiles() throws IOException
+	{
+		DataFrame<Double> df = sampledDataFrame();
+		// Infinity has no bin and no place on the axes, so it is left out
+		df.setValue(3, "exponential", Double.POSITIVE_INFINITY);
+		File scatter = File.createTempFile("scatter", ".png");
+		File histogram = File.createTempFile("histogram", ".png");
+		df.plotting().saveScatter(scatter, "My Fancy Plot", "uniform1", "exponential");
+		df.plotting().saveHistogram(histogram, "A Histogram", "exponential", 5);
+		System.out.println((scatter.length() > 0) + " " + (histogram.length() > 0));
+		scatter.delete();
+		histogram.delete();
+
+		List<PlotSpec> specs = new ArrayList<>();
+		for (String colName : Arrays.asList("uniform1", "uniform2", "normal1"))
+		{
+			specs.add(PlotSpec.histogram(File.createTempFile(colName, ".png"), colName, colName, 4));
+			specs.add(PlotSpec.scatter(File.createTempFile(colName, ".png"), colName, colName, "normal2"));
+		}
+		df.plotting().saveAll(specs);
+		for (PlotSpec spec : specs)
+		{
+			System.out.print(spec.getOutputFile().length() > 0 ? "." : "!");
+			spec.getOutputFile().delete();
+		}
+		System.out.println();
+	}
+
+	public static void testFormat() throws IOException
+	{
+		double[][] data = new double[1000][2];
+		for (int i = 0; i < data.length; i++)
+		{
+			data[i][0] = i;
+			data[i][1] = i * i;
+		}
+		DataFrame<Double> df = new DoubleDataFrame(Arrays.asList("x", "square"), data);
+		df.print(FormatOptions.headTail(10, 3, 2));
+		df.getColumn("square").print(FormatOptions.truncated(8, 6));
+		StringBuilder sb = new StringBuilder();
+		df.formatTo(sb, FormatOptions.PREVIEW);
+		System.out.println(sb.toString().split("\n").length + " lines");
+	}
+
+	public static void testConcurrent()
+	{
+		int rows = 100000;
+		ConcurrentDoubleDataFrame df = new ConcurrentDoubleDataFrame(
+				new DoubleDataFrame(Arrays.asList("step"), new double[rows][1]));
+		// A single writer fills the rows in order, so every snapshot holds a prefix
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < rows; i++)
+			{
+				df.setValue(i, "step", 1d);
+			}
+		});
+		writer.start();
+		boolean consistent = true;
+		int snapshots = 0;
+		while (writer.isAlive() || snapshots == 0)
+		{
+			DoubleDataFrame snapshot = df.snapshot();
+			double[] steps = snapshot.toColumnArray("step");
+			int written = 0;
+			while (written < rows && steps[written] == 1)
+			{
+				written++;
+			}
+			for (int i = written; i < rows; i++)
+			{
+				consistent &= steps[i] == 0;
+			}
+			snapshots++;
+		}
+		try
+		{
+			writer.join();
+		} catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		System.out.println("Snapshots consistent: " + consistent + ", last value " + df.getValue(rows - 1, "step"));
+	}
+
+	public static void testExcelIO()
+	{
+		DataFrame<Double> df = testDataFrame();
+		df.setValue(2, "costs", null);
+		try
+		{
+			File f = File.createTempFile("mydata", ".xlsx");
+			FileTools.write(df, f);
+			DataFrame<Double> read = FileTools.read(f);
+			read.print();
+			System.out.println(read.getValue(2, "costs") + " " + read.statistics().describe("revenue").getMean());
+			f.delete();
+		} catch (IOException ex)
+		{
+			ex.printStackTrace();
+		}
+	}
 
 }
@@ -0,0 +1,418 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the columns of all DoubleDataFrames within a memory budget.
+ *
+ * When a budget is set, every column that a DoubleDataFrame creates is
+ * tracked. Before an operation such as expand(), computeColumn() or select()
+ * allocates its result, it reserves the bytes of the result here. If the
+ * tracked columns and the reservation together exceed the budget, the least
+ * recently used columns are written to temporary files and their arrays are
+ * dropped. A spilled column reads its file back the next time it is accessed,
+ * which may in turn spill other columns.
+ *
+ * Usage:
+ *
+ * <pre>
+ * MemoryManager.setBudget(512L &lt;&lt; 20);
+ * // ... run the pipeline ...
+ * MemoryManager.setBudget(MemoryManager.UNLIMITED);
+ * </pre>
+ *
+ * The budget is a target rather than a hard limit: an operation pins the
+ * columns that it reads before it reads the first value, and pinned columns
+ * are never spilled, also not by the reloads and reservations of other
+ * operations. An operation whose inputs and result exceed the budget still
+ * runs. Recency is tracked per operation and per reload, not per value read.
+ * Without a budget, the only cost is a single volatile read per operation.
+ *
+ * Spill files are deleted when their column is read back or garbage
+ * collected. The files that are left when the JVM exits are deleted by a
+ * shutdown hook, which is only registered once the first column is spilled.
+ */
+public final class MemoryManager {
+
+    /**
+     * The budget that disables tracking and spilling
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    // The number of bytes written or read at a time
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static volatile long budget = UNLIMITED;
+    // null for the default temporary directory
+    private static volatile Path spillDirectory;
+
+    private static final Set<Handle> HANDLES = ConcurrentHashMap.newKeySet();
+    // Spill files of collected columns that could not be deleted right away
+    private static final Set<Path> LEFTOVER_FILES = ConcurrentHashMap.newKeySet();
+    private static final ReferenceQueue<DoubleColumn> COLLECTED = new ReferenceQueue<>();
+    private static final AtomicLong CLOCK = new AtomicLong();
+    private static final AtomicLong RESIDENT_BYTES = new AtomicLong();
+    private static final AtomicLong SPILLED_BYTES = new AtomicLong();
+    private static final AtomicLong SPILL_COUNT = new AtomicLong();
+    private static final AtomicLong RELOAD_COUNT = new AtomicLong();
+    // Only one thread at a time chooses and spills columns
+    private static final Object SPILL_LOCK = new Object();
+    private static final AtomicBoolean CLEANUP_REGISTERED = new AtomicBoolean();
+
+    private MemoryManager() {
+    }
+
+    /*
+     * Columns that an operation keeps in memory until it releases them
+     */
+    static final class Pin {
+
+        private static final Pin NONE = new Pin(Collections.emptyList());
+
+        private final List<DoubleColumn> columns;
+        private boolean released;
+
+        private Pin(List<DoubleColumn> columns) {
+            this.columns = columns;
+        }
+
+        /**
+         * Allows the columns to be spilled again. Releasing twice has no
+         * effect.
+         */
+        synchronized void release() {
+            if (!this.released) {
+                this.released = true;
+                for (DoubleColumn column : this.columns) {
+                    column.unpin();
+                }
+            }
+        }
+    }
+
+    /*
+     * The tracking state of one column. It refers to the column weakly, so
+     * that the spill file of a column that is no longer used can be deleted.
+     * The fields are changed by the column while it holds its own lock.
+     */
+    static final class Handle extends WeakReference<DoubleColumn> {
+        // The bytes of the values array, in memory or in the file
+        long bytes;
+        // Set while the column is spilled
+        volatile Path file;
+        volatile long lastUse;
+
+        private Handle(DoubleColumn column, long bytes) {
+            super(column, COLLECTED);
+            this.bytes = bytes;
+            this.lastUse = CLOCK.incrementAndGet();
+        }
+
+        /*
+         * Writes the values to a new spill file
+         */
+        void spill(double[] values, int size) throws IOException {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("memory.spill", size);
+            if (CLEANUP_REGISTERED.compareAndSet(false, true)) {
+                Runtime.getRuntime().addShutdownHook(new Thread(MemoryManager::deleteSpillFiles, "spill-cleanup"));
+            }
+            Path directory = spillDirectory;
+            Path spill = directory == null ? Files.createTempFile("column", ".spill")
+                    : Files.createTempFile(directory, "column", ".spill");
+            try {
+                writeValues(spill, values, size);
+            } catch (IOException ex) {
+                Files.deleteIfExists(spill);
+                throw ex;
+            }
+            this.file = spill;
+            RESIDENT_BYTES.addAndGet(-this.bytes);
+            SPILLED_BYTES.addAndGet(this.bytes);
+            SPILL_COUNT.incrementAndGet();
+            DataFrameMetrics.finish(timer, size, false);
+        }
+
+        /*
+         * Reads the values back from the spill file and deletes it
+         *
+         * @throws UncheckedIOException if the file cannot be read
+         */
+        double[] reload(int size) throws UncheckedIOException {
+            DataFrameMetrics.Timer timer = DataFrameMetrics.start("memory.reload", size);
+            double[] values;
+            try {
+                values = readValues(this.file, size);
+                Files.deleteIfExists(this.file);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot reload a spilled column", ex);
+            }
+            this.file = null;
+            SPILLED_BYTES.addAndGet(-this.bytes);
+            this.bytes = ColumnStorage.arrayBytes(size, 8);
+            RESIDENT_BYTES.addAndGet(this.bytes);
+            RELOAD_COUNT.incrementAndGet();
+            this.lastUse = CLOCK.incrementAndGet();
+            DataFrameMetrics.finish(timer, size, false);
+            return values;
+        }
+    }
+
+    /**
+     * Sets the number of bytes that the columns of the data frames should
+     * occupy, and spills columns right away if they occupy more. Only columns
+     * created while a budget is set are tracked.
+     *
+     * @param bytes the budget, or UNLIMITED to stop tracking and spilling;
+     *              columns that were spilled stay spilled until accessed
+     * @throws IllegalArgumentException if the budget is negative
+     */
+    public static void setBudget(long bytes) throws IllegalArgumentException {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The memory budget cannot be negative");
+        }
+        budget = bytes;
+        reserve(0, new ArrayList<>());
+    }
+
+    public static long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Whether a budget is set
+     */
+    public static boolean isEnabled() {
+        return budget != UNLIMITED;
+    }
+
+    /**
+     * Sets the directory of the spill files
+     *
+     * @param directory an existing directory, or null for the default
+     *                  temporary directory
+     */
+    public static void setSpillDirectory(Path directory) {
+        spillDirectory = directory;
+    }
+
+    /**
+     * The number of bytes of the values of the tracked columns that are in
+     * memory
+     */
+    public static long getResidentBytes() {
+        drainCollected();
+        return RESIDENT_BYTES.get();
+    }
+
+    /**
+     * The number of bytes of the values of the tracked columns that are
+     * spilled to disk
+     */
+    public static long getSpilledBytes() {
+        drainCollected();
+        return SPILLED_BYTES.get();
+    }
+
+    /**
+     * The number of times a column was spilled to disk
+     */
+    public static long getSpillCount() {
+        return SPILL_COUNT.get();
+    }
+
+    /**
+     * The number of times a spilled column was read back
+     */
+    public static long getReloadCount() {
+        return RELOAD_COUNT.get();
+    }
+
+    /**
+     * Starts tracking columns, if a budget is set. Columns that are tracked
+     * already are skipped.
+     */
+    static void track(Collection<DoubleColumn> columns) {
+        if (!isEnabled()) {
+            return;
+        }
+        drainCollected();
+        for (DoubleColumn column : columns) {
+            column.track();
+        }
+    }
+
+    /*
+     * Called by a column that starts being tracked
+     */
+    static Handle register(DoubleColumn column, long bytes) {
+        Handle handle = new Handle(column, bytes);
+        HANDLES.add(handle);
+        RESIDENT_BYTES.addAndGet(bytes);
+        return handle;
+    }
+
+    /**
+     * Keeps columns in memory until the returned pin is released, if a budget
+     * is set. An operation pins its input columns before it reads them and
+     * releases them in a finally block when it is done.
+     */
+    static Pin pin(Collection<DoubleColumn> columns) {
+        if (!isEnabled()) {
+            return Pin.NONE;
+        }
+        List<DoubleColumn> pinned = new ArrayList<>(columns);
+        for (DoubleColumn column : pinned) {
+            column.pin();
+        }
+        return new Pin(pinned);
+    }
+
+    /**
+     * Makes room for a number of bytes that is about to be allocated, by
+     * spilling the least recently used columns that are neither in use nor
+     * pinned
+     *
+     * @param bytes the number of bytes to allocate
+     * @param inUse the columns that the allocating operation reads; they are
+     *              marked as used and are not spilled
+     */
+    static void reserve(long bytes, Collection<DoubleColumn> inUse) {
+        long limit = budget;
+        if (limit == UNLIMITED) {
+            return;
+        }
+        drainCollected();
+        long now = CLOCK.incrementAndGet();
+        for (DoubleColumn column : inUse) {
+            column.touch(now);
+        }
+        if (RESIDENT_BYTES.get() + bytes <= limit) {
+            return;
+        }
+        synchronized (SPILL_LOCK) {
+            Set<DoubleColumn> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+            kept.addAll(inUse);
+            List<Handle> candidates = new ArrayList<>();
+            for (Handle handle : HANDLES) {
+                if (handle.file == null) {
+                    candidates.add(handle);
+                }
+            }
+            candidates.sort(Comparator.comparingLong(handle -> handle.lastUse));
+            for (Handle handle : candidates) {
+                if (RESIDENT_BYTES.get() + bytes <= limit) {
+                    break;
+                }
+                DoubleColumn column = handle.get();
+                if (column != null && !kept.contains(column)) {
+                    try {
+                        column.spill();
+                    } catch (IOException ex) {
+                        // The column stays in memory; the budget is a target
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Forgets the columns that were garbage collected and deletes their files
+     */
+    private static void drainCollected() {
+        Handle handle;
+        while ((handle = (Handle) COLLECTED.poll()) != null) {
+            if (HANDLES.remove(handle)) {
+                Path file = handle.file;
+                if (file == null) {
+                    RESIDENT_BYTES.addAndGet(-handle.bytes);
+                }
+                else {
+                    SPILLED_BYTES.addAndGet(-handle.bytes);
+                    deleteSpillFile(file);
+                }
+            }
+        }
+    }
+
+    private static void deleteSpillFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            // Tried again when the JVM exits
+            LEFTOVER_FILES.add(file);
+        }
+    }
+
+    /*
+     * Deletes the spill files of the columns that are still spilled and the
+     * files that could not be deleted before. Run when the JVM exits.
+     */
+    private static void deleteSpillFiles() {
+        for (Handle handle : HANDLES) {
+            Path file = handle.file;
+            if (file != null) {
+                deleteSpillFile(file);
+            }
+        }
+        for (Path file : LEFTOVER_FILES) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ex) {
+                // Nothing left to try
+            }
+        }
+    }
+
+    private static void writeValues(Path file, double[] values, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        DoubleBuffer doubles = buffer.asDoubleBuffer();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (int offset = 0; offset < size; offset += doubles.capacity()) {
+                int count = Math.min(doubles.capacity(), size - offset);
+                doubles.clear();
+                doubles.put(values, offset, count);
+                buffer.clear().limit(count * 8);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    private static double[] readValues(Path file, int size) throws IOException {
+        double[] values = new double[size];
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        DoubleBuffer doubles = buffer.asDoubleBuffer();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int offset = 0; offset < size; offset += doubles.capacity()) {
+                int count = Math.min(doubles.capacity(), size - offset);
+                buffer.clear().limit(count * 8);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("Spill file " + file + " is truncated");
+                    }
+                }
+                doubles.clear();
+                doubles.get(values, offset, count);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A listener that aggregates the measurements of data frame operations per
+ * operation name. Wall times are kept in a histogram with power-of-two
+ * buckets, from which approximate percentiles are reported. Recording an
+ * event only updates a few counters and never blocks.
+ *
+ * Usage:
+ *
+ * <pre>
+ * MetricsRecorder recorder = new MetricsRecorder();
+ * DataFrameMetrics.addListener(recorder);
+ * // ... run the pipeline ...
+ * System.out.println(recorder.report());
+ * </pre>
+ */
+public class MetricsRecorder implements DataFrameListener {
+
+    private static final int BUCKETS = 64;
+
+    private final Map<String, OperationStats> statistics = new ConcurrentHashMap<>();
+
+    /*
+     * The aggregated measurements of one operation
+     */
+    private static final class OperationStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder parallelCount = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder rowsIn = new LongAdder();
+        final LongAdder rowsOut = new LongAdder();
+        final LongAdder bytesAllocated = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        // Bucket b counts wall times in [2^b, 2^(b+1)) nanoseconds
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void record(OperationEvent event) {
+            long nanos = Math.max(1, event.getWallTimeNanos());
+            this.count.increment();
+            if (event.isParallel()) {
+                this.parallelCount.increment();
+            }
+            this.totalNanos.add(nanos);
+            this.rowsIn.add(event.getRowsIn());
+            this.rowsOut.add(event.getRowsOut());
+            if (event.getBytesAllocated() > 0) {
+                this.bytesAllocated.add(event.getBytesAllocated());
+            }
+            this.maxNanos.accumulate(nanos);
+            this.histogram.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos));
+        }
+
+        /*
+         * Upper bound of the bucket that holds the given fraction of events
+         */
+        long percentileNanos(double fraction) {
+            long total = 0;
+            long[] counts = new long[BUCKETS];
+            for (int b = 0; b < BUCKETS; b++) {
+                counts[b] = this.histogram.get(b);
+                total += counts[b];
+            }
+            long threshold = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += counts[b];
+                if (seen >= threshold && counts[b] > 0) {
+                    return b >= 62 ? Long.MAX_VALUE : 1L << (b + 1);
+                }
+            }
+            return 0;
+        }
+    }
+
+    @Override
+    public void operationCompleted(OperationEvent event) {
+        this.statistics.computeIfAbsent(event.getOperation(), name -> new OperationStats()).record(event);
+    }
+
+    /**
+     * The number of times an operation was recorded
+     *
+     * @param operation the name of the operation
+     * @return the number of recorded events
+     */
+    public long getCount(String operation) {
+        OperationStats stats = this.statistics.get(operation);
+        return stats == null ? 0 : stats.count.sum();
+    }
+
+    /**
+     * The total wall time recorded for an operation
+     *
+     * @param operation the name of the operation
+     * @return the total wall time in nanoseconds
+     */
+    public long getTotalNanos(String operation) {
+        OperationStats stats = this.statistics.get(operation);
+        return stats == null ? 0 : stats.totalNanos.sum();
+    }
+
+    /**
+     * Forgets all recorded measurements
+     */
+    public void reset() {
+        this.statistics.clear();
+    }
+
+    /**
+     * Produces a text report with one line per operation
+     *
+     * @return the report
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            dumpTo(sb);
+        } catch (IOException ex) {
+            // A StringBuilder never throws
+            throw new UncheckedIOException(ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a text report with one line per operation, sorted by operation
+     * name. Percentiles are upper bounds of histogram buckets, capped by the
+     * maximum, so they are accurate within a factor of two.
+     *
+     * @param out the destination of the report
+     * @throws IOException if the destination cannot be written to
+     */
+    public void dumpTo(Appendable out) throws IOException {
+        String header = "%-28s %8s %10s %10s %10s %10s %10s %12s %12s %10s %5s%n";
+        String line = "%-28s %8d %10.3f %10.3f %10.3f %10.3f %10.3f %12d %12d %10.2f %4d%%%n";
+        out.append(String.format(Locale.ROOT, header, "operation", "count", "total ms", "mean ms", "p50 ms",
+                "p99 ms", "max ms", "rows in", "rows out", "alloc MB", "par"));
+        for (Map.Entry<String, OperationStats> entry : new TreeMap<>(this.statistics).entrySet()) {
+            OperationStats stats = entry.getValue();
+            long count = stats.count.sum();
+            if (count == 0) {
+                continue;
+            }
+            long total = stats.totalNanos.sum();
+            long max = stats.maxNanos.get();
+            out.append(String.format(Locale.ROOT, line, entry.getKey(), count,
+                    total / 1e6,
+                    total / 1e6 / count,
+                    Math.min(stats.percentileNanos(0.5), max) / 1e6,
+                    Math.min(stats.percentileNanos(0.99), max) / 1e6,
+                    max / 1e6,
+                    stats.rowsIn.sum(),
+                    stats.rowsOut.sum(),
+                    stats.bytesAllocated.sum() / (1024.0 * 1024.0),
+                    100 * stats.parallelCount.sum() / count));
+        }
+    }
+}
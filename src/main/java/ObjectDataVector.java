@@ -0,0 +1,44 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ObjectDataVector implements DataVector<Object> {
+
+    private String name;
+    private Map<String, Object> dataMap;
+
+    public ObjectDataVector(String name, List<String> entryNames, List<Object> data) {
+        this.name = name;
+        // Associate entry name with its value and put into a map
+        this.dataMap = new LinkedHashMap<>();
+        for (int i = 0; i < entryNames.size(); i++) {
+            this.dataMap.put(entryNames.get(i), data.get(i));
+        }
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public List<String> getEntryNames() {
+        return new ArrayList<>(this.dataMap.keySet());
+    }
+
+    @Override
+    public Object getValue(String entryName) {
+        return this.dataMap.get(entryName);
+    }
+
+    @Override
+    public List<Object> getValues() {
+        return new ArrayList<>(this.dataMap.values());
+    }
+
+    @Override
+    public Map<String, Object> asMap() {
+        return this.dataMap;
+    }
+}
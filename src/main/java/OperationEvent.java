@@ -0,0 +1,70 @@
+/**
+ * The measurements of a single completed data frame operation, as reported to
+ * a {@link DataFrameListener}.
+ */
+public final class OperationEvent {
+
+    /**
+     * Value of getBytesAllocated() when the JVM cannot measure allocations
+     */
+    public static final long UNKNOWN_BYTES = -1;
+
+    private final String operation;
+    private final long wallTimeNanos;
+    private final long rowsIn;
+    private final long rowsOut;
+    private final long bytesAllocated;
+    private final boolean parallel;
+
+    public OperationEvent(String operation, long wallTimeNanos, long rowsIn, long rowsOut, long bytesAllocated,
+            boolean parallel) {
+        this.operation = operation;
+        this.wallTimeNanos = wallTimeNanos;
+        this.rowsIn = rowsIn;
+        this.rowsOut = rowsOut;
+        this.bytesAllocated = bytesAllocated;
+        this.parallel = parallel;
+    }
+
+    /**
+     * The name of the operation, for example "select" or "statistics.describe"
+     *
+     * @return the operation name
+     */
+    public String getOperation() {
+        return this.operation;
+    }
+
+    public long getWallTimeNanos() {
+        return this.wallTimeNanos;
+    }
+
+    public long getRowsIn() {
+        return this.rowsIn;
+    }
+
+    public long getRowsOut() {
+        return this.rowsOut;
+    }
+
+    /**
+     * The number of bytes allocated by the thread that ran the operation, or
+     * UNKNOWN_BYTES if the JVM does not support measuring this. Allocations by
+     * worker threads of parallel operations are not included.
+     *
+     * @return the number of bytes allocated
+     */
+    public long getBytesAllocated() {
+        return this.bytesAllocated;
+    }
+
+    public boolean isParallel() {
+        return this.parallel;
+    }
+
+    @Override
+    public String toString() {
+        return this.operation + " " + (this.wallTimeNanos / 1000) + "us rows " + this.rowsIn + "->" + this.rowsOut
+                + " bytes " + this.bytesAllocated + (this.parallel ? " parallel" : "");
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Aggregates that are computed on parts of a data frame and merged
+ * afterwards, as the workers of a ShardCluster do on their shards.
+ *
+ * Every Aggregation follows from the sum, the minimum, the maximum and the
+ * number of the values, and these four combine across parts. A summary
+ * partial is a frame with the same columns as its input and one row for each
+ * of them; a group partial has a row per distinct key, with the key column and
+ * the four columns #sum, #min, #max and #count. The partials are merged in the
+ * order they are given, so that the result does not depend on which part
+ * finished first.
+ */
+final class PartialAggregates {
+
+    private static final List<String> PARTS = Arrays.asList("#sum", "#min", "#max", "#count");
+    private static final int SUM = 0;
+    private static final int MIN = 1;
+    private static final int MAX = 2;
+    private static final int COUNT = 3;
+
+    private PartialAggregates() {
+    }
+
+    /**
+     * The summary partial of every column: a row each for the sum, the
+     * minimum, the maximum and the number of values
+     */
+    static DoubleDataFrame summary(DoubleDataFrame dataFrame) {
+        List<String> colNames = dataFrame.getColumnNames();
+        List<DoubleColumn> columns = new ArrayList<>(colNames.size());
+        for (String colName : colNames) {
+            DoubleColumn column = dataFrame.getColumnStorage(colName);
+            double[] values = column.values();
+            double[] parts = { 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0 };
+            int size = column.size();
+            for (int i = column.nextValid(0); i < size; i = column.nextValid(i + 1)) {
+                accumulate(parts, 0, values[i], values[i], values[i], 1);
+            }
+            columns.add(new DoubleColumn(parts, parts.length));
+        }
+        return new DoubleDataFrame(colNames, columns, PARTS.size());
+    }
+
+    /**
+     * Merges summary partials into the summary of all parts
+     */
+    static DataVector<Double> mergeSummaries(List<DoubleDataFrame> partials, String name, Aggregation aggregation) {
+        List<String> colNames = partials.get(0).getColumnNames();
+        List<Double> result = new ArrayList<>(colNames.size());
+        for (String colName : colNames) {
+            double[] parts = { 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0 };
+            for (DoubleDataFrame partial : partials) {
+                double[] values = partial.getColumnStorage(colName).values();
+                accumulate(parts, 0, values[SUM], values[MIN], values[MAX], (long) values[COUNT]);
+            }
+            result.add(EncodedColumn.aggregationResult(aggregation, parts[SUM], parts[MIN], parts[MAX], (long) parts[COUNT]));
+        }
+        return new DoubleDataVector(name, colNames, result);
+    }
+
+    /**
+     * The group partial of the values of a column per distinct key. Rows
+     * with a missing key are left out; missing values are not counted.
+     */
+    static DoubleDataFrame groups(DoubleDataFrame dataFrame, String key, String value) throws IllegalArgumentException {
+        Reshaping.Keys keys = Reshaping.Keys.of(dataFrame, key, false);
+        DoubleColumn valueColumn = dataFrame.getColumnStorage(value);
+        double[] values = valueColumn.values();
+        int groups = keys.size();
+        double[] parts = new double[PARTS.size() * groups];
+        initialize(parts, groups);
+        int size = valueColumn.size();
+        for (int i = valueColumn.nextValid(0); i < size; i = valueColumn.nextValid(i + 1)) {
+            int group = keys.find(i);
+            if (group >= 0) {
+                accumulate(parts, group * PARTS.size(), values[i], values[i], values[i], 1);
+            }
+        }
+        return groupFrame(key, keys, parts);
+    }
+
+    /**
+     * Merges group partials into a frame with a row per distinct key, in
+     * increasing order, and the aggregation of the values in a column named
+     * after the value column, or after the value column and the aggregation
+     * if the key is also the value column
+     */
+    static DoubleDataFrame mergeGroups(List<DoubleDataFrame> partials, String key, String value, Aggregation aggregation) {
+        DoubleDataFrame all = partials.get(0).appendRows(partials.subList(1, partials.size()), false);
+        Reshaping.Keys keys = Reshaping.Keys.of(all, key, false);
+        int groups = keys.size();
+        double[] parts = new double[PARTS.size() * groups];
+        initialize(parts, groups);
+        double[][] partValues = new double[PARTS.size()][];
+        for (int p = 0; p < partValues.length; p++) {
+            partValues[p] = all.getColumnStorage(PARTS.get(p)).values();
+        }
+        for (int i = 0; i < all.getRowCount(); i++) {
+            accumulate(parts, keys.find(i) * PARTS.size(), partValues[SUM][i], partValues[MIN][i], partValues[MAX][i],
+                    (long) partValues[COUNT][i]);
+        }
+        double[] keyValues = new double[groups];
+        DoubleColumn result = new DoubleColumn(new double[groups], groups);
+        for (int g = 0; g < groups; g++) {
+            keyValues[g] = keys.key(g);
+            int offset = g * PARTS.size();
+            result.setBoxed(g, EncodedColumn.aggregationResult(aggregation, parts[offset + SUM], parts[offset + MIN],
+                    parts[offset + MAX], (long) parts[offset + COUNT]));
+        }
+        String resultName = value.equals(key) ? value + "_" + aggregation.name().toLowerCase(Locale.ROOT) : value;
+        return new DoubleDataFrame(Arrays.asList(key, resultName),
+                Arrays.asList(new DoubleColumn(keyValues, groups), result), groups);
+    }
+
+    private static DoubleDataFrame groupFrame(String key, Reshaping.Keys keys, double[] parts) {
+        int groups = keys.size();
+        List<String> colNames = new ArrayList<>(PARTS.size() + 1);
+        colNames.add(key);
+        colNames.addAll(PARTS);
+        List<DoubleColumn> columns = new ArrayList<>(colNames.size());
+        double[] keyValues = new double[groups];
+        for (int g = 0; g < groups; g++) {
+            keyValues[g] = keys.key(g);
+        }
+        columns.add(new DoubleColumn(keyValues, groups));
+        for (int p = 0; p < PARTS.size(); p++) {
+            double[] values = new double[groups];
+            for (int g = 0; g < groups; g++) {
+                values[g] = parts[g * PARTS.size() + p];
+            }
+            columns.add(new DoubleColumn(values, groups));
+        }
+        return new DoubleDataFrame(colNames, columns, groups);
+    }
+
+    private static void initialize(double[] parts, int groups) {
+        for (int g = 0; g < groups; g++) {
+            parts[g * PARTS.size() + MIN] = Double.POSITIVE_INFINITY;
+            parts[g * PARTS.size() + MAX] = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    private static void accumulate(double[] parts, int offset, double sum, double min, double max, long count) {
+        parts[offset + SUM] += sum;
+        parts[offset + MIN] = Math.min(parts[offset + MIN], min);
+        parts[offset + MAX] = Math.max(parts[offset + MAX], max);
+        parts[offset + COUNT] += count;
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.function.BinaryOperator;
+import java.util.function.DoublePredicate;
+
+/**
+ * An uncompressed column: the DoubleColumn itself. This is the only encoding
+ * that can hold missing values; the scans skip them by walking the validity
+ * bitmap.
+ */
+final class PlainEncoding extends EncodedColumn {
+
+    private final DoubleColumn column;
+
+    PlainEncoding(DoubleColumn column) {
+        super(column.size());
+        this.column = column;
+    }
+
+    static long estimateBytes(int size) {
+        return 8L * size;
+    }
+
+    DoubleColumn column() {
+        return this.column;
+    }
+
+    @Override
+    String encoding() {
+        return "plain";
+    }
+
+    @Override
+    long estimateMemoryBytes() {
+        return ColumnStorage.align(ColumnStorage.OBJECT_HEADER + 4 + ColumnStorage.REFERENCE)
+                + this.column.estimateMemoryBytes();
+    }
+
+    @Override
+    long sizeInBytes() {
+        long bitmap = this.column.validity() == null ? 0 : 8L * ColumnStorage.wordCount(size());
+        return estimateBytes(size()) + bitmap;
+    }
+
+    @Override
+    double get(int rowIndex) {
+        return this.column.get(rowIndex);
+    }
+
+    @Override
+    boolean isValid(int rowIndex) {
+        return this.column.isValid(rowIndex);
+    }
+
+    @Override
+    Double aggregate(Aggregation aggregation) {
+        if (!this.column.hasMissing()) {
+            return aggregateAll(aggregation);
+        }
+        double[] values = this.column.values();
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int size = size();
+        for (int i = this.column.nextValid(0); i < size; i = this.column.nextValid(i + 1)) {
+            double value = values[i];
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return aggregationResult(aggregation, sum, min, max, this.column.validCount());
+    }
+
+    /*
+     * Without missing values, an aggregation is a single column kernel over
+     * the array
+     */
+    private Double aggregateAll(Aggregation aggregation) {
+        double[] values = this.column.values();
+        int size = size();
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        switch (aggregation) {
+            case SUM:
+            case MEAN:
+                sum = ColumnKernels.sum(values, size);
+                break;
+            case MIN:
+                min = ColumnKernels.min(values, size);
+                break;
+            case MAX:
+                max = ColumnKernels.max(values, size);
+                break;
+            default:
+        }
+        return aggregationResult(aggregation, sum, min, max, size);
+    }
+
+    @Override
+    int select(DoublePredicate predicate, int[] rows) {
+        double[] values = this.column.values();
+        int size = size();
+        int count = 0;
+        for (int i = this.column.nextValid(0); i < size; i = this.column.nextValid(i + 1)) {
+            if (predicate.test(values[i])) {
+                rows[count] = i;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    Double reduce(BinaryOperator<Double> function) {
+        int size = size();
+        int first = this.column.nextValid(0);
+        if (first >= size) {
+            return null;
+        }
+        Double result = this.column.get(first);
+        for (int i = this.column.nextValid(first + 1); i < size; i = this.column.nextValid(i + 1)) {
+            result = function.apply(result, this.column.get(i));
+        }
+        return result;
+    }
+
+    @Override
+    DoubleColumn decode() {
+        return this.column.copy(size());
+    }
+
+    @Override
+    DoubleColumn gather(int[] rowIndices, int count) {
+        return this.column.gather(rowIndices, count);
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a single plot that should be written to a PNG file. Plot
+ * specifications are used to render many plots of the same data frame in one
+ * batch, see {@link DataFramePlotting#saveAll(List)}.
+ */
+public final class PlotSpec {
+
+    /**
+     * The kinds of plots that can be rendered in a batch
+     */
+    public enum Kind {
+        SCATTER, HISTOGRAM
+    }
+
+    private final Kind kind;
+    private final File outputFile;
+    private final String title;
+    private final List<String> variables;
+    private final int bins;
+
+    private PlotSpec(Kind kind, File outputFile, String title, List<String> variables, int bins) {
+        this.kind = kind;
+        this.outputFile = outputFile;
+        this.title = title;
+        this.variables = Collections.unmodifiableList(variables);
+        this.bins = bins;
+    }
+
+    /**
+     * Specifies a scatter plot of variable x against variable y
+     *
+     * @param outputFile the file to which the plot will be written
+     * @param title      the title of the chart
+     * @param xVar       the name of the column that is used as x values
+     * @param yVar       the name of the column that is used as y values
+     * @return the plot specification
+     */
+    public static PlotSpec scatter(File outputFile, String title, String xVar, String yVar) {
+        return new PlotSpec(Kind.SCATTER, outputFile, title, Arrays.asList(xVar, yVar), 0);
+    }
+
+    /**
+     * Specifies a histogram of a single variable
+     *
+     * @param outputFile the file to which the plot will be written
+     * @param title      the title of the chart
+     * @param varName    the column that should be used to compute the histogram
+     * @param bins       the number of bins to use in the histogram
+     * @return the plot specification
+     * @throws IllegalArgumentException if the number of bins is not positive
+     */
+    public static PlotSpec histogram(File outputFile, String title, String varName, int bins)
+            throws IllegalArgumentException {
+        if (bins <= 0) {
+            throw new IllegalArgumentException("Number of bins should be positive");
+        }
+        return new PlotSpec(Kind.HISTOGRAM, outputFile, title, Collections.singletonList(varName), bins);
+    }
+
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    public File getOutputFile() {
+        return this.outputFile;
+    }
+
+    public String getTitle() {
+        return this.title;
+    }
+
+    /**
+     * The columns used by this plot: x and y for a scatter plot, the single
+     * variable for a histogram.
+     *
+     * @return the names of the columns used by this plot
+     */
+    public List<String> getVariables() {
+        return this.variables;
+    }
+
+    public int getBins() {
+        return this.bins;
+    }
+
+    @Override
+    public String toString() {
+        return this.kind + " " + this.variables + " -> " + this.outputFile;
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * A service that supplies the plots of data frames. The data frames find
+ * their provider with java.util.ServiceLoader the first time plotting() is
+ * called, so that the charting and windowing libraries are only loaded by
+ * programs that draw. A provider is registered in
+ * META-INF/services/PlottingProvider.
+ */
+public interface PlottingProvider {
+
+    /**
+     * Whether the libraries of this provider are on the class path. Providers
+     * that are not available are skipped.
+     */
+    public default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * @param dataFrame the data frame to plot
+     * @return a DataFramePlotting object linked to the data frame
+     */
+    public DataFramePlotting plotting(DataFrame<Double> dataFrame);
+}
@@ -0,0 +1,247 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A KLL sketch for approximate quantiles of a stream of values. The sketch
+ * keeps a bounded number of values, independent of the number of values
+ * added, in a hierarchy of compactors: when a level is full it is sorted and
+ * every other value is promoted to the next level, where it counts twice as
+ * much. Sketches built over different parts of the data can be merged, so a
+ * column can be summarized in parallel chunks.
+ *
+ * The rank of a returned quantile is within about accuracy * n of the
+ * requested rank, with high probability.
+ */
+public final class QuantileSketch {
+
+    // Capacity ratio between consecutive levels
+    private static final double LEVEL_RATIO = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 2;
+
+    private final int k;
+    private final SplittableRandom random;
+    // levels[h] holds sizes[h] values with weight 2^h
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+    // The capacity of every level, and their total, which change when a level is added
+    private int[] capacities = new int[0];
+    private int maxRetained;
+    private int retained;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates an empty sketch
+     *
+     * @param k the size of the largest compactor; the rank error is about 2 / k
+     */
+    public QuantileSketch(int k) {
+        this(k, new SplittableRandom());
+    }
+
+    private QuantileSketch(int k, SplittableRandom random) {
+        if (k < 8) {
+            throw new IllegalArgumentException("k should be at least 8");
+        }
+        this.k = k;
+        this.random = random;
+        addLevel();
+    }
+
+    /**
+     * Creates an empty sketch for the given rank accuracy, as a fraction of the
+     * number of values. The compaction choices are drawn from a generator with
+     * the given seed, so the same values in the same order give the same
+     * sketch.
+     *
+     * @param accuracy the rank error to aim for, between 0 and 1
+     * @param seed     the seed of the random compaction choices
+     * @return the new sketch
+     */
+    public static QuantileSketch forAccuracy(double accuracy, long seed) {
+        if (!(accuracy > 0 && accuracy < 1)) {
+            throw new IllegalArgumentException("Accuracy should be between 0 and 1");
+        }
+        return new QuantileSketch(Math.max(8, (int) Math.ceil(2.0 / accuracy)), new SplittableRandom(seed));
+    }
+
+    /**
+     * Adds a value. NaN values are ignored.
+     */
+    public void update(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        this.count++;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+        append(0, value);
+        if (this.retained >= this.maxRetained) {
+            compress();
+        }
+    }
+
+    /**
+     * Adds all values of another sketch to this sketch
+     *
+     * @param other a sketch with the same k
+     */
+    public void merge(QuantileSketch other) {
+        if (other.k != this.k) {
+            throw new IllegalArgumentException("Only sketches with the same k can be merged");
+        }
+        while (this.levels.length < other.levels.length) {
+            addLevel();
+        }
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        this.count += other.count;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+        while (this.retained >= this.maxRetained) {
+            compress();
+        }
+    }
+
+    /**
+     * The number of values added to this sketch
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * The number of values the sketch keeps to represent them
+     */
+    public int getRetained() {
+        return this.retained;
+    }
+
+    /**
+     * The approximate quantile for a probability. The quantiles for 0 and 1
+     * are the exact minimum and maximum.
+     *
+     * @param probability a number between 0 and 1
+     * @return the approximate quantile, or NaN if the sketch is empty
+     */
+    public double quantile(double probability) {
+        return quantiles(new double[] { probability })[0];
+    }
+
+    /**
+     * The approximate quantiles for several probabilities, computed from a
+     * single sort of the retained values
+     *
+     * @param probabilities numbers between 0 and 1
+     * @return the approximate quantile for every probability, or NaN if the
+     *         sketch is empty
+     */
+    public double[] quantiles(double[] probabilities) {
+        double[] result = new double[probabilities.length];
+        if (this.count == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+        // The retained values in sorted order, with the cumulative weight up to each
+        int n = this.retained;
+        long[] cumulative = new long[n];
+        double[] values = new double[n];
+        int[] levelOf = new int[n];
+        Integer[] order = new Integer[n];
+        int next = 0;
+        for (int h = 0; h < this.levels.length; h++) {
+            for (int i = 0; i < this.sizes[h]; i++) {
+                values[next] = this.levels[h][i];
+                levelOf[next] = h;
+                order[next] = next;
+                next++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        double[] sorted = new double[n];
+        long totalWeight = 0;
+        for (int i = 0; i < n; i++) {
+            sorted[i] = values[order[i]];
+            totalWeight += 1L << levelOf[order[i]];
+            cumulative[i] = totalWeight;
+        }
+
+        for (int q = 0; q < probabilities.length; q++) {
+            double p = probabilities[q];
+            if (!(p >= 0 && p <= 1)) {
+                throw new IllegalArgumentException("Probability " + p + " should be between 0 and 1");
+            }
+            if (p == 0) {
+                result[q] = this.min;
+                continue;
+            }
+            if (p == 1) {
+                result[q] = this.max;
+                continue;
+            }
+            // The first value whose cumulative weight reaches the requested rank
+            long rank = (long) Math.ceil(p * totalWeight);
+            int index = Arrays.binarySearch(cumulative, rank);
+            result[q] = sorted[index >= 0 ? index : Math.min(n - 1, -index - 1)];
+        }
+        return result;
+    }
+
+    private void addLevel() {
+        int count = this.levels.length + 1;
+        this.levels = Arrays.copyOf(this.levels, count);
+        this.levels[count - 1] = new double[MIN_CAPACITY];
+        this.sizes = Arrays.copyOf(this.sizes, count);
+        // The top level holds k values, lower levels geometrically fewer
+        this.capacities = new int[count];
+        this.maxRetained = 0;
+        for (int h = 0; h < count; h++) {
+            int depth = count - h - 1;
+            this.capacities[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(this.k * Math.pow(LEVEL_RATIO, depth)));
+            this.maxRetained += this.capacities[h];
+        }
+    }
+
+    private void append(int h, double value) {
+        if (this.sizes[h] == this.levels[h].length) {
+            this.levels[h] = Arrays.copyOf(this.levels[h], 2 * this.sizes[h]);
+        }
+        this.levels[h][this.sizes[h]] = value;
+        this.sizes[h]++;
+        this.retained++;
+    }
+
+    /*
+     * Compacts the lowest level that is full: sorts it and promotes either the
+     * odd or the even values, chosen at random, to the next level. With an odd
+     * number of values, the largest stays behind.
+     */
+    private void compress() {
+        for (int h = 0; h < this.levels.length; h++) {
+            int size = this.sizes[h];
+            if (size >= this.capacities[h]) {
+                if (h + 1 == this.levels.length) {
+                    addLevel();
+                }
+                double[] level = this.levels[h];
+                Arrays.sort(level, 0, size);
+                int pairs = size / 2;
+                int offset = this.random.nextBoolean() ? 1 : 0;
+                for (int i = 0; i < pairs; i++) {
+                    append(h + 1, level[2 * i + offset]);
+                }
+                int kept = size - 2 * pairs;
+                if (kept == 1) {
+                    level[0] = level[size - 1];
+                }
+                this.sizes[h] = kept;
+                this.retained -= 2 * pairs;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Changes the shape of data frames, for DataFrame.transpose(), pivot() and
+ * melt(), working on the primitive arrays of the columns.
+ *
+ * Transposing swaps rows and columns of an array of arrays. Reading one
+ * array while writing across all others would touch a new cache line for
+ * every value written, so the arrays are transposed in square tiles of
+ * TILE x TILE values, whose source and target lines both stay in the L1
+ * cache. Large inputs are transposed in parallel, one strip of tiles per
+ * task.
+ */
+final class Reshaping {
+
+    // The number of values on each side of a tile: two tiles of 8 KB fit in L1
+    static final int TILE = 32;
+    // Inputs with at least this many values are reshaped in parallel
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private Reshaping() {
+    }
+
+    /**
+     * Transposes an array of arrays
+     *
+     * @param source the arrays to transpose, which should each hold at least
+     *               length values
+     * @param length the number of values to take from every source array
+     * @return length arrays that each hold one value per source array, so
+     *         that result[i][j] == source[j][i]
+     */
+    static double[][] transpose(double[][] source, int length) {
+        double[][] target = new double[length][source.length];
+        // The tiles are walked along the longer side, so that every array
+        // of the shorter side is finished before the next tile is started
+        boolean byRows = length >= source.length;
+        int tiles = ((byRows ? length : source.length) + TILE - 1) / TILE;
+        IntStream tileIndexes = IntStream.range(0, tiles);
+        boolean parallel = isParallel((long) length * source.length);
+        (parallel ? tileIndexes.parallel() : tileIndexes).forEach(tile -> {
+            if (byRows) {
+                int fromRow = tile * TILE;
+                for (int fromColumn = 0; fromColumn < source.length; fromColumn += TILE) {
+                    transposeTile(source, target, fromRow, Math.min(length, fromRow + TILE),
+                            fromColumn, Math.min(source.length, fromColumn + TILE));
+                }
+            }
+            else {
+                int fromColumn = tile * TILE;
+                for (int fromRow = 0; fromRow < length; fromRow += TILE) {
+                    transposeTile(source, target, fromRow, Math.min(length, fromRow + TILE),
+                            fromColumn, Math.min(source.length, fromColumn + TILE));
+                }
+            }
+        });
+        return target;
+    }
+
+    private static void transposeTile(double[][] source, double[][] target, int fromRow, int toRow,
+            int fromColumn, int toColumn) {
+        for (int j = fromColumn; j < toColumn; j++) {
+            double[] sourceArray = source[j];
+            for (int i = fromRow; i < toRow; i++) {
+                target[i][j] = sourceArray[i];
+            }
+        }
+    }
+
+    /**
+     * Transposes the validity bitmaps that belong to the arrays of
+     * transpose(). A missing value of source array j at index i is missing at
+     * index j of target array i.
+     *
+     * @param validity the bitmap per source array, null if it has no missing
+     *                 values
+     * @return the bitmap per target array, null if it has no missing values
+     */
+    static long[][] transposeValidity(long[][] validity, int length) {
+        long[][] target = new long[length][];
+        for (int j = 0; j < validity.length; j++) {
+            if (validity[j] == null) {
+                continue;
+            }
+            for (int w = 0; w < ColumnStorage.wordCount(length); w++) {
+                long missing = ~validity[j][w] & ColumnStorage.wordMask(w, length);
+                while (missing != 0) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(missing);
+                    if (target[i] == null) {
+                        target[i] = ColumnStorage.allValid(validity.length);
+                    }
+                    target[i][j >>> 6] &= ~(1L << j);
+                    missing &= missing - 1;
+                }
+            }
+        }
+        return target;
+    }
+
+    static boolean isParallel(long valueCount) {
+        return valueCount >= PARALLEL_THRESHOLD;
+    }
+
+    /**
+     * See DataFrame.transpose()
+     */
+    static DoubleDataFrame transpose(DataFrame<?> dataFrame) throws IllegalArgumentException {
+        int rowCount = dataFrame.getRowCount();
+        List<String> colNames = dataFrame.getColumnNames();
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("transpose", rowCount);
+        double[][] sourceValues = new double[colNames.size()][];
+        long[][] sourceValidity = new long[colNames.size()][];
+        for (int j = 0; j < sourceValues.length; j++) {
+            DoubleColumn column = DoubleColumn.numericColumn(dataFrame, colNames.get(j));
+            sourceValues[j] = column.values();
+            sourceValidity[j] = column.hasMissing() ? column.validity() : null;
+        }
+        double[][] values = transpose(sourceValues, rowCount);
+        long[][] validity = transposeValidity(sourceValidity, rowCount);
+        List<String> rowNames = new ArrayList<>(rowCount);
+        List<DoubleColumn> columns = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            rowNames.add("row_" + i);
+            columns.add(new DoubleColumn(values[i], colNames.size(), validity[i]));
+        }
+        DoubleDataFrame result = new DoubleDataFrame(rowNames, columns, colNames.size());
+        DataFrameMetrics.finish(timer, colNames.size(), isParallel((long) rowCount * colNames.size()));
+        return result;
+    }
+
+    /**
+     * See DataFrame.pivot()
+     */
+    static DoubleDataFrame pivot(DataFrame<?> dataFrame, String index, String columns, String values,
+            Aggregation aggregation) throws IllegalArgumentException {
+        int rowCount = dataFrame.getRowCount();
+        Keys rowKeys = Keys.of(dataFrame, index, false);
+        Keys columnKeys = Keys.of(dataFrame, columns, true);
+        for (int c = 0; c < columnKeys.size(); c++) {
+            if (columnKeys.label(c).equals(index)) {
+                throw new IllegalArgumentException("Column " + columns + " has the value " + index
+                        + ", which cannot become a column next to the index column " + index);
+            }
+        }
+        DoubleColumn valueColumn = DoubleColumn.numericColumn(dataFrame, values);
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("pivot", rowCount);
+
+        // The keys of every row were numbered by Keys.of(), so finding the
+        // cell of a row is a lookup. The summing is a single pass in row
+        // order, so that the result does not depend on whether the lookup
+        // ran in parallel
+        int resultRows = rowKeys.size();
+        int[] cells = new int[rowCount];
+        boolean parallel = isParallel(rowCount);
+        IntStream rowIndexes = IntStream.range(0, rowCount);
+        (parallel ? rowIndexes.parallel() : rowIndexes).forEach(i -> {
+            int r = rowKeys.find(i);
+            int c = columnKeys.find(i);
+            cells[i] = r < 0 || c < 0 ? -1 : c * resultRows + r;
+        });
+        int cellCount = Math.multiplyExact(resultRows, columnKeys.size());
+        double[] sum = new double[cellCount];
+        double[] min = new double[cellCount];
+        double[] max = new double[cellCount];
+        long[] count = new long[cellCount];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        double[] rowValues = valueColumn.values();
+        for (int i = valueColumn.nextValid(0); i < rowCount; i = valueColumn.nextValid(i + 1)) {
+            int cell = cells[i];
+            if (cell >= 0) {
+                double value = rowValues[i];
+                sum[cell] += value;
+                min[cell] = Math.min(min[cell], value);
+                max[cell] = Math.max(max[cell], value);
+                count[cell]++;
+            }
+        }
+
+        List<String> names = new ArrayList<>(columnKeys.size() + 1);
+        List<DoubleColumn> resultColumns = new ArrayList<>(columnKeys.size() + 1);
+        names.add(index);
+        resultColumns.add(new DoubleColumn(rowKeys.keys, resultRows));
+        for (int c = 0; c < columnKeys.size(); c++) {
+            names.add(columnKeys.label(c));
+            DoubleColumn column = new DoubleColumn(new double[resultRows], resultRows);
+            for (int r = 0; r < resultRows; r++) {
+                int cell = c * resultRows + r;
+                column.setBoxed(r, EncodedColumn.aggregationResult(aggregation, sum[cell], min[cell], max[cell], count[cell]));
+            }
+            resultColumns.add(column);
+        }
+        DoubleDataFrame result = new DoubleDataFrame(names, resultColumns, resultRows);
+        DataFrameMetrics.finish(timer, resultRows, parallel);
+        return result;
+    }
+
+    /**
+     * See DataFrame.melt()
+     */
+    static TypedDataFrame melt(DataFrame<?> dataFrame, List<String> idVars, List<String> valueVars)
+            throws IllegalArgumentException {
+        int rowCount = dataFrame.getRowCount();
+        int resultRows = Math.multiplyExact(rowCount, valueVars.size());
+        Schema schema = dataFrame.getSchema();
+        for (String name : valueVars) {
+            schema.requireIndex(name);
+        }
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("melt", rowCount);
+        boolean parallel = isParallel(resultRows);
+
+        // The id columns repeat their rows once per value column
+        int[] repeated = new int[resultRows];
+        for (int v = 0; v < valueVars.size(); v++) {
+            for (int i = 0; i < rowCount; i++) {
+                repeated[v * rowCount + i] = i;
+            }
+        }
+        ColumnStorage[] idColumns = new ColumnStorage[idVars.size()];
+        IntStream idIndexes = IntStream.range(0, idColumns.length);
+        (parallel ? idIndexes.parallel() : idIndexes).forEach(k -> {
+            idColumns[k] = storage(dataFrame, idVars.get(k)).gather(repeated, resultRows);
+        });
+
+        // The value columns are stacked, and the variable column holds the
+        // name of the column each value came from
+        CategoryDictionary dictionary = new CategoryDictionary();
+        int[] codes = new int[resultRows];
+        for (int v = 0; v < valueVars.size(); v++) {
+            Arrays.fill(codes, v * rowCount, (v + 1) * rowCount, dictionary.encode(valueVars.get(v)));
+        }
+        DoubleColumn[] valueColumns = new DoubleColumn[valueVars.size()];
+        for (int v = 0; v < valueColumns.length; v++) {
+            valueColumns[v] = DoubleColumn.numericColumn(dataFrame, valueVars.get(v));
+        }
+        double[] stacked = new double[resultRows];
+        IntStream valueIndexes = IntStream.range(0, valueColumns.length);
+        (parallel ? valueIndexes.parallel() : valueIndexes).forEach(v -> {
+            System.arraycopy(valueColumns[v].values(), 0, stacked, v * rowCount, rowCount);
+        });
+        DoubleColumn value = new DoubleColumn(stacked, resultRows);
+        for (int v = 0; v < valueColumns.length; v++) {
+            if (valueColumns[v].hasMissing()) {
+                for (int i = 0; i < rowCount; i++) {
+                    if (!valueColumns[v].isValid(i)) {
+                        value.markMissing(v * rowCount + i);
+                    }
+                }
+            }
+        }
+
+        List<String> names = new ArrayList<>(idVars);
+        names.add("variable");
+        names.add("value");
+        List<ColumnStorage> columns = new ArrayList<>(Arrays.asList(idColumns));
+        columns.add(new CategoryColumn(codes, resultRows, dictionary, null));
+        columns.add(value);
+        TypedDataFrame result = new TypedDataFrame(Schema.of(names), columns, resultRows);
+        DataFrameMetrics.finish(timer, resultRows, parallel);
+        return result;
+    }
+
+    /*
+     * The storage of a column in any data frame: the columns of typed and
+     * double frames as they are, the values of other frames as doubles
+     */
+    private static ColumnStorage storage(DataFrame<?> dataFrame, String columnName) {
+        if (dataFrame instanceof TypedDataFrame) {
+            return ((TypedDataFrame) dataFrame).getColumnStorage(columnName);
+        }
+        return DoubleColumn.numericColumn(dataFrame, columnName);
+    }
+
+    /*
+     * The distinct values of a pivot column, which become the rows or the
+     * columns of the result. Numbers are sorted, the labels of a category
+     * column keep the order of their codes. The values are numbered in a
+     * single pass with an open addressing table of their bits, and the
+     * numbers are then mapped to the sorted positions.
+     */
+    static final class Keys {
+        private final double[] keys;
+        // The position of the key of every row, -1 if it is missing
+        private final int[] positions;
+        private final CategoryDictionary dictionary;
+
+        private Keys(double[] keys, int[] positions, CategoryDictionary dictionary) {
+            this.keys = keys;
+            this.positions = positions;
+            this.dictionary = dictionary;
+        }
+
+        /*
+         * The keys of a column, which may only be a category column if the
+         * labels are allowed to become column names
+         */
+        static Keys of(DataFrame<?> dataFrame, String columnName, boolean labels) throws IllegalArgumentException {
+            ColumnStorage column = storage(dataFrame, columnName);
+            CategoryDictionary dictionary = null;
+            int[] codes = null;
+            double[] values = null;
+            if (column instanceof CategoryColumn && labels) {
+                dictionary = ((CategoryColumn) column).dictionary();
+                codes = ((CategoryColumn) column).codes();
+            }
+            else {
+                if (!(column instanceof DoubleColumn)) {
+                    column = DoubleColumn.numericColumn(dataFrame, columnName);
+                }
+                values = ((DoubleColumn) column).values();
+            }
+            int size = column.size();
+            int[] positions = new int[size];
+            long[] table = new long[16];
+            int[] numbers = new int[16];
+            Arrays.fill(numbers, -1);
+            double[] distinct = new double[16];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (!column.isValid(i)) {
+                    positions[i] = -1;
+                    continue;
+                }
+                // -0.0 and 0.0 are the same key
+                double key = codes != null ? codes[i] : values[i] + 0.0;
+                long bits = Double.doubleToLongBits(key);
+                int slot = slot(table, numbers, bits);
+                if (numbers[slot] < 0) {
+                    if (2 * (count + 1) > table.length) {
+                        long[] oldTable = table;
+                        int[] oldNumbers = numbers;
+                        table = new long[2 * oldTable.length];
+                        numbers = new int[2 * oldTable.length];
+                        Arrays.fill(numbers, -1);
+                        for (int k = 0; k < oldTable.length; k++) {
+                            if (oldNumbers[k] >= 0) {
+                                int newSlot = slot(table, numbers, oldTable[k]);
+                                table[newSlot] = oldTable[k];
+                                numbers[newSlot] = oldNumbers[k];
+                            }
+                        }
+                        slot = slot(table, numbers, bits);
+                        distinct = Arrays.copyOf(distinct, table.length);
+                    }
+                    table[slot] = bits;
+                    numbers[slot] = count;
+                    distinct[count++] = key;
+                }
+                positions[i] = numbers[slot];
+            }
+            double[] keys = Arrays.copyOf(distinct, count);
+            Arrays.sort(keys);
+            int[] sortedPositions = new int[count];
+            for (int k = 0; k < count; k++) {
+                sortedPositions[k] = Arrays.binarySearch(keys, distinct[k]);
+            }
+            IntStream rowIndexes = IntStream.range(0, size);
+            (isParallel(size) ? rowIndexes.parallel() : rowIndexes).forEach(i -> {
+                if (positions[i] >= 0) {
+                    positions[i] = sortedPositions[positions[i]];
+                }
+            });
+            return new Keys(keys, positions, dictionary);
+        }
+
+        /*
+         * The slot that holds the bits, or the empty slot where they belong
+         */
+        private static int slot(long[] table, int[] numbers, long bits) {
+            int mask = table.length - 1;
+            // The high bits of the product depend on all bits of the value,
+            // also for whole numbers, whose low bits are all zero
+            int slot = (int) ((bits * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(table.length)));
+            while (numbers[slot] >= 0 && table[slot] != bits) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        int size() {
+            return this.keys.length;
+        }
+
+        double key(int position) {
+            return this.keys[position];
+        }
+
+        /*
+         * The position of the key of a row, -1 if it is missing
+         */
+        int find(int rowIndex) {
+            return this.positions[rowIndex];
+        }
+
+        /*
+         * The label of a key as a column name: the label of a category, or
+         * the number, without a fraction if it has none
+         */
+        String label(int position) {
+            double key = this.keys[position];
+            if (this.dictionary != null) {
+                return this.dictionary.label((int) key);
+            }
+            if (key == Math.rint(key) && Math.abs(key) < 1e15) {
+                return Long.toString((long) key);
+            }
+            return Double.toString(key);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the results of select() and computeColumn() with a Comparison or
+ * an Arithmetic on a DoubleDataFrame, so that running the same selection or
+ * computation again on unchanged columns neither scans nor copies them.
+ *
+ * Usage:
+ *
+ * <pre>
+ * ResultCache cache = new ResultCache(256L &lt;&lt; 20);
+ * df.setResultCache(cache);
+ * df.select("price", Comparison.GREATER, 100);   // computed
+ * df.select("price", Comparison.GREATER, 100);   // from the cache
+ * System.out.println(cache.getHits() + " hits");
+ * </pre>
+ *
+ * A result is found by its operation and arguments together with the number
+ * of times setValue() changed each of the input columns, so a change of an
+ * input column makes the results that depend on it unreachable. A cached
+ * selection keeps the selected rows and the gathered columns; when only
+ * columns other than the one compared have changed, just those are gathered
+ * again. A cached computation keeps the new column, and the other columns of
+ * the result are shared with the frame rather than copied. Shared columns are
+ * read-only: the first setValue() on such a column, in the frame or in a
+ * result, copies it, and that frame then writes to its own copy. A frame
+ * therefore copies each column at most once after a cached result shared it.
+ *
+ * The cache holds at most maxBytes of results, estimated the same way as in
+ * MemoryManager, and drops the least recently used results to make room. A
+ * result larger than the whole cache is not kept. A cache may be shared by
+ * several frames and is thread-safe.
+ */
+public final class ResultCache {
+
+    private static final AtomicLong NEXT_FRAME_ID = new AtomicLong(1);
+
+    private final long maxBytes;
+    // Iterates from the least to the most recently used result
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxBytes the estimated number of bytes that the cached results
+     *                 may take up
+     * @throws IllegalArgumentException if maxBytes is not positive
+     */
+    public ResultCache(long maxBytes) throws IllegalArgumentException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The size of a result cache should be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * The estimated number of bytes of the cached results
+     */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * The number of cached results
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * The number of operations that found their result in the cache
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * The number of operations that computed their result
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * The number of results that were dropped to make room for others
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Drops all results. The counters keep their values.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    /*
+     * A new identity for a frame that uses a cache, which no other frame gets
+     */
+    static long nextFrameId() {
+        return NEXT_FRAME_ID.getAndIncrement();
+    }
+
+    /*
+     * Looks up a result and counts the hit or miss
+     */
+    synchronized Entry get(Key key) {
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            this.misses++;
+        }
+        else {
+            this.hits++;
+        }
+        return entry;
+    }
+
+    /*
+     * Keeps a result, replacing an earlier result with the same key, and
+     * drops the least recently used results while the cache is too large
+     */
+    synchronized void put(Key key, Entry entry) {
+        Entry previous = this.entries.remove(key);
+        if (previous != null) {
+            this.bytes -= previous.bytes;
+        }
+        if (entry.bytes > this.maxBytes) {
+            return;
+        }
+        this.entries.put(key, entry);
+        this.bytes += entry.bytes;
+        Iterator<Map.Entry<Key, Entry>> eldest = this.entries.entrySet().iterator();
+        while (this.bytes > this.maxBytes) {
+            this.bytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            this.evictions++;
+        }
+    }
+
+    /*
+     * The frame, the operation with its arguments, and the versions of the
+     * input columns that a result was computed from
+     */
+    static final class Key {
+
+        private final long frameId;
+        private final List<Object> operation;
+        private final long[] versions;
+
+        Key(long frameId, List<Object> operation, long... versions) {
+            this.frameId = frameId;
+            this.operation = operation;
+            this.versions = versions;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return this.frameId == key.frameId && this.operation.equals(key.operation)
+                    && Arrays.equals(this.versions, key.versions);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Long.hashCode(this.frameId) + this.operation.hashCode()) + Arrays.hashCode(this.versions);
+        }
+    }
+
+    /*
+     * A cached result: the selected rows, or null for a computation, and the
+     * result columns with the versions of the frame columns they were made
+     * from. The columns are marked as shared.
+     */
+    static final class Entry {
+
+        private final int[] rows;
+        private final DoubleColumn[] columns;
+        private final long[] versions;
+        private final long bytes;
+
+        Entry(int[] rows, DoubleColumn[] columns, long[] versions) {
+            this.rows = rows;
+            this.columns = columns;
+            this.versions = versions;
+            long total = rows == null ? 0 : ColumnStorage.arrayBytes(rows.length, 4);
+            for (DoubleColumn column : columns) {
+                total += DoubleColumn.estimateBytes(column.size());
+            }
+            this.bytes = total;
+        }
+
+        int[] rows() {
+            return this.rows;
+        }
+
+        DoubleColumn[] columns() {
+            return this.columns;
+        }
+
+        long[] versions() {
+            return this.versions;
+        }
+    }
+}
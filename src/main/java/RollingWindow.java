@@ -0,0 +1,339 @@
+import java.util.stream.IntStream;
+
+/**
+ * A window that moves over the rows of a numeric column, created by
+ * DataFrame.rolling() or DataFrame.expanding(). A rolling window of size w
+ * holds the current row and the w - 1 rows before it; an expanding window
+ * holds the current row and all rows before it.
+ *
+ * Every aggregation is computed in a single pass with O(1) amortized work per
+ * row: sums and means are kept as running sums, the standard deviation with a
+ * running (Welford) mean and sum of squared deviations, and the minimum and
+ * maximum of a rolling window with a monotonic deque of row indices. Long
+ * columns are split in chunks that are computed in parallel. A rolling chunk
+ * first replays the w rows before it; an expanding chunk starts from the
+ * merged state of all chunks before it.
+ *
+ * Missing values are left out of the window. A rolling result is missing
+ * until the window holds w rows, and whenever the window holds no values
+ * (fewer than two values for the standard deviation).
+ */
+public class RollingWindow {
+
+    // Columns with at least this many rows are computed in parallel
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    // A multiple of 64, so that chunks write disjoint words of the validity bitmap
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private enum Statistic {
+        SUM("sum"), MEAN("mean"), MIN("min"), MAX("max"), STD("std");
+
+        private final String label;
+
+        Statistic(String label) {
+            this.label = label;
+        }
+    }
+
+    private final String columnName;
+    private final DoubleColumn column;
+    // 0 for an expanding window
+    private final int window;
+
+    private RollingWindow(String columnName, DoubleColumn column, int window) {
+        this.columnName = columnName;
+        this.column = column;
+        this.window = window;
+    }
+
+    /**
+     * A rolling window of the given number of rows over a column of a data frame
+     */
+    static RollingWindow rolling(DataFrame<?> dataFrame, String columnName, int window) throws IllegalArgumentException {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window size should be at least 1");
+        }
+        return new RollingWindow(columnName, DoubleColumn.numericColumn(dataFrame, columnName), window);
+    }
+
+    /**
+     * An expanding window over a column of a data frame
+     */
+    static RollingWindow expanding(DataFrame<?> dataFrame, String columnName) throws IllegalArgumentException {
+        return new RollingWindow(columnName, DoubleColumn.numericColumn(dataFrame, columnName), 0);
+    }
+
+    /**
+     * The sum of the values in the window at every row
+     */
+    public DataVector<Double> sum() {
+        return compute(Statistic.SUM);
+    }
+
+    /**
+     * The mean of the values in the window at every row
+     */
+    public DataVector<Double> mean() {
+        return compute(Statistic.MEAN);
+    }
+
+    /**
+     * The smallest value in the window at every row
+     */
+    public DataVector<Double> min() {
+        return compute(Statistic.MIN);
+    }
+
+    /**
+     * The largest value in the window at every row
+     */
+    public DataVector<Double> max() {
+        return compute(Statistic.MAX);
+    }
+
+    /**
+     * The sample standard deviation of the values in the window at every row
+     */
+    public DataVector<Double> std() {
+        return compute(Statistic.STD);
+    }
+
+    private DataVector<Double> compute(Statistic statistic) {
+        String kind = this.window == 0 ? "expanding" : "rolling";
+        int rowCount = this.column.size();
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start(kind + "." + statistic.label, rowCount);
+
+        double[] results = new double[rowCount];
+        long[] validity = ColumnStorage.allValid(rowCount);
+        boolean parallel = rowCount >= PARALLEL_THRESHOLD && this.window < CHUNK_SIZE;
+        if (!parallel) {
+            computeChunk(statistic, 0, rowCount, new WindowState(statistic, this.window), results, validity);
+        }
+        else if (this.window > 0) {
+            computeRollingChunks(statistic, results, validity);
+        }
+        else {
+            computeExpandingChunks(statistic, results, validity);
+        }
+
+        DataVector<Double> result = new ColumnDataVector(this.columnName + "_" + kind + "_" + statistic.label,
+                new DoubleColumn(results, rowCount, validity));
+        DataFrameMetrics.finish(timer, rowCount, parallel);
+        return result;
+    }
+
+    /*
+     * Every chunk replays the window rows before it, then produces its own rows
+     */
+    private void computeRollingChunks(Statistic statistic, double[] results, long[] validity) {
+        int rowCount = this.column.size();
+        int chunks = (rowCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(rowCount, from + CHUNK_SIZE);
+            WindowState state = new WindowState(statistic, this.window);
+            for (int i = Math.max(0, from - this.window); i < from; i++) {
+                state.add(i);
+            }
+            computeChunk(statistic, from, to, state, results, validity);
+        });
+    }
+
+    /*
+     * The state of an expanding window at the start of a chunk is the merged
+     * state of all earlier chunks: summarize the chunks in parallel, merge the
+     * summaries in order, then compute the chunks in parallel.
+     */
+    private void computeExpandingChunks(Statistic statistic, double[] results, long[] validity) {
+        int rowCount = this.column.size();
+        int chunks = (rowCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        WindowState[] summaries = new WindowState[chunks];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            WindowState state = new WindowState(statistic, 0);
+            int to = Math.min(rowCount, (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < to; i++) {
+                state.add(i);
+            }
+            summaries[chunk] = state;
+        });
+        WindowState[] starts = new WindowState[chunks];
+        starts[0] = new WindowState(statistic, 0);
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            starts[chunk] = starts[chunk - 1].copy();
+            starts[chunk].merge(summaries[chunk - 1]);
+        }
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int from = chunk * CHUNK_SIZE;
+            computeChunk(statistic, from, Math.min(rowCount, from + CHUNK_SIZE), starts[chunk], results, validity);
+        });
+    }
+
+    /*
+     * Slides the window over the rows from (inclusive) to to (exclusive),
+     * starting from a state that already holds the rows before from
+     */
+    private void computeChunk(Statistic statistic, int from, int to, WindowState state, double[] results,
+            long[] validity) {
+        for (int i = from; i < to; i++) {
+            state.add(i);
+            if (this.window > 0 && i >= this.window) {
+                state.remove(i - this.window);
+            }
+            boolean full = this.window == 0 || i >= this.window - 1;
+            results[i] = full ? state.result() : Double.NaN;
+            if (!full || !state.hasResult()) {
+                validity[i >>> 6] &= ~(1L << i);
+            }
+        }
+    }
+
+    /*
+     * The aggregated values of the rows in a window
+     */
+    private final class WindowState {
+        private final Statistic statistic;
+        private long count;
+        // Running sum with Kahan compensation for the rounding errors
+        private double sum;
+        private double compensation;
+        // Welford's running mean and sum of squared deviations
+        private double mean;
+        private double m2;
+        // Extreme value of an expanding window
+        private double extreme = Double.NaN;
+        // Monotonic deque of row indices for a rolling minimum or maximum, as a ring buffer
+        // with room for the window plus the row added before the oldest is removed
+        private final int[] deque;
+        private int head;
+        private int tail;
+
+        WindowState(Statistic statistic, int window) {
+            this.statistic = statistic;
+            boolean extremes = statistic == Statistic.MIN || statistic == Statistic.MAX;
+            this.deque = extremes && window > 0 ? new int[window + 2] : null;
+        }
+
+        WindowState copy() {
+            WindowState copy = new WindowState(this.statistic, 0);
+            copy.count = this.count;
+            copy.sum = this.sum;
+            copy.compensation = this.compensation;
+            copy.mean = this.mean;
+            copy.m2 = this.m2;
+            copy.extreme = this.extreme;
+            return copy;
+        }
+
+        void add(int rowIndex) {
+            if (!column.isValid(rowIndex)) {
+                return;
+            }
+            double value = column.get(rowIndex);
+            this.count++;
+            switch (this.statistic) {
+                case SUM:
+                case MEAN:
+                    addToSum(value);
+                    break;
+                case STD:
+                    double delta = value - this.mean;
+                    this.mean += delta / this.count;
+                    this.m2 += delta * (value - this.mean);
+                    break;
+                default:
+                    if (this.deque == null) {
+                        this.extreme = this.count == 1 ? value : better(value, this.extreme);
+                    }
+                    else {
+                        // Drop the rows that can never be the extreme again
+                        while (this.head != this.tail && better(value, column.get(last())) == value) {
+                            this.tail = (this.tail + this.deque.length - 1) % this.deque.length;
+                        }
+                        this.deque[this.tail] = rowIndex;
+                        this.tail = (this.tail + 1) % this.deque.length;
+                    }
+            }
+        }
+
+        void remove(int rowIndex) {
+            if (!column.isValid(rowIndex)) {
+                return;
+            }
+            double value = column.get(rowIndex);
+            this.count--;
+            switch (this.statistic) {
+                case SUM:
+                case MEAN:
+                    addToSum(-value);
+                    break;
+                case STD:
+                    if (this.count == 0) {
+                        this.mean = 0;
+                        this.m2 = 0;
+                    }
+                    else {
+                        double delta = value - this.mean;
+                        this.mean -= delta / this.count;
+                        this.m2 -= delta * (value - this.mean);
+                    }
+                    break;
+                default:
+                    if (this.head != this.tail && this.deque[this.head] == rowIndex) {
+                        this.head = (this.head + 1) % this.deque.length;
+                    }
+            }
+        }
+
+        /*
+         * Adds the aggregated rows of a later chunk of an expanding window
+         */
+        void merge(WindowState other) {
+            if (other.count == 0) {
+                return;
+            }
+            long total = this.count + other.count;
+            double delta = other.mean - this.mean;
+            this.m2 += other.m2 + delta * delta * this.count * other.count / total;
+            this.mean += delta * other.count / total;
+            addToSum(other.sum);
+            addToSum(other.compensation);
+            this.extreme = this.count == 0 ? other.extreme : better(other.extreme, this.extreme);
+            this.count = total;
+        }
+
+        boolean hasResult() {
+            return this.statistic == Statistic.STD ? this.count > 1 : this.count > 0;
+        }
+
+        double result() {
+            if (!hasResult()) {
+                return Double.NaN;
+            }
+            switch (this.statistic) {
+                case SUM:
+                    return this.sum + this.compensation;
+                case MEAN:
+                    return (this.sum + this.compensation) / this.count;
+                case STD:
+                    return Math.sqrt(Math.max(0, this.m2) / (this.count - 1));
+                default:
+                    return this.deque == null ? this.extreme : column.get(this.deque[this.head]);
+            }
+        }
+
+        private void addToSum(double value) {
+            double y = value + this.compensation;
+            double t = this.sum + y;
+            this.compensation = y - (t - this.sum);
+            this.sum = t;
+        }
+
+        private int last() {
+            return this.deque[(this.tail + this.deque.length - 1) % this.deque.length];
+        }
+
+        private double better(double a, double b) {
+            return this.statistic == Statistic.MIN ? Math.min(a, b) : Math.max(a, b);
+        }
+    }
+}
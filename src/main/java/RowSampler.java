@@ -0,0 +1,145 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Draws a uniform random sample of rows without replacement, for
+ * DataFrame.sample(). Every row gets a pseudo random priority computed from
+ * the seed and its index, and the sample consists of the rows with the lowest
+ * priorities. This reservoir is filled in a single pass and only ever holds
+ * the sample size, and reservoirs of separate row ranges merge into the
+ * reservoir of their union. Long frames are therefore sampled in parallel
+ * chunks, and the same seed always selects the same rows.
+ */
+final class RowSampler {
+
+    // Frames with at least this many rows are sampled in parallel
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private RowSampler() {
+    }
+
+    /**
+     * The indexes of a sample of rows, in increasing order
+     *
+     * @param rowCount the number of rows to choose from
+     * @param n        the number of rows to choose
+     * @param seed     the seed of the priorities
+     * @return the chosen row indexes; all rows if n is at least rowCount
+     * @throws IllegalArgumentException if n is negative
+     */
+    static int[] sample(int rowCount, int n, long seed) throws IllegalArgumentException {
+        if (n < 0) {
+            throw new IllegalArgumentException("Sample size should not be negative");
+        }
+        if (n >= rowCount) {
+            return IntStream.range(0, rowCount).toArray();
+        }
+        Reservoir reservoir;
+        if (!isParallel(rowCount)) {
+            reservoir = new Reservoir(n);
+            reservoir.offerRows(0, rowCount, seed);
+        }
+        else {
+            int chunks = Math.min(rowCount / PARALLEL_THRESHOLD, 4 * ForkJoinPool.getCommonPoolParallelism());
+            int chunkSize = (rowCount + chunks - 1) / chunks;
+            reservoir = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+                Reservoir part = new Reservoir(n);
+                part.offerRows(chunk * chunkSize, Math.min(rowCount, (chunk + 1) * chunkSize), seed);
+                return part;
+            }).reduce(Reservoir::merge).get();
+        }
+        return reservoir.rows();
+    }
+
+    /**
+     * Whether sample() splits this many rows over parallel chunks
+     */
+    static boolean isParallel(int rowCount) {
+        return rowCount >= PARALLEL_THRESHOLD;
+    }
+
+    /*
+     * A priority in the upper 31 bits and the row index in the lower 32 bits,
+     * so that entries are positive, distinct and ordered by priority
+     */
+    private static long entry(int rowIndex, long seed) {
+        // The SplitMix64 finalizer, applied to the seeded row index
+        long z = seed + (rowIndex + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return ((z >>> 33) << 32) | rowIndex;
+    }
+
+    /*
+     * The entries with the lowest priorities seen so far, as a binary max-heap
+     * so the entry to replace is at the top
+     */
+    private static final class Reservoir {
+        private final long[] heap;
+        private int size;
+
+        Reservoir(int capacity) {
+            this.heap = new long[capacity];
+        }
+
+        void offerRows(int from, int to, long seed) {
+            for (int i = from; i < to; i++) {
+                offer(entry(i, seed));
+            }
+        }
+
+        void offer(long entry) {
+            if (this.size < this.heap.length) {
+                int child = this.size;
+                this.size++;
+                // Sift up
+                while (child > 0) {
+                    int parent = (child - 1) / 2;
+                    if (this.heap[parent] >= entry) {
+                        break;
+                    }
+                    this.heap[child] = this.heap[parent];
+                    child = parent;
+                }
+                this.heap[child] = entry;
+            }
+            else if (this.size > 0 && entry < this.heap[0]) {
+                // Sift down from the top, which the entry replaces
+                int parent = 0;
+                while (true) {
+                    int child = 2 * parent + 1;
+                    if (child >= this.size) {
+                        break;
+                    }
+                    if (child + 1 < this.size && this.heap[child + 1] > this.heap[child]) {
+                        child++;
+                    }
+                    if (this.heap[child] <= entry) {
+                        break;
+                    }
+                    this.heap[parent] = this.heap[child];
+                    parent = child;
+                }
+                this.heap[parent] = entry;
+            }
+        }
+
+        Reservoir merge(Reservoir other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.heap[i]);
+            }
+            return this;
+        }
+
+        int[] rows() {
+            int[] rows = new int[this.size];
+            for (int i = 0; i < this.size; i++) {
+                rows[i] = (int) this.heap[i];
+            }
+            Arrays.sort(rows);
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over a range of rows of a data frame. Rows are created one at
+ * a time as they are consumed, and the range is split in halves, so that
+ * parallel streams divide the rows evenly and know the exact size of every
+ * part.
+ */
+final class RowSpliterator<E> implements Spliterator<DataVector<E>> {
+
+    private final DataFrame<E> dataFrame;
+    private int index;
+    private final int end;
+
+    RowSpliterator(DataFrame<E> dataFrame, int from, int to) {
+        this.dataFrame = dataFrame;
+        this.index = from;
+        this.end = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super DataVector<E>> action) {
+        if (this.index >= this.end) {
+            return false;
+        }
+        action.accept(this.dataFrame.getRow(this.index));
+        this.index++;
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super DataVector<E>> action) {
+        int end = this.end;
+        for (int i = this.index; i < end; i++) {
+            action.accept(this.dataFrame.getRow(i));
+        }
+        this.index = end;
+    }
+
+    @Override
+    public Spliterator<DataVector<E>> trySplit() {
+        int mid = (this.index + this.end) >>> 1;
+        if (mid <= this.index) {
+            return null;
+        }
+        // The first half is handed to the caller, this spliterator keeps the second
+        Spliterator<DataVector<E>> prefix = new RowSpliterator<>(this.dataFrame, this.index, mid);
+        this.index = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.end - this.index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL;
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.Arrays;
+import java.util.function.BinaryOperator;
+import java.util.function.DoublePredicate;
+
+/**
+ * A column stored as runs of equal values: the value of every run and the row
+ * at which it ends. Aggregations and filters handle a whole run at once.
+ */
+final class RunLengthEncoding extends EncodedColumn {
+
+    private final double[] runValues;
+    // Exclusive end row of every run, ascending
+    private final int[] runEnds;
+
+    private RunLengthEncoding(double[] runValues, int[] runEnds, int size) {
+        super(size);
+        this.runValues = runValues;
+        this.runEnds = runEnds;
+    }
+
+    static long estimateBytes(int runs) {
+        return 12L * runs;
+    }
+
+    static RunLengthEncoding encode(double[] values, int size, int runs) {
+        double[] runValues = new double[runs];
+        int[] runEnds = new int[runs];
+        int run = 0;
+        runValues[0] = values[0];
+        for (int i = 1; i < size; i++) {
+            if (Double.doubleToLongBits(values[i]) != Double.doubleToLongBits(values[i - 1])) {
+                runEnds[run] = i;
+                run++;
+                runValues[run] = values[i];
+            }
+        }
+        runEnds[run] = size;
+        return new RunLengthEncoding(runValues, runEnds, size);
+    }
+
+    @Override
+    String encoding() {
+        return "run-length";
+    }
+
+    @Override
+    long sizeInBytes() {
+        return estimateBytes(this.runValues.length);
+    }
+
+    @Override
+    double get(int rowIndex) {
+        // The run that contains the row is the first run ending after it
+        int run = Arrays.binarySearch(this.runEnds, rowIndex + 1);
+        if (run < 0) {
+            run = -run - 1;
+        }
+        return this.runValues[run];
+    }
+
+    @Override
+    Double aggregate(Aggregation aggregation) {
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int start = 0;
+        for (int run = 0; run < this.runValues.length; run++) {
+            double value = this.runValues[run];
+            sum += value * (this.runEnds[run] - start);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            start = this.runEnds[run];
+        }
+        return aggregationResult(aggregation, sum, min, max, size());
+    }
+
+    @Override
+    int select(DoublePredicate predicate, int[] rows) {
+        int count = 0;
+        int start = 0;
+        for (int run = 0; run < this.runValues.length; run++) {
+            int end = this.runEnds[run];
+            // Test the value once for the whole run
+            if (predicate.test(this.runValues[run])) {
+                for (int i = start; i < end; i++) {
+                    rows[count] = i;
+                    count++;
+                }
+            }
+            start = end;
+        }
+        return count;
+    }
+
+    @Override
+    Double reduce(BinaryOperator<Double> function) {
+        Double result = null;
+        int start = 0;
+        for (int run = 0; run < this.runValues.length; run++) {
+            Double value = this.runValues[run];
+            for (int i = start; i < this.runEnds[run]; i++) {
+                result = result == null ? value : function.apply(result, value);
+            }
+            start = this.runEnds[run];
+        }
+        return result;
+    }
+
+    @Override
+    DoubleColumn decode() {
+        double[] values = new double[size()];
+        int start = 0;
+        for (int run = 0; run < this.runValues.length; run++) {
+            Arrays.fill(values, start, this.runEnds[run], this.runValues[run]);
+            start = this.runEnds[run];
+        }
+        return new DoubleColumn(values, size());
+    }
+}
@@ -0,0 +1,180 @@
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * The column names of a data frame, in order, with a precomputed lookup from
+ * name to column index. A schema is immutable and interned: Schema.of()
+ * returns the same instance for the same list of names, so frames with equal
+ * columns share one schema and two schemas are equal exactly when they are
+ * the same object. Schemas are derived from each other with plus() and
+ * retain().
+ *
+ * Interned schemas are held weakly and disappear once no frame uses them.
+ */
+public final class Schema {
+
+    // Keyed by the name list of the schema itself, so an entry is dropped together with its schema
+    private static final Map<List<String>, WeakReference<Schema>> INTERNED = new WeakHashMap<>();
+
+    private static final Schema EMPTY = of(Collections.emptyList());
+
+    private final List<String> names;
+    private final Map<String, Integer> indexes;
+
+    private Schema(List<String> names) {
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        Map<String, Integer> indexes = new LinkedHashMap<>();
+        for (int j = 0; j < names.size(); j++) {
+            if (indexes.put(names.get(j), j) != null) {
+                throw new IllegalArgumentException("Duplicate columns detected");
+            }
+        }
+        this.indexes = Collections.unmodifiableMap(indexes);
+    }
+
+    /**
+     * The schema with the given column names
+     *
+     * @param names the column names, in order
+     * @return the shared schema for these names
+     * @throws IllegalArgumentException if a name occurs more than once
+     */
+    public static Schema of(List<String> names) throws IllegalArgumentException {
+        synchronized (INTERNED) {
+            WeakReference<Schema> reference = INTERNED.get(names);
+            Schema schema = reference == null ? null : reference.get();
+            if (schema == null) {
+                schema = new Schema(names);
+                INTERNED.put(schema.names, new WeakReference<>(schema));
+            }
+            return schema;
+        }
+    }
+
+    public static Schema of(String... names) throws IllegalArgumentException {
+        return of(Arrays.asList(names));
+    }
+
+    /**
+     * The schema without columns
+     */
+    public static Schema empty() {
+        return EMPTY;
+    }
+
+    /**
+     * The number of columns
+     */
+    public int size() {
+        return this.names.size();
+    }
+
+    /**
+     * The column names, in order. The list is shared and cannot be changed.
+     */
+    public List<String> names() {
+        return this.names;
+    }
+
+    /**
+     * The name of the column at an index
+     */
+    public String name(int index) {
+        return this.names.get(index);
+    }
+
+    /**
+     * The index of a column, or -1 if there is no such column
+     */
+    public int indexOf(String name) {
+        Integer index = this.indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    public boolean contains(String name) {
+        return this.indexes.containsKey(name);
+    }
+
+    /**
+     * The index of a column
+     *
+     * @throws IllegalArgumentException if there is no such column
+     */
+    public int requireIndex(String name) throws IllegalArgumentException {
+        Integer index = this.indexes.get(name);
+        if (index == null) {
+            String msg = "Column name " + name + " not exists!";
+            throw new IllegalArgumentException(msg);
+        }
+        return index;
+    }
+
+    /**
+     * The map from column name to index, in column order. The map cannot be
+     * changed.
+     */
+    public Map<String, Integer> indexMap() {
+        return this.indexes;
+    }
+
+    /**
+     * The schema with the given columns added at the end
+     *
+     * @throws IllegalArgumentException if a new column is already defined
+     */
+    public Schema plus(List<String> newNames) throws IllegalArgumentException {
+        if (newNames.isEmpty()) {
+            return this;
+        }
+        List<String> names = new ArrayList<>(this.names.size() + newNames.size());
+        names.addAll(this.names);
+        for (String newName : newNames) {
+            if (this.indexes.containsKey(newName) || names.subList(this.names.size(), names.size()).contains(newName)) {
+                String msg = "Column " + newName + " is already defined!";
+                throw new IllegalArgumentException(msg);
+            }
+            names.add(newName);
+        }
+        return of(names);
+    }
+
+    public Schema plus(String... newNames) throws IllegalArgumentException {
+        return plus(Arrays.asList(newNames));
+    }
+
+    /**
+     * The schema with only the given columns, in their original order
+     *
+     * @throws IllegalArgumentException if a column does not exist
+     */
+    public Schema retain(Collection<String> retainNames) throws IllegalArgumentException {
+        boolean[] retained = new boolean[this.names.size()];
+        for (String name : retainNames) {
+            retained[requireIndex(name)] = true;
+        }
+        List<String> names = new ArrayList<>(retainNames.size());
+        for (int j = 0; j < retained.length; j++) {
+            if (retained[j]) {
+                names.add(this.names.get(j));
+            }
+        }
+        return names.size() == this.names.size() ? this : of(names);
+    }
+
+    /**
+     * The indexes of the columns that retain() keeps, in their original order
+     */
+    int[] retainedIndexes(Collection<String> retainNames) throws IllegalArgumentException {
+        Schema retained = retain(retainNames);
+        int[] result = new int[retained.size()];
+        for (int j = 0; j < result.length; j++) {
+            result[j] = this.indexes.get(retained.name(j));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return this.names.toString();
+    }
+}
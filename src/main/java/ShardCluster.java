@@ -0,0 +1,381 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A group of worker JVMs on this machine that hold the rows of data frames
+ * between them, for frames whose columns or intermediate results do not fit
+ * in the heap of a single JVM, or that spend too long in its garbage
+ * collector.
+ *
+ * distribute() splits a frame by row range into one shard per worker. The
+ * resulting ShardedDataFrame sends select(), computeColumn() and
+ * computeMultiplyAdd() to all workers, which apply them to their own shards
+ * at the same time; summarize() and groupBy() let every worker aggregate its
+ * shard and merge the partial aggregates here. Frames travel between the
+ * processes column by column as raw doubles, see WireFormat.
+ *
+ * Usage:
+ *
+ * <pre>
+ * try (ShardCluster cluster = ShardCluster.start(4, "-Xmx2g")) {
+ *     ShardedDataFrame sales = cluster.distribute(df);
+ *     DataFrame&lt;Double&gt; perYear = sales
+ *             .select(ColumnPredicate.of("price", Comparison.GREATER, 0))
+ *             .computeColumn("revenue", "price", Arithmetic.MULTIPLY, "quantity")
+ *             .groupBy("year", "revenue", Aggregation.SUM);
+ * }
+ * </pre>
+ *
+ * The workers run the class path of this JVM and talk to it over sockets on
+ * the loopback address. Every worker gets a random token through its standard
+ * input and has to send it back first, so that only the started workers can
+ * join. They stop when the cluster is closed or this JVM exits. Requests to a
+ * cluster are sent one at a time. If a worker cannot be reached or fails in
+ * the middle of a request, the cluster closes itself, because the workers
+ * may no longer agree on their shards.
+ *
+ * The cluster keeps track of the sharded frames that it created. The shards
+ * of a frame that is garbage collected without release(), such as the
+ * intermediate frames of a chain of operations, are dropped on the workers
+ * with the next request.
+ */
+public final class ShardCluster implements AutoCloseable {
+
+    // The time a worker has to start and connect
+    private static final int CONNECT_TIMEOUT_MILLIS = 60_000;
+    // The number of bytes of the token that a worker sends back
+    static final int TOKEN_BYTES = 32;
+
+    private final List<Process> processes;
+    private final List<Socket> sockets;
+    private final List<DataInputStream> inputs;
+    private final List<DataOutputStream> outputs;
+    // The sharded frames whose shards are on the workers, by id
+    private final Map<Integer, ShardReference> frames = new HashMap<>();
+    private final ReferenceQueue<ShardedDataFrame> collected = new ReferenceQueue<>();
+    private int nextId;
+    private boolean closed;
+    // Why the cluster closed itself, or null
+    private Exception failure;
+
+    /*
+     * The id of the shards of a sharded frame, which stays known after the
+     * frame is garbage collected
+     */
+    private static final class ShardReference extends WeakReference<ShardedDataFrame> {
+        private final int id;
+
+        private ShardReference(ShardedDataFrame frame, int id, ReferenceQueue<ShardedDataFrame> queue) {
+            super(frame, queue);
+            this.id = id;
+        }
+    }
+
+    private ShardCluster(List<Process> processes, List<Socket> sockets) throws IOException {
+        this.processes = processes;
+        this.sockets = sockets;
+        this.inputs = new ArrayList<>(sockets.size());
+        this.outputs = new ArrayList<>(sockets.size());
+        for (Socket socket : sockets) {
+            socket.setTcpNoDelay(true);
+            this.inputs.add(new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16)));
+            this.outputs.add(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16)));
+        }
+    }
+
+    /**
+     * Starts worker JVMs and waits until they are connected
+     *
+     * @param workers    the number of workers
+     * @param jvmOptions the options of the worker JVMs, such as "-Xmx2g"
+     * @return the cluster of the workers
+     * @throws IOException              if a worker cannot be started or does
+     *                                  not connect within a minute
+     * @throws IllegalArgumentException if workers is smaller than 1
+     */
+    public static ShardCluster start(int workers, String... jvmOptions) throws IOException, IllegalArgumentException {
+        if (workers < 1) {
+            throw new IllegalArgumentException("A cluster needs at least one worker");
+        }
+        List<Process> processes = new ArrayList<>(workers);
+        List<Socket> sockets = new ArrayList<>(workers);
+        byte[] token = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(token);
+        try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            for (int k = 0; k < workers; k++) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.addAll(Arrays.asList(jvmOptions));
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add("ShardWorker");
+                command.add(Integer.toString(server.getLocalPort()));
+                // The token goes through standard input rather than the
+                // command line, which other users can see
+                Process process = new ProcessBuilder(command)
+                        .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                processes.add(process);
+                try (OutputStream stdin = process.getOutputStream()) {
+                    stdin.write(token);
+                }
+            }
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+            while (sockets.size() < workers) {
+                Socket socket = server.accept();
+                if (acceptToken(socket, token, deadline)) {
+                    sockets.add(socket);
+                }
+                else {
+                    socket.close();
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new SocketTimeoutException("The workers did not connect in time");
+                }
+            }
+            return new ShardCluster(processes, sockets);
+        } catch (IOException ex) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+            throw ex;
+        }
+    }
+
+    /*
+     * Whether a connection sends the token of the cluster before the deadline
+     */
+    private static boolean acceptToken(Socket socket, byte[] token, long deadline) throws IOException {
+        int timeout = (int) Math.max(1, deadline - System.currentTimeMillis());
+        socket.setSoTimeout(timeout);
+        byte[] received = new byte[token.length];
+        try {
+            new DataInputStream(socket.getInputStream()).readFully(received);
+        } catch (IOException ex) {
+            return false;
+        }
+        socket.setSoTimeout(0);
+        return MessageDigest.isEqual(received, token);
+    }
+
+    public int getWorkerCount() {
+        return this.sockets.size();
+    }
+
+    /**
+     * Sends the rows of a data frame to the workers, a consecutive range of
+     * rows to each. The frame itself is not changed or kept.
+     *
+     * @param dataFrame the data frame to distribute; its columns should be
+     *                  numeric
+     * @return the distributed frame
+     * @throws IOException if a worker cannot be reached
+     */
+    public ShardedDataFrame distribute(DataFrame<Double> dataFrame) throws IOException {
+        int rowCount = dataFrame.getRowCount();
+        int workers = getWorkerCount();
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("shard.distribute", rowCount);
+        int id = newId();
+        int[] rowCounts = new int[workers];
+        // Frames of other classes are converted once, not once per worker
+        List<DoubleColumn> columns = WireFormat.numericColumns(dataFrame);
+        call(ShardWorker.PUT, id, (out, k) -> {
+            int from = (int) ((long) rowCount * k / workers);
+            int to = (int) ((long) rowCount * (k + 1) / workers);
+            rowCounts[k] = to - from;
+            WireFormat.writeColumns(out, dataFrame.getColumnNames(), columns, from, to);
+        }, (in, k) -> null);
+        ShardedDataFrame result = track(new ShardedDataFrame(this, id, dataFrame.getSchema(), rowCounts));
+        DataFrameMetrics.finish(timer, rowCount, workers > 1);
+        return result;
+    }
+
+    /**
+     * Stops the workers. The sharded frames of this cluster cannot be used
+     * anymore.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.frames.clear();
+        for (int k = 0; k < this.sockets.size(); k++) {
+            try {
+                this.outputs.get(k).writeByte(ShardWorker.SHUTDOWN);
+                this.outputs.get(k).flush();
+            } catch (IOException ex) {
+                // The worker is gone already
+            }
+            this.sockets.get(k).close();
+        }
+        for (Process process : this.processes) {
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException ex) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    synchronized int newId() {
+        return this.nextId++;
+    }
+
+    /*
+     * Starts keeping track of a new sharded frame of this cluster
+     */
+    synchronized ShardedDataFrame track(ShardedDataFrame frame) {
+        this.frames.put(frame.getId(), new ShardReference(frame, frame.getId(), this.collected));
+        return frame;
+    }
+
+    /*
+     * Stops keeping track of a sharded frame whose shards are dropped
+     */
+    synchronized void untrack(int id) {
+        ShardReference reference = this.frames.remove(id);
+        if (reference != null) {
+            reference.clear();
+        }
+    }
+
+    /**
+     * The number of sharded frames of this cluster whose shards are on the
+     * workers, including the frames that were garbage collected since the
+     * last request
+     */
+    public synchronized int getShardedFrameCount() {
+        return this.frames.size();
+    }
+
+    /*
+     * Writes the rest of a request to a worker
+     */
+    interface RequestWriter {
+        void write(DataOutputStream out, int worker) throws IOException;
+    }
+
+    /*
+     * Reads the rest of the answer of a worker
+     */
+    interface ResponseReader<T> {
+        T read(DataInputStream in, int worker) throws IOException;
+    }
+
+    /**
+     * Sends a request about a shard to all workers, and only then reads their
+     * answers, so that the workers run it at the same time
+     *
+     * @return the answer of every worker
+     * @throws IOException              if a worker cannot be reached
+     * @throws IllegalArgumentException if a worker could not run the request,
+     *                                  with the message of the worker
+     */
+    synchronized <T> List<T> call(byte request, int id, RequestWriter writer, ResponseReader<T> reader)
+            throws IOException, IllegalArgumentException {
+        if (this.closed) {
+            throw this.failure == null ? new IOException("The cluster is closed")
+                    : new IOException("The cluster was closed after a failed request", this.failure);
+        }
+        try {
+            dropCollected();
+            return exchange(request, id, writer, reader);
+        } catch (WorkerException ex) {
+            throw new IllegalArgumentException(ex.getMessage());
+        } catch (IOException | RuntimeException ex) {
+            // A part of the request or of the answers may still be in
+            // transit, so the next request could not be told apart from it
+            this.failure = ex;
+            try {
+                close();
+            } catch (IOException closeFailure) {
+                ex.addSuppressed(closeFailure);
+            }
+            throw ex;
+        }
+    }
+
+    /*
+     * Drops the shards of the frames that were garbage collected
+     */
+    private void dropCollected() throws IOException {
+        ShardReference reference;
+        while ((reference = (ShardReference) this.collected.poll()) != null) {
+            if (this.frames.remove(reference.id) != null) {
+                exchange(ShardWorker.DROP, reference.id, (out, k) -> {
+                }, (in, k) -> null);
+            }
+        }
+    }
+
+    /*
+     * The error that a worker reported for a request that it read completely,
+     * which leaves the streams at the start of the next request
+     */
+    private static final class WorkerException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private WorkerException(String message) {
+            super(message);
+        }
+    }
+
+    private <T> List<T> exchange(byte request, int id, RequestWriter writer, ResponseReader<T> reader)
+            throws IOException {
+        int workers = getWorkerCount();
+        for (int k = 0; k < workers; k++) {
+            DataOutputStream out = this.outputs.get(k);
+            out.writeByte(request);
+            out.writeInt(id);
+            writer.write(out, k);
+            out.flush();
+        }
+        // Every answer is read, also after an error, so that the next
+        // request starts at the start of an answer
+        List<T> results = new ArrayList<>(workers);
+        String error = null;
+        for (int k = 0; k < workers; k++) {
+            DataInputStream in = this.inputs.get(k);
+            if (in.readByte() == ShardWorker.OK) {
+                results.add(reader.read(in, k));
+            }
+            else {
+                error = in.readUTF();
+            }
+        }
+        if (error != null) {
+            throw new WorkerException(error);
+        }
+        return results;
+    }
+}
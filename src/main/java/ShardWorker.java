@@ -0,0 +1,175 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The process that holds the shards of a ShardCluster. It is started by the
+ * cluster with the port to connect back to and reads the token of the cluster
+ * from its standard input. It sends the token as the first bytes of the
+ * connection, and then runs the requests of the cluster one at a time until
+ * the cluster shuts it down or disconnects.
+ *
+ * Every request starts with one of the request bytes below and the id of a
+ * shard; the worker answers with OK and the result, or with ERROR and a
+ * message. The shards are DoubleDataFrames, kept by id until they are
+ * dropped.
+ */
+final class ShardWorker {
+
+    static final byte PUT = 1;
+    static final byte SELECT = 2;
+    static final byte COMPUTE = 3;
+    static final byte MULTIPLY_ADD = 4;
+    static final byte SUMMARIZE = 5;
+    static final byte GROUP = 6;
+    static final byte GET = 7;
+    static final byte DROP = 8;
+    static final byte SHUTDOWN = 9;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Map<Integer, DoubleDataFrame> shards = new HashMap<>();
+
+    private ShardWorker(Socket socket) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+    }
+
+    /**
+     * @param args the port of the cluster on the loopback address
+     */
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        byte[] token = new byte[ShardCluster.TOKEN_BYTES];
+        new DataInputStream(System.in).readFully(token);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            ShardWorker worker = new ShardWorker(socket);
+            worker.out.write(token);
+            worker.out.flush();
+            worker.serve();
+        }
+    }
+
+    private void serve() throws IOException {
+        while (true) {
+            byte request;
+            try {
+                request = this.in.readByte();
+            } catch (EOFException ex) {
+                // The cluster is gone
+                return;
+            }
+            if (request == SHUTDOWN) {
+                return;
+            }
+            int id = this.in.readInt();
+            try {
+                handle(request, id);
+            } catch (RuntimeException ex) {
+                this.out.writeByte(ERROR);
+                this.out.writeUTF(String.valueOf(ex.getMessage()));
+            }
+            this.out.flush();
+        }
+    }
+
+    /*
+     * Reads the rest of a request and writes the answer. The whole request is
+     * read before anything can fail, so that a failed request leaves the
+     * stream at the start of the next one.
+     */
+    private void handle(byte request, int id) throws IOException {
+        switch (request) {
+            case PUT:
+                DoubleDataFrame frame = WireFormat.readFrame(this.in);
+                this.shards.put(id, frame);
+                this.out.writeByte(OK);
+                break;
+            case SELECT: {
+                int target = this.in.readInt();
+                int count = this.in.readInt();
+                ColumnPredicate[] predicates = new ColumnPredicate[count];
+                for (int p = 0; p < count; p++) {
+                    String column = this.in.readUTF();
+                    Comparison comparison = Comparison.values()[this.in.readByte()];
+                    predicates[p] = ColumnPredicate.of(column, comparison, this.in.readDouble());
+                }
+                DoubleDataFrame result = shard(id);
+                for (ColumnPredicate predicate : predicates) {
+                    result = result.select(predicate.getColumn(), predicate.getComparison(), predicate.getValue());
+                }
+                putResult(target, result);
+                break;
+            }
+            case COMPUTE: {
+                int target = this.in.readInt();
+                String columnName = this.in.readUTF();
+                String left = this.in.readUTF();
+                Arithmetic operator = Arithmetic.values()[this.in.readByte()];
+                String right = this.in.readUTF();
+                putResult(target, shard(id).computeColumn(columnName, left, operator, right));
+                break;
+            }
+            case MULTIPLY_ADD: {
+                int target = this.in.readInt();
+                String columnName = this.in.readUTF();
+                String factor1 = this.in.readUTF();
+                String factor2 = this.in.readUTF();
+                String addend = this.in.readUTF();
+                putResult(target, shard(id).computeMultiplyAdd(columnName, factor1, factor2, addend));
+                break;
+            }
+            case SUMMARIZE: {
+                DoubleDataFrame partial = PartialAggregates.summary(shard(id));
+                this.out.writeByte(OK);
+                WireFormat.writeFrame(this.out, partial);
+                break;
+            }
+            case GROUP: {
+                String key = this.in.readUTF();
+                String value = this.in.readUTF();
+                DoubleDataFrame partial = PartialAggregates.groups(shard(id), key, value);
+                this.out.writeByte(OK);
+                WireFormat.writeFrame(this.out, partial);
+                break;
+            }
+            case GET: {
+                DoubleDataFrame result = shard(id);
+                this.out.writeByte(OK);
+                WireFormat.writeFrame(this.out, result);
+                break;
+            }
+            case DROP:
+                this.shards.remove(id);
+                this.out.writeByte(OK);
+                break;
+            default:
+                throw new IOException("Unknown request " + request);
+        }
+    }
+
+    private DoubleDataFrame shard(int id) throws IllegalArgumentException {
+        DoubleDataFrame frame = this.shards.get(id);
+        if (frame == null) {
+            throw new IllegalArgumentException("Shard " + id + " not exists!");
+        }
+        return frame;
+    }
+
+    private void putResult(int target, DoubleDataFrame result) throws IOException {
+        this.shards.put(target, result);
+        this.out.writeByte(OK);
+        this.out.writeInt(result.getRowCount());
+    }
+}
@@ -0,0 +1,224 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A data frame whose rows are split over the workers of a ShardCluster, see
+ * ShardCluster.distribute(). Each worker holds a consecutive range of rows,
+ * and the ranges keep the order of the original frame.
+ *
+ * Operations that produce a frame run on all shards at the same time and
+ * return a new sharded frame, whose shards stay on the workers. The shards of
+ * a frame that is no longer needed are freed with release(), or by the
+ * cluster once the frame is garbage collected. Aggregations are
+ * computed per shard and merged here, so only their partial results travel
+ * back; collect() brings all rows back into a single DoubleDataFrame.
+ */
+public final class ShardedDataFrame {
+
+    private final ShardCluster cluster;
+    private final int id;
+    private final Schema schema;
+    private final int[] rowCounts;
+
+    ShardedDataFrame(ShardCluster cluster, int id, Schema schema, int[] rowCounts) {
+        this.cluster = cluster;
+        this.id = id;
+        this.schema = schema;
+        this.rowCounts = rowCounts;
+    }
+
+    int getId() {
+        return this.id;
+    }
+
+    public int getRowCount() {
+        int rowCount = 0;
+        for (int shardRows : this.rowCounts) {
+            rowCount += shardRows;
+        }
+        return rowCount;
+    }
+
+    public List<String> getColumnNames() {
+        return this.schema.names();
+    }
+
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * The number of rows on every worker
+     */
+    public int[] getShardRowCounts() {
+        return this.rowCounts.clone();
+    }
+
+    /**
+     * Selects the rows that match all predicates; rows with a missing value
+     * in a predicate column are left out
+     *
+     * @throws IllegalArgumentException if a column does not exist
+     * @throws IOException              if a worker cannot be reached
+     */
+    public ShardedDataFrame select(ColumnPredicate... predicates) throws IllegalArgumentException, IOException {
+        for (ColumnPredicate predicate : predicates) {
+            this.schema.requireIndex(predicate.getColumn());
+        }
+        return derive("shard.select", ShardWorker.SELECT, this.schema, out -> {
+            out.writeInt(predicates.length);
+            for (ColumnPredicate predicate : predicates) {
+                out.writeUTF(predicate.getColumn());
+                out.writeByte(predicate.getComparison().ordinal());
+                out.writeDouble(predicate.getValue());
+            }
+        });
+    }
+
+    /**
+     * Adds a column with the result of an arithmetic operator on two columns,
+     * see DoubleDataFrame.computeColumn()
+     *
+     * @throws IllegalArgumentException if a column does not exist, or the new
+     *                                  column is already defined
+     * @throws IOException              if a worker cannot be reached
+     */
+    public ShardedDataFrame computeColumn(String columnName, String left, Arithmetic operator, String right)
+            throws IllegalArgumentException, IOException {
+        this.schema.requireIndex(left);
+        this.schema.requireIndex(right);
+        return derive("shard.computeColumn", ShardWorker.COMPUTE, this.schema.plus(columnName), out -> {
+            out.writeUTF(columnName);
+            out.writeUTF(left);
+            out.writeByte(operator.ordinal());
+            out.writeUTF(right);
+        });
+    }
+
+    /**
+     * Adds a column with factor1 * factor2 + addend, see
+     * DoubleDataFrame.computeMultiplyAdd()
+     *
+     * @throws IllegalArgumentException if a column does not exist, or the new
+     *                                  column is already defined
+     * @throws IOException              if a worker cannot be reached
+     */
+    public ShardedDataFrame computeMultiplyAdd(String columnName, String factor1, String factor2, String addend)
+            throws IllegalArgumentException, IOException {
+        this.schema.requireIndex(factor1);
+        this.schema.requireIndex(factor2);
+        this.schema.requireIndex(addend);
+        return derive("shard.computeMultiplyAdd", ShardWorker.MULTIPLY_ADD, this.schema.plus(columnName), out -> {
+            out.writeUTF(columnName);
+            out.writeUTF(factor1);
+            out.writeUTF(factor2);
+            out.writeUTF(addend);
+        });
+    }
+
+    /**
+     * Summarizes every column with a built-in aggregation. Missing values are
+     * skipped.
+     *
+     * @throws IOException if a worker cannot be reached
+     */
+    public DataVector<Double> summarize(String name, Aggregation aggregation) throws IOException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("shard.summarize", getRowCount());
+        List<DoubleDataFrame> partials = this.cluster.call(ShardWorker.SUMMARIZE, this.id, (out, k) -> {
+        }, (in, k) -> WireFormat.readFrame(in));
+        DataVector<Double> result = PartialAggregates.mergeSummaries(partials, name, aggregation);
+        DataFrameMetrics.finish(timer, 1, partials.size() > 1);
+        return result;
+    }
+
+    /**
+     * Aggregates the values of a column per distinct value of a key column.
+     * Rows with a missing key are left out, missing values are skipped.
+     *
+     * @param key         the column to group by
+     * @param value       the column to aggregate
+     * @param aggregation how the values of a group are combined
+     * @return a data frame with a row per key, in increasing order, and the
+     *         key and value columns; if the key is also the value column,
+     *         the aggregated column is named after the value and the
+     *         aggregation, for example "year_count"
+     * @throws IllegalArgumentException if a column does not exist
+     * @throws IOException              if a worker cannot be reached
+     */
+    public DoubleDataFrame groupBy(String key, String value, Aggregation aggregation)
+            throws IllegalArgumentException, IOException {
+        this.schema.requireIndex(key);
+        this.schema.requireIndex(value);
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("shard.groupBy", getRowCount());
+        List<DoubleDataFrame> partials = this.cluster.call(ShardWorker.GROUP, this.id, (out, k) -> {
+            out.writeUTF(key);
+            out.writeUTF(value);
+        }, (in, k) -> WireFormat.readFrame(in));
+        DoubleDataFrame result = PartialAggregates.mergeGroups(partials, key, value, aggregation);
+        DataFrameMetrics.finish(timer, result.getRowCount(), partials.size() > 1);
+        return result;
+    }
+
+    /**
+     * Brings all rows back from the workers, in order
+     *
+     * @throws IOException if a worker cannot be reached
+     */
+    public DoubleDataFrame collect() throws IOException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("shard.collect", getRowCount());
+        List<DoubleDataFrame> shards = this.cluster.call(ShardWorker.GET, this.id, (out, k) -> {
+        }, (in, k) -> WireFormat.readFrame(in));
+        DoubleDataFrame result = shards.get(0).appendRows(shards.subList(1, shards.size()), false);
+        DataFrameMetrics.finish(timer, result.getRowCount(), false);
+        return result;
+    }
+
+    /**
+     * Frees the shards of this frame on the workers. Frames derived from it
+     * keep their own shards.
+     *
+     * @throws IOException if a worker cannot be reached
+     */
+    public void release() throws IOException {
+        this.cluster.call(ShardWorker.DROP, this.id, (out, k) -> {
+        }, (in, k) -> null);
+        this.cluster.untrack(this.id);
+    }
+
+    /*
+     * Writes the arguments of a request after the id of its result
+     */
+    private interface Arguments {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /*
+     * Runs a request that stores a new frame on every worker, which answers
+     * with the number of rows of its shard of it
+     */
+    private ShardedDataFrame derive(String operation, byte request, Schema resultSchema, Arguments arguments)
+            throws IOException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start(operation, getRowCount());
+        int target = this.cluster.newId();
+        List<Integer> counts;
+        try {
+            counts = this.cluster.call(request, this.id, (out, k) -> {
+                out.writeInt(target);
+                arguments.write(out);
+            }, (in, k) -> in.readInt());
+        } catch (IllegalArgumentException ex) {
+            // The workers that did run the request keep their result
+            this.cluster.call(ShardWorker.DROP, target, (out, k) -> {
+            }, (in, k) -> null);
+            throw ex;
+        }
+        int[] resultRows = new int[counts.size()];
+        for (int k = 0; k < resultRows.length; k++) {
+            resultRows[k] = counts.get(k);
+        }
+        ShardedDataFrame result = this.cluster.track(new ShardedDataFrame(this.cluster, target, resultSchema, resultRows));
+        DataFrameMetrics.finish(timer, result.getRowCount(), resultRows.length > 1);
+        return result;
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * A service that supplies the statistical analysis of data frames. The data
+ * frames find their provider with java.util.ServiceLoader the first time
+ * statistics() is called, so that the statistics library is only loaded by
+ * programs that use it. A provider is registered in
+ * META-INF/services/StatisticsProvider.
+ */
+public interface StatisticsProvider {
+
+    /**
+     * Whether the libraries of this provider are on the class path. Providers
+     * that are not available are skipped.
+     */
+    public default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * @param dataFrame the data frame to analyse
+     * @return a DataFrameStatistics object linked to the data frame
+     */
+    public DataFrameStatistics statistics(DataFrame<Double> dataFrame);
+}
@@ -0,0 +1,526 @@
+import java.util.*;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * A data frame whose columns each have their own primitive type: double, long,
+ * int, or a dictionary-encoded category of String labels. Values are exposed
+ * as objects: Double, Long, Integer or String, and null for a missing value.
+ *
+ * Columns are added one at a time while building the frame:
+ *
+ * <pre>
+ * TypedDataFrame df = new TypedDataFrame(4)
+ *         .addIntColumn("year", new int[] { 2015, 2016, 2017, 2018 })
+ *         .addDoubleColumn("revenue", new double[] { 70021.35, 67008.12, 10632.83, 85216.33 })
+ *         .addCategoryColumn("region", new String[] { "north", "south", "north", "east" });
+ * </pre>
+ *
+ * Filtering and counting on a category column with selectCategory() and
+ * countByCategory() compares the int codes of the labels, not the strings.
+ */
+public class TypedDataFrame implements DataFrame<Object>
+{
+    private List<ColumnStorage> columns;
+
+    private Schema schema;
+
+    private int rowCount;
+
+    private static final double DEFAULT_DATA = 0.0;
+
+    /*
+     * Constructor: an empty frame with the given number of rows,
+     * to which columns are added with the add...Column methods
+     */
+    public TypedDataFrame(int rowCount) {
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("Number of rows should be positive");
+        }
+        this.columns = new ArrayList<>();
+        this.schema = Schema.empty();
+        this.rowCount = rowCount;
+    }
+
+    /*
+     * Constructor: take over columns that were already built. The columns are not copied.
+     */
+    TypedDataFrame(Schema schema, List<ColumnStorage> columns, int rowCount) {
+        if (schema.size() != columns.size()) {
+            throw new IllegalArgumentException("Number of column names and columns differ");
+        }
+        for (ColumnStorage column : columns) {
+            if (column.size() != rowCount) {
+                throw new IllegalArgumentException("All columns should have " + rowCount + " rows");
+            }
+        }
+        this.columns = new ArrayList<>(columns);
+        this.schema = schema;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Adds a column of double values. The array is used without copying.
+     */
+    public TypedDataFrame addDoubleColumn(String name, double[] values) throws IllegalArgumentException {
+        return addColumn(name, new DoubleColumn(values, values.length));
+    }
+
+    /**
+     * Adds a column of long values. The array is used without copying.
+     */
+    public TypedDataFrame addLongColumn(String name, long[] values) throws IllegalArgumentException {
+        return addColumn(name, new LongColumn(values, values.length));
+    }
+
+    /**
+     * Adds a column of int values. The array is used without copying.
+     */
+    public TypedDataFrame addIntColumn(String name, int[] values) throws IllegalArgumentException {
+        return addColumn(name, new IntColumn(values, values.length));
+    }
+
+    /**
+     * Adds a category column, encoding every distinct label once. Null labels
+     * are missing.
+     */
+    public TypedDataFrame addCategoryColumn(String name, String[] labels) throws IllegalArgumentException {
+        return addColumn(name, CategoryColumn.encode(labels));
+    }
+
+    private TypedDataFrame addColumn(String name, ColumnStorage column) {
+        if (column.size() != this.rowCount) {
+            throw new IllegalArgumentException("All columns should have " + this.rowCount + " rows");
+        }
+        this.schema = this.schema.plus(name);
+        this.columns.add(column);
+        return this;
+    }
+
+    /**
+     * The type of the values in a column
+     */
+    public ColumnType getColumnType(String colName) throws IllegalArgumentException {
+        return getColumnStorage(colName).type();
+    }
+
+    /*
+     * The columns and the list holding them
+     */
+    @Override
+    public long estimateMemoryBytes() {
+        long total = ColumnStorage.arrayBytes(this.columns.size(), (int) ColumnStorage.REFERENCE);
+        for (ColumnStorage column : this.columns) {
+            total += column.estimateMemoryBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return this.columns.size();
+    }
+
+    @Override
+    public List<String> getColumnNames() {
+        return this.schema.names();
+    }
+
+    @Override
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * Changes a value. The value has to fit the type of the column: a Number
+     * for numeric columns (without fraction for int and long columns) or a
+     * String for category columns. A new label is added to the dictionary of
+     * the column.
+     */
+    @Override
+    public void setValue(int rowIndex, String colName, Object value) throws IndexOutOfBoundsException, IllegalArgumentException {
+        if (isValidRowIndex(rowIndex) && isValidColumnName(colName)) {
+            int columnIndex = this.schema.indexOf(colName);
+            ColumnStorage column = this.columns.get(columnIndex);
+            // A shared column is copied before the first change
+            if (column.isShared()) {
+                column = column.copy(this.rowCount);
+                this.columns.set(columnIndex, column);
+            }
+            column.setObject(rowIndex, value);
+        }
+    }
+
+    @Override
+    public Object getValue(int rowIndex, String colName) throws IndexOutOfBoundsException, IllegalArgumentException {
+        Object result = null;
+        if (isValidRowIndex(rowIndex) && isValidColumnName(colName)) {
+            result = this.columns.get(this.schema.indexOf(colName)).getObject(rowIndex);
+        }
+        return result;
+    }
+
+    private boolean isValidRowIndex(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= getRowCount()) {
+            throw new IndexOutOfBoundsException("Invalid row index!");
+        }
+        return true;
+    }
+
+    private boolean isValidColumnName(String colName) {
+        if (!this.schema.contains(colName)) {
+            String msg = "Column name " + colName + " not exists!";
+            throw new IllegalArgumentException(msg);
+        }
+        return true;
+    }
+
+    @Override
+    public DataVector<Object> getRow(int rowIndex) throws IndexOutOfBoundsException {
+        DataVector<Object> result = null;
+        if (isValidRowIndex(rowIndex)) {
+            // Collect the value of this row from every column
+            List<Object> rowData = new ArrayList<>(this.columns.size());
+            for (ColumnStorage column : this.columns) {
+                rowData.add(column.getObject(rowIndex));
+            }
+            result = new ObjectDataVector("row_" + rowIndex, getColumnNames(), rowData);
+        }
+        return result;
+    }
+
+    @Override
+    public DataVector<Object> getColumn(String colName) throws IllegalArgumentException {
+        ColumnStorage column = getColumnStorage(colName);
+        List<String> rowNames = new ArrayList<>(this.rowCount);
+        List<Object> colData = new ArrayList<>(this.rowCount);
+        for (int i = 0; i < this.rowCount; i++) {
+            rowNames.add("row_" + i);
+            colData.add(column.getObject(i));
+        }
+        return new ObjectDataVector(colName, rowNames, colData);
+    }
+
+    @Override
+    public List<DataVector<Object>> getRows() {
+        List<DataVector<Object>> result = new ArrayList<>();
+        for (int i = 0; i < getRowCount(); i++) {
+            result.add(getRow(i));
+        }
+        return result;
+    }
+
+    @Override
+    public List<DataVector<Object>> getColumns() {
+        List<DataVector<Object>> result = new ArrayList<>();
+        for (String colName : getColumnNames()) {
+            result.add(getColumn(colName));
+        }
+        return result;
+    }
+
+    /**
+     * Adds rows and columns. Existing columns keep their type and the new rows
+     * get the default value of that type (missing for category columns). The
+     * new columns hold doubles, filled with 0.0.
+     */
+    @Override
+    public DataFrame<Object> expand(int additionalRows, List<String> newCols) throws IllegalArgumentException {
+        if (additionalRows < 0) {
+            throw new IllegalArgumentException("Number of rows should be positive");
+        }
+        Set<String> uniqueNames = new HashSet<>();
+        for (String newColName : newCols) {
+            boolean isDuplicated = this.schema.contains(newColName) || !uniqueNames.add(newColName);
+            if (isDuplicated) {
+                String msg = "Column " + newColName + " is already defined!";
+                throw new IllegalArgumentException(msg);
+            }
+        }
+
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("expand", this.rowCount);
+        int newRowCount = this.rowCount + additionalRows;
+        List<ColumnStorage> newColumns = new ArrayList<>(this.columns.size() + newCols.size());
+        for (ColumnStorage column : this.columns) {
+            newColumns.add(column.copy(newRowCount));
+        }
+        for (int j = 0; j < newCols.size(); j++) {
+            newColumns.add(DoubleColumn.filled(newRowCount, DEFAULT_DATA));
+        }
+        TypedDataFrame result = new TypedDataFrame(this.schema.plus(newCols), newColumns, newRowCount);
+        DataFrameMetrics.finish(timer, newRowCount, false);
+        return result;
+    }
+
+    @Override
+    public DataFrame<Object> project(Collection<String> retainColumns) throws IllegalArgumentException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("project", this.rowCount);
+        Schema retained = this.schema.retain(retainColumns);
+        List<ColumnStorage> columnList = new ArrayList<>(retained.size());
+        for (int columnIndex : this.schema.retainedIndexes(retainColumns)) {
+            columnList.add(this.columns.get(columnIndex).copy(this.rowCount));
+        }
+        TypedDataFrame result = new TypedDataFrame(retained, columnList, this.rowCount);
+        DataFrameMetrics.finish(timer, this.rowCount, false);
+        return result;
+    }
+
+    @Override
+    public DataFrame<Object> select(Predicate<DataVector<Object>> rowFilter) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("select", this.rowCount);
+        int[] qualifiedRows = new int[this.rowCount];
+        int qualifiedCount = 0;
+        for (int i = 0; i < this.rowCount; i++) {
+            if (rowFilter.test(getRow(i))) {
+                qualifiedRows[qualifiedCount] = i;
+                qualifiedCount++;
+            }
+        }
+        TypedDataFrame result = gatherRows(qualifiedRows, qualifiedCount);
+        DataFrameMetrics.finish(timer, qualifiedCount, false);
+        return result;
+    }
+
+    @Override
+    public DataFrame<Object> sample(int n, long seed) throws IllegalArgumentException {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("sample", this.rowCount);
+        int[] sampledRows = RowSampler.sample(this.rowCount, n, seed);
+        TypedDataFrame result = gatherRows(sampledRows, sampledRows.length);
+        DataFrameMetrics.finish(timer, sampledRows.length, RowSampler.isParallel(this.rowCount));
+        return result;
+    }
+
+    /**
+     * Selects the rows whose value in a category column is one of the given
+     * labels. The labels are looked up in the dictionary once, after which
+     * only the int codes of the rows are compared.
+     *
+     * @param colName the category column
+     * @param labels  the labels to keep
+     * @return a new data frame with the matching rows
+     * @throws IllegalArgumentException if the column does not exist or is not a
+     *                                  category column
+     */
+    public TypedDataFrame selectCategory(String colName, String... labels) throws IllegalArgumentException {
+        CategoryColumn column = getCategoryColumn(colName);
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("selectCategory", this.rowCount);
+        // Mark the codes to keep; labels that never occur are ignored
+        boolean[] keep = new boolean[column.dictionary().size()];
+        for (String label : labels) {
+            int code = column.dictionary().lookup(label);
+            if (code >= 0) {
+                keep[code] = true;
+            }
+        }
+        int[] codes = column.codes();
+        int[] qualifiedRows = new int[this.rowCount];
+        int qualifiedCount = 0;
+        for (int i = column.nextValid(0); i < this.rowCount; i = column.nextValid(i + 1)) {
+            if (keep[codes[i]]) {
+                qualifiedRows[qualifiedCount] = i;
+                qualifiedCount++;
+            }
+        }
+        TypedDataFrame result = gatherRows(qualifiedRows, qualifiedCount);
+        DataFrameMetrics.finish(timer, qualifiedCount, false);
+        return result;
+    }
+
+    /**
+     * Counts the rows per label of a category column, in the order in which
+     * the labels first appeared. Missing values are not counted, and labels
+     * that no row holds anymore, for example after setValue() or select(),
+     * are left out.
+     *
+     * @param colName the category column
+     * @return a map from every label that occurs to its number of rows
+     * @throws IllegalArgumentException if the column does not exist or is not a
+     *                                  category column
+     */
+    public Map<String, Integer> countByCategory(String colName) throws IllegalArgumentException {
+        CategoryColumn column = getCategoryColumn(colName);
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("countByCategory", this.rowCount);
+        // One counter per code instead of a hash lookup per row
+        int[] counts = new int[column.dictionary().size()];
+        int[] codes = column.codes();
+        for (int i = column.nextValid(0); i < this.rowCount; i = column.nextValid(i + 1)) {
+            counts[codes[i]]++;
+        }
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                result.put(column.dictionary().label(code), counts[code]);
+            }
+        }
+        DataFrameMetrics.finish(timer, counts.length, false);
+        return result;
+    }
+
+    /**
+     * Computes a new column of doubles. The function is called for every row,
+     * in which missing entries are null; a null result is a missing value.
+     */
+    @Override
+    public DataFrame<Object> computeColumn(String columnName, Function<DataVector<Object>, Double> function) {
+        if (this.schema.contains(columnName)) {
+            String msg = "Column " + columnName + " is already defined!";
+            throw new IllegalArgumentException(msg);
+        }
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("computeColumn", this.rowCount);
+        DoubleColumn newColumn = new DoubleColumn(new double[this.rowCount], this.rowCount);
+        for (int i = 0; i < this.rowCount; i++) {
+            newColumn.setBoxed(i, function.apply(getRow(i)));
+        }
+        List<ColumnStorage> columnList = new ArrayList<>(this.columns.size() + 1);
+        for (ColumnStorage column : this.columns) {
+            columnList.add(column.copy(this.rowCount));
+        }
+        columnList.add(newColumn);
+        TypedDataFrame result = new TypedDataFrame(this.schema.plus(columnName), columnList, this.rowCount);
+        DataFrameMetrics.finish(timer, this.rowCount, false);
+        return result;
+    }
+
+    @Override
+    public DataVector<Object> summarize(String name, BinaryOperator<Object> summaryFunction) {
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("summarize", this.rowCount);
+        List<Object> summaryResultList = new ArrayList<>(this.columns.size());
+        for (ColumnStorage column : this.columns) {
+            // Missing entries are skipped by walking the validity bitmap
+            int first = column.nextValid(0);
+            if (first >= this.rowCount) {
+                summaryResultList.add(null);
+                continue;
+            }
+            Object summaryValue = column.getObject(first);
+            for (int i = column.nextValid(first + 1); i < this.rowCount; i = column.nextValid(i + 1)) {
+                summaryValue = summaryFunction.apply(summaryValue, column.getObject(i));
+            }
+            summaryResultList.add(summaryValue);
+        }
+        DataVector<Object> result = new ObjectDataVector(name, getColumnNames(), summaryResultList);
+        DataFrameMetrics.finish(timer, 1, false);
+        return result;
+    }
+
+    /**
+     * Appends the columns of another frame. The columns of another
+     * TypedDataFrame keep their type; other frames are copied into columns of
+     * doubles.
+     */
+    @Override
+    public DataFrame<Object> concat(DataFrame<Object> other) throws IllegalArgumentException {
+        if (getRowCount() != other.getRowCount()) {
+            throw new IllegalArgumentException("Can only concatenate dataframes with equal numbers of rows");
+        }
+        if (!(other instanceof TypedDataFrame)) {
+            return DataFrame.super.concat(other);
+        }
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("concat", this.rowCount);
+        TypedDataFrame typedOther = (TypedDataFrame) other;
+        Schema schema = this.schema.plus(typedOther.getColumnNames());
+        List<ColumnStorage> columnList = new ArrayList<>(schema.size());
+        for (ColumnStorage column : this.columns) {
+            columnList.add(column.copy(this.rowCount));
+        }
+        for (ColumnStorage column : typedOther.columns) {
+            columnList.add(column.copy(this.rowCount));
+        }
+        TypedDataFrame result = new TypedDataFrame(schema, columnList, this.rowCount);
+        DataFrameMetrics.finish(timer, this.rowCount, false);
+        return result;
+    }
+
+    /**
+     * Appends the rows of other typed data frames, keeping the column types.
+     * Every result column is allocated once and filled with one bulk copy per
+     * frame; category labels that are new to a column are added to its
+     * dictionary. Other kinds of frames are appended value by value.
+     *
+     * @throws IllegalArgumentException if the columns or their types differ
+     */
+    @Override
+    public DataFrame<Object> appendRows(List<? extends DataFrame<Object>> others, boolean parallel) throws IllegalArgumentException {
+        for (DataFrame<Object> other : others) {
+            if (!(other instanceof TypedDataFrame)) {
+                return DataFrame.super.appendRows(others, parallel);
+            }
+        }
+        int totalRows = appendedRowCount(others);
+        DataFrameMetrics.Timer timer = DataFrameMetrics.start("appendRows", totalRows);
+        int columnCount = this.columns.size();
+        ColumnStorage[] columnArray = new ColumnStorage[columnCount];
+        IntStream columnIndexes = IntStream.range(0, columnCount);
+        (parallel ? columnIndexes.parallel() : columnIndexes).forEach(j -> {
+            List<ColumnStorage> following = new ArrayList<>(others.size());
+            for (DataFrame<Object> other : others) {
+                following.add(((TypedDataFrame) other).columns.get(j));
+            }
+            columnArray[j] = this.columns.get(j).appendRows(following);
+        });
+        TypedDataFrame result = new TypedDataFrame(this.schema, Arrays.asList(columnArray), totalRows);
+        DataFrameMetrics.finish(timer, totalRows, parallel);
+        return result;
+    }
+
+    /**
+     * Converts the numeric columns to a DoubleDataFrame, for example to use its
+     * statistics or plotting. Category columns are left out.
+     *
+     * @return a new data frame holding the numeric columns as doubles
+     */
+    public DoubleDataFrame toDoubleDataFrame() {
+        List<String> columnNames = new ArrayList<>();
+        List<DoubleColumn> columnList = new ArrayList<>();
+        for (int j = 0; j < this.columns.size(); j++) {
+            ColumnStorage column = this.columns.get(j);
+            if (column.type() == ColumnType.CATEGORY) {
+                continue;
+            }
+            DoubleColumn converted;
+            if (column instanceof DoubleColumn) {
+                converted = ((DoubleColumn) column).copy(this.rowCount);
+            }
+            else {
+                converted = new DoubleColumn(new double[this.rowCount], this.rowCount);
+                for (int i = 0; i < this.rowCount; i++) {
+                    converted.setObject(i, column.getObject(i));
+                }
+            }
+            columnNames.add(this.schema.name(j));
+            columnList.add(converted);
+        }
+        return new DoubleDataFrame(columnNames, columnList, this.rowCount);
+    }
+
+    /*
+     * The storage of a column, which is shared rather than copied
+     */
+    ColumnStorage getColumnStorage(String colName) throws IllegalArgumentException {
+        isValidColumnName(colName);
+        return this.columns.get(this.schema.indexOf(colName));
+    }
+
+    private CategoryColumn getCategoryColumn(String colName) throws IllegalArgumentException {
+        ColumnStorage column = getColumnStorage(colName);
+        if (!(column instanceof CategoryColumn)) {
+            throw new IllegalArgumentException("Column " + colName + " is not a category column");
+        }
+        return (CategoryColumn) column;
+    }
+
+    private TypedDataFrame gatherRows(int[] rowIndices, int count) {
+        List<ColumnStorage> columnList = new ArrayList<>(this.columns.size());
+        for (ColumnStorage column : this.columns) {
+            columnList.add(column.gather(rowIndices, count));
+        }
+        return new TypedDataFrame(this.schema, columnList, count);
+    }
+}
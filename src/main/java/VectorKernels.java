@@ -0,0 +1,48 @@
+/**
+ * The SIMD implementation of the column kernels. This version is only a
+ * placeholder for JVMs before Java 17: it is never available, so
+ * ColumnKernels always uses its scalar loops, and its kernels run those same
+ * loops. The multi-release jar replaces it on Java 17 and later with the
+ * version in src/main/java17.
+ */
+final class VectorKernels {
+
+    private VectorKernels() {
+    }
+
+    static boolean isAvailable() {
+        return false;
+    }
+
+    static void add(double[] left, double[] right, double[] result, int length) {
+        ColumnKernels.addScalar(left, right, result, length);
+    }
+
+    static void subtract(double[] left, double[] right, double[] result, int length) {
+        ColumnKernels.subtractScalar(left, right, result, length);
+    }
+
+    static void multiply(double[] left, double[] right, double[] result, int length) {
+        ColumnKernels.multiplyScalar(left, right, result, length);
+    }
+
+    static void multiplyAdd(double[] a, double[] b, double[] c, double[] result, int length) {
+        ColumnKernels.multiplyAddScalar(a, b, c, result, length);
+    }
+
+    static double sum(double[] values, int length) {
+        return ColumnKernels.sumScalar(values, length);
+    }
+
+    static double min(double[] values, int length) {
+        return ColumnKernels.minScalar(values, length);
+    }
+
+    static double max(double[] values, int length) {
+        return ColumnKernels.maxScalar(values, length);
+    }
+
+    static void compare(double[] values, int length, Comparison comparison, double constant, long[] mask) {
+        ColumnKernels.compareScalar(values, length, comparison, constant, mask);
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary form in which ShardCluster and its workers exchange data frames.
+ *
+ * A frame is sent column by column: the number of columns, their names, the
+ * number of rows, and then per column a flag, the validity bitmap if a value
+ * is missing, and the values as raw doubles. The values are copied through a
+ * byte buffer in batches, rather than written one at a time.
+ */
+final class WireFormat {
+
+    // The number of doubles copied at a time
+    private static final int BATCH = 1 << 13;
+
+    private WireFormat() {
+    }
+
+    /**
+     * Writes all rows of a frame
+     */
+    static void writeFrame(DataOutputStream out, DataFrame<Double> dataFrame) throws IOException {
+        writeColumns(out, dataFrame.getColumnNames(), numericColumns(dataFrame), 0, dataFrame.getRowCount());
+    }
+
+    /**
+     * The columns of a frame as they are written. The columns of a
+     * DoubleDataFrame are used as they are, those of other frames are
+     * converted, so a caller that writes several row ranges of a frame
+     * converts it once.
+     */
+    static List<DoubleColumn> numericColumns(DataFrame<Double> dataFrame) throws IllegalArgumentException {
+        List<String> colNames = dataFrame.getColumnNames();
+        List<DoubleColumn> columns = new ArrayList<>(colNames.size());
+        for (String colName : colNames) {
+            columns.add(DoubleColumn.numericColumn(dataFrame, colName));
+        }
+        return columns;
+    }
+
+    /**
+     * Writes the rows [from, to) of the columns of a frame, without copying
+     * them first
+     */
+    static void writeColumns(DataOutputStream out, List<String> colNames, List<DoubleColumn> columns, int from, int to)
+            throws IOException {
+        int rows = to - from;
+        out.writeInt(colNames.size());
+        for (String colName : colNames) {
+            out.writeUTF(colName);
+        }
+        out.writeInt(rows);
+        byte[] buffer = new byte[8 * BATCH];
+        DoubleBuffer doubles = ByteBuffer.wrap(buffer).asDoubleBuffer();
+        for (DoubleColumn column : columns) {
+            boolean hasMissing = column.hasMissing();
+            out.writeBoolean(hasMissing);
+            if (hasMissing) {
+                for (int w = 0; w < ColumnStorage.wordCount(rows); w++) {
+                    long word = 0;
+                    for (int i = w << 6; i < Math.min(rows, (w + 1) << 6); i++) {
+                        if (column.isValid(from + i)) {
+                            word |= 1L << i;
+                        }
+                    }
+                    out.writeLong(word);
+                }
+            }
+            double[] values = column.values();
+            for (int offset = 0; offset < rows; offset += BATCH) {
+                int count = Math.min(BATCH, rows - offset);
+                doubles.clear();
+                doubles.put(values, from + offset, count);
+                out.write(buffer, 0, 8 * count);
+            }
+        }
+    }
+
+    static DoubleDataFrame readFrame(DataInputStream in) throws IOException {
+        int columnCount = in.readInt();
+        List<String> colNames = new ArrayList<>(columnCount);
+        for (int j = 0; j < columnCount; j++) {
+            colNames.add(in.readUTF());
+        }
+        int rows = in.readInt();
+        byte[] buffer = new byte[8 * BATCH];
+        DoubleBuffer doubles = ByteBuffer.wrap(buffer).asDoubleBuffer();
+        List<DoubleColumn> columns = new ArrayList<>(columnCount);
+        for (int j = 0; j < columnCount; j++) {
+            long[] validity = null;
+            if (in.readBoolean()) {
+                validity = new long[ColumnStorage.wordCount(rows)];
+                for (int w = 0; w < validity.length; w++) {
+                    validity[w] = in.readLong();
+                }
+            }
+            double[] values = new double[rows];
+            for (int offset = 0; offset < rows; offset += BATCH) {
+                int count = Math.min(BATCH, rows - offset);
+                in.readFully(buffer, 0, 8 * count);
+                doubles.clear();
+                doubles.get(values, offset, count);
+            }
+            columns.add(new DoubleColumn(values, rows, validity));
+        }
+        return new DoubleDataFrame(colNames, columns, rows);
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * The plots of data frames drawn with XChart, see DoubleDataFramePlotting
+ */
+public class XChartPlottingProvider implements PlottingProvider {
+
+    @Override
+    public boolean isAvailable() {
+        return DataFrameServices.isPresent("org.knowm.xchart.XYChart");
+    }
+
+    @Override
+    public DataFramePlotting plotting(DataFrame<Double> dataFrame) {
+        return new DoubleDataFramePlotting(dataFrame);
+    }
+}
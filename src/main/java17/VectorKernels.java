@@ -0,0 +1,200 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The SIMD implementation of the column kernels, for Java 17 and later, in
+ * the versioned part of the multi-release jar. It uses the preferred vector
+ * size of the processor. Loading this class fails when the
+ * jdk.incubator.vector module is not added to the JVM, in which case
+ * ColumnKernels keeps using its scalar loops.
+ *
+ * sum() keeps the PARTIAL_SUMS partial sums of the scalar loop in one or more
+ * vectors, lane for lane, so that both give bit-identical results. It is
+ * therefore only available when the number of lanes divides PARTIAL_SUMS.
+ */
+final class VectorKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    private VectorKernels() {
+    }
+
+    static boolean isAvailable() {
+        return LANES > 1 && ColumnKernels.PARTIAL_SUMS % LANES == 0;
+    }
+
+    static void add(double[] left, double[] right, double[] result, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, left, i);
+            a.add(DoubleVector.fromArray(SPECIES, right, i)).intoArray(result, i);
+        }
+        for (; i < length; i++) {
+            result[i] = left[i] + right[i];
+        }
+    }
+
+    static void subtract(double[] left, double[] right, double[] result, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, left, i);
+            a.sub(DoubleVector.fromArray(SPECIES, right, i)).intoArray(result, i);
+        }
+        for (; i < length; i++) {
+            result[i] = left[i] - right[i];
+        }
+    }
+
+    static void multiply(double[] left, double[] right, double[] result, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, left, i);
+            a.mul(DoubleVector.fromArray(SPECIES, right, i)).intoArray(result, i);
+        }
+        for (; i < length; i++) {
+            result[i] = left[i] * right[i];
+        }
+    }
+
+    static void multiplyAdd(double[] a, double[] b, double[] c, double[] result, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+            va.fma(vb, DoubleVector.fromArray(SPECIES, c, i)).intoArray(result, i);
+        }
+        for (; i < length; i++) {
+            result[i] = Math.fma(a[i], b[i], c[i]);
+        }
+    }
+
+    static double sum(double[] values, int length) {
+        int block = ColumnKernels.PARTIAL_SUMS;
+        int bound = length - length % block;
+        // Partial sum j of the scalar loop is lane j % LANES of accumulator j / LANES.
+        // Every accumulator count has its own loop, so the vectors never leave registers.
+        double[] partial = new double[block];
+        switch (block / LANES) {
+            case 1:
+                sumBlocks1(values, bound, partial);
+                break;
+            case 2:
+                sumBlocks2(values, bound, partial);
+                break;
+            default:
+                sumBlocks4(values, bound, partial);
+        }
+        for (int i = bound; i < length; i++) {
+            partial[i - bound] += values[i];
+        }
+        return ColumnKernels.combine(partial);
+    }
+
+    private static void sumBlocks1(double[] values, int bound, double[] partial) {
+        DoubleVector acc0 = DoubleVector.zero(SPECIES);
+        for (int i = 0; i < bound; i += LANES) {
+            acc0 = acc0.add(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        acc0.intoArray(partial, 0);
+    }
+
+    private static void sumBlocks2(double[] values, int bound, double[] partial) {
+        DoubleVector acc0 = DoubleVector.zero(SPECIES);
+        DoubleVector acc1 = DoubleVector.zero(SPECIES);
+        for (int i = 0; i < bound; i += 2 * LANES) {
+            acc0 = acc0.add(DoubleVector.fromArray(SPECIES, values, i));
+            acc1 = acc1.add(DoubleVector.fromArray(SPECIES, values, i + LANES));
+        }
+        acc0.intoArray(partial, 0);
+        acc1.intoArray(partial, LANES);
+    }
+
+    private static void sumBlocks4(double[] values, int bound, double[] partial) {
+        DoubleVector acc0 = DoubleVector.zero(SPECIES);
+        DoubleVector acc1 = DoubleVector.zero(SPECIES);
+        DoubleVector acc2 = DoubleVector.zero(SPECIES);
+        DoubleVector acc3 = DoubleVector.zero(SPECIES);
+        for (int i = 0; i < bound; i += 4 * LANES) {
+            acc0 = acc0.add(DoubleVector.fromArray(SPECIES, values, i));
+            acc1 = acc1.add(DoubleVector.fromArray(SPECIES, values, i + LANES));
+            acc2 = acc2.add(DoubleVector.fromArray(SPECIES, values, i + 2 * LANES));
+            acc3 = acc3.add(DoubleVector.fromArray(SPECIES, values, i + 3 * LANES));
+        }
+        acc0.intoArray(partial, 0);
+        acc1.intoArray(partial, LANES);
+        acc2.intoArray(partial, 2 * LANES);
+        acc3.intoArray(partial, 3 * LANES);
+    }
+
+    static double min(double[] values, int length) {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector acc = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            acc = acc.min(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        double min = acc.reduceLanes(VectorOperators.MIN);
+        for (; i < length; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    static double max(double[] values, int length) {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector acc = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            acc = acc.max(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        double max = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < length; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    static void compare(double[] values, int length, Comparison comparison, double constant, long[] mask) {
+        VectorOperators.Comparison operator = operator(comparison);
+        int words = ColumnStorage.wordCount(length);
+        for (int w = 0; w < words; w++) {
+            mask[w] = 0;
+        }
+        // LANES divides 64, so the bits of a vector never straddle two words
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            VectorMask<Double> matches = DoubleVector.fromArray(SPECIES, values, i).compare(operator, constant);
+            mask[i >>> 6] |= matches.toLong() << (i & 63);
+        }
+        for (; i < length; i++) {
+            if (comparison.test(values[i], constant)) {
+                mask[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    private static VectorOperators.Comparison operator(Comparison comparison) {
+        switch (comparison) {
+            case LESS:
+                return VectorOperators.LT;
+            case LESS_OR_EQUAL:
+                return VectorOperators.LE;
+            case GREATER:
+                return VectorOperators.GT;
+            case GREATER_OR_EQUAL:
+                return VectorOperators.GE;
+            case EQUAL:
+                return VectorOperators.EQ;
+            default:
+                return VectorOperators.NE;
+        }
+    }
+}